@@ -5,12 +5,13 @@
 import static beepbeep.groovy.*
 import static sensors.shortcuts.*
 import static sensors.casas.hh.shortcuts.*
+import sensors.TimeSlice
 
 // The minimum duration of a gap; set as a constant that can be modified
 DURATION = Hours(1)
 
 Read(args) |
-SliceBy(GetYearWeek(Timestamp(X)), 
+SliceByTime(Timestamp(X), TimeSlice.WEEK,
 CountIf(new Group() {{
   in(Successive(Minus(Timestamp(Y), Timestamp(X)))) |
   out(ApplyFunction(GreaterThan(X, DURATION)))
@@ -8,6 +8,5 @@ import static sensors.casas.hh.shortcuts.*
 
 Read(args) |
 Filter(Or(Equals(State(), OPEN), Equals(State(), CLOSED))) |
-Slice(SensorId(), CountIf(Successive(Equals(State(X), State(Y))))) |
-KeepLast() |
+SliceLast(SensorId(), CountIf(Successive(Equals(State(X), State(Y))))) |
 Write()
\ No newline at end of file
@@ -7,11 +7,6 @@ import static sensors.casas.aruba.shortcuts.*
 
 Read(args) |
 Filter(IsNumeric()) |
-Slice(SensorId(), new Group() {{
-  in(ApplyFunction(State())) |
-  Sets.PutInto() |
-  out(ApplyFunction(BoxAndWhiskers()))
-}}) |
-KeepLast() |
+Profile(SensorId(), State()) |
 ApplyFunction(PrettyPrint()) |
 Write()
\ No newline at end of file
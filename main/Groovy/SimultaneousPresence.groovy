@@ -7,6 +7,5 @@ import static sensors.shortcuts.*
 import static sensors.casas.aruba.shortcuts.*
 
 Read(args) |
-Slice(SensorId(), ApplyFunction(Equals("ON", State()))) |
-ApplyFunction(Size(Maps.FilterMap(Equals(Y, true)))) |
+CountSlices(SensorId(), ApplyFunction(Equals("ON", State())), Equals(X, true)) |
 Write()
\ No newline at end of file
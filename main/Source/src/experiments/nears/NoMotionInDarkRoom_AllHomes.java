@@ -0,0 +1,61 @@
+package experiments.nears;
+
+import static ca.uqac.lif.cep.Connector.connect;
+
+import java.io.IOException;
+import java.util.Map;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.CountSlices;
+import sensors.EventFormat;
+import sensors.HomeExecutor;
+import sensors.LogRepository;
+import sensors.nears.NearsJsonFormat;
+import sensors.nears.NearsMultiDaySource;
+
+/**
+ * Evaluates the property of {@link NoMotionInDarkRoom_WithCountSlices} on
+ * every hub found under the data folder, processing the hubs in parallel
+ * with a {@link HomeExecutor}. The final verdict and the number of verdicts
+ * of each hub are printed as a single report.
+ */
+public class NoMotionInDarkRoom_AllHomes {
+
+  protected static final EventFormat format = new NearsJsonFormat();
+
+  public static void main(String[] args) throws FileSystemException, IOException {
+    HomeExecutor.MergedReport report = new HomeExecutor.MergedReport();
+
+    try (HomeExecutor executor = new HomeExecutor(new LogRepository("data"))) {
+      long start = System.nanoTime();
+      int done = executor.run(new HomeExecutor.PipelineFactory() {
+        @Override
+        public Processor getPipeline(String hub, FileSystem fs) {
+          NearsMultiDaySource feeder = new NearsMultiDaySource(fs);
+          CountSlices violations = new CountSlices(format.locationString(),
+              NoMotionInDarkRoom_WithCountSlices.LightMotionGroup(),
+              new FunctionTree(Equals.instance, StreamVariable.X, new Constant(Boolean.FALSE)));
+          ApplyFunction sizeIsZero = new ApplyFunction(
+              new FunctionTree(Equals.instance, StreamVariable.X, new Constant(0)));
+          connect(feeder, violations);
+          connect(violations, sizeIsZero);
+          return sizeIsZero;
+        }
+      }, report);
+      long end = System.nanoTime();
+
+      report.print(System.out);
+      for (Map.Entry<String,Throwable> e : executor.getFailures().entrySet()) {
+        System.out.println(e.getKey() + " failed: " + e.getValue());
+      }
+      System.out.println(done + " hubs processed in " + (end - start) / 1_000_000 + " ms");
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package experiments.nears;
+
+import static ca.uqac.lif.cep.Connector.connect;
+
+import java.io.IOException;
+
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.IfThenElse;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.util.Booleans.And;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.CoOccurs;
+import sensors.CountSlices;
+import sensors.EventFormat;
+import sensors.LatencyRecorder;
+import sensors.LogRepository;
+import sensors.ReplaySource;
+import sensors.nears.NearsJsonFormat;
+import sensors.nears.NearsMultiDaySource;
+
+/**
+ * Replays the first hour of a NEARS log at increasing speeds, and measures
+ * the latency with which two monitors produce their verdicts: the
+ * {@link CountSlices} monitor of {@link NoMotionInDarkRoom_WithCountSlices},
+ * and a {@link CoOccurs} monitor checking that motion is accompanied by a
+ * luminance reading within a minute. The latency of {@link CountSlices} is
+ * the time taken to process the last event; that of {@link CoOccurs} is
+ * measured from the ingress of the event each verdict is about, and thus
+ * includes the time waited until the end of its window. The speeds are given
+ * as arguments ("max" for no pacing); the 99th percentile of each monitor is
+ * compared to a service level given in milliseconds by the last argument.
+ * <p>
+ * Usage: <tt>NoMotionInDarkRoom_Latency [speed...] [sla]</tt>, for instance
+ * <tt>NoMotionInDarkRoom_Latency 10 100 max 5</tt>.
+ */
+public class NoMotionInDarkRoom_Latency {
+
+  protected static final EventFormat format = new NearsJsonFormat();
+
+  /**
+   * The span of event time replayed, in milliseconds.
+   */
+  protected static final long SPAN = 3600000;
+
+  public static void main(String[] args) throws FileSystemException, IOException {
+    if (args.length == 1) {
+      System.err.println("Usage: NoMotionInDarkRoom_Latency [speed...] [sla]");
+      System.exit(1);
+    }
+    String[] speeds = args.length > 0 ? args : new String[] {"10", "100", "max", "5"};
+    double sla = Double.parseDouble(speeds[speeds.length - 1]);
+
+    FileSystem fs = new LogRepository("data/0105").open();
+    for (int i = 0; i < speeds.length - 1; i++) {
+      double speed = speeds[i].equals("max") ? ReplaySource.MAX_SPEED : Double.parseDouble(speeds[i]);
+
+      ReplaySource source = new ReplaySource(new NearsMultiDaySource(fs, 1, 1), format.timestamp(), speed).setSpan(SPAN);
+      Fork f = new Fork(3);
+      connect(source, f);
+
+      // Slice-based monitor
+      CountSlices violations = new CountSlices(format.locationString(),
+          NoMotionInDarkRoom_WithCountSlices.LightMotionGroup(),
+          new FunctionTree(Equals.instance, StreamVariable.X, new Constant(Boolean.FALSE)));
+      ApplyFunction sizeIsZero = new ApplyFunction(
+          new FunctionTree(Equals.instance, StreamVariable.X, new Constant(0)));
+      LatencyRecorder slice_latency = new LatencyRecorder(source);
+      connect(f, 0, violations, 0);
+      connect(violations, sizeIsZero, slice_latency, new BlackHole());
+
+      // Co-occurrence monitor
+      CoOccurs co = new CoOccurs(60000, format.timestamp(),
+          new ApplyFunction(new FunctionTree(And.instance,
+              new FunctionTree(Equals.instance, format.sensorString(), new Constant("motion")),
+              new FunctionTree(Equals.instance, format.stateString(), new Constant(format.getOnConstant())))),
+          new ApplyFunction(new FunctionTree(Equals.instance, format.sensorString(), new Constant("luminance"))));
+      connect(f, 1, co, 0);
+      // CoOccurs outputs one verdict per input event, in order, once its
+      // window is over; pairing each verdict with the timestamp of its event
+      // measures the latency of the verdict from the ingress of this event
+      ApplyFunction timestamps = new ApplyFunction(format.timestamp());
+      connect(f, 2, timestamps, 0);
+      ApplyFunction trigger = new ApplyFunction(new FunctionTree(IfThenElse.instance,
+          StreamVariable.Y, StreamVariable.X, StreamVariable.X));
+      connect(timestamps, 0, trigger, 0);
+      connect(co, 0, trigger, 1);
+      LatencyRecorder co_latency = new LatencyRecorder(source, StreamVariable.X);
+      connect(trigger, co_latency, new BlackHole());
+
+      long start = System.nanoTime();
+      source.start();
+      long end = System.nanoTime();
+
+      System.out.println("Speed " + speeds[i] + ": " + source.getCount() + " events in " + (end - start) / 1_000_000 + " ms, max lag " + source.getMaxLag() / 1_000_000d + " ms");
+      System.out.print("  CountSlices: ");
+      slice_latency.getHistogram().printSummary(System.out, 1e6, "ms");
+      System.out.print("  CoOccurs:    ");
+      co_latency.getHistogram().printSummary(System.out, 1e6, "ms");
+      System.out.println("  Within SLA of " + sla + " ms: "
+          + (slice_latency.getHistogram().getPercentile(0.99) <= sla * 1e6) + " / "
+          + (co_latency.getHistogram().getPercentile(0.99) <= sla * 1e6));
+    }
+    fs.close();
+    System.out.println("Done!");
+  }
+}
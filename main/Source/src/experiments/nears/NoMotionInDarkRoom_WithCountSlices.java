@@ -0,0 +1,158 @@
+package experiments.nears;
+
+
+import static ca.uqac.lif.cep.Connector.connect;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import ca.uqac.lif.cep.GroupProcessor;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.IfThenElse;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.FilterOn;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.util.Booleans.And;
+import ca.uqac.lif.cep.util.Booleans.Not;
+import ca.uqac.lif.cep.util.Booleans.Or;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.cep.util.Maps;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.CountSlices;
+import sensors.EventFormat;
+import sensors.ExperimentHarness;
+import sensors.ExperimentHarness.Report;
+import sensors.LogRepository;
+import sensors.nears.NearsJsonFormat;
+import sensors.nears.NearsMultiDaySource;
+
+/**
+ * Same property as {@link NoMotionInDarkRoom_WithoutIntegration}, but the
+ * number of locations violating the property is maintained incrementally by a
+ * {@link CountSlices} processor, instead of filtering and measuring the whole
+ * map output by a {@link ca.uqac.lif.cep.tmf.Slice Slice} upon every event.
+ */
+public class NoMotionInDarkRoom_WithCountSlices {
+	
+	protected static final EventFormat format = new NearsJsonFormat();
+
+  public static void main(String[] args) throws FileSystemException, IOException {
+    final int runs = 35; // number of repetitions
+    final int first_day = 1, last_day = 36;
+
+    final FileSystem fs = new LogRepository("data/0105").open();
+    OutputStream os = fs.writeTo("NoMotionInDark-WithCountSlices-Nears.txt");
+    Report r = new ExperimentHarness(() -> new NearsMultiDaySource(fs, first_day, last_day))
+        .setIterations(runs)
+        .run("NoMotionInDarkRoom_WithCountSlices", NoMotionInDarkRoom_WithCountSlices::getPipeline, os);
+    os.close();
+    PrintStream csv = new PrintStream(fs.writeTo("NoMotionInDark-WithCountSlices-Nears.csv"));
+    r.printCsv(csv);
+    csv.close();
+    fs.close();
+    r.printSummary(System.out);
+    System.out.println("Done!");
+  }
+
+  /**
+   * Creates the pipeline outputting the verdict of the property upon each
+   * event.
+   * @return The pipeline
+   */
+  public static Processor getPipeline() {
+    // count the locations that violate the property
+    CountSlices violations = new CountSlices(format.locationString(), LightMotionGroup(),
+        new FunctionTree(Equals.instance, StreamVariable.X, new Constant(Boolean.FALSE)));
+
+    //if no location violates the property, the property holds
+    ApplyFunction sizeIsZero = new ApplyFunction(
+        new FunctionTree(Equals.instance, StreamVariable.X, new Constant(0)));
+
+    connect(violations, sizeIsZero);
+    GroupProcessor gp = new GroupProcessor(1, 1);
+    gp.addProcessors(violations, sizeIsZero);
+    gp.associateInput(0, violations, 0);
+    gp.associateOutput(0, sizeIsZero, 0);
+    return gp;
+  }
+  
+  static GroupProcessor LightMotionGroup() {
+      GroupProcessor gp = new GroupProcessor(1, 1);
+      
+      // Allowed sensor names
+      final String PRESENCE = "motion";
+      final String L  = "luminance"; // NEARS uses luminance
+
+      // Filter by keeping only presence & light sensors at this location
+      FilterOn keepMotionLight = new FilterOn(
+                new FunctionTree(
+                    Or.instance,
+                    new FunctionTree(Equals.instance, format.sensorString(), new Constant(PRESENCE)),
+                    new FunctionTree(Equals.instance, format.sensorString(), new Constant(L))
+                )
+            );
+
+      
+      //This processor maps each event to a Boolean depending on sensor type and state
+      ApplyFunction sensorToBoolean = new ApplyFunction(
+                new FunctionTree(
+                    IfThenElse.instance,
+                    // sensor == presence ?
+                    new FunctionTree(Equals.instance, format.sensorString(), new Constant(PRESENCE)),
+                    // then: presence flag = (state == ON)
+                    new FunctionTree(Equals.instance, format.stateString(), new Constant(format.getOnConstant())),
+                    // else: sensor is any of the light* ?
+                    new FunctionTree(
+                        IfThenElse.instance,
+                        new FunctionTree(Equals.instance, format.sensorString(), new Constant(L)),
+                        // then: dark flag = (state == 0)
+                        new FunctionTree(Equals.instance, format.stateString(), new Constant(0)),
+                        // else: ignore others → false
+                        new Constant(false)
+                    )
+                )
+            );
+      
+      //For each substream, slice based on sensor string and apply sensorToBoolean function on each substream to extract the value in each stream
+      // this will produce a hasmaps <sensorname,Boolean>
+      Slice bySensor = new Slice(format.sensorString(), sensorToBoolean);
+      
+      FunctionTree presenceIsOn = new FunctionTree(
+                Equals.instance,
+                new FunctionTree(new Maps.Get(PRESENCE), StreamVariable.X),
+                new Constant(Boolean.TRUE)
+            );
+      
+   // Any of the light keys is dark?
+      FunctionTree anyLightDark = new FunctionTree(
+                Equals.instance,
+                new FunctionTree(new Maps.Get(L),  StreamVariable.X),
+                new Constant(Boolean.TRUE)
+            );
+      
+      
+      // Then in locationOk:
+      ApplyFunction locationOk = new ApplyFunction(
+                new FunctionTree(
+                    Not.instance,
+                    new FunctionTree(And.instance, presenceIsOn, anyLightDark)
+                )
+            );
+
+      
+      // connect the pipeline
+      gp.addProcessors(keepMotionLight, bySensor, locationOk);
+      connect(keepMotionLight, bySensor);
+      connect(bySensor, locationOk);
+      gp.associateInput(0, keepMotionLight, 0);
+      gp.associateOutput(0, locationOk, 0);
+      
+      return gp;
+}
+  
+}
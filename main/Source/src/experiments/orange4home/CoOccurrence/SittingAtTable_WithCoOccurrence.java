@@ -6,10 +6,7 @@ package experiments.orange4home.CoOccurrence;
  * The pipeline with co-occurrence ...
  
  */
-import static ca.uqac.lif.cep.Connector.connect;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import ca.uqac.lif.cep.Processor;
@@ -18,13 +15,13 @@ import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.UnaryFunction;
-import ca.uqac.lif.cep.io.Print;
-import ca.uqac.lif.cep.tmf.Pump;
 import ca.uqac.lif.cep.util.Booleans.And;
 import ca.uqac.lif.cep.util.Equals;
 import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.fs.FileSystemException;
 import sensors.EventFormat;
+import sensors.ExperimentHarness;
+import sensors.ExperimentHarness.Report;
 import sensors.LogRepository;
 import sensors.orange4home.Orange4HomeFormat;
 import sensors.orange4home.Orange4HomeLogRepository;
@@ -36,13 +33,24 @@ public class SittingAtTable_WithCoOccurrence {
 	protected static final EventFormat format = new Orange4HomeFormat();
 	
 	public static void main(String[] args) throws FileSystemException, IOException {
-		
-		
 		fs.open();
-		 InputStream  is = fs.readFrom("o4h_all_events.csv");
-		    OutputStream os = fs.writeTo("verdicts_cooccurrence.txt");
-		    Processor    feeder = format.getFeeder(is);
+		OutputStream os = fs.writeTo("verdicts_cooccurrence.txt");
+		Report r = new ExperimentHarness(format, fs, "o4h_all_events.csv").run("SittingAtTable_WithCoOccurrence", SittingAtTable_WithCoOccurrence::getPipeline, os);
+		os.close();
+		PrintStream csv = new PrintStream(fs.writeTo("SittingAtTable_WithCoOccurrence.csv"));
+		r.printCsv(csv);
+		csv.close();
+		fs.close();
+		r.printSummary(System.out);
+		System.out.println("Done!");
+	}
 
+	/**
+	 * Creates the pipeline evaluating the property with the co-occurrence
+	 * processor.
+	 * @return The pipeline
+	 */
+	public static Processor getPipeline() {
 		/* Timestamp extractor returns a number*/
 		Function f_ts = format.timestamp(); 
 		
@@ -91,26 +99,8 @@ public class SittingAtTable_WithCoOccurrence {
 		/* Co-occurrence window == 5000 L means all three events must co-occur within 5 seconds*/
 		long WINDOW_MS = 5000L;
 
-		Processor coOccurs = new CoOccurs(WINDOW_MS, f_ts, w_cond, condPlug, condNoise);
-		
-	    Pump p = new Pump();
-	    connect(feeder, p);
-	    connect(p, coOccurs);
-
-	    PrintStream ps = new PrintStream(os);
-	    Print printer = new Print(ps).setSeparator("\n");
-	    connect(coOccurs, printer);
-
-	    // Run
-	    p.run();
-
-	    // Cleanup
-	    ps.close();
-	    feeder.stop();
-	    fs.close();
-	    System.out.println("Done!");
-		
-	}	
+		return new CoOccurs(WINDOW_MS, f_ts, w_cond, condPlug, condNoise);
+	}
 	
 	public static class SafeNumberCast extends UnaryFunction<Object,Number> {
 	    public static final SafeNumberCast instance = new SafeNumberCast();
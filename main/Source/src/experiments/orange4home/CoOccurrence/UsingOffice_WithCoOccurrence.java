@@ -5,10 +5,7 @@ package experiments.orange4home.CoOccurrence;
  * Property: Presence in office should involve three sensors: presence_office, office_luminosity, office_plug_consumption regardless the order.
  * 
  */
-import static ca.uqac.lif.cep.Connector.connect;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 
@@ -21,10 +18,8 @@ import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.StreamVariable;
 import ca.uqac.lif.cep.functions.UnaryFunction;
-import ca.uqac.lif.cep.io.Print;
 import ca.uqac.lif.cep.tmf.FilterOn;
 import ca.uqac.lif.cep.tmf.KeepLast;
-import ca.uqac.lif.cep.tmf.Pump;
 import ca.uqac.lif.cep.tmf.Slice;
 import ca.uqac.lif.cep.util.Booleans.And;
 import ca.uqac.lif.cep.util.Booleans.Or;
@@ -37,6 +32,8 @@ import ca.uqac.lif.cep.util.Sets;
 import ca.uqac.lif.fs.FileSystemException;
 import experiments.orange4home.CoOccurrence.SittingAtTable_WithCoOccurrence.SafeNumberCast;
 import sensors.EventFormat;
+import sensors.ExperimentHarness;
+import sensors.ExperimentHarness.Report;
 import sensors.LogRepository;
 import sensors.orange4home.Orange4HomeFormat;
 import sensors.orange4home.Orange4HomeLogRepository;
@@ -49,13 +46,24 @@ public class UsingOffice_WithCoOccurrence {
 	protected static final EventFormat format = new Orange4HomeFormat();
 	
 	public static void main(String[] args) throws FileSystemException, IOException {
-		
-		
 		fs.open();
-		 InputStream  is = fs.readFrom("o4h_all_events.csv");
-		    OutputStream os = fs.writeTo("verdicts_coOccurrence.txt");
-		    Processor    feeder = format.getFeeder(is);
+		OutputStream os = fs.writeTo("verdicts_coOccurrence.txt");
+		Report r = new ExperimentHarness(format, fs, "o4h_all_events.csv").run("UsingOffice_WithCoOccurrence", UsingOffice_WithCoOccurrence::getPipeline, os);
+		os.close();
+		PrintStream csv = new PrintStream(fs.writeTo("UsingOffice_WithCoOccurrence.csv"));
+		r.printCsv(csv);
+		csv.close();
+		fs.close();
+		r.printSummary(System.out);
+		System.out.println("Done!");
+	}
 
+	/**
+	 * Creates the pipeline evaluating the property with the co-occurrence
+	 * processor.
+	 * @return The pipeline
+	 */
+	public static Processor getPipeline() {
 		/* Timestamp extractor returns a number*/
 		Function f_ts = format.timestamp(); 
 		
@@ -99,26 +107,8 @@ public class UsingOffice_WithCoOccurrence {
 		/* Co-occurrence window == 5000 L means all three events must co-occur within 5 seconds*/
 		long WINDOW_MS = 5000L;
 
-		Processor coOccurs = new CoOccurs(WINDOW_MS, f_ts, w_cond, condPlug, condNoise);
-		
-	    Pump p = new Pump();
-	    connect(feeder, p);
-	    connect(p, coOccurs);
-
-	    PrintStream ps = new PrintStream(os);
-	    Print printer = new Print(ps).setSeparator("\n");
-	    connect(coOccurs, printer);
-
-	    // Run
-	    p.run();
-
-	    // Cleanup
-	    ps.close();
-	    feeder.stop();
-	    fs.close();
-	    System.out.println("Done!");
-		
-	}	
+		return new CoOccurs(WINDOW_MS, f_ts, w_cond, condPlug, condNoise);
+	}
 	
 	public static class SafeNumberCast extends UnaryFunction<Object,Number> {
 	    public static final SafeNumberCast instance = new SafeNumberCast();
@@ -6,12 +6,8 @@ package experiments.orange4home.WithoutCoOccurrence;
  * The pipeline without co-occurrence assumes that the three relevant sensors emit their events at the same time stamp 
  * and in this order: presence_table followed by table_noise followed by table_lumninosity.
  * */
-import static ca.uqac.lif.cep.Connector.connect;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayDeque;
@@ -30,11 +26,9 @@ import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.IfThenElse;
 import ca.uqac.lif.cep.functions.StreamVariable;
-import ca.uqac.lif.cep.io.Print;
 import ca.uqac.lif.cep.tmf.FilterOn;
 import ca.uqac.lif.cep.tmf.Fork;
 import ca.uqac.lif.cep.tmf.KeepLast;
-import ca.uqac.lif.cep.tmf.Pump;
 import ca.uqac.lif.cep.tmf.Slice;
 import ca.uqac.lif.cep.tmf.Window;
 import ca.uqac.lif.cep.util.Booleans.And;
@@ -49,6 +43,8 @@ import ca.uqac.lif.cep.util.Sets;
 import ca.uqac.lif.cep.util.Strings;
 import ca.uqac.lif.fs.FileSystemException;
 import sensors.EventFormat;
+import sensors.ExperimentHarness;
+import sensors.ExperimentHarness.Report;
 import sensors.LogRepository;
 import sensors.orange4home.Orange4HomeFormat;
 import sensors.orange4home.Orange4HomeLogRepository;
@@ -63,32 +59,26 @@ public class SittingAtTable_WithoutCoOccurrence {
 	  protected static final EventFormat format = new Orange4HomeFormat();
 
 	  public static void main(String[] args) throws FileSystemException, IOException {
-	 
 	        fs.open();
-	        
-	        // Input & feeder
-	        InputStream is = fs.readFrom("o4h_all_events.csv");
 	        OutputStream os = fs.writeTo("verdicts.txt");
-	        Processor feeder = format.getFeeder(is);           
-            CheckOrderMachine machine = new CheckOrderMachine();
-            Pump p = new Pump();
-            connect(feeder, p);                 // feeder -> pump
-            connect(p, machine);
-
-	         // Print verdicts directly to file
-	         PrintStream ps = new PrintStream(os);
-	         Print printer = new Print(ps).setSeparator("\n");
-	         connect(machine, printer);
+	        Report r = new ExperimentHarness(format, fs, "o4h_all_events.csv").run("SittingAtTable_WithoutCoOccurrence", SittingAtTable_WithoutCoOccurrence::getPipeline, os);
+	        os.close();
+	        PrintStream csv = new PrintStream(fs.writeTo("SittingAtTable_WithoutCoOccurrence.csv"));
+	        r.printCsv(csv);
+	        csv.close();
+	        fs.close();
+	        r.printSummary(System.out);
+	        System.out.println("Done!");
+	  }
 
-	         // Run the network
-	         p.run();
-	
-	         // Clean up
-	         ps.close();
-	         feeder.stop();
-	         fs.close();
-	         System.out.println("Done!");
-     }
+	  /**
+	   * Creates the pipeline evaluating the property by checking the order
+	   * of successive events.
+	   * @return The pipeline
+	   */
+	  public static Processor getPipeline() {
+	        return new CheckOrderMachine();
+	  }
 	  
 	  
 	  
@@ -6,9 +6,7 @@ package experiments.orange4home.WithoutCoOccurrence;
  * The pipeline without co-occurrence assumes that the three relevant sensors emit their events at the same time stamp 
  * and in this order: couch_noise followed by couch_plug_consumption followed by couch_presence.
  * */
-import static ca.uqac.lif.cep.Connector.connect;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import ca.uqac.lif.cep.Processor;
@@ -19,14 +17,14 @@ import ca.uqac.lif.cep.fsm.MooreMachine;
 import ca.uqac.lif.cep.fsm.TransitionOtherwise;
 import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.FunctionTree;
-import ca.uqac.lif.cep.io.Print;
-import ca.uqac.lif.cep.tmf.Pump;
 import ca.uqac.lif.cep.util.Booleans.And;
 import ca.uqac.lif.cep.util.Booleans.Not;
 import ca.uqac.lif.cep.util.Equals;
 import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.fs.FileSystemException;
 import sensors.EventFormat;
+import sensors.ExperimentHarness;
+import sensors.ExperimentHarness.Report;
 import sensors.LogRepository;
 import sensors.orange4home.Orange4HomeFormat;
 import sensors.orange4home.Orange4HomeLogRepository;
@@ -37,32 +35,26 @@ public class UsingBathtroom_WithoutCoOccurrence {
 	  protected static final EventFormat format = new Orange4HomeFormat();
 
 	  public static void main(String[] args) throws FileSystemException, IOException {
-	 
 	        fs.open();
-	        
-	        // Input & feeder
-	        InputStream is = fs.readFrom("o4h_all_events.csv");
 	        OutputStream os = fs.writeTo("verdicts_withoutCoOccurrence.txt");
-	        Processor feeder = format.getFeeder(is);  
-            CheckOrderMachine machine = new CheckOrderMachine();
-	         Pump p = new Pump();
-	         connect(feeder, p);               
-	         connect(p, machine);
-	
-	         // Print verdicts directly to output file
-	         PrintStream ps = new PrintStream(os);
-	         Print printer = new Print(ps).setSeparator("\n");
-	         connect(machine, printer);
-	
-	         // Run the pipeline
-	         p.run();
-	
-	     
-	         ps.close();
-	         feeder.stop();
-	         fs.close();
-	         System.out.println("Done!");
-     }
+	        Report r = new ExperimentHarness(format, fs, "o4h_all_events.csv").run("UsingBathtroom_WithoutCoOccurrence", UsingBathtroom_WithoutCoOccurrence::getPipeline, os);
+	        os.close();
+	        PrintStream csv = new PrintStream(fs.writeTo("UsingBathtroom_WithoutCoOccurrence.csv"));
+	        r.printCsv(csv);
+	        csv.close();
+	        fs.close();
+	        r.printSummary(System.out);
+	        System.out.println("Done!");
+	  }
+
+	  /**
+	   * Creates the pipeline evaluating the property by checking the order
+	   * of successive events.
+	   * @return The pipeline
+	   */
+	  public static Processor getPipeline() {
+	        return new CheckOrderMachine();
+	  }
 	  
 	  
 	  
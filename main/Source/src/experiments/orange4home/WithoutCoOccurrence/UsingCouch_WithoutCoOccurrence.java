@@ -6,12 +6,7 @@ package experiments.orange4home.WithoutCoOccurrence;
  * The pipeline without co-occurrence assumes that the three relevant sensors emit their events at the same time stamp 
  * and in this order: couch_noise followed by couch_plug_consumption followed by couch_presence.
  * */
-import static ca.uqac.lif.cep.Connector.connect;
-
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayDeque;
@@ -31,11 +26,9 @@ import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.IfThenElse;
 import ca.uqac.lif.cep.functions.StreamVariable;
 import ca.uqac.lif.cep.functions.UnaryFunction;
-import ca.uqac.lif.cep.io.Print;
 import ca.uqac.lif.cep.tmf.FilterOn;
 import ca.uqac.lif.cep.tmf.Fork;
 import ca.uqac.lif.cep.tmf.KeepLast;
-import ca.uqac.lif.cep.tmf.Pump;
 import ca.uqac.lif.cep.tmf.Slice;
 import ca.uqac.lif.cep.tmf.Window;
 import ca.uqac.lif.cep.util.Booleans.And;
@@ -50,6 +43,8 @@ import ca.uqac.lif.cep.util.Sets;
 import ca.uqac.lif.cep.util.Strings;
 import ca.uqac.lif.fs.FileSystemException;
 import sensors.EventFormat;
+import sensors.ExperimentHarness;
+import sensors.ExperimentHarness.Report;
 import sensors.LogRepository;
 import sensors.orange4home.Orange4HomeFormat;
 import sensors.orange4home.Orange4HomeLogRepository;
@@ -64,92 +59,26 @@ public class UsingCouch_WithoutCoOccurrence {
 	  protected static final EventFormat format = new Orange4HomeFormat();
 
 	  public static void main(String[] args) throws FileSystemException, IOException {
-	 
 	        fs.open();
-	        
-	        // Input & feeder
-	        InputStream is = fs.readFrom("o4h_all_events.csv");
 	        OutputStream os = fs.writeTo("verdicts_withoutCoOccurrence.txt");
-	        Processor feeder = format.getFeeder(is);
-	        
-	        
-	        
-	     // Filter events leaving only the events located in the livingroom 
-         /*  FilterOn filterLocation = new FilterOn(
-            		new FunctionTree(Equals.instance, format.locationString(), new Constant("livingroom"))
-            );
-            connect(feeder, filterLocation);
-            
-         // Filter events leaving only the events with subject = table 
-            FilterOn filterSubject = new FilterOn(
-             		new FunctionTree(Or.instance,
-             				         new FunctionTree(Equals.instance, format.subjectString(), new Constant("table")),
-             				        new FunctionTree(Equals.instance, format.subjectString(), new Constant("tableplug"))));
-             		
-             connect(filterLocation, filterSubject);
-	        
-           /* FilterOn filterSensors = new FilterOn(
-                    new FunctionTree(
-                        Or.instance,
-                        new FunctionTree(Equals.instance, format.sensorString(), new Constant("presence")),
-                        new FunctionTree(
-                            Or.instance,
-                            new FunctionTree(Equals.instance, format.sensorString(), new Constant("noise")),
-                            new FunctionTree(Equals.instance, format.sensorString(), new Constant("plug_consumption"))
-                        )
-                    )
-                );  */
-            
-         //   connect(filterSubject, filterSensors);*/
-            
-         // Group processor to check the exact order inside each 3-event window
-           /* GroupProcessor group = new GroupProcessor(1, 1);
-            {
-            	// Build a mooreMachine that emits a final verdict based on the order of the three events inside the window
-            	CheckOrderMachine machine = new CheckOrderMachine();
-            	//Sets.PutInto put = new Sets.PutInto();
-            	//connect(machine,put);
-            	group.addProcessors(machine);
-                group.associateInput(0, machine, 0);
-                group.associateOutput(0, machine, 0);
-            	 // group.associateInput(machine).associateOutput(put);
-	        }*/
-            
-            CheckOrderMachine machine = new CheckOrderMachine();
-            
-            /*ApplyFunction choose = new ApplyFunction(
-            		  new FunctionTree(IfThenElse.instance, StreamVariable.X, new Constant(true), StreamVariable.Y)
-            		);
-            		Connector.connect(condition, 0, choose, 0); // cond boolean
-            		Connector.connect(window,    0, choose, 1); // gp boolean (after fix #3)*/
-        
-         // --- wiring (replace your window/fork/printer/pump section) ---
-
-         // Window of 3 events
-       //  Window window = new Window(group, 3);
-
-         // Drive the whole pipeline with a Pump placed *after* the feeder
-         Pump p = new Pump();
-         connect(feeder, p);                 // feeder -> pump
-         //connect(p, filterLocation);         // pump -> filters
-      //   connect(filterLocation, filterSensors);
-        // connect(filterSensors, window);
-         connect(p, machine);
-
-         // Print verdicts directly to file
-         PrintStream ps = new PrintStream(os);
-         Print printer = new Print(ps).setSeparator("\n");
-         connect(machine, printer);
-
-         // Run the network
-         p.run();
+	        Report r = new ExperimentHarness(format, fs, "o4h_all_events.csv").run("UsingCouch_WithoutCoOccurrence", UsingCouch_WithoutCoOccurrence::getPipeline, os);
+	        os.close();
+	        PrintStream csv = new PrintStream(fs.writeTo("UsingCouch_WithoutCoOccurrence.csv"));
+	        r.printCsv(csv);
+	        csv.close();
+	        fs.close();
+	        r.printSummary(System.out);
+	        System.out.println("Done!");
+	  }
 
-         // Clean up
-         ps.close();
-         feeder.stop();
-         fs.close();
-         System.out.println("Done!");
-     }
+	  /**
+	   * Creates the pipeline evaluating the property by checking the order
+	   * of successive events.
+	   * @return The pipeline
+	   */
+	  public static Processor getPipeline() {
+	        return new CheckOrderMachine();
+	  }
 	  
 	  
 	  
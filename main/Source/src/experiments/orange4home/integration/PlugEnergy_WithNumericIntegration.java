@@ -0,0 +1,96 @@
+package experiments.orange4home.integration;
+
+import static ca.uqac.lif.cep.Connector.connect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.FilterOn;
+import ca.uqac.lif.cep.tmf.Pump;
+import ca.uqac.lif.cep.util.Booleans.And;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.cep.util.Strings;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.EventFormat;
+import sensors.LogRepository;
+import sensors.NumericIntegrate;
+import sensors.orange4home.Orange4HomeFormat;
+import sensors.orange4home.Orange4HomeLogRepository;
+
+/**
+ * Computes the energy consumed by each plug of the house, by integrating its
+ * instantaneous consumption over time. Contrary to the other experiments of
+ * this package, the integration is done by a single keyed
+ * {@link NumericIntegrate.Trapezoid} processor that keeps its state in
+ * primitive arrays, instead of a generic
+ * {@link ca.uqac.lif.cep.functions.Integrate Integrate} fed with function
+ * objects.
+ */
+public class PlugEnergy_WithNumericIntegration {
+
+  /* Repository and format (shared) */
+  protected static final LogRepository fs = new Orange4HomeLogRepository();
+  protected static final EventFormat format = new Orange4HomeFormat();
+
+  public static void main(String[] args) throws FileSystemException, IOException {
+    final int runs = 35; // number of repetitions
+
+    long minTime = Long.MAX_VALUE, maxTime = Long.MIN_VALUE, totalTime = 0;
+
+    fs.open(); // open once
+
+    Map<Object,Double> energy = null;
+    for (int i = 0; i < runs; i++) {
+      long start = System.nanoTime();
+
+      /* ---------------- build + run pipeline (fresh each run) ---------------- */
+      InputStream is = fs.readFrom("o4h_all_events.csv");
+      Processor feeder = format.getFeeder(is);
+
+      Pump p = new Pump();
+      connect(feeder, p);
+
+      // Keep only the plug consumption readings (in W); a sensor named
+      // x_plug_consumption has subject "xplug" and sensor "consumption"
+      FilterOn plugs = new FilterOn(new FunctionTree(And.instance,
+          new FunctionTree(Equals.instance, format.sensorString(), new Constant("consumption")),
+          new FunctionTree(Strings.endsWith, format.subjectString(), new Constant("plug"))));
+      connect(p, plugs);
+
+      // Energy per plug, in Wh
+      NumericIntegrate.Trapezoid wh = new NumericIntegrate.Trapezoid(format.stateString(), format.timestamp(), format.sensorPlacement(), NumericIntegrate.MS_TO_HOURS);
+      connect(plugs, wh);
+      connect(wh, new BlackHole());
+
+      // Execute
+      p.run();
+      feeder.stop();
+      energy = wh.getValues();
+
+      // Close per-run resources
+      is.close();
+      /* ---------------- end pipeline ---------------- */
+
+      long durationMs = (System.nanoTime() - start) / 1_000_000; // ms
+      minTime = Math.min(minTime, durationMs);
+      maxTime = Math.max(maxTime, durationMs);
+      totalTime += durationMs;
+      System.out.printf("Run %d: time=%d ms%n", i + 1, durationMs);
+    }
+
+    fs.close(); // close once
+
+    System.out.println("----- Energy (Wh) -----");
+    for (Map.Entry<Object,Double> e : energy.entrySet()) {
+      System.out.printf("%s: %.2f%n", e.getKey(), e.getValue());
+    }
+    System.out.println("----- Summary -----");
+    System.out.println("Execution time (ms): min=" + minTime + ", max=" + maxTime + ", avg=" + (totalTime / runs));
+    System.out.println("Done!");
+  }
+}
@@ -0,0 +1,683 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.Pump;
+
+/**
+ * Index of the activity episodes of one or more residents, built once from
+ * a labeled log. An <em>episode</em> is a maximal sequence of consecutive
+ * events that carry the same activity label for a resident; it is recorded
+ * with the timestamps of its first and last events, and with the indices of
+ * these events in the log. An episode is considered to cover the time from
+ * its first event up to the first event of the next episode of the same
+ * resident (or up to its last event, for the last episode).
+ * <p>
+ * The episodes of each resident are kept in an array sorted by start, so
+ * that finding the activity covering a moment, or the episode containing an
+ * event of a given index, is done by binary search. The episodes of each
+ * label are also grouped, so that the events within a given activity (that
+ * is, the ranges of event indices of its episodes) are obtained directly.
+ * This makes it possible to join the output of a monitor with the ground
+ * truth labels of a dataset after the fact, without reading the log again
+ * and replaying the sequential updates of labels done by the feeders.
+ * <p>
+ * The index is populated by the {@link Build} processor, which lets events
+ * through unchanged, or in one go with {@link #read(LabeledEventFormat,
+ * InputStream)}. Events must be added in increasing order of timestamps.
+ *
+ * @author Sylvain Hallé
+ */
+public class ActivityIndex
+{
+	/**
+	 * The timeline of each resident.
+	 */
+	/*@ non_null @*/ protected final Timeline[] m_timelines;
+
+	/**
+	 * Creates a new empty index.
+	 * @param residents The number of residents
+	 */
+	public ActivityIndex(int residents)
+	{
+		super();
+		m_timelines = new Timeline[residents];
+		for (int i = 0; i < residents; i++)
+		{
+			m_timelines[i] = new Timeline();
+		}
+	}
+
+	/**
+	 * Populates an index from a log of a given format for a single resident.
+	 * @param format The format of the log
+	 * @param is The stream from which the log is read
+	 * @return The index
+	 */
+	/*@ non_null @*/ public static ActivityIndex read(LabeledEventFormat format, InputStream is)
+	{
+		return read(format, new Build(format), is);
+	}
+
+	/**
+	 * Populates an index from a log of a given format for multiple residents.
+	 * @param format The format of the log
+	 * @param residents The number of residents
+	 * @param is The stream from which the log is read
+	 * @return The index
+	 */
+	/*@ non_null @*/ public static ActivityIndex read(MultiResidentLabeledEventFormat format, int residents, InputStream is)
+	{
+		return read(format, new Build(format, residents), is);
+	}
+
+	/**
+	 * Populates an index by pushing a log through a {@link Build} processor.
+	 * @param format The format of the log
+	 * @param b The processor
+	 * @param is The stream from which the log is read
+	 * @return The index
+	 */
+	protected static ActivityIndex read(EventFormat format, Build b, InputStream is)
+	{
+		Processor feeder = format.getFeeder(is);
+		Pump p = new Pump();
+		Connector.connect(feeder, p, b, new BlackHole());
+		p.run();
+		return b.getIndex();
+	}
+
+	/**
+	 * Adds an event to the index.
+	 * @param resident The index of the resident
+	 * @param label The activity label of the event for this resident
+	 * @param ts The timestamp of the event
+	 * @param index The index of the event in the log
+	 */
+	public void add(int resident, Object label, long ts, long index)
+	{
+		m_timelines[resident].add(label, ts, index);
+	}
+
+	/**
+	 * Gets the number of residents in this index.
+	 * @return The number of residents
+	 */
+	public int getResidentCount()
+	{
+		return m_timelines.length;
+	}
+
+	/**
+	 * Gets all the episodes of a resident, in order.
+	 * @param resident The index of the resident
+	 * @return The list of episodes
+	 */
+	/*@ non_null @*/ public List<Episode> getEpisodes(int resident)
+	{
+		return Collections.unmodifiableList(m_timelines[resident].m_episodes);
+	}
+
+	/**
+	 * Gets the episodes of a resident that have a given activity label, in
+	 * order.
+	 * @param resident The index of the resident
+	 * @param label The label
+	 * @return The list of episodes, which is empty if the label does not
+	 * occur
+	 */
+	/*@ non_null @*/ public List<Episode> getEpisodes(int resident, Object label)
+	{
+		List<Episode> list = m_timelines[resident].m_byLabel.get(label);
+		if (list == null)
+		{
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Gets the episodes of a resident that cover at least part of an interval
+	 * of time, in order.
+	 * @param resident The index of the resident
+	 * @param from The start of the interval
+	 * @param to The end of the interval (inclusive)
+	 * @return The list of episodes
+	 */
+	/*@ non_null @*/ public List<Episode> getEpisodes(int resident, long from, long to)
+	{
+		Timeline t = m_timelines[resident];
+		List<Episode> list = new ArrayList<Episode>();
+		// The last episode starting before the interval may reach into it
+		int i = t.lower(t.m_starts, from);
+		if (i >= 0 && t.covers(i, from))
+		{
+			list.add(t.m_episodes.get(i));
+		}
+		for (i++; i < t.m_episodes.size(); i++)
+		{
+			Episode e = t.m_episodes.get(i);
+			if (e.m_start > to)
+			{
+				break;
+			}
+			list.add(e);
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the episode of a resident that covers a given moment.
+	 * @param resident The index of the resident
+	 * @param ts The moment
+	 * @return The episode, or {@code null} if no episode covers this moment
+	 */
+	/*@ null @*/ public Episode getActivity(int resident, long ts)
+	{
+		Timeline t = m_timelines[resident];
+		int i = t.floor(t.m_starts, ts);
+		if (i < 0 || !t.covers(i, ts))
+		{
+			return null;
+		}
+		return t.m_episodes.get(i);
+	}
+
+	/**
+	 * Gets the episode of a resident that contains the event of a given index.
+	 * @param resident The index of the resident
+	 * @param index The index of the event in the log
+	 * @return The episode, or {@code null} if the event is not in the index
+	 */
+	/*@ null @*/ public Episode getEpisodeOf(int resident, long index)
+	{
+		Timeline t = m_timelines[resident];
+		int i = t.floor(t.m_firstIndices, index);
+		if (i < 0 || t.m_episodes.get(i).m_lastIndex < index)
+		{
+			return null;
+		}
+		return t.m_episodes.get(i);
+	}
+
+	/**
+	 * The sequence of episodes of a resident.
+	 */
+	protected static class Timeline
+	{
+		/**
+		 * The episodes, in order.
+		 */
+		/*@ non_null @*/ protected final List<Episode> m_episodes;
+
+		/**
+		 * The start of each episode, used for binary searches.
+		 */
+		/*@ non_null @*/ protected long[] m_starts;
+
+		/**
+		 * The index of the first event of each episode, used for binary
+		 * searches.
+		 */
+		/*@ non_null @*/ protected long[] m_firstIndices;
+
+		/**
+		 * The episodes of each label.
+		 */
+		/*@ non_null @*/ protected final Map<Object,List<Episode>> m_byLabel;
+
+		/**
+		 * Creates a new empty timeline.
+		 */
+		public Timeline()
+		{
+			super();
+			m_episodes = new ArrayList<Episode>();
+			m_starts = new long[16];
+			m_firstIndices = new long[16];
+			m_byLabel = new HashMap<Object,List<Episode>>();
+		}
+
+		/**
+		 * Adds an event to the timeline, extending the last episode or starting
+		 * a new one.
+		 * @param label The activity label of the event
+		 * @param ts The timestamp of the event
+		 * @param index The index of the event in the log
+		 */
+		public void add(Object label, long ts, long index)
+		{
+			int n = m_episodes.size();
+			if (n > 0)
+			{
+				Episode last = m_episodes.get(n - 1);
+				if (ts < last.m_start)
+				{
+					throw new ProcessorException("Events must be indexed in increasing order of timestamps");
+				}
+				if (last.m_label == null ? label == null : last.m_label.equals(label))
+				{
+					last.m_end = Math.max(last.m_end, ts);
+					last.m_lastIndex = index;
+					last.m_eventCount++;
+					return;
+				}
+			}
+			Episode e = new Episode(label, ts, index);
+			m_episodes.add(e);
+			m_starts = KeyIndex.ensure(m_starts, n);
+			m_firstIndices = KeyIndex.ensure(m_firstIndices, n);
+			m_starts[n] = ts;
+			m_firstIndices[n] = index;
+			List<Episode> list = m_byLabel.get(label);
+			if (list == null)
+			{
+				list = new ArrayList<Episode>();
+				m_byLabel.put(label, list);
+			}
+			list.add(e);
+		}
+
+		/**
+		 * Finds the last position of a sorted array whose value is at most a
+		 * given value.
+		 * @param values The array
+		 * @param x The value
+		 * @return The position, or -1 if all values are greater
+		 */
+		protected int floor(long[] values, long x)
+		{
+			int pos = Arrays.binarySearch(values, 0, m_episodes.size(), x);
+			if (pos >= 0)
+			{
+				// Several episodes may start at the same moment: take the last
+				while (pos + 1 < m_episodes.size() && values[pos + 1] == x)
+				{
+					pos++;
+				}
+				return pos;
+			}
+			return -pos - 2;
+		}
+
+		/**
+		 * Finds the last position of a sorted array whose value is less than a
+		 * given value.
+		 * @param values The array
+		 * @param x The value
+		 * @return The position, or -1 if all values are greater or equal
+		 */
+		protected int lower(long[] values, long x)
+		{
+			int pos = Arrays.binarySearch(values, 0, m_episodes.size(), x);
+			if (pos >= 0)
+			{
+				// Several episodes may start at the same moment: take the one
+				// before the first
+				while (pos >= 0 && values[pos] == x)
+				{
+					pos--;
+				}
+				return pos;
+			}
+			return -pos - 2;
+		}
+
+		/**
+		 * Determines if an episode covers a given moment, assuming that the
+		 * episode does not start after it.
+		 * @param i The position of the episode
+		 * @param ts The moment
+		 * @return {@code true} if the episode covers the moment
+		 */
+		protected boolean covers(int i, long ts)
+		{
+			if (i + 1 < m_episodes.size())
+			{
+				return ts < m_starts[i + 1];
+			}
+			return ts <= m_episodes.get(i).m_end;
+		}
+	}
+
+	/**
+	 * A maximal sequence of consecutive events with the same activity label
+	 * for a resident.
+	 */
+	public static class Episode
+	{
+		/**
+		 * The activity label.
+		 */
+		/*@ null @*/ protected final Object m_label;
+
+		/**
+		 * The timestamp of the first event.
+		 */
+		protected final long m_start;
+
+		/**
+		 * The timestamp of the last event.
+		 */
+		protected long m_end;
+
+		/**
+		 * The index of the first event in the log.
+		 */
+		protected final long m_firstIndex;
+
+		/**
+		 * The index of the last event in the log.
+		 */
+		protected long m_lastIndex;
+
+		/**
+		 * The number of events in the episode.
+		 */
+		protected long m_eventCount;
+
+		/**
+		 * Creates a new episode made of a single event.
+		 * @param label The activity label
+		 * @param ts The timestamp of the event
+		 * @param index The index of the event in the log
+		 */
+		public Episode(Object label, long ts, long index)
+		{
+			super();
+			m_label = label;
+			m_start = ts;
+			m_end = ts;
+			m_firstIndex = index;
+			m_lastIndex = index;
+			m_eventCount = 1;
+		}
+
+		/**
+		 * Gets the activity label.
+		 * @return The label
+		 */
+		/*@ null @*/ public Object getLabel()
+		{
+			return m_label;
+		}
+
+		/**
+		 * Gets the timestamp of the first event.
+		 * @return The timestamp
+		 */
+		public long getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the timestamp of the last event.
+		 * @return The timestamp
+		 */
+		public long getEnd()
+		{
+			return m_end;
+		}
+
+		/**
+		 * Gets the index of the first event in the log.
+		 * @return The index
+		 */
+		public long getFirstIndex()
+		{
+			return m_firstIndex;
+		}
+
+		/**
+		 * Gets the index of the last event in the log.
+		 * @return The index
+		 */
+		public long getLastIndex()
+		{
+			return m_lastIndex;
+		}
+
+		/**
+		 * Gets the number of events in the episode.
+		 * @return The number of events
+		 */
+		public long getEventCount()
+		{
+			return m_eventCount;
+		}
+
+		/**
+		 * Determines if the event of a given index belongs to this episode.
+		 * @param index The index of the event in the log
+		 * @return {@code true} if the event belongs to the episode
+		 */
+		public boolean contains(long index)
+		{
+			return index >= m_firstIndex && index <= m_lastIndex;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_label + " [" + m_start + "," + m_end + "]";
+		}
+	}
+
+	/**
+	 * Adds the events it receives to an activity index, and outputs them
+	 * unchanged.
+	 */
+	public static class Build extends UniformProcessor
+	{
+		/**
+		 * The index being populated.
+		 */
+		/*@ non_null @*/ protected ActivityIndex m_index;
+
+		/**
+		 * The function extracting the timestamp from an event.
+		 */
+		/*@ non_null @*/ protected final Function m_timestampFunction;
+
+		/**
+		 * The function extracting the index of an event in the log.
+		 */
+		/*@ non_null @*/ protected final Function m_indexFunction;
+
+		/**
+		 * The functions extracting the activity label of each resident.
+		 */
+		/*@ non_null @*/ protected final Function[] m_activityFunctions;
+
+		/**
+		 * An array reused to pass arguments to functions.
+		 */
+		/*@ non_null @*/ protected final Object[] m_in;
+
+		/**
+		 * An array reused to receive values from functions.
+		 */
+		/*@ non_null @*/ protected final Object[] m_out;
+
+		/**
+		 * Creates a new instance of the processor.
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param index The function extracting the index of an event in the log
+		 * @param activities The functions extracting the activity label of each
+		 * resident
+		 */
+		public Build(Function timestamp, Function index, Function ... activities)
+		{
+			super(1, 1);
+			m_timestampFunction = timestamp;
+			m_indexFunction = index;
+			m_activityFunctions = activities;
+			m_index = new ActivityIndex(activities.length);
+			m_in = new Object[1];
+			m_out = new Object[1];
+		}
+
+		/**
+		 * Creates a new instance of the processor for events of a given format
+		 * with a single resident.
+		 * @param format The format of the events
+		 */
+		public Build(LabeledEventFormat format)
+		{
+			this(format.timestamp(), format.index(), format.activityString());
+		}
+
+		/**
+		 * Creates a new instance of the processor for events of a given format
+		 * with multiple residents.
+		 * @param format The format of the events
+		 * @param residents The number of residents
+		 */
+		public Build(MultiResidentLabeledEventFormat format, int residents)
+		{
+			this(format.timestamp(), format.index(), getActivityFunctions(format, residents));
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Object[] outputs)
+		{
+			m_in[0] = inputs[0];
+			m_timestampFunction.evaluate(m_in, m_out);
+			long ts = ((Number) m_out[0]).longValue();
+			m_indexFunction.evaluate(m_in, m_out);
+			long index = ((Number) m_out[0]).longValue();
+			for (int i = 0; i < m_activityFunctions.length; i++)
+			{
+				m_activityFunctions[i].evaluate(m_in, m_out);
+				m_index.add(i, m_out[0], ts, index);
+			}
+			outputs[0] = inputs[0];
+			return true;
+		}
+
+		/**
+		 * Gets the index populated by this processor.
+		 * @return The index
+		 */
+		/*@ non_null @*/ public ActivityIndex getIndex()
+		{
+			return m_index;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_index = new ActivityIndex(m_activityFunctions.length);
+		}
+
+		@Override
+		public Build duplicate(boolean with_state)
+		{
+			if (with_state)
+			{
+				throw new ProcessorException("Cannot duplicate this processor with state");
+			}
+			Function[] activities = new Function[m_activityFunctions.length];
+			for (int i = 0; i < activities.length; i++)
+			{
+				activities[i] = m_activityFunctions[i].duplicate();
+			}
+			return new Build(m_timestampFunction.duplicate(), m_indexFunction.duplicate(), activities);
+		}
+
+		/**
+		 * Gets the functions extracting the activity label of each resident.
+		 * @param format The format of the events
+		 * @param residents The number of residents
+		 * @return The functions
+		 */
+		protected static Function[] getActivityFunctions(MultiResidentLabeledEventFormat format, int residents)
+		{
+			Function[] activities = new Function[residents];
+			for (int i = 0; i < residents; i++)
+			{
+				activities[i] = format.activityString(i);
+			}
+			return activities;
+		}
+	}
+
+	/**
+	 * Function that gets the label of the activity of a resident covering a
+	 * timestamp, or {@code null} if no activity covers it. This makes it
+	 * possible to label events, or the verdicts of a monitor, after the fact.
+	 */
+	public static class GetActivity extends UnaryFunction<Number,Object>
+	{
+		/**
+		 * The index of activities.
+		 */
+		/*@ non_null @*/ protected final ActivityIndex m_index;
+
+		/**
+		 * The index of the resident.
+		 */
+		protected final int m_resident;
+
+		/**
+		 * Creates a new instance of the function.
+		 * @param index The index of activities
+		 * @param resident The index of the resident
+		 */
+		public GetActivity(ActivityIndex index, int resident)
+		{
+			super(Number.class, Object.class);
+			m_index = index;
+			m_resident = resident;
+		}
+
+		/**
+		 * Creates a new instance of the function for the first resident.
+		 * @param index The index of activities
+		 */
+		public GetActivity(ActivityIndex index)
+		{
+			this(index, 0);
+		}
+
+		@Override
+		public Object getValue(Number x)
+		{
+			Episode e = m_index.getActivity(m_resident, x.longValue());
+			return e == null ? null : e.getLabel();
+		}
+	}
+}
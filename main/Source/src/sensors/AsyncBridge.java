@@ -0,0 +1,444 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.tmf.Source;
+
+/**
+ * Processor letting its events through unchanged, but handing them from one
+ * thread to another. Inserted between two stages of a pipeline, such as a
+ * feeder and a monitor, or a monitor and a sink, the bridge makes the
+ * processors before it and the processors after it run in different
+ * threads, so that they work on different events at the same time. The
+ * events are passed through a {@link RingBuffer} of bounded capacity; the
+ * processors on either side are not modified.
+ * <p>
+ * The bridge works in both modes of a pipeline:
+ * <ul>
+ * <li>In push mode (for instance when events are pushed by
+ * {@link SpliceSource#start()}), the pushing thread puts events into the
+ * buffer, and a new thread takes them out and pushes them to the processors
+ * after the bridge. When the end of the trace is notified, the pushing
+ * thread waits until the other thread has pushed all the events, so that
+ * the pipeline is done when the call that started it returns.</li>
+ * <li>In pull mode (for instance when events are pulled by
+ * {@link ca.uqac.lif.cep.tmf.Pump#run() Pump.run()}), a new thread pulls
+ * events from the processors before the bridge and puts them into the
+ * buffer, starting with the first call to <tt>hasNext()</tt> on the output
+ * of the bridge; the pulling thread takes them out of the buffer.</li>
+ * </ul>
+ * When the buffer is full, the thread running the stages before the bridge
+ * waits, which slows it down to the pace of the stages after the bridge.
+ * An exception thrown by the processors of the new thread stops it, and is
+ * thrown again (wrapped in a {@link ProcessorException}) in the thread of
+ * the caller the next time it uses the bridge.
+ * <p>
+ * Several bridges can be placed in the same pipeline to give more stages
+ * their own thread; {@link #connect(Processor...)} connects processors in
+ * a chain with a bridge between each of them. Since the processors of a
+ * stage are only ever used by the thread of that stage, they need not be
+ * thread-safe. Gains are only expected when the stages have comparable
+ * costs that are large with respect to the cost of passing an event, which
+ * is reduced by handing events over in batches (see
+ * {@link #AsyncBridge(int, int, RingBuffer.Wait)}).
+ *
+ * @author Sylvain Hallé
+ */
+public class AsyncBridge extends SynchronousProcessor
+{
+	/**
+	 * The default capacity of the buffer.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The default number of events handed over at once.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1;
+
+	/**
+	 * The object put into the buffer after the last event.
+	 */
+	protected static final Object END = new Object();
+
+	/**
+	 * The number of bridges created, used to name their threads.
+	 */
+	protected static int s_count = 0;
+
+	/**
+	 * The capacity of the buffer.
+	 */
+	protected final int m_capacity;
+
+	/**
+	 * The number of events handed over at once.
+	 */
+	protected final int m_batchSize;
+
+	/**
+	 * The strategy of the threads waiting for the buffer.
+	 */
+	/*@ non_null @*/ protected final RingBuffer.Wait m_wait;
+
+	/**
+	 * The buffer between the two threads.
+	 */
+	/*@ non_null @*/ protected RingBuffer<Object> m_buffer;
+
+	/**
+	 * The source giving the events of the buffer in pull mode.
+	 */
+	/*@ non_null @*/ protected final BufferSource m_output;
+
+	/**
+	 * The thread started by the bridge, or {@code null} if it is not started.
+	 */
+	/*@ null @*/ protected Thread m_thread;
+
+	/**
+	 * The name of the thread started by the bridge.
+	 */
+	/*@ non_null @*/ protected final String m_name;
+
+	/**
+	 * The exception thrown in the thread started by the bridge, if any.
+	 */
+	/*@ null @*/ protected volatile Throwable m_error;
+
+	/**
+	 * Creates a new bridge with the default capacity, handing over events one
+	 * by one and blocking when its buffer is full.
+	 */
+	public AsyncBridge()
+	{
+		this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, RingBuffer.Wait.BLOCK);
+	}
+
+	/**
+	 * Creates a new bridge.
+	 * @param capacity The capacity of the buffer
+	 * @param batch_size The number of events handed over at once. A value
+	 * larger than 1 lowers the cost of each event, but the events of an
+	 * incomplete batch wait for the next events (or the end of the trace);
+	 * it should therefore only be used when events arrive continuously, as
+	 * when reading from files.
+	 * @param wait The strategy of the threads waiting for the buffer
+	 */
+	public AsyncBridge(int capacity, int batch_size, /*@ non_null @*/ RingBuffer.Wait wait)
+	{
+		super(1, 1);
+		m_capacity = capacity;
+		m_batchSize = batch_size;
+		m_wait = wait;
+		m_buffer = new RingBuffer<Object>(capacity, batch_size, wait);
+		m_output = new BufferSource();
+		m_name = "AsyncBridge-" + nextCount();
+	}
+
+	/**
+	 * Gets a number for a new bridge.
+	 * @return The number
+	 */
+	protected static synchronized int nextCount()
+	{
+		return s_count++;
+	}
+
+	/**
+	 * Connects processors in a chain, with a bridge between each processor
+	 * and the next, so that each processor runs in its own thread. The first
+	 * output of each processor is connected to the first input of the next.
+	 * @param processors The processors
+	 * @return The last processor
+	 */
+	/*@ non_null @*/ public static Processor connect(/*@ non_null @*/ Processor ... processors)
+	{
+		Processor[] chain = new Processor[Math.max(0, 2 * processors.length - 1)];
+		for (int i = 0; i < processors.length; i++)
+		{
+			chain[2 * i] = processors[i];
+			if (i < processors.length - 1)
+			{
+				chain[2 * i + 1] = new AsyncBridge();
+			}
+		}
+		return Connector.connect(chain);
+	}
+
+	/**
+	 * Gets the number of events waiting in the buffer.
+	 * @return The number of events
+	 */
+	public int getQueueSize()
+	{
+		return m_buffer.size();
+	}
+
+	@Override
+	public Pullable getPullableOutput(int index)
+	{
+		return m_output.getPullableOutput(index);
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		checkError();
+		if (m_thread == null)
+		{
+			startThread(new Runnable() {
+				@Override
+				public void run()
+				{
+					pushEvents();
+				}
+			});
+		}
+		putEvent(inputs[0]);
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		if (m_thread == null)
+		{
+			return false;
+		}
+		putEvent(END);
+		m_buffer.flush();
+		try
+		{
+			m_thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(e);
+		}
+		checkError();
+		return false;
+	}
+
+	/**
+	 * The loop of the thread started in push mode: takes the events out of
+	 * the buffer and pushes them to the processors after the bridge.
+	 */
+	protected void pushEvents()
+	{
+		Pushable p = getPushableOutput(0);
+		Object[] batch = new Object[m_buffer.getCapacity()];
+		try
+		{
+			while (true)
+			{
+				int n = m_buffer.take(batch);
+				for (int i = 0; i < n; i++)
+				{
+					Object o = batch[i];
+					batch[i] = null;
+					if (o == END)
+					{
+						return;
+					}
+					p.push(o);
+				}
+			}
+		}
+		catch (Throwable t)
+		{
+			m_error = t;
+			m_buffer.close();
+		}
+	}
+
+	/**
+	 * The loop of the thread started in pull mode: pulls the events of the
+	 * processors before the bridge and puts them into the buffer.
+	 */
+	protected void pullEvents()
+	{
+		Pullable p = m_inputPullables[0];
+		try
+		{
+			while (p.hasNext())
+			{
+				m_buffer.put(p.pull());
+			}
+		}
+		catch (Throwable t)
+		{
+			m_error = t;
+		}
+		finally
+		{
+			if (!m_buffer.isClosed())
+			{
+				m_buffer.put(END);
+				m_buffer.flush();
+			}
+		}
+	}
+
+	/**
+	 * Puts an event into the buffer, throwing the exception of the other
+	 * thread if it has stopped.
+	 * @param o The event
+	 */
+	protected void putEvent(Object o)
+	{
+		try
+		{
+			m_buffer.put(o);
+		}
+		catch (IllegalStateException e)
+		{
+			checkError();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts the thread of the bridge.
+	 * @param r The loop of the thread
+	 */
+	protected void startThread(/*@ non_null @*/ Runnable r)
+	{
+		m_thread = new Thread(r, m_name);
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	/**
+	 * Throws the exception of the thread started by the bridge, if any.
+	 */
+	protected void checkError()
+	{
+		Throwable t = m_error;
+		if (t != null)
+		{
+			if (t instanceof ProcessorException)
+			{
+				throw (ProcessorException) t;
+			}
+			throw new ProcessorException(t);
+		}
+	}
+
+	/**
+	 * Resets the bridge. The method must not be called while the pipeline is
+	 * running.
+	 */
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_output.reset();
+		m_buffer = new RingBuffer<Object>(m_capacity, m_batchSize, m_wait);
+		m_thread = null;
+		m_error = null;
+	}
+
+	@Override
+	public AsyncBridge duplicate(boolean with_state)
+	{
+		return new AsyncBridge(m_capacity, m_batchSize, m_wait);
+	}
+
+	/**
+	 * Source giving the events taken out of the buffer in pull mode.
+	 */
+	protected class BufferSource extends Source
+	{
+		/**
+		 * The events taken out of the buffer and not yet output.
+		 */
+		/*@ non_null @*/ protected final Object[] m_batch;
+
+		/**
+		 * The position of the next event in the batch.
+		 */
+		protected int m_position;
+
+		/**
+		 * The number of events in the batch.
+		 */
+		protected int m_length;
+
+		/**
+		 * Creates a new buffer source.
+		 */
+		public BufferSource()
+		{
+			super(1);
+			m_batch = new Object[Math.max(m_batchSize, 64)];
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			if (m_thread == null)
+			{
+				startThread(new Runnable() {
+					@Override
+					public void run()
+					{
+						pullEvents();
+					}
+				});
+			}
+			if (m_position == m_length)
+			{
+				m_length = m_buffer.take(m_batch);
+				m_position = 0;
+			}
+			Object o = m_batch[m_position];
+			m_batch[m_position++] = null;
+			if (o == END)
+			{
+				checkError();
+				return false;
+			}
+			outputs.add(new Object[] {o});
+			return true;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_position = 0;
+			m_length = 0;
+		}
+
+		@Override
+		public BufferSource duplicate(boolean with_state)
+		{
+			throw new UnsupportedOperationException("This source cannot be duplicated");
+		}
+	}
+}
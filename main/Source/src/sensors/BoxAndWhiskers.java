@@ -30,6 +30,10 @@ import ca.uqac.lif.cep.functions.UnaryFunction;
  * third quartile, and the maximum. These numbers comprise the necessary data
  * to draw a
  * <a href="https://en.wikipedia.org/wiki/Box_plot">box-and-whiskers</a> plot.
+ * <p>
+ * This function sorts a copy of the whole collection it receives, which
+ * requires keeping every value in memory. When the values come from a long
+ * stream, use {@link FromSketch} on a {@link QuantileSketch} instead.
  * @author Sylvain Hallé
  */
 @SuppressWarnings("rawtypes")
@@ -141,4 +145,39 @@ public class BoxAndWhiskers extends UnaryFunction<Collection,Number[]>
 		}
 		return null;
 	}
+
+	/**
+	 * Computes an approximate five-number summary from a
+	 * {@link QuantileSketch}. The sketch is typically produced by a
+	 * {@link QuantileSketch.PutInto} processor, which replaces
+	 * {@link ca.uqac.lif.cep.util.Sets.PutInto Sets.PutInto} so that the
+	 * values do not need to be kept in memory.
+	 */
+	public static class FromSketch extends UnaryFunction<QuantileSketch,Number[]>
+	{
+		/**
+		 * A single publicly visible instance of the function.
+		 */
+		public static final transient FromSketch instance = new FromSketch();
+
+		/**
+		 * Creates a new instance of the function.
+		 */
+		protected FromSketch()
+		{
+			super(QuantileSketch.class, Number[].class);
+		}
+
+		@Override
+		public Number[] getValue(QuantileSketch s)
+		{
+			return s.getFiveNumberSummary();
+		}
+
+		@Override
+		public FromSketch duplicate(boolean with_state)
+		{
+			return instance;
+		}
+	}
 }
@@ -0,0 +1,246 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Counts the slices of a stream whose latest output satisfies a condition.
+ * Like a {@link ca.uqac.lif.cep.tmf.Slice Slice}, the processor sends each
+ * input event to a copy of a processor associated to the key of the event.
+ * However, instead of outputting the map of the last output of every slice,
+ * it outputs the number of slices whose last output satisfies a unary
+ * predicate. This replaces the chain made of a <tt>Slice</tt> followed by
+ * {@link ca.uqac.lif.cep.util.Maps.FilterMap Maps.FilterMap} (or
+ * {@link FilterMap}) and {@link ca.uqac.lif.cep.util.Size Size}, which
+ * creates a new map and examines every key upon each event.
+ * <p>
+ * The processor keeps, for each key, whether the last output of its slice
+ * satisfies the predicate, and the number of keys for which it does. Since
+ * an input event only changes the output of a single slice, the count is
+ * updated in constant time. The set of keys satisfying the predicate can be
+ * obtained at any moment with {@link #getMatchingKeys()}. A slice that has not
+ * produced any output yet does not satisfy the predicate. At the end of the
+ * trace, the end is notified to every slice; if slices output events then,
+ * the updated count is output one last time.
+ *
+ * @author Sylvain Hallé
+ */
+public class CountSlices extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The processor copied for each slice.
+	 */
+	/*@ non_null @*/ protected final Processor m_slice;
+
+	/**
+	 * The predicate evaluated on the last output of each slice.
+	 */
+	/*@ non_null @*/ protected final Function m_predicate;
+
+	/**
+	 * The processor instance of each slice.
+	 */
+	/*@ non_null @*/ protected SliceInstances m_slices;
+
+	/**
+	 * Whether the last output of each slice satisfies the predicate.
+	 */
+	/*@ non_null @*/ protected boolean[] m_satisfied;
+
+	/**
+	 * The number of slices whose last output satisfies the predicate.
+	 */
+	protected int m_count;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event
+	 * @param slice The processor copied for each slice; it must be 1:1
+	 * @param predicate The unary predicate evaluated on the last output of
+	 * each slice
+	 */
+	public CountSlices(Function key, Processor slice, Function predicate)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_slice = slice;
+		m_predicate = predicate;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		m_keyFunction.evaluate(m_in, m_out);
+		int slot = getSlot(m_out[0]);
+		m_slices.push(slot, inputs[0]);
+		collect(slot);
+		outputs.add(new Object[] {m_count});
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		// Slices may still produce a last output upon the end of their trace
+		boolean updated = false;
+		for (int slot = 0; slot < m_slices.getSlotCount(); slot++)
+		{
+			if (m_slices.isUsed(slot))
+			{
+				m_slices.notifyEndOfTrace(slot);
+				updated |= collect(slot);
+			}
+		}
+		if (updated)
+		{
+			outputs.add(new Object[] {m_count});
+		}
+		return updated;
+	}
+
+	/**
+	 * Retrieves the events output by a slice, and updates the count with the
+	 * last one.
+	 * @param slot The slot of the slice
+	 * @return {@code true} if the slice output an event
+	 */
+	protected boolean collect(int slot)
+	{
+		Queue<Object> queue = m_slices.getQueue(slot);
+		if (queue.isEmpty())
+		{
+			return false;
+		}
+		Object last = null;
+		while (!queue.isEmpty())
+		{
+			last = queue.remove();
+		}
+		m_in[0] = last;
+		m_predicate.evaluate(m_in, m_out);
+		boolean satisfied = Boolean.TRUE.equals(m_out[0]);
+		if (satisfied != m_satisfied[slot])
+		{
+			m_satisfied[slot] = satisfied;
+			m_count += satisfied ? 1 : -1;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of slices whose last output satisfies the predicate.
+	 * @return The number of slices
+	 */
+	public int getCount()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Gets the keys of the slices whose last output satisfies the predicate.
+	 * @return The set of keys
+	 */
+	/*@ non_null @*/ public Set<Object> getMatchingKeys()
+	{
+		Set<Object> keys = new HashSet<Object>();
+		for (int slot = 0; slot < m_slices.getSlotCount(); slot++)
+		{
+			if (m_slices.isUsed(slot) && m_satisfied[slot])
+			{
+				keys.add(m_slices.getKey(slot));
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Gets the slot of a key, creating its slice if the key has not been seen
+	 * before.
+	 * @param key The key
+	 * @return The slot
+	 */
+	protected int getSlot(Object key)
+	{
+		int slot = m_slices.get(key);
+		if (slot >= 0)
+		{
+			return slot;
+		}
+		slot = m_slices.add(key);
+		m_satisfied = KeyIndex.ensure(m_satisfied, slot);
+		m_satisfied[slot] = false;
+		return slot;
+	}
+
+	/**
+	 * Empties the state of all slices.
+	 */
+	protected void clear()
+	{
+		m_slices = new SliceInstances(m_slice);
+		m_satisfied = new boolean[16];
+		m_count = 0;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public CountSlices duplicate(boolean with_state)
+	{
+		CountSlices c = new CountSlices(m_keyFunction.duplicate(), m_slice.duplicate(), m_predicate.duplicate());
+		if (with_state)
+		{
+			c.m_slices = m_slices.duplicate(true);
+			c.m_satisfied = Arrays.copyOf(m_satisfied, m_satisfied.length);
+			c.m_count = m_count;
+		}
+		return c;
+	}
+}
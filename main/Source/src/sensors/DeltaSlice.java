@@ -0,0 +1,363 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Variant of {@link ca.uqac.lif.cep.tmf.Slice Slice} that does not output
+ * the map of the last output of every slice upon each event. Like a
+ * <tt>Slice</tt>, the processor sends each input event to a copy of a
+ * processor associated to the key of the event. It then operates in one of
+ * two modes:
+ * <ul>
+ * <li>by default, it outputs a {@link Change} event giving the key and the
+ * new value of the slice, and only when this value differs from the previous
+ * output of that slice. The full map can be rebuilt downstream, when needed,
+ * with a {@link Rebuild} processor;</li>
+ * <li>in "end of trace" mode, it outputs nothing while it receives events,
+ * and outputs the map of the last output of every slice at the end of the
+ * trace. This replaces a <tt>Slice</tt> followed by a
+ * {@link ca.uqac.lif.cep.tmf.KeepLast KeepLast}.</li>
+ * </ul>
+ * In both cases, processing an event only involves the slice of its key,
+ * instead of creating a map of all the keys. At the end of the trace, the
+ * end is notified to every slice, and the events they output then are
+ * handled like the others.
+ * <p>
+ * A change is detected by comparing the new output of a slice with the
+ * previous one using <tt>equals()</tt>. A slice that outputs the same
+ * instance of a mutable object each time (such as a map it updates) is
+ * therefore never seen as changing after its first output; such a slice
+ * should output a copy of its state instead.
+ *
+ * @author Sylvain Hallé
+ */
+public class DeltaSlice extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The processor copied for each slice.
+	 */
+	/*@ non_null @*/ protected final Processor m_slice;
+
+	/**
+	 * Whether the processor only outputs the map of values at the end of the
+	 * trace.
+	 */
+	protected final boolean m_endOnly;
+
+	/**
+	 * The processor instance of each slice.
+	 */
+	/*@ non_null @*/ protected SliceInstances m_slices;
+
+	/**
+	 * The last output of each slice.
+	 */
+	/*@ non_null @*/ protected Object[] m_values;
+
+	/**
+	 * Whether each slice has produced an output.
+	 */
+	/*@ non_null @*/ protected boolean[] m_defined;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor that outputs changes.
+	 * @param key The function extracting the key from an event
+	 * @param slice The processor copied for each slice; it must be 1:1
+	 */
+	public DeltaSlice(Function key, Processor slice)
+	{
+		this(key, slice, false);
+	}
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event
+	 * @param slice The processor copied for each slice; it must be 1:1
+	 * @param end_only Set to {@code true} to only output the map of values at
+	 * the end of the trace
+	 */
+	public DeltaSlice(Function key, Processor slice, boolean end_only)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_slice = slice;
+		m_endOnly = end_only;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		m_keyFunction.evaluate(m_in, m_out);
+		int slot = getSlot(m_out[0]);
+		m_slices.push(slot, inputs[0]);
+		collect(slot, outputs);
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		// Slices may still produce a last output upon the end of their trace
+		for (int slot = 0; slot < m_slices.getSlotCount(); slot++)
+		{
+			if (m_slices.isUsed(slot))
+			{
+				m_slices.notifyEndOfTrace(slot);
+				collect(slot, outputs);
+			}
+		}
+		if (m_endOnly)
+		{
+			outputs.add(new Object[] {getValues()});
+		}
+		return !outputs.isEmpty();
+	}
+
+	/**
+	 * Retrieves the events output by a slice, and outputs a {@link Change}
+	 * if its last output differs from the previous one.
+	 * @param slot The slot of the slice
+	 * @param outputs The queue where output events are added
+	 */
+	protected void collect(int slot, Queue<Object[]> outputs)
+	{
+		Queue<Object> queue = m_slices.getQueue(slot);
+		if (queue.isEmpty())
+		{
+			return;
+		}
+		Object last = null;
+		while (!queue.isEmpty())
+		{
+			last = queue.remove();
+		}
+		Object previous = m_values[slot];
+		boolean changed = !m_defined[slot] || (previous == null ? last != null : !previous.equals(last));
+		m_values[slot] = last;
+		m_defined[slot] = true;
+		if (changed && !m_endOnly)
+		{
+			outputs.add(new Object[] {new Change(m_slices.getKey(slot), last)});
+		}
+	}
+
+	/**
+	 * Gets the map of the last output of every slice.
+	 * @return The map
+	 */
+	/*@ non_null @*/ public Map<Object,Object> getValues()
+	{
+		Map<Object,Object> map = new HashMap<Object,Object>();
+		for (int slot = 0; slot < m_slices.getSlotCount(); slot++)
+		{
+			if (m_slices.isUsed(slot) && m_defined[slot])
+			{
+				map.put(m_slices.getKey(slot), m_values[slot]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Gets the slot of a key, creating its slice if the key has not been seen
+	 * before.
+	 * @param key The key
+	 * @return The slot
+	 */
+	protected int getSlot(Object key)
+	{
+		int slot = m_slices.get(key);
+		if (slot >= 0)
+		{
+			return slot;
+		}
+		slot = m_slices.add(key);
+		m_values = KeyIndex.ensure(m_values, slot);
+		m_defined = KeyIndex.ensure(m_defined, slot);
+		m_values[slot] = null;
+		m_defined[slot] = false;
+		return slot;
+	}
+
+	/**
+	 * Empties the state of all slices.
+	 */
+	protected void clear()
+	{
+		m_slices = new SliceInstances(m_slice);
+		m_values = new Object[16];
+		m_defined = new boolean[16];
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public DeltaSlice duplicate(boolean with_state)
+	{
+		DeltaSlice d = new DeltaSlice(m_keyFunction.duplicate(), m_slice.duplicate(), m_endOnly);
+		if (with_state)
+		{
+			d.m_slices = m_slices.duplicate(true);
+			d.m_values = Arrays.copyOf(m_values, m_values.length);
+			d.m_defined = Arrays.copyOf(m_defined, m_defined.length);
+		}
+		return d;
+	}
+
+	/**
+	 * The new value of the slice associated to a key.
+	 */
+	public static class Change
+	{
+		/**
+		 * The key.
+		 */
+		protected final Object m_key;
+
+		/**
+		 * The new value.
+		 */
+		protected final Object m_value;
+
+		/**
+		 * Creates a new change.
+		 * @param key The key
+		 * @param value The new value
+		 */
+		public Change(Object key, Object value)
+		{
+			super();
+			m_key = key;
+			m_value = value;
+		}
+
+		/**
+		 * Gets the key.
+		 * @return The key
+		 */
+		public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Gets the new value.
+		 * @return The value
+		 */
+		public Object getValue()
+		{
+			return m_value;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_key + "=" + m_value;
+		}
+	}
+
+	/**
+	 * Rebuilds the map of the last output of every slice from a stream of
+	 * {@link Change} events. Upon each change, the processor updates its map
+	 * and outputs it. To avoid copying the map on every event, the same map
+	 * instance is output each time; downstream processors that need to keep
+	 * a given state of the map must copy it.
+	 */
+	public static class Rebuild extends UniformProcessor
+	{
+		/**
+		 * The map of values.
+		 */
+		/*@ non_null @*/ protected final Map<Object,Object> m_map;
+
+		/**
+		 * Creates a new instance of the processor.
+		 */
+		public Rebuild()
+		{
+			super(1, 1);
+			m_map = new HashMap<Object,Object>();
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Object[] outputs)
+		{
+			if (!(inputs[0] instanceof Change))
+			{
+				throw new ProcessorException("Expected a change, got " + inputs[0]);
+			}
+			Change c = (Change) inputs[0];
+			m_map.put(c.getKey(), c.getValue());
+			outputs[0] = m_map;
+			return true;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_map.clear();
+		}
+
+		@Override
+		public Rebuild duplicate(boolean with_state)
+		{
+			Rebuild r = new Rebuild();
+			if (with_state)
+			{
+				r.m_map.putAll(m_map);
+			}
+			return r;
+		}
+	}
+}
@@ -0,0 +1,705 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+
+/**
+ * Measures the time and memory taken by a pipeline to process a log file.
+ * The harness runs the pipeline a number of times on the same file (or on
+ * the events of a source, for logs split across several files): a few
+ * warm-up iterations, whose measurements are kept but flagged, followed by
+ * the measured iterations. Each iteration has two phases, which are measured
+ * separately:
+ * <ol>
+ * <li>the <em>parsing</em> phase, where the feeder of the event format reads
+ * all the events of the file (or source) into memory;</li>
+ * <li>the <em>processing</em> phase, where the events are pushed into a new
+ * instance of the pipeline, whose output events are counted.</li>
+ * </ol>
+ * For each phase, the harness records the elapsed time, the number of bytes
+ * allocated by the thread running the phase, and the peak size of the heap.
+ * Allocated bytes are read from the {@link ThreadMXBean} of the JVM, and are
+ * not affected by the garbage collector running in the middle of a phase,
+ * which makes them much more reliable than differences between calls to
+ * {@link Runtime#freeMemory()}; they are reported as -1 on JVMs that do not
+ * provide them. The peak heap is the sum of the peak usage of each heap
+ * {@link MemoryPoolMXBean} since the start of the phase; since the pools may
+ * peak at different moments, this is an upper bound.
+ * <p>
+ * A typical use of the harness is a single call such as:
+ * <pre>
+ * new ExperimentHarness(format, fs, "o4h_all_events.csv")
+ *   .run("MyProperty", MyProperty::getPipeline).printCsv(System.out);
+ * </pre>
+ *
+ * @author Sylvain Hallé
+ */
+public class ExperimentHarness
+{
+	/**
+	 * The default number of warm-up iterations.
+	 */
+	public static final int DEFAULT_WARMUP = 3;
+
+	/**
+	 * The default number of measured iterations.
+	 */
+	public static final int DEFAULT_ITERATIONS = 10;
+
+	/**
+	 * The format of the events in the file, or null if the events are read
+	 * from a source.
+	 */
+	/*@ null @*/ protected final EventFormat m_format;
+
+	/**
+	 * The file system where the file resides, or null if the events are read
+	 * from a source.
+	 */
+	/*@ null @*/ protected final FileSystem m_fs;
+
+	/**
+	 * The name of the file to read, or null if the events are read from a
+	 * source.
+	 */
+	/*@ null @*/ protected final String m_filename;
+
+	/**
+	 * The factory creating the source of the events, or null if the events
+	 * are read from a file.
+	 */
+	/*@ null @*/ protected final SourceFactory m_sources;
+
+	/**
+	 * The number of warm-up iterations.
+	 */
+	protected int m_warmup;
+
+	/**
+	 * The number of measured iterations.
+	 */
+	protected int m_iterations;
+
+	/**
+	 * Creates a new harness.
+	 * @param format The format of the events in the file
+	 * @param fs The file system where the file resides; it must be open
+	 * @param filename The name of the file to read
+	 */
+	public ExperimentHarness(EventFormat format, FileSystem fs, String filename)
+	{
+		this(format, fs, filename, null);
+	}
+
+	/**
+	 * Creates a new harness reading the events from a source, such as a
+	 * {@link MultiDaySource} for logs split across several files.
+	 * @param sources The factory creating a new instance of the source for
+	 * each iteration
+	 */
+	public ExperimentHarness(SourceFactory sources)
+	{
+		this(null, null, null, sources);
+	}
+
+	/**
+	 * Creates a new harness.
+	 * @param format The format of the events in the file
+	 * @param fs The file system where the file resides
+	 * @param filename The name of the file to read
+	 * @param sources The factory creating the source of the events
+	 */
+	protected ExperimentHarness(/*@ null @*/ EventFormat format, /*@ null @*/ FileSystem fs, /*@ null @*/ String filename, /*@ null @*/ SourceFactory sources)
+	{
+		super();
+		m_format = format;
+		m_fs = fs;
+		m_filename = filename;
+		m_sources = sources;
+		m_warmup = DEFAULT_WARMUP;
+		m_iterations = DEFAULT_ITERATIONS;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean s_bean = (com.sun.management.ThreadMXBean) bean;
+			if (s_bean.isThreadAllocatedMemorySupported())
+			{
+				s_bean.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of warm-up iterations.
+	 * @param n The number of iterations
+	 * @return This harness
+	 */
+	/*@ non_null @*/ public ExperimentHarness setWarmup(int n)
+	{
+		m_warmup = n;
+		return this;
+	}
+
+	/**
+	 * Sets the number of measured iterations.
+	 * @param n The number of iterations
+	 * @return This harness
+	 */
+	/*@ non_null @*/ public ExperimentHarness setIterations(int n)
+	{
+		m_iterations = n;
+		return this;
+	}
+
+	/**
+	 * Measures a pipeline.
+	 * @param name The name of the pipeline, as written in the report
+	 * @param factory The factory creating a new instance of the pipeline for
+	 * each iteration
+	 * @return The report of the measurements
+	 * @throws FileSystemException Thrown if the file cannot be read
+	 */
+	/*@ non_null @*/ public Report run(String name, PipelineFactory factory) throws FileSystemException
+	{
+		return run(name, factory, null);
+	}
+
+	/**
+	 * Measures a pipeline, and writes its output events to a stream. The
+	 * output is produced by an additional run of the pipeline after the
+	 * measured iterations, so that writing it does not affect the
+	 * measurements.
+	 * @param name The name of the pipeline, as written in the report
+	 * @param factory The factory creating a new instance of the pipeline for
+	 * each iteration
+	 * @param os The stream where the output events are written, one per line;
+	 * may be null
+	 * @return The report of the measurements
+	 * @throws FileSystemException Thrown if the file cannot be read
+	 */
+	/*@ non_null @*/ public Report run(String name, PipelineFactory factory, /*@ null @*/ OutputStream os) throws FileSystemException
+	{
+		Report r = new Report(name);
+		for (int i = 0; i < m_warmup + m_iterations; i++)
+		{
+			System.gc();
+			Measurement m = new Measurement(i, i < m_warmup);
+			long start_bytes = getAllocatedBytes();
+			resetPeakHeap();
+			long start = System.nanoTime();
+			List<Object> events = parse();
+			m.m_parseTime = System.nanoTime() - start;
+			m.m_parseBytes = difference(start_bytes, getAllocatedBytes());
+			m.m_parsePeakHeap = getPeakHeap();
+			m.m_events = events.size();
+			start_bytes = getAllocatedBytes();
+			resetPeakHeap();
+			start = System.nanoTime();
+			m.m_outputs = process(factory.getPipeline(), events, null);
+			m.m_processTime = System.nanoTime() - start;
+			m.m_processBytes = difference(start_bytes, getAllocatedBytes());
+			m.m_processPeakHeap = getPeakHeap();
+			r.m_measurements.add(m);
+		}
+		if (os != null)
+		{
+			PrintStream ps = new PrintStream(os);
+			process(factory.getPipeline(), parse(), ps);
+			ps.flush();
+		}
+		return r;
+	}
+
+	/**
+	 * Reads all the events of the file or source.
+	 * @return The list of events
+	 * @throws FileSystemException Thrown if the file cannot be read
+	 */
+	/*@ non_null @*/ protected List<Object> parse() throws FileSystemException
+	{
+		if (m_sources != null)
+		{
+			return pull(m_sources.getSource());
+		}
+		InputStream is = m_fs.readFrom(m_filename);
+		List<Object> events = pull(m_format.getFeeder(is));
+		try
+		{
+			is.close();
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException(e);
+		}
+		return events;
+	}
+
+	/**
+	 * Pulls all the events of a source, and stops it.
+	 * @param source The source
+	 * @return The list of events
+	 */
+	/*@ non_null @*/ protected static List<Object> pull(Processor source)
+	{
+		List<Object> events = new ArrayList<Object>();
+		Pullable p = source.getPullableOutput();
+		while (p.hasNext())
+		{
+			events.add(p.next());
+		}
+		source.stop();
+		return events;
+	}
+
+	/**
+	 * Pushes events into a pipeline and counts its output events.
+	 * @param pipeline The pipeline
+	 * @param events The events to push
+	 * @param ps The stream where the output events are printed; may be null
+	 * @return The number of output events
+	 */
+	protected static long process(Processor pipeline, List<Object> events, /*@ null @*/ PrintStream ps)
+	{
+		Count c = new Count(ps);
+		Connector.connect(pipeline, c);
+		Pushable p = pipeline.getPushableInput();
+		for (Object e : events)
+		{
+			p.push(e);
+		}
+		p.notifyEndOfTrace();
+		return c.m_count;
+	}
+
+	/**
+	 * Gets the number of bytes allocated by the current thread since its
+	 * start.
+	 * @return The number of bytes, or -1 if the JVM does not provide it
+	 */
+	protected static long getAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean s_bean = (com.sun.management.ThreadMXBean) bean;
+			if (s_bean.isThreadAllocatedMemoryEnabled())
+			{
+				return s_bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Computes the difference between two readings of the allocated bytes.
+	 * @param start The first reading
+	 * @param end The second reading
+	 * @return The difference, or -1 if any reading is unavailable
+	 */
+	protected static long difference(long start, long end)
+	{
+		return start < 0 || end < 0 ? -1 : end - start;
+	}
+
+	/**
+	 * Resets the peak usage of every heap memory pool.
+	 */
+	protected static void resetPeakHeap()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP && pool.isValid())
+			{
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Gets the sum of the peak usage of every heap memory pool since the last
+	 * reset.
+	 * @return The number of bytes
+	 */
+	protected static long getPeakHeap()
+	{
+		long total = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP && pool.isValid())
+			{
+				total += pool.getPeakUsage().getUsed();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Creates the pipeline being measured.
+	 */
+	public interface PipelineFactory
+	{
+		/**
+		 * Creates a new instance of the pipeline.
+		 * @return A processor with one input pipe, receiving the events of the
+		 * file, and one output pipe
+		 */
+		/*@ non_null @*/ public Processor getPipeline();
+	}
+
+	/**
+	 * Creates the source of the events, when they are not read from a single
+	 * file.
+	 */
+	public interface SourceFactory
+	{
+		/**
+		 * Creates a new instance of the source.
+		 * @return A processor with one output pipe
+		 * @throws FileSystemException Thrown if the input of the source cannot
+		 * be read
+		 */
+		/*@ non_null @*/ public Processor getSource() throws FileSystemException;
+	}
+
+	/**
+	 * The measurements of a single iteration.
+	 */
+	public static class Measurement
+	{
+		/**
+		 * The number of the iteration, starting at 0.
+		 */
+		protected final int m_iteration;
+
+		/**
+		 * Whether the iteration is a warm-up iteration.
+		 */
+		protected final boolean m_isWarmup;
+
+		/**
+		 * The number of events read from the file.
+		 */
+		protected long m_events;
+
+		/**
+		 * The number of events output by the pipeline.
+		 */
+		protected long m_outputs;
+
+		/**
+		 * The duration of the parsing phase, in nanoseconds.
+		 */
+		protected long m_parseTime;
+
+		/**
+		 * The duration of the processing phase, in nanoseconds.
+		 */
+		protected long m_processTime;
+
+		/**
+		 * The number of bytes allocated during the parsing phase.
+		 */
+		protected long m_parseBytes;
+
+		/**
+		 * The number of bytes allocated during the processing phase.
+		 */
+		protected long m_processBytes;
+
+		/**
+		 * The peak size of the heap during the parsing phase, in bytes.
+		 */
+		protected long m_parsePeakHeap;
+
+		/**
+		 * The peak size of the heap during the processing phase, in bytes.
+		 */
+		protected long m_processPeakHeap;
+
+		/**
+		 * Creates a new empty measurement.
+		 * @param iteration The number of the iteration
+		 * @param is_warmup Whether the iteration is a warm-up iteration
+		 */
+		protected Measurement(int iteration, boolean is_warmup)
+		{
+			super();
+			m_iteration = iteration;
+			m_isWarmup = is_warmup;
+		}
+
+		/**
+		 * Tells whether the iteration is a warm-up iteration.
+		 * @return {@code true} for a warm-up iteration
+		 */
+		public boolean isWarmup()
+		{
+			return m_isWarmup;
+		}
+
+		/**
+		 * Gets the number of events read from the file.
+		 * @return The number of events
+		 */
+		public long getEvents()
+		{
+			return m_events;
+		}
+
+		/**
+		 * Gets the number of events output by the pipeline.
+		 * @return The number of events
+		 */
+		public long getOutputs()
+		{
+			return m_outputs;
+		}
+
+		/**
+		 * Gets the duration of the parsing phase.
+		 * @return The duration, in nanoseconds
+		 */
+		public long getParseTime()
+		{
+			return m_parseTime;
+		}
+
+		/**
+		 * Gets the duration of the processing phase.
+		 * @return The duration, in nanoseconds
+		 */
+		public long getProcessTime()
+		{
+			return m_processTime;
+		}
+
+		/**
+		 * Gets the number of bytes allocated during the parsing phase.
+		 * @return The number of bytes, or -1 if unavailable
+		 */
+		public long getParseBytes()
+		{
+			return m_parseBytes;
+		}
+
+		/**
+		 * Gets the number of bytes allocated during the processing phase.
+		 * @return The number of bytes, or -1 if unavailable
+		 */
+		public long getProcessBytes()
+		{
+			return m_processBytes;
+		}
+
+		/**
+		 * Gets the peak size of the heap during the parsing phase.
+		 * @return The number of bytes
+		 */
+		public long getParsePeakHeap()
+		{
+			return m_parsePeakHeap;
+		}
+
+		/**
+		 * Gets the peak size of the heap during the processing phase.
+		 * @return The number of bytes
+		 */
+		public long getProcessPeakHeap()
+		{
+			return m_processPeakHeap;
+		}
+	}
+
+	/**
+	 * The measurements of all the iterations of a pipeline.
+	 */
+	public static class Report
+	{
+		/**
+		 * The header of the CSV report.
+		 */
+		public static final String CSV_HEADER = "name,iteration,warmup,events,outputs,parse_ns,process_ns,parse_bytes,process_bytes,parse_peak_heap,process_peak_heap";
+
+		/**
+		 * The name of the pipeline.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The measurements of each iteration, in order.
+		 */
+		/*@ non_null @*/ protected final List<Measurement> m_measurements;
+
+		/**
+		 * Creates a new empty report.
+		 * @param name The name of the pipeline
+		 */
+		protected Report(String name)
+		{
+			super();
+			m_name = name;
+			m_measurements = new ArrayList<Measurement>();
+		}
+
+		/**
+		 * Gets the name of the pipeline.
+		 * @return The name
+		 */
+		/*@ non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the measurements of each iteration, warm-up iterations included.
+		 * @return The list of measurements
+		 */
+		/*@ non_null @*/ public List<Measurement> getMeasurements()
+		{
+			return m_measurements;
+		}
+
+		/**
+		 * Prints the report in CSV, with a header line.
+		 * @param ps The stream where the report is printed
+		 */
+		public void printCsv(PrintStream ps)
+		{
+			ps.println(CSV_HEADER);
+			printCsvLines(ps);
+		}
+
+		/**
+		 * Prints the report in CSV, without a header line. This makes it
+		 * possible to append the reports of many pipelines to the same file.
+		 * @param ps The stream where the report is printed
+		 */
+		public void printCsvLines(PrintStream ps)
+		{
+			for (Measurement m : m_measurements)
+			{
+				ps.println(m_name + "," + m.m_iteration + "," + m.m_isWarmup + "," + m.m_events + "," + m.m_outputs + "," + m.m_parseTime + "," + m.m_processTime + "," + m.m_parseBytes + "," + m.m_processBytes + "," + m.m_parsePeakHeap + "," + m.m_processPeakHeap);
+			}
+		}
+
+		/**
+		 * Prints the minimum, maximum and average of the processing time and
+		 * allocated bytes over the measured iterations.
+		 * @param ps The stream where the summary is printed
+		 */
+		public void printSummary(PrintStream ps)
+		{
+			long min_time = Long.MAX_VALUE, max_time = 0, total_time = 0;
+			long min_bytes = Long.MAX_VALUE, max_bytes = 0, total_bytes = 0;
+			long total_parse = 0;
+			int n = 0;
+			for (Measurement m : m_measurements)
+			{
+				if (m.m_isWarmup)
+				{
+					continue;
+				}
+				n++;
+				min_time = Math.min(min_time, m.m_processTime);
+				max_time = Math.max(max_time, m.m_processTime);
+				total_time += m.m_processTime;
+				min_bytes = Math.min(min_bytes, m.m_processBytes);
+				max_bytes = Math.max(max_bytes, m.m_processBytes);
+				total_bytes += m.m_processBytes;
+				total_parse += m.m_parseTime;
+			}
+			if (n == 0)
+			{
+				ps.println(m_name + ": no measured iteration");
+				return;
+			}
+			ps.println("----- " + m_name + " -----");
+			ps.println("Parsing time (ms):    avg=" + (total_parse / n / 1000000));
+			ps.println("Processing time (ms): min=" + (min_time / 1000000) + ", max=" + (max_time / 1000000) + ", avg=" + (total_time / n / 1000000));
+			ps.println("Allocated (KB):       min=" + (min_bytes / 1024) + ", max=" + (max_bytes / 1024) + ", avg=" + (total_bytes / n / 1024));
+		}
+	}
+
+	/**
+	 * A sink counting the events it receives, and optionally printing them.
+	 */
+	protected static class Count extends SynchronousProcessor
+	{
+		/**
+		 * The stream where events are printed, if any.
+		 */
+		/*@ null @*/ protected final PrintStream m_ps;
+
+		/**
+		 * The number of events received so far.
+		 */
+		protected long m_count;
+
+		/**
+		 * Creates a new sink.
+		 * @param ps The stream where events are printed; may be null
+		 */
+		public Count(/*@ null @*/ PrintStream ps)
+		{
+			super(1, 0);
+			m_ps = ps;
+			m_count = 0;
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			m_count++;
+			if (m_ps != null)
+			{
+				m_ps.println(inputs[0]);
+			}
+			return true;
+		}
+
+		@Override
+		public Count duplicate(boolean with_state)
+		{
+			Count c = new Count(m_ps);
+			if (with_state)
+			{
+				c.m_count = m_count;
+			}
+			return c;
+		}
+	}
+}
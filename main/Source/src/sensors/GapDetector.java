@@ -0,0 +1,437 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Detects the periods during which sensors stay silent. For each key
+ * (typically a sensor ID), the processor records the timestamp of the last
+ * event received; when event time advances beyond this timestamp by more
+ * than a threshold without a new event for the key, the processor outputs a
+ * {@link GapStart} event. When the key eventually reports again, the
+ * processor outputs a {@link GapEnd} event giving the duration of the
+ * silence. A sensor that never reports again therefore produces a
+ * <tt>GapStart</tt> without a matching <tt>GapEnd</tt>. Contrary to a
+ * comparison of successive timestamps, this detects gaps as soon as they
+ * occur, and for all keys at once.
+ * <p>
+ * Event time is given by the timestamps of the input events, which are
+ * assumed to be sorted. The deadlines of all keys are kept in a
+ * {@link TimingWheel} whose resolution is a configurable tick; a gap is
+ * detected in the first event whose timestamp is at least one tick past the
+ * deadline. The threshold can be the same for all keys, or be computed from
+ * the events of each key.
+ *
+ * @author Sylvain Hallé
+ */
+public class GapDetector extends SynchronousProcessor
+{
+	/**
+	 * The default duration of a tick, in milliseconds.
+	 */
+	public static final long DEFAULT_TICK = 1000;
+
+	/**
+	 * The function extracting the key from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The function computing the threshold from an event, or {@code null} to
+	 * use the same threshold for all keys.
+	 */
+	/*@ null @*/ protected final Function m_thresholdFunction;
+
+	/**
+	 * The threshold used for all keys, in milliseconds.
+	 */
+	protected final long m_threshold;
+
+	/**
+	 * The duration of a tick of the timing wheel, in milliseconds.
+	 */
+	protected final long m_tick;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The timing wheel holding the deadline of each key.
+	 */
+	/*@ non_null @*/ protected TimingWheel m_wheel;
+
+	/**
+	 * The timestamp of the last event of each key.
+	 */
+	/*@ non_null @*/ protected long[] m_lastSeen;
+
+	/**
+	 * The threshold of each key.
+	 */
+	/*@ non_null @*/ protected long[] m_thresholds;
+
+	/**
+	 * Whether each key is currently in a gap.
+	 */
+	/*@ non_null @*/ protected boolean[] m_inGap;
+
+	/**
+	 * Whether the timing wheel has been started.
+	 */
+	protected boolean m_started;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor with the same threshold for all
+	 * keys.
+	 * @param key The function extracting the key from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param threshold The maximum duration of silence, in milliseconds
+	 */
+	public GapDetector(Function key, Function timestamp, long threshold)
+	{
+		this(key, timestamp, null, threshold, DEFAULT_TICK);
+	}
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param threshold_function The function computing the maximum duration
+	 * of silence (in milliseconds) from an event, or {@code null} to use the
+	 * same threshold for all keys
+	 * @param threshold The maximum duration of silence, in milliseconds, used
+	 * when the threshold function is null or does not return a number
+	 * @param tick The duration of a tick of the timing wheel, in milliseconds
+	 */
+	public GapDetector(Function key, Function timestamp, Function threshold_function, long threshold, long tick)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_timestampFunction = timestamp;
+		m_thresholdFunction = threshold_function;
+		m_threshold = threshold;
+		m_tick = tick;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	/**
+	 * Creates a new instance of the processor for events of a given format,
+	 * using sensor IDs as keys.
+	 * @param format The format of the events
+	 * @param threshold The maximum duration of silence, in milliseconds
+	 */
+	public GapDetector(EventFormat format, long threshold)
+	{
+		this(format.sensorId(), format.timestamp(), threshold);
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		m_timestampFunction.evaluate(m_in, m_out);
+		long ts = ((Number) m_out[0]).longValue();
+		advance(ts, outputs);
+		m_keyFunction.evaluate(m_in, m_out);
+		Object key = m_out[0];
+		int slot = m_keys.get(key);
+		if (slot < 0)
+		{
+			slot = m_keys.add(key);
+			m_lastSeen = KeyIndex.ensure(m_lastSeen, slot);
+			m_thresholds = KeyIndex.ensure(m_thresholds, slot);
+			m_inGap = KeyIndex.ensure(m_inGap, slot);
+			m_inGap[slot] = false;
+		}
+		else if (m_inGap[slot])
+		{
+			outputs.add(new Object[] {new GapEnd(key, m_lastSeen[slot], ts)});
+			m_inGap[slot] = false;
+		}
+		else if (ts < m_lastSeen[slot])
+		{
+			// Out of order event: keep the most recent timestamp
+			return true;
+		}
+		m_lastSeen[slot] = ts;
+		m_thresholds[slot] = getThreshold();
+		m_wheel.schedule(slot, toTick(ts + m_thresholds[slot]));
+		return true;
+	}
+
+	/**
+	 * Advances event time, outputting a {@link GapStart} event for each key
+	 * whose deadline has passed.
+	 * @param ts The current timestamp
+	 * @param outputs The queue where output events are added
+	 */
+	protected void advance(long ts, Queue<Object[]> outputs)
+	{
+		long tick = toTick(ts) - 1;
+		if (!m_started)
+		{
+			m_wheel.clear(tick);
+			m_started = true;
+			return;
+		}
+		int expired = m_wheel.advance(tick);
+		for (int i = 0; i < expired; i++)
+		{
+			int slot = m_wheel.getExpired(i);
+			m_inGap[slot] = true;
+			outputs.add(new Object[] {new GapStart(m_keys.getKey(slot), m_lastSeen[slot], m_lastSeen[slot] + m_thresholds[slot])});
+		}
+	}
+
+	/**
+	 * Gets the threshold applying to the current event.
+	 * @return The threshold, in milliseconds
+	 */
+	protected long getThreshold()
+	{
+		if (m_thresholdFunction == null)
+		{
+			return m_threshold;
+		}
+		m_thresholdFunction.evaluate(m_in, m_out);
+		if (m_out[0] instanceof Number)
+		{
+			return ((Number) m_out[0]).longValue();
+		}
+		return m_threshold;
+	}
+
+	/**
+	 * Converts a timestamp into a tick of the timing wheel, rounding up.
+	 * @param ts The timestamp
+	 * @return The tick
+	 */
+	protected long toTick(long ts)
+	{
+		return Math.floorDiv(ts + m_tick - 1, m_tick);
+	}
+
+	/**
+	 * Gets the number of keys currently in a gap.
+	 * @return The number of keys
+	 */
+	public int getSilentCount()
+	{
+		int count = 0;
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (m_keys.isUsed(slot) && m_inGap[slot])
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Empties the state of all keys.
+	 */
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_wheel = new TimingWheel(0);
+		m_lastSeen = new long[16];
+		m_thresholds = new long[16];
+		m_inGap = new boolean[16];
+		m_started = false;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public GapDetector duplicate(boolean with_state)
+	{
+		GapDetector g = new GapDetector(m_keyFunction.duplicate(), m_timestampFunction.duplicate(), m_thresholdFunction == null ? null : m_thresholdFunction.duplicate(), m_threshold, m_tick);
+		if (with_state)
+		{
+			g.m_keys = m_keys.duplicate();
+			g.m_wheel = m_wheel.duplicate();
+			g.m_lastSeen = Arrays.copyOf(m_lastSeen, m_lastSeen.length);
+			g.m_thresholds = Arrays.copyOf(m_thresholds, m_thresholds.length);
+			g.m_inGap = Arrays.copyOf(m_inGap, m_inGap.length);
+			g.m_started = m_started;
+		}
+		return g;
+	}
+
+	/**
+	 * A period of silence of a key.
+	 */
+	public abstract static class Gap
+	{
+		/**
+		 * The key.
+		 */
+		protected final Object m_key;
+
+		/**
+		 * The timestamp of the last event before the silence.
+		 */
+		protected final long m_lastSeen;
+
+		/**
+		 * Creates a new gap.
+		 * @param key The key
+		 * @param last_seen The timestamp of the last event before the silence
+		 */
+		public Gap(Object key, long last_seen)
+		{
+			super();
+			m_key = key;
+			m_lastSeen = last_seen;
+		}
+
+		/**
+		 * Gets the key.
+		 * @return The key
+		 */
+		public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Gets the timestamp of the last event before the silence.
+		 * @return The timestamp
+		 */
+		public long getLastSeen()
+		{
+			return m_lastSeen;
+		}
+	}
+
+	/**
+	 * Signals that a key has been silent for longer than its threshold.
+	 */
+	public static class GapStart extends Gap
+	{
+		/**
+		 * The moment at which the silence exceeded the threshold.
+		 */
+		protected final long m_detected;
+
+		/**
+		 * Creates a new gap start event.
+		 * @param key The key
+		 * @param last_seen The timestamp of the last event before the silence
+		 * @param detected The moment at which the silence exceeded the
+		 * threshold
+		 */
+		public GapStart(Object key, long last_seen, long detected)
+		{
+			super(key, last_seen);
+			m_detected = detected;
+		}
+
+		/**
+		 * Gets the moment at which the silence exceeded the threshold.
+		 * @return The timestamp
+		 */
+		public long getDetected()
+		{
+			return m_detected;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Gap start " + m_key + " (last seen " + m_lastSeen + ")";
+		}
+	}
+
+	/**
+	 * Signals that a key reported again after a gap.
+	 */
+	public static class GapEnd extends Gap
+	{
+		/**
+		 * The timestamp of the first event after the silence.
+		 */
+		protected final long m_end;
+
+		/**
+		 * Creates a new gap end event.
+		 * @param key The key
+		 * @param last_seen The timestamp of the last event before the silence
+		 * @param end The timestamp of the first event after the silence
+		 */
+		public GapEnd(Object key, long last_seen, long end)
+		{
+			super(key, last_seen);
+			m_end = end;
+		}
+
+		/**
+		 * Gets the timestamp of the first event after the silence.
+		 * @return The timestamp
+		 */
+		public long getEnd()
+		{
+			return m_end;
+		}
+
+		/**
+		 * Gets the duration of the silence.
+		 * @return The duration, in milliseconds
+		 */
+		public long getDuration()
+		{
+			return m_end - m_lastSeen;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Gap end " + m_key + " (" + getDuration() + " ms)";
+		}
+	}
+}
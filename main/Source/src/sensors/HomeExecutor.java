@@ -0,0 +1,446 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+
+/**
+ * Runs the same processing pipeline on the logs of many homes in parallel.
+ * The executor looks for the folders of each home (or hub) under the root of
+ * a {@link LogRepository}, at any depth; by default, a folder is a hub folder
+ * if its name is made of digits, such as <tt>0104</tt> or
+ * <tt>nears/0102</tt>. For each hub, a {@link PipelineFactory} creates a new
+ * pipeline reading from a repository open on the hub's folder; the executor
+ * pulls all the events from the output of this pipeline, and passes them to
+ * a {@link HubSink} along with the name of the hub.
+ * <p>
+ * Hubs are processed as separate tasks of a {@link ForkJoinPool}, which by
+ * default has as many threads as there are processors. Since the pool
+ * steals work between threads, a few homes with very long logs do not leave
+ * the other threads idle once the smaller homes are done. Each pipeline is
+ * used by a single thread, and each hub gets its own repository instance, so
+ * that pipelines need not be thread-safe; sinks, however, may receive events
+ * from several hubs at the same time.
+ * <p>
+ * The failure of a hub does not stop the processing of the other hubs; the
+ * exceptions thrown are recorded and can be retrieved with
+ * {@link #getFailures()}.
+ * <p>
+ * An executor created without a pool creates its own, whose threads are
+ * stopped by {@link #close()}; a pool given to the constructor is left
+ * untouched, and must be shut down by its owner.
+ *
+ * @author Sylvain Hallé
+ */
+public class HomeExecutor implements AutoCloseable
+{
+	/**
+	 * The default pattern matching the names of hub folders.
+	 */
+	public static final Pattern DEFAULT_HUB_PATTERN = Pattern.compile("\\d+");
+
+	/**
+	 * The repository whose folders are searched for hubs.
+	 */
+	/*@ non_null @*/ protected final LogRepository m_repository;
+
+	/**
+	 * The pattern matching the names of hub folders.
+	 */
+	/*@ non_null @*/ protected final Pattern m_hubPattern;
+
+	/**
+	 * The pool running the pipelines.
+	 */
+	/*@ non_null @*/ protected final ForkJoinPool m_pool;
+
+	/**
+	 * Whether the pool was created by this executor, and must be shut down
+	 * when it is closed.
+	 */
+	protected final boolean m_ownsPool;
+
+	/**
+	 * The exceptions thrown by the pipeline of each hub that failed in the
+	 * last run.
+	 */
+	/*@ non_null @*/ protected final Map<String,Throwable> m_failures;
+
+	/**
+	 * Creates a new executor with its own pool, using all the processors of
+	 * the machine. The pool is shut down by {@link #close()}.
+	 * @param repository The repository whose folders are searched for hubs
+	 */
+	public HomeExecutor(LogRepository repository)
+	{
+		this(repository, DEFAULT_HUB_PATTERN, new ForkJoinPool(), true);
+	}
+
+	/**
+	 * Creates a new executor running on an existing pool, which is not shut
+	 * down by {@link #close()}.
+	 * @param repository The repository whose folders are searched for hubs
+	 * @param hub_pattern The pattern matching the names of hub folders
+	 * @param pool The pool running the pipelines
+	 */
+	public HomeExecutor(LogRepository repository, Pattern hub_pattern, ForkJoinPool pool)
+	{
+		this(repository, hub_pattern, pool, false);
+	}
+
+	/**
+	 * Creates a new executor.
+	 * @param repository The repository whose folders are searched for hubs
+	 * @param hub_pattern The pattern matching the names of hub folders
+	 * @param pool The pool running the pipelines
+	 * @param owns_pool Whether the pool is shut down by {@link #close()}
+	 */
+	protected HomeExecutor(LogRepository repository, Pattern hub_pattern, ForkJoinPool pool, boolean owns_pool)
+	{
+		super();
+		m_repository = repository;
+		m_hubPattern = hub_pattern;
+		m_pool = pool;
+		m_ownsPool = owns_pool;
+		m_failures = new ConcurrentHashMap<String,Throwable>();
+	}
+
+	/**
+	 * Finds the hub folders under the root of the repository.
+	 * @return The paths of the hub folders, relative to the root and sorted
+	 * @throws FileSystemException Thrown if the repository cannot be read
+	 */
+	/*@ non_null @*/ public List<String> getHubs() throws FileSystemException
+	{
+		List<String> hubs = new ArrayList<String>();
+		m_repository.open();
+		try
+		{
+			findHubs(m_repository, "", hubs);
+		}
+		finally
+		{
+			m_repository.close();
+		}
+		Collections.sort(hubs);
+		return hubs;
+	}
+
+	/**
+	 * Looks for hub folders in the current folder of a file system, and in
+	 * its sub-folders that are not hubs.
+	 * @param fs The file system
+	 * @param prefix The path of the current folder, relative to the root
+	 * @param hubs The list to which the paths of hub folders are added
+	 * @throws FileSystemException Thrown if the file system cannot be read
+	 */
+	protected void findHubs(FileSystem fs, String prefix, List<String> hubs) throws FileSystemException
+	{
+		for (String name : fs.ls())
+		{
+			if (!fs.isDirectory(name))
+			{
+				continue;
+			}
+			if (m_hubPattern.matcher(name).matches())
+			{
+				hubs.add(prefix + name);
+			}
+			else
+			{
+				fs.pushd(name);
+				findHubs(fs, prefix + name + "/", hubs);
+				fs.popd();
+			}
+		}
+	}
+
+	/**
+	 * Runs a pipeline on every hub, and waits until all of them are done.
+	 * @param factory The factory creating the pipeline of each hub
+	 * @param sink The sink receiving the output events of all hubs
+	 * @return The number of hubs processed successfully
+	 * @throws FileSystemException Thrown if the repository cannot be read
+	 */
+	public int run(PipelineFactory factory, HubSink sink) throws FileSystemException
+	{
+		m_failures.clear();
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (String hub : getHubs())
+		{
+			tasks.add(new HubTask(hub, factory, sink));
+		}
+		m_pool.invokeAll(tasks);
+		return tasks.size() - m_failures.size();
+	}
+
+	/**
+	 * Runs a pipeline on every hub, and collects the output events of each
+	 * hub in a separate list.
+	 * @param factory The factory creating the pipeline of each hub
+	 * @return A map associating each hub to the list of its output events
+	 * @throws FileSystemException Thrown if the repository cannot be read
+	 */
+	/*@ non_null @*/ public Map<String,List<Object>> collect(PipelineFactory factory) throws FileSystemException
+	{
+		final Map<String,List<Object>> outputs = new ConcurrentSkipListMap<String,List<Object>>();
+		run(factory, new HubSink()
+		{
+			@Override
+			public void start(String hub)
+			{
+				// Each list is only ever filled by the task of its hub
+				outputs.put(hub, new ArrayList<Object>());
+			}
+
+			@Override
+			public void accept(String hub, Object event)
+			{
+				outputs.get(hub).add(event);
+			}
+
+			@Override
+			public void end(String hub)
+			{
+				// Nothing to do
+			}
+		});
+		return outputs;
+	}
+
+	/**
+	 * Gets the exceptions thrown by the pipeline of each hub that failed in
+	 * the last run.
+	 * @return A map associating hubs to exceptions
+	 */
+	/*@ non_null @*/ public Map<String,Throwable> getFailures()
+	{
+		return m_failures;
+	}
+
+	/**
+	 * Shuts down the pool of this executor if it was created by the executor.
+	 * Hubs that are being processed are completed, but the executor cannot be
+	 * run again.
+	 */
+	@Override
+	public void close()
+	{
+		if (m_ownsPool)
+		{
+			m_pool.shutdown();
+		}
+	}
+
+	/**
+	 * The processing of a single hub.
+	 */
+	protected class HubTask implements Callable<Boolean>
+	{
+		/**
+		 * The path of the hub folder.
+		 */
+		/*@ non_null @*/ protected final String m_hub;
+
+		/**
+		 * The factory creating the pipeline.
+		 */
+		/*@ non_null @*/ protected final PipelineFactory m_factory;
+
+		/**
+		 * The sink receiving the output events.
+		 */
+		/*@ non_null @*/ protected final HubSink m_sink;
+
+		/**
+		 * Creates a new task.
+		 * @param hub The path of the hub folder
+		 * @param factory The factory creating the pipeline
+		 * @param sink The sink receiving the output events
+		 */
+		public HubTask(String hub, PipelineFactory factory, HubSink sink)
+		{
+			super();
+			m_hub = hub;
+			m_factory = factory;
+			m_sink = sink;
+		}
+
+		@Override
+		public Boolean call()
+		{
+			FileSystem fs = m_repository.getRepository(m_hub);
+			try
+			{
+				fs.open();
+				Processor p = m_factory.getPipeline(m_hub, fs);
+				Pullable pl = p.getPullableOutput();
+				m_sink.start(m_hub);
+				while (pl.hasNext())
+				{
+					m_sink.accept(m_hub, pl.next());
+				}
+				m_sink.end(m_hub);
+				return true;
+			}
+			catch (Throwable t)
+			{
+				m_failures.put(m_hub, t);
+				return false;
+			}
+			finally
+			{
+				try
+				{
+					fs.close();
+				}
+				catch (FileSystemException e)
+				{
+					// Nothing else to do with this hub
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the pipeline processing the logs of a hub.
+	 */
+	public interface PipelineFactory
+	{
+		/**
+		 * Creates a new pipeline.
+		 * @param hub The path of the hub folder, relative to the root of the
+		 * repository
+		 * @param fs A repository open on the hub folder, from which the
+		 * pipeline reads its input
+		 * @return The last processor of the pipeline, whose first output is
+		 * pulled by the executor
+		 * @throws FileSystemException Thrown if the input of the pipeline
+		 * cannot be read
+		 */
+		/*@ non_null @*/ public Processor getPipeline(String hub, FileSystem fs) throws FileSystemException;
+	}
+
+	/**
+	 * Receives the output events of the pipelines of all hubs. The methods of
+	 * a sink may be called by several threads at the same time, but the calls
+	 * for a given hub are made by a single thread, in order.
+	 */
+	public interface HubSink
+	{
+		/**
+		 * Signals that the processing of a hub starts.
+		 * @param hub The path of the hub folder
+		 */
+		public void start(String hub);
+
+		/**
+		 * Receives an output event of a hub.
+		 * @param hub The path of the hub folder
+		 * @param event The event
+		 */
+		public void accept(String hub, Object event);
+
+		/**
+		 * Signals that the processing of a hub is done.
+		 * @param hub The path of the hub folder
+		 */
+		public void end(String hub);
+	}
+
+	/**
+	 * A sink merging the output of all hubs into a single report, giving the
+	 * last output event and the number of output events of each hub.
+	 */
+	public static class MergedReport implements HubSink
+	{
+		/**
+		 * The last output event of each hub.
+		 */
+		/*@ non_null @*/ protected final Map<String,Object> m_last;
+
+		/**
+		 * The number of output events of each hub.
+		 */
+		/*@ non_null @*/ protected final Map<String,long[]> m_counts;
+
+		/**
+		 * Creates a new empty report.
+		 */
+		public MergedReport()
+		{
+			super();
+			m_last = new ConcurrentSkipListMap<String,Object>();
+			m_counts = new ConcurrentSkipListMap<String,long[]>();
+		}
+
+		@Override
+		public void start(String hub)
+		{
+			m_counts.put(hub, new long[1]);
+		}
+
+		@Override
+		public void accept(String hub, Object event)
+		{
+			m_last.put(hub, event);
+			m_counts.get(hub)[0]++;
+		}
+
+		@Override
+		public void end(String hub)
+		{
+			// Nothing to do
+		}
+
+		/**
+		 * Gets the last output event of each hub.
+		 * @return A map associating hubs to events, sorted by hub
+		 */
+		/*@ non_null @*/ public Map<String,Object> getLastValues()
+		{
+			return m_last;
+		}
+
+		/**
+		 * Prints the report, one line per hub.
+		 * @param ps The stream where the report is printed
+		 */
+		public void print(PrintStream ps)
+		{
+			for (Map.Entry<String,long[]> e : m_counts.entrySet())
+			{
+				ps.println(e.getKey() + "\t" + e.getValue()[0] + "\t" + m_last.get(e.getKey()));
+			}
+		}
+	}
+}
@@ -0,0 +1,539 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+
+/**
+ * Multiplexes the live pipelines of many homes over a small number of
+ * threads. Instead of giving each home a thread that blocks while waiting
+ * for events (for instance in {@link ca.uqac.lif.cep.tmf.Pump#run()
+ * Pump.run()}), events are offered to the queue of their home, and the
+ * pipeline of a home only occupies a thread while it has events to process.
+ * <p>
+ * The threads are provided by an {@link ExecutorService} given by the
+ * caller: a fixed thread pool of a few "carrier" threads, or, on recent
+ * versions of Java, an executor creating a virtual thread per task. A home
+ * with pending events gets a <em>turn</em>, which is a task submitted to the
+ * executor; during its turn, the home processes at most a number of events
+ * proportional to its weight (and stops early if its turn exceeds a maximum
+ * duration), after which it submits a new turn behind those of the other
+ * homes if it still has events. With a first-in, first-out executor, homes
+ * are therefore served in weighted round-robin, and a home receiving a burst
+ * of events cannot starve the others. A home never has more than one turn
+ * at a time, so that its pipeline is only ever used by one thread.
+ * <p>
+ * For each home, the scheduler records the number of events processed and
+ * the processor time spent in its turns (measured on the current thread
+ * when the JVM supports it, and in elapsed time otherwise).
+ *
+ * @author Sylvain Hallé
+ */
+public class HomeScheduler
+{
+	/**
+	 * The default number of events processed by a home of weight 1 in a turn.
+	 */
+	public static final int DEFAULT_QUANTUM = 64;
+
+	/**
+	 * The default maximum duration of a turn, in nanoseconds.
+	 */
+	public static final long DEFAULT_MAX_TURN = 10000000L;
+
+	/**
+	 * The executor running the turns of the homes.
+	 */
+	/*@ non_null @*/ protected final ExecutorService m_executor;
+
+	/**
+	 * The number of events processed by a home of weight 1 in a turn.
+	 */
+	protected final int m_quantum;
+
+	/**
+	 * The maximum duration of a turn, in nanoseconds.
+	 */
+	protected long m_maxTurn;
+
+	/**
+	 * The homes registered with the scheduler.
+	 */
+	/*@ non_null @*/ protected final Map<Object,Home> m_homes;
+
+	/**
+	 * The bean used to measure the processor time of the current thread.
+	 */
+	/*@ non_null @*/ protected final ThreadMXBean m_threadBean;
+
+	/**
+	 * Creates a new scheduler with the default quantum.
+	 * @param executor The executor running the turns of the homes
+	 */
+	public HomeScheduler(ExecutorService executor)
+	{
+		this(executor, DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 * @param executor The executor running the turns of the homes
+	 * @param quantum The number of events processed by a home of weight 1 in
+	 * a turn
+	 */
+	public HomeScheduler(ExecutorService executor, int quantum)
+	{
+		super();
+		if (quantum < 1)
+		{
+			throw new IllegalArgumentException("The quantum must be at least 1");
+		}
+		m_executor = executor;
+		m_quantum = quantum;
+		m_maxTurn = DEFAULT_MAX_TURN;
+		m_homes = new ConcurrentHashMap<Object,Home>();
+		m_threadBean = ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * Sets the maximum duration of a turn. A home whose pipeline is slow
+	 * gives up its turn after this duration, even if it has not processed
+	 * all the events of its quantum.
+	 * @param duration The duration, in nanoseconds
+	 * @return This scheduler
+	 */
+	/*@ non_null @*/ public HomeScheduler setMaxTurn(long duration)
+	{
+		m_maxTurn = duration;
+		return this;
+	}
+
+	/**
+	 * Registers the pipeline of a home with a weight of 1.
+	 * @param id An identifier for the home
+	 * @param p The first processor of the pipeline, whose first input
+	 * receives the events of the home
+	 * @return The handle used to send events to the home
+	 */
+	/*@ non_null @*/ public Home register(Object id, Processor p)
+	{
+		return register(id, p.getPushableInput(0), 1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Registers the pipeline of a home.
+	 * @param id An identifier for the home
+	 * @param input The pushable receiving the events of the home
+	 * @param weight The weight of the home; a home of weight <i>w</i>
+	 * processes up to <i>w</i> times more events per turn than a home of
+	 * weight 1
+	 * @param capacity The maximum number of events waiting in the queue of
+	 * the home
+	 * @return The handle used to send events to the home
+	 */
+	/*@ non_null @*/ public Home register(Object id, Pushable input, int weight, int capacity)
+	{
+		if (weight < 1)
+		{
+			throw new IllegalArgumentException("The weight must be at least 1");
+		}
+		Home h = new Home(id, input, weight, capacity);
+		if (m_homes.putIfAbsent(id, h) != null)
+		{
+			throw new IllegalArgumentException("A home is already registered as " + id);
+		}
+		return h;
+	}
+
+	/**
+	 * Gets the home registered under an identifier.
+	 * @param id The identifier
+	 * @return The home, or {@code null} if no home has this identifier
+	 */
+	/*@ null @*/ public Home getHome(Object id)
+	{
+		return m_homes.get(id);
+	}
+
+	/**
+	 * Gets all the homes registered with the scheduler.
+	 * @return The homes
+	 */
+	/*@ non_null @*/ public Collection<Home> getHomes()
+	{
+		return Collections.unmodifiableCollection(m_homes.values());
+	}
+
+	/**
+	 * Determines if no home currently has events to process.
+	 * @return {@code true} if all homes are idle
+	 */
+	public boolean isIdle()
+	{
+		for (Home h : m_homes.values())
+		{
+			if (h.m_scheduled.get())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the homes sorted by decreasing processor time, which shows the
+	 * homes that use the largest share of the threads.
+	 * @return The list of homes
+	 */
+	/*@ non_null @*/ public List<Home> getBusiestHomes()
+	{
+		List<Home> list = new ArrayList<Home>(m_homes.values());
+		list.sort((h1, h2) -> Long.compare(h2.getProcessingTime(), h1.getProcessingTime()));
+		return list;
+	}
+
+	/**
+	 * Gets the processor time of the current thread, or the elapsed time if
+	 * it cannot be measured.
+	 * @return The time, in nanoseconds
+	 */
+	protected long getThreadTime()
+	{
+		if (m_threadBean.isCurrentThreadCpuTimeSupported())
+		{
+			long t = m_threadBean.getCurrentThreadCpuTime();
+			if (t >= 0)
+			{
+				return t;
+			}
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * The handle of a home registered with the scheduler, holding its queue
+	 * of pending events and its statistics.
+	 */
+	public class Home implements Runnable
+	{
+		/**
+		 * The identifier of the home.
+		 */
+		/*@ non_null @*/ protected final Object m_id;
+
+		/**
+		 * The pushable receiving the events of the home.
+		 */
+		/*@ non_null @*/ protected final Pushable m_input;
+
+		/**
+		 * The weight of the home.
+		 */
+		protected final int m_weight;
+
+		/**
+		 * The maximum number of events waiting in the queue.
+		 */
+		protected final int m_capacity;
+
+		/**
+		 * The events waiting to be processed.
+		 */
+		/*@ non_null @*/ protected final ConcurrentLinkedQueue<Object> m_queue;
+
+		/**
+		 * The number of events in the queue.
+		 */
+		/*@ non_null @*/ protected final AtomicInteger m_queueSize;
+
+		/**
+		 * Whether the home currently has a turn submitted to the executor.
+		 */
+		/*@ non_null @*/ protected final AtomicBoolean m_scheduled;
+
+		/**
+		 * The lock under which events are added to the queue and the home is
+		 * closed, so that no event is added once the home is closed.
+		 */
+		/*@ non_null @*/ protected final Object m_lock;
+
+		/**
+		 * Whether the end of the trace has been signalled for this home.
+		 */
+		protected volatile boolean m_closed;
+
+		/**
+		 * Whether the end of the trace has been notified to the pipeline.
+		 */
+		protected volatile boolean m_ended;
+
+		/**
+		 * The number of events processed.
+		 */
+		protected volatile long m_processed;
+
+		/**
+		 * The number of events refused because the queue was full.
+		 */
+		/*@ non_null @*/ protected final AtomicInteger m_rejected;
+
+		/**
+		 * The processor time spent in the turns of this home.
+		 */
+		protected volatile long m_time;
+
+		/**
+		 * The number of turns given to this home.
+		 */
+		protected volatile long m_turns;
+
+		/**
+		 * The last exception thrown by the pipeline, if any.
+		 */
+		/*@ null @*/ protected volatile Throwable m_error;
+
+		/**
+		 * Creates a new home.
+		 * @param id The identifier of the home
+		 * @param input The pushable receiving the events of the home
+		 * @param weight The weight of the home
+		 * @param capacity The maximum number of events waiting in the queue
+		 */
+		protected Home(Object id, Pushable input, int weight, int capacity)
+		{
+			super();
+			m_id = id;
+			m_input = input;
+			m_weight = weight;
+			m_capacity = capacity;
+			m_queue = new ConcurrentLinkedQueue<Object>();
+			m_queueSize = new AtomicInteger();
+			m_scheduled = new AtomicBoolean(false);
+			m_lock = new Object();
+			m_rejected = new AtomicInteger();
+			m_closed = false;
+			m_ended = false;
+		}
+
+		/**
+		 * Adds an event to the queue of the home. This method can be called by
+		 * any thread.
+		 * @param event The event
+		 * @return {@code true} if the event was added, {@code false} if the
+		 * queue is full, the home is closed or its pipeline has failed
+		 * @throws RejectedExecutionException If the executor refuses the turn
+		 * of the home; the event stays in the queue
+		 */
+		public boolean offer(Object event)
+		{
+			synchronized (m_lock)
+			{
+				if (m_error != null || m_closed || m_queueSize.get() >= m_capacity)
+				{
+					m_rejected.incrementAndGet();
+					return false;
+				}
+				m_queueSize.incrementAndGet();
+				m_queue.add(event);
+			}
+			schedule();
+			return true;
+		}
+
+		/**
+		 * Signals that the home will receive no more events. The end of the
+		 * trace is notified to its pipeline once the events of the queue have
+		 * been processed.
+		 */
+		public void close()
+		{
+			synchronized (m_lock)
+			{
+				m_closed = true;
+			}
+			schedule();
+		}
+
+		/**
+		 * Submits a turn for this home, unless it already has one or its
+		 * pipeline has failed.
+		 * @throws RejectedExecutionException If the executor refuses the turn;
+		 * the home can then be scheduled again
+		 */
+		protected void schedule()
+		{
+			if (m_error == null && m_scheduled.compareAndSet(false, true))
+			{
+				try
+				{
+					m_executor.execute(this);
+				}
+				catch (RejectedExecutionException e)
+				{
+					m_scheduled.set(false);
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			long start_time = getThreadTime();
+			long start_clock = System.nanoTime();
+			long budget = (long) m_weight * m_quantum;
+			long done = 0;
+			try
+			{
+				while (done < budget)
+				{
+					Object event = m_queue.poll();
+					if (event == null)
+					{
+						break;
+					}
+					m_queueSize.decrementAndGet();
+					m_input.push(event);
+					done++;
+					if ((done & 15) == 0 && System.nanoTime() - start_clock > m_maxTurn)
+					{
+						break;
+					}
+				}
+				if (m_closed && m_queue.isEmpty() && !m_ended)
+				{
+					m_ended = true;
+					m_input.notifyEndOfTrace();
+				}
+			}
+			catch (Throwable t)
+			{
+				// The pipeline is given up: drop the events still waiting
+				m_error = t;
+				m_queue.clear();
+				m_queueSize.set(0);
+			}
+			m_processed += done;
+			m_time += getThreadTime() - start_time;
+			m_turns++;
+			m_scheduled.set(false);
+			// Events may have arrived after the queue was found empty
+			if (!m_queue.isEmpty() || (m_closed && !m_ended))
+			{
+				schedule();
+			}
+		}
+
+		/**
+		 * Gets the identifier of the home.
+		 * @return The identifier
+		 */
+		/*@ non_null @*/ public Object getId()
+		{
+			return m_id;
+		}
+
+		/**
+		 * Gets the number of events waiting in the queue.
+		 * @return The number of events
+		 */
+		public int getQueueSize()
+		{
+			return m_queueSize.get();
+		}
+
+		/**
+		 * Gets the number of events processed by the pipeline.
+		 * @return The number of events
+		 */
+		public long getProcessedCount()
+		{
+			return m_processed;
+		}
+
+		/**
+		 * Gets the number of events refused because the queue was full or the
+		 * home was closed.
+		 * @return The number of events
+		 */
+		public int getRejectedCount()
+		{
+			return m_rejected.get();
+		}
+
+		/**
+		 * Gets the processor time spent in the turns of this home.
+		 * @return The time, in nanoseconds
+		 */
+		public long getProcessingTime()
+		{
+			return m_time;
+		}
+
+		/**
+		 * Gets the number of turns given to this home.
+		 * @return The number of turns
+		 */
+		public long getTurnCount()
+		{
+			return m_turns;
+		}
+
+		/**
+		 * Gets the exception thrown by the pipeline of this home, if any. A
+		 * home whose pipeline throws an exception is no longer given turns,
+		 * its pending events are dropped, and new events are rejected.
+		 * @return The exception, or {@code null} if none was thrown
+		 */
+		/*@ null @*/ public Throwable getError()
+		{
+			return m_error;
+		}
+
+		/**
+		 * Determines if the end of the trace has been notified to the
+		 * pipeline of this home.
+		 * @return {@code true} if the home is done
+		 */
+		public boolean isDone()
+		{
+			return m_ended;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_id + ": " + m_processed + " events, " + m_time / 1000000 + " ms, " + m_queueSize.get() + " queued";
+		}
+	}
+}
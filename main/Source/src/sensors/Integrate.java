@@ -23,7 +23,9 @@ import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionException;
 
 /**
- * The integrator (more to come).
+ * The integrator (more to come). For streams of numerical values, the
+ * specialized integrators of {@link NumericIntegrate} avoid allocating
+ * objects on every event.
  */
 public class Integrate extends UniformProcessor
 {
@@ -0,0 +1,538 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Pairs the events of two sides of a stream whose timestamps are within a
+ * given distance of each other. Since the logs of a home contain the events
+ * of all sensors in a single stream, the two sides are defined by two
+ * predicates (for instance, "is a temperature reading" and "is a reading of
+ * the heater power"); an event may belong to one side, both, or neither. For
+ * every event <i>a</i> of the left side and every event <i>b</i> of the right
+ * side such that |<i>t<sub>a</sub></i> &minus; <i>t<sub>b</sub></i>| &leq;
+ * &delta;, the processor outputs a {@link Pair}, as soon as the second of
+ * the two events is received. Optionally, a key function restricts the
+ * pairs to events having the same key (such as the same location).
+ * <p>
+ * Contrary to {@link CoOccurs}, which only tells whether some event occurs
+ * in a window around each trigger event, this produces every pair of events,
+ * which can then be compared. The events of each side are kept, for each
+ * key, in a ring buffer sorted by timestamp. Input events are assumed to be
+ * sorted by timestamp: when an event is received, it is paired with the
+ * events of the other side by going backwards from the most recent one,
+ * stopping at the first event that is too old; these old events can never
+ * be paired again, and are removed. The cost of an event is therefore
+ * proportional to the number of pairs it produces, plus a constant amortized
+ * cost. Buffers of keys that no longer receive events are emptied
+ * periodically, and the keys are then forgotten.
+ *
+ * @author Sylvain Hallé
+ */
+public class IntervalJoin extends SynchronousProcessor
+{
+	/**
+	 * The predicate selecting the events of the left side.
+	 */
+	/*@ non_null @*/ protected final Function m_leftCondition;
+
+	/**
+	 * The predicate selecting the events of the right side.
+	 */
+	/*@ non_null @*/ protected final Function m_rightCondition;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The function extracting the key from an event, or {@code null} to pair
+	 * events regardless of their key.
+	 */
+	/*@ null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The maximum distance between the timestamps of two paired events.
+	 */
+	protected final long m_delta;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The buffer of left events of each key.
+	 */
+	/*@ non_null @*/ protected Buffer[] m_left;
+
+	/**
+	 * The buffer of right events of each key.
+	 */
+	/*@ non_null @*/ protected Buffer[] m_right;
+
+	/**
+	 * The largest timestamp seen so far.
+	 */
+	protected long m_watermark;
+
+	/**
+	 * The timestamp at which the buffers of all keys will be purged.
+	 */
+	protected long m_nextSweep;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param left The predicate selecting the events of the left side
+	 * @param right The predicate selecting the events of the right side
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param key The function extracting the key from an event, or
+	 * {@code null} to pair events regardless of their key
+	 * @param delta The maximum distance between the timestamps of two paired
+	 * events, in milliseconds
+	 */
+	public IntervalJoin(Function left, Function right, Function timestamp, Function key, long delta)
+	{
+		super(1, 1);
+		m_leftCondition = left;
+		m_rightCondition = right;
+		m_timestampFunction = timestamp;
+		m_keyFunction = key;
+		m_delta = delta;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	/**
+	 * Creates a new instance of the processor that pairs events regardless of
+	 * their key.
+	 * @param left The predicate selecting the events of the left side
+	 * @param right The predicate selecting the events of the right side
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param delta The maximum distance between the timestamps of two paired
+	 * events, in milliseconds
+	 */
+	public IntervalJoin(Function left, Function right, Function timestamp, long delta)
+	{
+		this(left, right, timestamp, null, delta);
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		boolean is_left = evaluate(m_leftCondition);
+		boolean is_right = evaluate(m_rightCondition);
+		if (!is_left && !is_right)
+		{
+			return true;
+		}
+		m_timestampFunction.evaluate(m_in, m_out);
+		long ts = ((Number) m_out[0]).longValue();
+		if (ts > m_watermark)
+		{
+			m_watermark = ts;
+			if (ts >= m_nextSweep)
+			{
+				sweep();
+				m_nextSweep = ts + Math.max(m_delta, 1);
+			}
+		}
+		Object key = null;
+		if (m_keyFunction != null)
+		{
+			m_keyFunction.evaluate(m_in, m_out);
+			key = m_out[0];
+		}
+		int slot = getSlot(key);
+		long oldest = m_watermark - m_delta;
+		if (is_left)
+		{
+			Buffer b = m_right[slot];
+			b.purge(oldest);
+			for (int i = b.size() - 1; i >= 0 && b.getTimestamp(i) >= ts - m_delta; i--)
+			{
+				if (b.getTimestamp(i) <= ts + m_delta)
+				{
+					outputs.add(new Object[] {new Pair(key, inputs[0], b.getEvent(i))});
+				}
+			}
+		}
+		if (is_right)
+		{
+			Buffer b = m_left[slot];
+			b.purge(oldest);
+			for (int i = b.size() - 1; i >= 0 && b.getTimestamp(i) >= ts - m_delta; i--)
+			{
+				if (b.getTimestamp(i) <= ts + m_delta)
+				{
+					outputs.add(new Object[] {new Pair(key, b.getEvent(i), inputs[0])});
+				}
+			}
+		}
+		if (is_left)
+		{
+			m_left[slot].add(ts, inputs[0]);
+		}
+		if (is_right)
+		{
+			m_right[slot].add(ts, inputs[0]);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of events currently kept in the buffers.
+	 * @return The number of events
+	 */
+	public int getBufferedCount()
+	{
+		int count = 0;
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (m_keys.isUsed(slot))
+			{
+				count += m_left[slot].size() + m_right[slot].size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes the events that can no longer be paired from the buffers of all
+	 * keys, and forgets the keys whose buffers are empty.
+	 */
+	protected void sweep()
+	{
+		long oldest = m_watermark - m_delta;
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (!m_keys.isUsed(slot))
+			{
+				continue;
+			}
+			m_left[slot].purge(oldest);
+			m_right[slot].purge(oldest);
+			if (m_left[slot].size() == 0 && m_right[slot].size() == 0)
+			{
+				m_keys.remove(m_keys.getKey(slot));
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a predicate on the current event.
+	 * @param f The predicate
+	 * @return The value of the predicate
+	 */
+	protected boolean evaluate(Function f)
+	{
+		f.evaluate(m_in, m_out);
+		return Boolean.TRUE.equals(m_out[0]);
+	}
+
+	/**
+	 * Gets the slot of a key, creating its buffers if the key is not in the
+	 * index.
+	 * @param key The key
+	 * @return The slot
+	 */
+	protected int getSlot(Object key)
+	{
+		int slot = m_keys.get(key);
+		if (slot >= 0)
+		{
+			return slot;
+		}
+		slot = m_keys.add(key);
+		m_left = KeyIndex.ensure(m_left, slot);
+		m_right = KeyIndex.ensure(m_right, slot);
+		if (m_left[slot] == null)
+		{
+			m_left[slot] = new Buffer();
+			m_right[slot] = new Buffer();
+		}
+		else
+		{
+			// Reuse the buffers of a key that has been forgotten
+			m_left[slot].clear();
+			m_right[slot].clear();
+		}
+		return slot;
+	}
+
+	/**
+	 * Empties the state of the processor.
+	 */
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_left = new Buffer[16];
+		m_right = new Buffer[16];
+		m_watermark = Long.MIN_VALUE;
+		m_nextSweep = Long.MIN_VALUE;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public IntervalJoin duplicate(boolean with_state)
+	{
+		IntervalJoin j = new IntervalJoin(m_leftCondition.duplicate(), m_rightCondition.duplicate(), m_timestampFunction.duplicate(), m_keyFunction == null ? null : m_keyFunction.duplicate(), m_delta);
+		if (with_state)
+		{
+			j.m_keys = m_keys.duplicate();
+			j.m_left = new Buffer[m_left.length];
+			j.m_right = new Buffer[m_right.length];
+			for (int slot = 0; slot < m_left.length; slot++)
+			{
+				if (m_left[slot] != null)
+				{
+					j.m_left[slot] = m_left[slot].duplicate();
+					j.m_right[slot] = m_right[slot].duplicate();
+				}
+			}
+			j.m_watermark = m_watermark;
+			j.m_nextSweep = m_nextSweep;
+		}
+		return j;
+	}
+
+	/**
+	 * A ring buffer of events sorted by timestamp.
+	 */
+	protected static class Buffer
+	{
+		/**
+		 * The timestamps of the events.
+		 */
+		/*@ non_null @*/ protected long[] m_timestamps;
+
+		/**
+		 * The events.
+		 */
+		/*@ non_null @*/ protected Object[] m_events;
+
+		/**
+		 * The position of the oldest event.
+		 */
+		protected int m_head;
+
+		/**
+		 * The number of events in the buffer.
+		 */
+		protected int m_size;
+
+		/**
+		 * Creates a new empty buffer.
+		 */
+		public Buffer()
+		{
+			super();
+			m_timestamps = new long[8];
+			m_events = new Object[8];
+			m_head = 0;
+			m_size = 0;
+		}
+
+		/**
+		 * Gets the number of events in the buffer.
+		 * @return The number of events
+		 */
+		public int size()
+		{
+			return m_size;
+		}
+
+		/**
+		 * Gets the timestamp of an event.
+		 * @param i The position of the event, 0 being the oldest
+		 * @return The timestamp
+		 */
+		public long getTimestamp(int i)
+		{
+			return m_timestamps[(m_head + i) & (m_timestamps.length - 1)];
+		}
+
+		/**
+		 * Gets an event.
+		 * @param i The position of the event, 0 being the oldest
+		 * @return The event
+		 */
+		public Object getEvent(int i)
+		{
+			return m_events[(m_head + i) & (m_events.length - 1)];
+		}
+
+		/**
+		 * Adds an event after the most recent one.
+		 * @param ts The timestamp of the event
+		 * @param event The event
+		 */
+		public void add(long ts, Object event)
+		{
+			if (m_size == m_timestamps.length)
+			{
+				// Double the capacity, keeping the oldest event at position 0
+				long[] timestamps = new long[m_size * 2];
+				Object[] events = new Object[m_size * 2];
+				for (int i = 0; i < m_size; i++)
+				{
+					timestamps[i] = getTimestamp(i);
+					events[i] = getEvent(i);
+				}
+				m_timestamps = timestamps;
+				m_events = events;
+				m_head = 0;
+			}
+			int pos = (m_head + m_size) & (m_timestamps.length - 1);
+			m_timestamps[pos] = ts;
+			m_events[pos] = event;
+			m_size++;
+		}
+
+		/**
+		 * Removes the oldest events whose timestamp is before a given moment.
+		 * @param oldest The moment
+		 */
+		public void purge(long oldest)
+		{
+			while (m_size > 0 && m_timestamps[m_head] < oldest)
+			{
+				m_events[m_head] = null;
+				m_head = (m_head + 1) & (m_timestamps.length - 1);
+				m_size--;
+			}
+		}
+
+		/**
+		 * Removes all the events.
+		 */
+		public void clear()
+		{
+			Arrays.fill(m_events, null);
+			m_head = 0;
+			m_size = 0;
+		}
+
+		/**
+		 * Creates a copy of this buffer.
+		 * @return The copy
+		 */
+		/*@ non_null @*/ public Buffer duplicate()
+		{
+			Buffer b = new Buffer();
+			b.m_timestamps = Arrays.copyOf(m_timestamps, m_timestamps.length);
+			b.m_events = Arrays.copyOf(m_events, m_events.length);
+			b.m_head = m_head;
+			b.m_size = m_size;
+			return b;
+		}
+	}
+
+	/**
+	 * A pair of events from the left and right sides.
+	 */
+	public static class Pair
+	{
+		/**
+		 * The key of the events, or {@code null} if events are paired
+		 * regardless of their key.
+		 */
+		/*@ null @*/ protected final Object m_key;
+
+		/**
+		 * The event of the left side.
+		 */
+		protected final Object m_left;
+
+		/**
+		 * The event of the right side.
+		 */
+		protected final Object m_right;
+
+		/**
+		 * Creates a new pair.
+		 * @param key The key of the events
+		 * @param left The event of the left side
+		 * @param right The event of the right side
+		 */
+		public Pair(Object key, Object left, Object right)
+		{
+			super();
+			m_key = key;
+			m_left = left;
+			m_right = right;
+		}
+
+		/**
+		 * Gets the key of the events.
+		 * @return The key
+		 */
+		/*@ null @*/ public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Gets the event of the left side.
+		 * @return The event
+		 */
+		public Object getLeft()
+		{
+			return m_left;
+		}
+
+		/**
+		 * Gets the event of the right side.
+		 * @return The event
+		 */
+		public Object getRight()
+		{
+			return m_right;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(" + m_left + "," + m_right + ")";
+		}
+	}
+}
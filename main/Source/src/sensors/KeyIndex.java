@@ -0,0 +1,415 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+
+/**
+ * Associates arbitrary keys (typically sensor identifiers) to small integer
+ * <em>slots</em>. Keyed processors use these slots as indices into arrays of
+ * primitive values, which avoids storing one boxed object (or one processor
+ * instance) per key and per piece of state.
+ * <p>
+ * The index is an open-addressing hash table with linear probing. Slots are
+ * allocated densely starting from 0; the slot of a removed key is recycled
+ * by the next key to be added, so that the arrays indexed by slots never
+ * grow beyond the maximum number of keys present at the same time. The
+ * {@code null} key is allowed.
+ *
+ * @author Sylvain Hallé
+ */
+public class KeyIndex
+{
+	/**
+	 * An object standing for the {@code null} key in the hash table.
+	 */
+	protected static final Object NULL_KEY = new Object();
+
+	/**
+	 * The keys, at their position in the hash table. Empty positions contain
+	 * {@code null}.
+	 */
+	/*@ non_null @*/ protected Object[] m_table;
+
+	/**
+	 * The slot associated to the key at each position of the hash table.
+	 */
+	/*@ non_null @*/ protected int[] m_tableSlots;
+
+	/**
+	 * The key associated to each slot, or {@code null} if the slot is free.
+	 */
+	/*@ non_null @*/ protected Object[] m_keys;
+
+	/**
+	 * A stack of slots that have been released and can be reused.
+	 */
+	/*@ non_null @*/ protected int[] m_free;
+
+	/**
+	 * The number of elements in the stack of free slots.
+	 */
+	protected int m_freeCount;
+
+	/**
+	 * The number of keys in the index.
+	 */
+	protected int m_size;
+
+	/**
+	 * The number of slots allocated so far. All slots in use are lower than
+	 * this value.
+	 */
+	protected int m_slotCount;
+
+	/**
+	 * Creates a new empty index.
+	 */
+	public KeyIndex()
+	{
+		this(16);
+	}
+
+	/**
+	 * Creates a new empty index.
+	 * @param capacity The number of keys the index is expected to contain
+	 */
+	public KeyIndex(int capacity)
+	{
+		super();
+		int size = 16;
+		while (size < capacity * 2)
+		{
+			size <<= 1;
+		}
+		m_table = new Object[size];
+		m_tableSlots = new int[size];
+		m_keys = new Object[Math.max(capacity, 4)];
+		m_free = new int[4];
+		m_freeCount = 0;
+		m_size = 0;
+		m_slotCount = 0;
+	}
+
+	/**
+	 * Gets the slot associated to a key.
+	 * @param key The key
+	 * @return The slot, or -1 if the key is not in the index
+	 */
+	public int get(Object key)
+	{
+		Object k = key == null ? NULL_KEY : key;
+		int mask = m_table.length - 1;
+		int pos = hash(k) & mask;
+		while (true)
+		{
+			Object o = m_table[pos];
+			if (o == null)
+			{
+				return -1;
+			}
+			if (o.equals(k))
+			{
+				return m_tableSlots[pos];
+			}
+			pos = (pos + 1) & mask;
+		}
+	}
+
+	/**
+	 * Gets the slot associated to a key, adding the key to the index if it is
+	 * not already present.
+	 * @param key The key
+	 * @return The slot
+	 */
+	public int add(Object key)
+	{
+		Object k = key == null ? NULL_KEY : key;
+		int mask = m_table.length - 1;
+		int pos = hash(k) & mask;
+		while (true)
+		{
+			Object o = m_table[pos];
+			if (o == null)
+			{
+				break;
+			}
+			if (o.equals(k))
+			{
+				return m_tableSlots[pos];
+			}
+			pos = (pos + 1) & mask;
+		}
+		int slot;
+		if (m_freeCount > 0)
+		{
+			slot = m_free[--m_freeCount];
+		}
+		else
+		{
+			slot = m_slotCount++;
+			if (slot >= m_keys.length)
+			{
+				m_keys = Arrays.copyOf(m_keys, m_keys.length * 2);
+			}
+		}
+		m_table[pos] = k;
+		m_tableSlots[pos] = slot;
+		m_keys[slot] = k;
+		m_size++;
+		if (m_size * 2 > m_table.length)
+		{
+			rehash(m_table.length * 2);
+		}
+		return slot;
+	}
+
+	/**
+	 * Removes a key from the index. Its slot is released and will be given to
+	 * the next key that is added.
+	 * @param key The key
+	 * @return The slot that was associated to the key, or -1 if the key was
+	 * not in the index
+	 */
+	public int remove(Object key)
+	{
+		Object k = key == null ? NULL_KEY : key;
+		int mask = m_table.length - 1;
+		int pos = hash(k) & mask;
+		while (true)
+		{
+			Object o = m_table[pos];
+			if (o == null)
+			{
+				return -1;
+			}
+			if (o.equals(k))
+			{
+				break;
+			}
+			pos = (pos + 1) & mask;
+		}
+		int slot = m_tableSlots[pos];
+		// Backward-shift deletion: move up the entries of the same probe run
+		int i = pos;
+		int j = pos;
+		m_table[i] = null;
+		while (true)
+		{
+			j = (j + 1) & mask;
+			Object o = m_table[j];
+			if (o == null)
+			{
+				break;
+			}
+			int ideal = hash(o) & mask;
+			boolean in_range = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+			if (!in_range)
+			{
+				m_table[i] = o;
+				m_tableSlots[i] = m_tableSlots[j];
+				m_table[j] = null;
+				i = j;
+			}
+		}
+		m_keys[slot] = null;
+		if (m_freeCount == m_free.length)
+		{
+			m_free = Arrays.copyOf(m_free, m_free.length * 2);
+		}
+		m_free[m_freeCount++] = slot;
+		m_size--;
+		return slot;
+	}
+
+	/**
+	 * Gets the key associated to a slot.
+	 * @param slot The slot
+	 * @return The key, or {@code null} if the slot is free (or associated to
+	 * the {@code null} key)
+	 */
+	/*@ null @*/ public Object getKey(int slot)
+	{
+		if (slot < 0 || slot >= m_slotCount)
+		{
+			return null;
+		}
+		Object k = m_keys[slot];
+		return k == NULL_KEY ? null : k;
+	}
+
+	/**
+	 * Determines if a slot is currently associated to a key.
+	 * @param slot The slot
+	 * @return {@code true} if the slot is in use, {@code false} otherwise
+	 */
+	public boolean isUsed(int slot)
+	{
+		return slot >= 0 && slot < m_slotCount && m_keys[slot] != null;
+	}
+
+	/**
+	 * Gets the number of keys in the index.
+	 * @return The number of keys
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Gets the number of slots allocated so far. All slots in use are
+	 * strictly lower than this value, which makes it a suitable upper bound
+	 * when iterating over slots.
+	 * @return The number of slots
+	 */
+	public int getSlotCount()
+	{
+		return m_slotCount;
+	}
+
+	/**
+	 * Removes all keys from the index.
+	 */
+	public void clear()
+	{
+		Arrays.fill(m_table, null);
+		Arrays.fill(m_keys, null);
+		m_freeCount = 0;
+		m_size = 0;
+		m_slotCount = 0;
+	}
+
+	/**
+	 * Creates a copy of this index, where each key is associated to the same
+	 * slot as in the original.
+	 * @return The copy
+	 */
+	public KeyIndex duplicate()
+	{
+		KeyIndex ki = new KeyIndex();
+		ki.m_table = Arrays.copyOf(m_table, m_table.length);
+		ki.m_tableSlots = Arrays.copyOf(m_tableSlots, m_tableSlots.length);
+		ki.m_keys = Arrays.copyOf(m_keys, m_keys.length);
+		ki.m_free = Arrays.copyOf(m_free, m_free.length);
+		ki.m_freeCount = m_freeCount;
+		ki.m_size = m_size;
+		ki.m_slotCount = m_slotCount;
+		return ki;
+	}
+
+	/**
+	 * Resizes the hash table and reinserts all the keys.
+	 * @param size The new size of the table; must be a power of two
+	 */
+	protected void rehash(int size)
+	{
+		Object[] old_table = m_table;
+		int[] old_slots = m_tableSlots;
+		m_table = new Object[size];
+		m_tableSlots = new int[size];
+		int mask = size - 1;
+		for (int i = 0; i < old_table.length; i++)
+		{
+			Object o = old_table[i];
+			if (o == null)
+			{
+				continue;
+			}
+			int pos = hash(o) & mask;
+			while (m_table[pos] != null)
+			{
+				pos = (pos + 1) & mask;
+			}
+			m_table[pos] = o;
+			m_tableSlots[pos] = old_slots[i];
+		}
+	}
+
+	/**
+	 * Computes the hash of a key, spreading the bits of its hash code.
+	 * @param o The key
+	 * @return The hash
+	 */
+	protected static int hash(Object o)
+	{
+		int h = o.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Makes sure an array indexed by slots is large enough to contain a given
+	 * slot.
+	 * @param a The array
+	 * @param slot The slot
+	 * @return The array, or a larger copy of it
+	 */
+	public static double[] ensure(double[] a, int slot)
+	{
+		return slot < a.length ? a : Arrays.copyOf(a, Math.max(slot + 1, a.length * 2));
+	}
+
+	/**
+	 * Makes sure an array indexed by slots is large enough to contain a given
+	 * slot.
+	 * @param a The array
+	 * @param slot The slot
+	 * @return The array, or a larger copy of it
+	 */
+	public static long[] ensure(long[] a, int slot)
+	{
+		return slot < a.length ? a : Arrays.copyOf(a, Math.max(slot + 1, a.length * 2));
+	}
+
+	/**
+	 * Makes sure an array indexed by slots is large enough to contain a given
+	 * slot.
+	 * @param a The array
+	 * @param slot The slot
+	 * @return The array, or a larger copy of it
+	 */
+	public static int[] ensure(int[] a, int slot)
+	{
+		return slot < a.length ? a : Arrays.copyOf(a, Math.max(slot + 1, a.length * 2));
+	}
+
+	/**
+	 * Makes sure an array indexed by slots is large enough to contain a given
+	 * slot.
+	 * @param a The array
+	 * @param slot The slot
+	 * @return The array, or a larger copy of it
+	 */
+	public static boolean[] ensure(boolean[] a, int slot)
+	{
+		return slot < a.length ? a : Arrays.copyOf(a, Math.max(slot + 1, a.length * 2));
+	}
+
+	/**
+	 * Makes sure an array indexed by slots is large enough to contain a given
+	 * slot.
+	 * @param <T> The type of the array's elements
+	 * @param a The array
+	 * @param slot The slot
+	 * @return The array, or a larger copy of it
+	 */
+	public static <T> T[] ensure(T[] a, int slot)
+	{
+		return slot < a.length ? a : Arrays.copyOf(a, Math.max(slot + 1, a.length * 2));
+	}
+}
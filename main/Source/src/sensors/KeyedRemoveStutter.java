@@ -0,0 +1,289 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Removes stuttering sequences independently for each key of a stream. The
+ * processor extracts a key (typically a sensor ID) and a value (typically the
+ * state of the sensor) from each event; two events with the same key are
+ * part of the same stuttering sequence if their values are equal, regardless
+ * of the events for other keys that occur between them. This has the same
+ * effect as a {@link ca.uqac.lif.cep.tmf.Slice Slice} containing one
+ * {@link RemoveStutterHead} or {@link RemoveStutterTail} per key, except that
+ * the events of all keys are output in a single stream, in the order in
+ * which they are decided.
+ * <p>
+ * The value at the start of the current sequence of each key is kept in an
+ * array indexed by the slots of a {@link KeyIndex}, and values are compared
+ * with {@link Object#equals(Object)}; processing an event does not create
+ * any object other than the output event front.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class KeyedRemoveStutter extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The function extracting the value from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_valueFunction;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The value at the start of the current sequence of each key.
+	 */
+	/*@ non_null @*/ protected Object[] m_values;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 */
+	public KeyedRemoveStutter(Function key, Function value)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_valueFunction = value;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		Object event = inputs[0];
+		m_in[0] = event;
+		m_valueFunction.evaluate(m_in, m_out);
+		Object value = m_out[0];
+		m_keyFunction.evaluate(m_in, m_out);
+		Object key = m_out[0];
+		int slot = m_keys.get(key);
+		if (slot < 0)
+		{
+			slot = m_keys.add(key);
+			m_values = KeyIndex.ensure(m_values, slot);
+			m_values[slot] = value;
+			onNewSequence(slot, event, outputs);
+			return true;
+		}
+		Object first = m_values[slot];
+		if (first == null ? value == null : first.equals(value))
+		{
+			onRepetition(slot, event);
+			return true;
+		}
+		m_values[slot] = value;
+		onNewSequence(slot, event, outputs);
+		return true;
+	}
+
+	/**
+	 * Handles an event that starts a new sequence for its key.
+	 * @param slot The slot of the key
+	 * @param event The event
+	 * @param outputs The queue where output events are added
+	 */
+	protected abstract void onNewSequence(int slot, Object event, Queue<Object[]> outputs);
+
+	/**
+	 * Handles an event that repeats the value of the current sequence for its
+	 * key.
+	 * @param slot The slot of the key
+	 * @param event The event
+	 */
+	protected abstract void onRepetition(int slot, Object event);
+
+	/**
+	 * Gets the number of distinct keys seen by the processor.
+	 * @return The number of keys
+	 */
+	public int getKeyCount()
+	{
+		return m_keys.size();
+	}
+
+	/**
+	 * Empties the state of all keys.
+	 */
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_values = new Object[16];
+	}
+
+	/**
+	 * Copies the state of this processor into another one.
+	 * @param p The other processor
+	 */
+	protected void copyInto(KeyedRemoveStutter p)
+	{
+		p.m_keys = m_keys.duplicate();
+		p.m_values = Arrays.copyOf(m_values, m_values.length);
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	/**
+	 * Removes the head of stuttering sequences for each key: only the last
+	 * event of each sequence is output. Since the end of a sequence is only
+	 * known when an event with a different value is received for the same
+	 * key, the last event of each key is kept pending; the pending events of
+	 * all keys are output at the end of the trace.
+	 * @see RemoveStutterHead
+	 */
+	public static class Head extends KeyedRemoveStutter
+	{
+		/**
+		 * The last event received for each key.
+		 */
+		/*@ non_null @*/ protected Object[] m_pending;
+
+		/**
+		 * Creates a new instance of the processor.
+		 * @param key The function extracting the key from an event
+		 * @param value The function extracting the value from an event
+		 */
+		public Head(Function key, Function value)
+		{
+			super(key, value);
+		}
+
+		@Override
+		protected void onNewSequence(int slot, Object event, Queue<Object[]> outputs)
+		{
+			m_pending = KeyIndex.ensure(m_pending, slot);
+			if (m_pending[slot] != null)
+			{
+				outputs.add(new Object[] {m_pending[slot]});
+			}
+			m_pending[slot] = event;
+		}
+
+		@Override
+		protected void onRepetition(int slot, Object event)
+		{
+			m_pending[slot] = event;
+		}
+
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			boolean output = false;
+			for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+			{
+				if (m_keys.isUsed(slot) && m_pending[slot] != null)
+				{
+					outputs.add(new Object[] {m_pending[slot]});
+					m_pending[slot] = null;
+					output = true;
+				}
+			}
+			return output;
+		}
+
+		@Override
+		protected void clear()
+		{
+			super.clear();
+			m_pending = new Object[16];
+		}
+
+		@Override
+		public Head duplicate(boolean with_state)
+		{
+			Head h = new Head(m_keyFunction.duplicate(), m_valueFunction.duplicate());
+			if (with_state)
+			{
+				copyInto(h);
+				h.m_pending = Arrays.copyOf(m_pending, m_pending.length);
+			}
+			return h;
+		}
+	}
+
+	/**
+	 * Removes the tail of stuttering sequences for each key: only the first
+	 * event of each sequence is output, as soon as it is received.
+	 * @see RemoveStutterTail
+	 */
+	public static class Tail extends KeyedRemoveStutter
+	{
+		/**
+		 * Creates a new instance of the processor.
+		 * @param key The function extracting the key from an event
+		 * @param value The function extracting the value from an event
+		 */
+		public Tail(Function key, Function value)
+		{
+			super(key, value);
+		}
+
+		@Override
+		protected void onNewSequence(int slot, Object event, Queue<Object[]> outputs)
+		{
+			outputs.add(new Object[] {event});
+		}
+
+		@Override
+		protected void onRepetition(int slot, Object event)
+		{
+			// Nothing to do
+		}
+
+		@Override
+		public Tail duplicate(boolean with_state)
+		{
+			Tail t = new Tail(m_keyFunction.duplicate(), m_valueFunction.duplicate());
+			if (with_state)
+			{
+				copyInto(t);
+			}
+			return t;
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.io.PrintStream;
+
+/**
+ * A histogram of non-negative integer values, such as durations in
+ * nanoseconds, whose buckets grow with the values, in the manner of
+ * Gil Tene's HdrHistogram. Each power of two is divided into the same number
+ * of buckets, so that the value reported for a bucket is always within a
+ * fixed relative error of the values it counts, from nanoseconds to hours.
+ * Values below the number of buckets per power of two are counted exactly.
+ * <p>
+ * All the buckets are allocated when the histogram is created; recording a
+ * value only increments a counter, and does not create any object. This
+ * makes the histogram suitable for measuring every event of a stream,
+ * unlike a {@link QuantileSketch}, which is more compact but has a higher
+ * cost per value. With the default precision, the histogram occupies about
+ * 60 kB and reports values within 0.8% of the true ones.
+ * <p>
+ * A histogram is not thread-safe; each thread should record into its own
+ * histogram, and the histograms should be combined with
+ * {@link #merge(LatencyHistogram)}.
+ *
+ * @author Sylvain Hallé
+ */
+public class LatencyHistogram
+{
+	/**
+	 * The default number of bits giving the number of buckets per power of
+	 * two.
+	 */
+	public static final int DEFAULT_PRECISION = 8;
+
+	/**
+	 * The number of bits giving the number of buckets per power of two.
+	 */
+	protected final int m_precision;
+
+	/**
+	 * Half the number of buckets per power of two.
+	 */
+	protected final int m_halfBuckets;
+
+	/**
+	 * The number of values in each bucket.
+	 */
+	/*@ non_null @*/ protected final long[] m_counts;
+
+	/**
+	 * The number of values recorded.
+	 */
+	protected long m_count;
+
+	/**
+	 * The sum of the values recorded.
+	 */
+	protected double m_sum;
+
+	/**
+	 * The minimum value recorded.
+	 */
+	protected long m_min;
+
+	/**
+	 * The maximum value recorded.
+	 */
+	protected long m_max;
+
+	/**
+	 * Creates a new empty histogram with the default precision.
+	 */
+	public LatencyHistogram()
+	{
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Creates a new empty histogram.
+	 * @param precision The number of bits giving the number of buckets per
+	 * power of two, between 2 and 16. The relative error of the values
+	 * reported is at most 2<sup>1-<i>precision</i></sup>.
+	 */
+	public LatencyHistogram(int precision)
+	{
+		super();
+		if (precision < 2 || precision > 16)
+		{
+			throw new IllegalArgumentException("Precision must be between 2 and 16");
+		}
+		m_precision = precision;
+		m_halfBuckets = 1 << (precision - 1);
+		m_counts = new long[getIndex(Long.MAX_VALUE) + 1];
+		clear();
+	}
+
+	/**
+	 * Clears the histogram.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < m_counts.length; i++)
+		{
+			m_counts[i] = 0;
+		}
+		m_count = 0;
+		m_sum = 0;
+		m_min = Long.MAX_VALUE;
+		m_max = 0;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * @param value The value
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+		m_counts[getIndex(value)]++;
+		m_count++;
+		m_sum += value;
+		if (value < m_min)
+		{
+			m_min = value;
+		}
+		if (value > m_max)
+		{
+			m_max = value;
+		}
+	}
+
+	/**
+	 * Adds the values of another histogram to this one. Both histograms must
+	 * have the same precision.
+	 * @param other The other histogram
+	 */
+	public void merge(/*@ non_null @*/ LatencyHistogram other)
+	{
+		if (other.m_precision != m_precision)
+		{
+			throw new IllegalArgumentException("Histograms must have the same precision");
+		}
+		for (int i = 0; i < m_counts.length; i++)
+		{
+			m_counts[i] += other.m_counts[i];
+		}
+		m_count += other.m_count;
+		m_sum += other.m_sum;
+		m_min = Math.min(m_min, other.m_min);
+		m_max = Math.max(m_max, other.m_max);
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * @return The number of values
+	 */
+	public long getCount()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Gets the minimum value recorded.
+	 * @return The value, or 0 if no value was recorded
+	 */
+	public long getMin()
+	{
+		return m_count == 0 ? 0 : m_min;
+	}
+
+	/**
+	 * Gets the maximum value recorded.
+	 * @return The value
+	 */
+	public long getMax()
+	{
+		return m_max;
+	}
+
+	/**
+	 * Gets the mean of the values recorded.
+	 * @return The mean, or 0 if no value was recorded
+	 */
+	public double getMean()
+	{
+		return m_count == 0 ? 0 : m_sum / m_count;
+	}
+
+	/**
+	 * Gets the value below which a given fraction of the values lie. The
+	 * value returned is the largest value of the bucket containing the
+	 * requested rank, but never more than the maximum value recorded.
+	 * @param fraction The fraction, in the interval [0,1]
+	 * @return The value, or 0 if no value was recorded
+	 */
+	public long getPercentile(double fraction)
+	{
+		if (m_count == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * m_count));
+		long seen = 0;
+		for (int i = 0; i < m_counts.length; i++)
+		{
+			seen += m_counts[i];
+			if (seen >= rank)
+			{
+				return Math.max(getMin(), Math.min(m_max, getUpperBound(i)));
+			}
+		}
+		return m_max;
+	}
+
+	/**
+	 * Gets the index of the bucket of a value.
+	 * @param value The value
+	 * @return The index
+	 */
+	protected int getIndex(long value)
+	{
+		int buckets = m_halfBuckets << 1;
+		if (value < buckets)
+		{
+			return (int) value;
+		}
+		// The power of two of the value, and the shift keeping the number of
+		// significant bits given by the precision
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - m_precision + 1;
+		return shift * m_halfBuckets + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets the largest value counted in a bucket.
+	 * @param index The index of the bucket
+	 * @return The value
+	 */
+	protected long getUpperBound(int index)
+	{
+		if (index < m_halfBuckets << 1)
+		{
+			return index;
+		}
+		int shift = index / m_halfBuckets - 1;
+		long sub = (index % m_halfBuckets) + m_halfBuckets;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Prints a summary of the histogram on a single line, with values divided
+	 * by a given unit.
+	 * @param ps The stream to print to
+	 * @param unit The value of a unit, for instance 1000000 to print
+	 * nanoseconds as milliseconds
+	 * @param suffix The name of the unit
+	 */
+	public void printSummary(/*@ non_null @*/ PrintStream ps, double unit, /*@ non_null @*/ String suffix)
+	{
+		ps.println(String.format("n=%d min=%.3f%s p50=%.3f%s p90=%.3f%s p99=%.3f%s p99.9=%.3f%s max=%.3f%s",
+				m_count, getMin() / unit, suffix, getPercentile(0.5) / unit, suffix, getPercentile(0.9) / unit, suffix,
+				getPercentile(0.99) / unit, suffix, getPercentile(0.999) / unit, suffix, getMax() / unit, suffix));
+	}
+
+	/**
+	 * Creates a copy of this histogram.
+	 * @return The copy
+	 */
+	/*@ non_null @*/ public LatencyHistogram duplicate()
+	{
+		LatencyHistogram h = new LatencyHistogram(m_precision);
+		h.merge(this);
+		return h;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "n=" + m_count + ", p50=" + getPercentile(0.5) + ", p99=" + getPercentile(0.99) + ", max=" + m_max;
+	}
+}
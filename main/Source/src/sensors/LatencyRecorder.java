@@ -0,0 +1,150 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Measures the latency of the events reaching a point of a pipeline fed by a
+ * {@link ReplaySource}. The recorder is placed before a sink (or anywhere
+ * else), and lets its events through unchanged; for each event, it records
+ * in a {@link LatencyHistogram} the time elapsed on the wall clock since the
+ * ingress of the input event it corresponds to. This correspondence is
+ * established in one of two ways:
+ * <ul>
+ * <li>Without a timestamp function, an output event corresponds to the last
+ * event released by the source. When the pipeline runs in a single thread,
+ * this is the event whose processing produced the output, and the latency
+ * is the time taken to process it.</li>
+ * <li>With a timestamp function, an output event corresponds to the input
+ * event having the timestamp carried by the output, and the latency is
+ * measured from the time at which this event was scheduled to enter the
+ * pipeline. This also counts the time a monitor waits before it can reach
+ * a verdict (for instance, until the window of a {@link CoOccurs} is over),
+ * and is the latency with which an alert is raised.</li>
+ * </ul>
+ * Recording a latency does not create any object.
+ *
+ * @author Sylvain Hallé
+ */
+public class LatencyRecorder extends SynchronousProcessor
+{
+	/**
+	 * The source whose ingress times are used.
+	 */
+	/*@ non_null @*/ protected final ReplaySource m_source;
+
+	/**
+	 * The function extracting the timestamp of an event, or {@code null} to
+	 * use the ingress of the last event released by the source.
+	 */
+	/*@ null @*/ protected final Function m_timestamp;
+
+	/**
+	 * The histogram of latencies, in nanoseconds.
+	 */
+	/*@ non_null @*/ protected final LatencyHistogram m_histogram;
+
+	/**
+	 * An array used to evaluate the timestamp function.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array used to evaluate the timestamp function.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new recorder measuring latency from the ingress of the last
+	 * event released by a source.
+	 * @param source The source
+	 */
+	public LatencyRecorder(/*@ non_null @*/ ReplaySource source)
+	{
+		this(source, null);
+	}
+
+	/**
+	 * Creates a new recorder measuring latency from the scheduled ingress of
+	 * the timestamp carried by each event.
+	 * @param source The source
+	 * @param timestamp The function extracting the timestamp of an event, in
+	 * milliseconds, or {@code null} to use the ingress of the last event
+	 * released by the source
+	 */
+	public LatencyRecorder(/*@ non_null @*/ ReplaySource source, /*@ null @*/ Function timestamp)
+	{
+		super(1, 1);
+		m_source = source;
+		m_timestamp = timestamp;
+		m_histogram = new LatencyHistogram();
+		m_in = new Object[1];
+		m_out = new Object[1];
+	}
+
+	/**
+	 * Gets the histogram of the latencies recorded.
+	 * @return The histogram, in nanoseconds
+	 */
+	/*@ non_null @*/ public LatencyHistogram getHistogram()
+	{
+		return m_histogram;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		long now = System.nanoTime();
+		long ingress;
+		if (m_timestamp == null)
+		{
+			ingress = m_source.getLastIngress();
+		}
+		else
+		{
+			m_in[0] = inputs[0];
+			m_timestamp.evaluate(m_in, m_out);
+			ingress = m_source.getIngress(((Number) m_out[0]).longValue());
+		}
+		m_histogram.record(now - ingress);
+		outputs.add(inputs);
+		return true;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_histogram.clear();
+	}
+
+	@Override
+	public LatencyRecorder duplicate(boolean with_state)
+	{
+		LatencyRecorder r = new LatencyRecorder(m_source, m_timestamp == null ? null : m_timestamp.duplicate(with_state));
+		if (with_state)
+		{
+			r.m_histogram.merge(m_histogram);
+		}
+		return r;
+	}
+}
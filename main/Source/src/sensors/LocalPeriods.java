@@ -0,0 +1,76 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.TimeZone;
+
+/**
+ * Computes the bounds of consecutive periods of time of fixed width (hours,
+ * days, weeks) aligned on the local time of a time zone, relative to an
+ * origin. Periods that contain a daylight saving time change are shorter or
+ * longer than their width; for instance, with a width of one day, each
+ * period starts at local midnight, and the days of a change last 23 or 25
+ * hours.
+ *
+ * @author Sylvain Hallé
+ */
+public class LocalPeriods
+{
+	private LocalPeriods()
+	{
+		super();
+	}
+
+	/**
+	 * Gets the start of the period containing a given moment.
+	 * @param ts The moment
+	 * @param width The width of each period, in milliseconds
+	 * @param origin The local time at which the first period starts
+	 * @param tz The time zone on which periods are aligned
+	 * @return The start of the period
+	 */
+	public static long getStart(long ts, long width, long origin, /*@ non_null @*/ TimeZone tz)
+	{
+		long local = ts + tz.getOffset(ts) - origin;
+		long start = ts - Math.floorMod(local, width);
+		// If the offset changes between the start of the period and the moment
+		// (i.e. a daylight saving time change), the start is off by the
+		// difference
+		return start - (tz.getOffset(start) - tz.getOffset(ts));
+	}
+
+	/**
+	 * Gets the start of the period that follows another one, which is also the
+	 * end of that period.
+	 * @param start The start of a period
+	 * @param width The width of each period, in milliseconds
+	 * @param origin The local time at which the first period starts
+	 * @param tz The time zone on which periods are aligned
+	 * @return The start of the next period
+	 */
+	public static long getNextStart(long start, long width, long origin, /*@ non_null @*/ TimeZone tz)
+	{
+		long next = getStart(start + width, width, origin, tz);
+		if (next > start)
+		{
+			return next;
+		}
+		// The period is longer than its width: skip the extra time
+		return getStart(start + width + tz.getOffset(start) - tz.getOffset(start + width), width, origin, tz);
+	}
+}
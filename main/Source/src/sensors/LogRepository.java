@@ -27,6 +27,11 @@ import ca.uqac.lif.fs.HardDisk;
  */
 public class LogRepository extends HardDisk
 {
+	/**
+	 * The root data folder.
+	 */
+	protected final String m_folder;
+
 	/**
 	 * The name of the (optional) sub-folder of the root data folder.
 	 */
@@ -35,15 +40,40 @@ public class LogRepository extends HardDisk
 	public LogRepository(String folder)
 	{
 		super(folder);
+		m_folder = folder;
 		m_subFolder = "";
 	}
 	
 	public LogRepository(String folder, String sub_folder) throws FileSystemException
 	{
 		super(folder);
+		m_folder = folder;
 		m_subFolder = sub_folder;
 	}
 	
+	/**
+	 * Gets the root data folder.
+	 * @return The folder
+	 */
+	public String getFolder()
+	{
+		return m_folder;
+	}
+	
+	/**
+	 * Creates a new repository on a folder located under the root data
+	 * folder. The new repository is distinct from this one, and can be used
+	 * concurrently.
+	 * @param sub_folder The path of the folder, relative to the root data
+	 * folder
+	 * @return The new repository, which is not yet open
+	 */
+	public LogRepository getRepository(String sub_folder)
+	{
+		String path = m_subFolder.isEmpty() ? sub_folder : m_subFolder + "/" + sub_folder;
+		return new LogRepository(m_folder + "/" + path);
+	}
+	
 	/**
 	 * Gets the name of the sub-folder of the root data folder.
 	 * @return The sub-folder
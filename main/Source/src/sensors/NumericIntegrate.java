@@ -0,0 +1,614 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Integrator specialized for numerical values. Contrary to {@link Integrate},
+ * which receives a {@link Function} on every event and applies it to a
+ * generic object, the descendants of this class update a state made of
+ * primitive <tt>double</tt> and <tt>long</tt> values, without allocating
+ * objects for each event other than the boxed output value.
+ * <p>
+ * All integrators can optionally be <em>keyed</em>: when a key function is
+ * given (for example {@link EventFormat#sensorId()}), a separate state is
+ * kept for each distinct key, and each output event is the integrated value
+ * for the key of the corresponding input event. This replaces a
+ * {@link ca.uqac.lif.cep.tmf.Slice Slice} containing one processor instance
+ * per sensor. The per-key states are stored in arrays indexed by the slots of
+ * a {@link KeyIndex}.
+ * <p>
+ * Input values that are not numbers are converted with
+ * {@link #toDouble(Object)}; values that cannot be converted are ignored,
+ * i.e. the processor outputs the current integrated value unchanged.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class NumericIntegrate extends UniformProcessor
+{
+	/**
+	 * Scaling factor converting a product of a quantity by milliseconds into
+	 * the same quantity by hours (e.g. W&middot;ms into Wh).
+	 */
+	public static final double MS_TO_HOURS = 1d / 3600000d;
+
+	/**
+	 * The function extracting the value to integrate from an event, or
+	 * {@code null} if the input event is the value itself.
+	 */
+	/*@ null @*/ protected final Function m_valueFunction;
+
+	/**
+	 * The function extracting the key from an event, or {@code null} if the
+	 * processor keeps a single state.
+	 */
+	/*@ null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The index associating each key to a slot in the arrays of state
+	 * values.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new integrator.
+	 * @param value The function extracting the value to integrate from an
+	 * event, or {@code null} if the input event is the value itself
+	 * @param key The function extracting the key from an event, or
+	 * {@code null} to keep a single state
+	 */
+	public NumericIntegrate(/*@ null @*/ Function value, /*@ null @*/ Function key)
+	{
+		super(1, 1);
+		m_valueFunction = value;
+		m_keyFunction = key;
+		m_keys = new KeyIndex();
+		m_in = new Object[1];
+		m_out = new Object[1];
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Object[] outputs)
+	{
+		Object event = inputs[0];
+		int slot = m_keyFunction == null ? m_keys.add(null) : m_keys.add(evaluate(m_keyFunction, event));
+		Object value = m_valueFunction == null ? event : evaluate(m_valueFunction, event);
+		outputs[0] = update(slot, event, toDouble(value));
+		return true;
+	}
+
+	/**
+	 * Updates the state of a slot upon a new event.
+	 * @param slot The slot
+	 * @param event The input event
+	 * @param value The numerical value extracted from the event, or
+	 * {@link Double#NaN} if the value is not a number
+	 * @return The output event
+	 */
+	protected abstract Object update(int slot, Object event, double value);
+
+	/**
+	 * Gets the integrated value for the state associated to a slot.
+	 * @param slot The slot
+	 * @return The value
+	 */
+	protected abstract double getValue(int slot);
+
+	/**
+	 * Gets the current integrated value for a given key.
+	 * @param key The key, or {@code null} for an integrator that is not keyed
+	 * @return The value, or {@link Double#NaN} if no event has been received
+	 * for this key
+	 */
+	public double getValueFor(Object key)
+	{
+		int slot = m_keys.get(key);
+		if (slot < 0)
+		{
+			return Double.NaN;
+		}
+		return getValue(slot);
+	}
+
+	/**
+	 * Gets the current integrated value for every key received so far.
+	 * @return A map from keys to values
+	 */
+	public Map<Object,Double> getValues()
+	{
+		Map<Object,Double> values = new HashMap<Object,Double>();
+		for (int i = 0; i < m_keys.getSlotCount(); i++)
+		{
+			if (m_keys.isUsed(i))
+			{
+				values.put(m_keys.getKey(i), getValue(i));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_keys.clear();
+	}
+
+	/**
+	 * Copies the state of this integrator into another one.
+	 * @param ni The other integrator
+	 * @param with_state Set to {@code true} to copy the state
+	 * @return The other integrator
+	 */
+	protected <T extends NumericIntegrate> T copyInto(T ni, boolean with_state)
+	{
+		if (with_state)
+		{
+			ni.m_keys = m_keys.duplicate();
+		}
+		return ni;
+	}
+
+	/**
+	 * Evaluates a unary function on an event, reusing the same argument
+	 * arrays.
+	 * @param f The function
+	 * @param event The event
+	 * @return The output value of the function
+	 */
+	protected Object evaluate(Function f, Object event)
+	{
+		m_in[0] = event;
+		f.evaluate(m_in, m_out);
+		return m_out[0];
+	}
+
+	/**
+	 * Converts an object into a <tt>double</tt>. The object can be a
+	 * {@link Number}, or a string starting with a number (such as
+	 * <tt>"21.5 °C"</tt>).
+	 * @param o The object
+	 * @return The number, or {@link Double#NaN} if the object cannot be
+	 * converted
+	 */
+	public static double toDouble(Object o)
+	{
+		if (o instanceof Number)
+		{
+			return ((Number) o).doubleValue();
+		}
+		if (o instanceof Boolean)
+		{
+			return ((Boolean) o) ? 1 : 0;
+		}
+		if (o instanceof String)
+		{
+			String s = ((String) o).trim();
+			int end = 0;
+			while (end < s.length() && "+-.0123456789eE".indexOf(s.charAt(end)) >= 0)
+			{
+				end++;
+			}
+			if (end == 0)
+			{
+				return Double.NaN;
+			}
+			try
+			{
+				return Double.parseDouble(end == s.length() ? s : s.substring(0, end));
+			}
+			catch (NumberFormatException e)
+			{
+				return Double.NaN;
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Integrator computing the running sum of the values.
+	 */
+	public static class Sum extends NumericIntegrate
+	{
+		/**
+		 * The running sum for each slot.
+		 */
+		/*@ non_null @*/ protected double[] m_sums;
+
+		/**
+		 * Creates a new running sum on a stream of numbers.
+		 */
+		public Sum()
+		{
+			this(null, null);
+		}
+
+		/**
+		 * Creates a new running sum.
+		 * @param value The function extracting the value to add from an event,
+		 * or {@code null} if the input event is the value itself
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} to keep a single sum
+		 */
+		public Sum(Function value, Function key)
+		{
+			super(value, key);
+			m_sums = new double[4];
+		}
+
+		@Override
+		protected Object update(int slot, Object event, double value)
+		{
+			m_sums = KeyIndex.ensure(m_sums, slot);
+			if (!Double.isNaN(value))
+			{
+				m_sums[slot] += value;
+			}
+			return m_sums[slot];
+		}
+
+		@Override
+		protected double getValue(int slot)
+		{
+			return m_sums[slot];
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			Arrays.fill(m_sums, 0);
+		}
+
+		@Override
+		public Sum duplicate(boolean with_state)
+		{
+			Sum s = copyInto(new Sum(m_valueFunction, m_keyFunction), with_state);
+			if (with_state)
+			{
+				s.m_sums = Arrays.copyOf(m_sums, m_sums.length);
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Integrator computing the running sum of the values, rounded to
+	 * <tt>long</tt> integers. This is typically used to add up counters.
+	 */
+	public static class LongSum extends NumericIntegrate
+	{
+		/**
+		 * The running sum for each slot.
+		 */
+		/*@ non_null @*/ protected long[] m_sums;
+
+		/**
+		 * Creates a new running sum on a stream of numbers.
+		 */
+		public LongSum()
+		{
+			this(null, null);
+		}
+
+		/**
+		 * Creates a new running sum.
+		 * @param value The function extracting the value to add from an event,
+		 * or {@code null} if the input event is the value itself
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} to keep a single sum
+		 */
+		public LongSum(Function value, Function key)
+		{
+			super(value, key);
+			m_sums = new long[4];
+		}
+
+		@Override
+		protected Object update(int slot, Object event, double value)
+		{
+			m_sums = KeyIndex.ensure(m_sums, slot);
+			if (!Double.isNaN(value))
+			{
+				m_sums[slot] += Math.round(value);
+			}
+			return m_sums[slot];
+		}
+
+		@Override
+		protected double getValue(int slot)
+		{
+			return m_sums[slot];
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			Arrays.fill(m_sums, 0);
+		}
+
+		@Override
+		public LongSum duplicate(boolean with_state)
+		{
+			LongSum s = copyInto(new LongSum(m_valueFunction, m_keyFunction), with_state);
+			if (with_state)
+			{
+				s.m_sums = Arrays.copyOf(m_sums, m_sums.length);
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Base class for integrators whose state depends on the time elapsed
+	 * between successive events.
+	 */
+	protected static abstract class TimeIntegrate extends NumericIntegrate
+	{
+		/**
+		 * The function extracting the (Unix) timestamp from an event.
+		 */
+		/*@ non_null @*/ protected final Function m_timestampFunction;
+
+		/**
+		 * The timestamp of the first event received for each slot.
+		 */
+		/*@ non_null @*/ protected long[] m_firstTimestamps;
+
+		/**
+		 * The timestamp of the last event received for each slot, or
+		 * {@link Long#MIN_VALUE} if no event has been received.
+		 */
+		/*@ non_null @*/ protected long[] m_lastTimestamps;
+
+		/**
+		 * The last value received for each slot.
+		 */
+		/*@ non_null @*/ protected double[] m_lastValues;
+
+		/**
+		 * The integral of the values over time for each slot.
+		 */
+		/*@ non_null @*/ protected double[] m_areas;
+
+		/**
+		 * Creates a new time integrator.
+		 * @param value The function extracting the value from an event, or
+		 * {@code null} if the input event is the value itself
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} to keep a single state
+		 */
+		public TimeIntegrate(Function value, Function timestamp, Function key)
+		{
+			super(value, key);
+			m_timestampFunction = timestamp;
+			m_firstTimestamps = new long[4];
+			m_lastTimestamps = new long[4];
+			m_lastValues = new double[4];
+			m_areas = new double[4];
+			Arrays.fill(m_lastTimestamps, Long.MIN_VALUE);
+		}
+
+		@Override
+		protected Object update(int slot, Object event, double value)
+		{
+			if (slot >= m_lastTimestamps.length)
+			{
+				int old_length = m_lastTimestamps.length;
+				m_firstTimestamps = KeyIndex.ensure(m_firstTimestamps, slot);
+				m_lastTimestamps = KeyIndex.ensure(m_lastTimestamps, slot);
+				m_lastValues = KeyIndex.ensure(m_lastValues, slot);
+				m_areas = KeyIndex.ensure(m_areas, slot);
+				Arrays.fill(m_lastTimestamps, old_length, m_lastTimestamps.length, Long.MIN_VALUE);
+			}
+			if (Double.isNaN(value))
+			{
+				return getValue(slot);
+			}
+			long ts = ((Number) evaluate(m_timestampFunction, event)).longValue();
+			if (m_lastTimestamps[slot] == Long.MIN_VALUE)
+			{
+				m_firstTimestamps[slot] = ts;
+				m_areas[slot] = 0;
+			}
+			else
+			{
+				m_areas[slot] += area(m_lastValues[slot], value, ts - m_lastTimestamps[slot]);
+			}
+			m_lastTimestamps[slot] = ts;
+			m_lastValues[slot] = value;
+			return getValue(slot);
+		}
+
+		/**
+		 * Computes the area added to the integral between two successive
+		 * events.
+		 * @param previous The value of the previous event
+		 * @param current The value of the current event
+		 * @param duration The time elapsed between the two events
+		 * @return The area
+		 */
+		protected abstract double area(double previous, double current, long duration);
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			Arrays.fill(m_lastTimestamps, Long.MIN_VALUE);
+			Arrays.fill(m_areas, 0);
+		}
+
+		/**
+		 * Copies the state of this integrator into another one.
+		 * @param ti The other integrator
+		 * @param with_state Set to {@code true} to copy the state
+		 * @return The other integrator
+		 */
+		protected <T extends TimeIntegrate> T copyTimeInto(T ti, boolean with_state)
+		{
+			copyInto(ti, with_state);
+			if (with_state)
+			{
+				ti.m_firstTimestamps = Arrays.copyOf(m_firstTimestamps, m_firstTimestamps.length);
+				ti.m_lastTimestamps = Arrays.copyOf(m_lastTimestamps, m_lastTimestamps.length);
+				ti.m_lastValues = Arrays.copyOf(m_lastValues, m_lastValues.length);
+				ti.m_areas = Arrays.copyOf(m_areas, m_areas.length);
+			}
+			return ti;
+		}
+	}
+
+	/**
+	 * Integrator computing the time-weighted average of a value. Each value is
+	 * assumed to hold until the next event (i.e. the signal is a step
+	 * function), and the output is the integral of this signal divided by the
+	 * time elapsed since the first event. Before any time has elapsed, the
+	 * output is the first value received.
+	 */
+	public static class TimeWeightedAverage extends TimeIntegrate
+	{
+		/**
+		 * Creates a new time-weighted average.
+		 * @param value The function extracting the value from an event, or
+		 * {@code null} if the input event is the value itself
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} to keep a single average
+		 */
+		public TimeWeightedAverage(Function value, Function timestamp, Function key)
+		{
+			super(value, timestamp, key);
+		}
+
+		/**
+		 * Creates a new time-weighted average that is not keyed.
+		 * @param value The function extracting the value from an event
+		 * @param timestamp The function extracting the timestamp from an event
+		 */
+		public TimeWeightedAverage(Function value, Function timestamp)
+		{
+			this(value, timestamp, null);
+		}
+
+		@Override
+		protected double area(double previous, double current, long duration)
+		{
+			return previous * duration;
+		}
+
+		@Override
+		protected double getValue(int slot)
+		{
+			if (m_lastTimestamps[slot] == Long.MIN_VALUE)
+			{
+				return Double.NaN;
+			}
+			long elapsed = m_lastTimestamps[slot] - m_firstTimestamps[slot];
+			if (elapsed <= 0)
+			{
+				return m_lastValues[slot];
+			}
+			return m_areas[slot] / elapsed;
+		}
+
+		@Override
+		public TimeWeightedAverage duplicate(boolean with_state)
+		{
+			return copyTimeInto(new TimeWeightedAverage(m_valueFunction, m_timestampFunction, m_keyFunction), with_state);
+		}
+	}
+
+	/**
+	 * Integrator computing the integral of a value over time with the
+	 * trapezoidal rule. For example, integrating instantaneous power readings
+	 * (in W) with a scale of {@link NumericIntegrate#MS_TO_HOURS MS_TO_HOURS}
+	 * produces the energy consumed (in Wh).
+	 */
+	public static class Trapezoid extends TimeIntegrate
+	{
+		/**
+		 * The factor by which the product of a value by a duration in
+		 * milliseconds is multiplied.
+		 */
+		protected final double m_scale;
+
+		/**
+		 * Creates a new trapezoidal integrator.
+		 * @param value The function extracting the value from an event, or
+		 * {@code null} if the input event is the value itself
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} to keep a single integral
+		 * @param scale The factor by which the product of a value by a duration
+		 * in milliseconds is multiplied
+		 */
+		public Trapezoid(Function value, Function timestamp, Function key, double scale)
+		{
+			super(value, timestamp, key);
+			m_scale = scale;
+		}
+
+		/**
+		 * Creates a new trapezoidal integrator that is not keyed.
+		 * @param value The function extracting the value from an event
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param scale The factor by which the product of a value by a duration
+		 * in milliseconds is multiplied
+		 */
+		public Trapezoid(Function value, Function timestamp, double scale)
+		{
+			this(value, timestamp, null, scale);
+		}
+
+		@Override
+		protected double area(double previous, double current, long duration)
+		{
+			return (previous + current) / 2 * duration * m_scale;
+		}
+
+		@Override
+		protected double getValue(int slot)
+		{
+			return m_areas[slot];
+		}
+
+		@Override
+		public Trapezoid duplicate(boolean with_state)
+		{
+			return copyTimeInto(new Trapezoid(m_valueFunction, m_timestampFunction, m_keyFunction, m_scale), with_state);
+		}
+	}
+}
@@ -0,0 +1,842 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Collects runtime metrics about the processors of a pipeline, in order to
+ * find which of them is responsible when the pipeline is slow. A processor
+ * is instrumented by passing it to {@link #watch(String, Processor)} when the
+ * pipeline is built, and by connecting the {@link Probe} that is returned in
+ * its place:
+ * <pre>
+ * ProcessorMetrics metrics = new ProcessorMetrics();
+ * Processor reorder = metrics.watch("reorder", new Reorder(ts, 60000));
+ * Processor slice = metrics.watch("slice", new Slice(key,
+ *   metrics.watch("per-sensor", new RemoveStutterHead())));
+ * Connector.connect(feeder, reorder, slice);
+ * </pre>
+ * Since a processor keeps no reference to the processors upstream of it, a
+ * graph cannot be instrumented once it is connected; processors inside a
+ * {@code GroupProcessor} or used as the slice of a {@code Slice} are watched
+ * in the same way, before they are added to their enclosing processor.
+ * <p>
+ * For each name, a {@link Record} accumulates the number of events received
+ * and produced, the number of calls to the processor, the cumulative time
+ * spent in these calls, and a {@link QuantileSketch} of the duration of a
+ * call, from which percentiles are obtained. The time of a call only covers
+ * the work of the watched processor (and of the processors it contains),
+ * and not that of the processors downstream. The record also gives the
+ * number of events waiting in the input queues of the processor, and the
+ * number of copies of the processor made by duplication; for the slice of a
+ * {@code Slice}, this is the number of keys for which a slice is alive.
+ * <p>
+ * The records can be read directly, printed as text or CSV (once or
+ * periodically with {@link #startDump(PrintStream, long, boolean)}),
+ * registered as MBeans so that they can be observed with a JMX console, or
+ * exported as a graph in the DOT format of Graphviz where processors are
+ * colored by cost.
+ * <p>
+ * The overhead of a probe amounts to two calls to {@link System#nanoTime()},
+ * an uncontended lock and the hand-off of the output events through a
+ * queue, which makes it reasonable to leave the instrumentation on in
+ * production. Probes given the same name share the same record, which
+ * makes it possible to aggregate the metrics of pipelines running in
+ * different threads.
+ *
+ * @author Sylvain Hallé
+ */
+public class ProcessorMetrics
+{
+	/**
+	 * The header of the CSV produced by {@link #printCsv(PrintStream)}.
+	 */
+	public static final String CSV_HEADER = "Time,Processor,Events in,Events out,Calls,Total time (ms),p50 (µs),p90 (µs),p99 (µs),Max (µs),Queue,Max queue,Instances";
+
+	/**
+	 * The records, indexed by name, in the order in which they were created.
+	 */
+	/*@ non_null @*/ protected final Map<String,Record> m_records;
+
+	/**
+	 * The probes that were returned by {@link #watch(String, Processor)}.
+	 * Their duplicates are not included.
+	 */
+	/*@ non_null @*/ protected final List<Probe> m_probes;
+
+	/**
+	 * The names under which the records are registered as MBeans.
+	 */
+	/*@ non_null @*/ protected final List<ObjectName> m_mbeans;
+
+	/**
+	 * The executor periodically printing the records, if any.
+	 */
+	/*@ null @*/ protected ScheduledExecutorService m_dump;
+
+	/**
+	 * Creates a new empty collection of metrics.
+	 */
+	public ProcessorMetrics()
+	{
+		super();
+		m_records = new LinkedHashMap<String,Record>();
+		m_probes = new ArrayList<Probe>();
+		m_mbeans = new ArrayList<ObjectName>();
+	}
+
+	/**
+	 * Instruments a processor. The probe that is returned must be used in
+	 * place of the processor when building the pipeline.
+	 * @param name The name of the processor in the metrics. If a record
+	 * with this name already exists, it is shared with the new probe.
+	 * @param p The processor to instrument
+	 * @return The probe wrapping the processor
+	 */
+	/*@ non_null @*/ public Probe watch(/*@ non_null @*/ String name, /*@ non_null @*/ Processor p)
+	{
+		Record r;
+		synchronized (m_records)
+		{
+			r = m_records.get(name);
+			if (r == null)
+			{
+				r = new Record(name);
+				m_records.put(name, r);
+			}
+		}
+		Probe probe = new Probe(p, r, true);
+		synchronized (m_probes)
+		{
+			m_probes.add(probe);
+		}
+		return probe;
+	}
+
+	/**
+	 * Gets the record of a processor.
+	 * @param name The name of the processor
+	 * @return The record, or {@code null} if no processor is watched under
+	 * this name
+	 */
+	/*@ null @*/ public Record getRecord(/*@ non_null @*/ String name)
+	{
+		synchronized (m_records)
+		{
+			return m_records.get(name);
+		}
+	}
+
+	/**
+	 * Gets all the records, in the order in which they were created.
+	 * @return The records
+	 */
+	/*@ non_null @*/ public List<Record> getRecords()
+	{
+		synchronized (m_records)
+		{
+			return new ArrayList<Record>(m_records.values());
+		}
+	}
+
+	/**
+	 * Clears the metrics accumulated by all the records.
+	 */
+	public void clear()
+	{
+		for (Record r : getRecords())
+		{
+			r.clear();
+		}
+	}
+
+	/**
+	 * Prints the records as a human-readable table, one processor per line.
+	 * @param ps The stream to print to
+	 */
+	public void printText(/*@ non_null @*/ PrintStream ps)
+	{
+		ps.println(String.format("%-20s %12s %12s %12s %10s %10s %10s %8s %8s", "Processor", "In", "Out", "Time (ms)", "p50 (µs)", "p99 (µs)", "Max (µs)", "Queue", "Inst."));
+		for (Record r : getRecords())
+		{
+			synchronized (r)
+			{
+				ps.println(String.format("%-20s %12d %12d %12.1f %10.1f %10.1f %10.1f %8d %8d", r.m_name, r.m_eventsIn, r.m_eventsOut, r.m_time / 1e6, r.getPercentile(0.5), r.getPercentile(0.99), r.getMaxTime(), r.m_queue, r.m_instances));
+			}
+		}
+		ps.flush();
+	}
+
+	/**
+	 * Prints the records as lines of CSV (without the header), one processor
+	 * per line. The first column is the current system time, so that the
+	 * lines of successive dumps can be appended to the same file.
+	 * @param ps The stream to print to
+	 */
+	public void printCsvLines(/*@ non_null @*/ PrintStream ps)
+	{
+		long now = System.currentTimeMillis();
+		for (Record r : getRecords())
+		{
+			synchronized (r)
+			{
+				ps.println(now + "," + r.m_name + "," + r.m_eventsIn + "," + r.m_eventsOut + "," + r.m_calls + "," + r.m_time / 1e6 + "," + r.getPercentile(0.5) + "," + r.getPercentile(0.9) + "," + r.getPercentile(0.99) + "," + r.getMaxTime() + "," + r.m_queue + "," + r.m_maxQueue + "," + r.m_instances);
+			}
+		}
+		ps.flush();
+	}
+
+	/**
+	 * Prints the records as CSV, preceded by {@link #CSV_HEADER}.
+	 * @param ps The stream to print to
+	 */
+	public void printCsv(/*@ non_null @*/ PrintStream ps)
+	{
+		ps.println(CSV_HEADER);
+		printCsvLines(ps);
+	}
+
+	/**
+	 * Starts printing the records periodically, in a background thread. Only
+	 * one periodic dump can be active at a time; starting a new one stops the
+	 * previous.
+	 * @param ps The stream to print to
+	 * @param period The interval between two dumps, in milliseconds
+	 * @param csv Set to {@code true} to print lines of CSV (the header is
+	 * printed once, at the start), {@code false} to print a table
+	 */
+	public void startDump(/*@ non_null @*/ final PrintStream ps, long period, final boolean csv)
+	{
+		stopDump();
+		if (csv)
+		{
+			ps.println(CSV_HEADER);
+		}
+		m_dump = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "ProcessorMetrics dump");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		m_dump.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run()
+			{
+				if (csv)
+				{
+					printCsvLines(ps);
+				}
+				else
+				{
+					printText(ps);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the periodic printing of the records, if it is active.
+	 */
+	public void stopDump()
+	{
+		if (m_dump != null)
+		{
+			m_dump.shutdownNow();
+			m_dump = null;
+		}
+	}
+
+	/**
+	 * Registers each record as an MBean of the platform MBean server, under
+	 * the name <tt>sensors:type=ProcessorMetrics,name=</tt><i>name</i>.
+	 * Records created after this call are not registered.
+	 * @throws JMException If a record cannot be registered
+	 */
+	public void registerMBeans() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (Record r : getRecords())
+		{
+			ObjectName on = new ObjectName("sensors:type=ProcessorMetrics,name=" + ObjectName.quote(r.m_name));
+			server.registerMBean(new StandardMBean(r, RecordMBean.class), on);
+			m_mbeans.add(on);
+		}
+	}
+
+	/**
+	 * Unregisters the MBeans registered by {@link #registerMBeans()}.
+	 * @throws JMException If an MBean cannot be unregistered
+	 */
+	public void unregisterMBeans() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName on : m_mbeans)
+		{
+			if (server.isRegistered(on))
+			{
+				server.unregisterMBean(on);
+			}
+		}
+		m_mbeans.clear();
+	}
+
+	/**
+	 * Prints the watched processors as a graph in the DOT format of Graphviz.
+	 * Each processor is a box labeled with its metrics, and filled with a
+	 * color depending on its share of the total time, using the scale of
+	 * {@link HighlightedGraph}. An edge is drawn between two processors when
+	 * an output of the first is connected to an input of the second.
+	 * @param ps The stream to print to
+	 */
+	public void printDot(/*@ non_null @*/ PrintStream ps)
+	{
+		List<Record> records = getRecords();
+		Map<Record,Integer> ids = new LinkedHashMap<Record,Integer>();
+		long max_time = 0;
+		for (Record r : records)
+		{
+			ids.put(r, ids.size());
+			max_time = Math.max(max_time, r.getTotalTime());
+		}
+		ps.println("digraph G {");
+		ps.println("  node [shape=box,style=filled,fontname=\"Helvetica\"];");
+		for (Record r : records)
+		{
+			float fraction = max_time == 0 ? 0 : (float) r.getTotalTime() / (float) max_time;
+			StringBuilder label = new StringBuilder();
+			synchronized (r)
+			{
+				label.append(r.m_name).append("\\n");
+				label.append("in: ").append(r.m_eventsIn).append(", out: ").append(r.m_eventsOut).append("\\n");
+				label.append(String.format("%.1f ms, p99: %.1f µs", r.m_time / 1e6, r.getPercentile(0.99)));
+				if (r.m_instances > 0)
+				{
+					label.append("\\ninstances: ").append(r.m_instances);
+				}
+			}
+			// Light text on the darker colors of the scale
+			String font = fraction < 0.5 ? "white" : "black";
+			ps.println("  " + ids.get(r) + " [label=\"" + label + "\",fillcolor=\"" + HighlightedGraph.getColor(fraction) + "\",fontcolor=\"" + font + "\"];");
+		}
+		List<Probe> probes;
+		synchronized (m_probes)
+		{
+			probes = new ArrayList<Probe>(m_probes);
+		}
+		for (Probe p : probes)
+		{
+			for (int i = 0; i < p.getOutputArity(); i++)
+			{
+				Pushable out = p.getPushableOutput(i);
+				if (out == null || !(out.getProcessor() instanceof Probe))
+				{
+					continue;
+				}
+				Probe to = (Probe) out.getProcessor();
+				ps.println("  " + ids.get(p.m_record) + " -> " + ids.get(to.m_record) + ";");
+			}
+		}
+		ps.println("}");
+		ps.flush();
+	}
+
+	/**
+	 * The attributes of a {@link Record} exposed through JMX.
+	 */
+	public interface RecordMBean
+	{
+		/**
+		 * Gets the name of the processor.
+		 * @return The name
+		 */
+		public String getName();
+
+		/**
+		 * Gets the number of events received by the processor.
+		 * @return The number of events
+		 */
+		public long getEventsIn();
+
+		/**
+		 * Gets the number of events produced by the processor.
+		 * @return The number of events
+		 */
+		public long getEventsOut();
+
+		/**
+		 * Gets the number of calls to the processor.
+		 * @return The number of calls
+		 */
+		public long getCalls();
+
+		/**
+		 * Gets the cumulative time spent in the processor.
+		 * @return The time, in nanoseconds
+		 */
+		public long getTotalTime();
+
+		/**
+		 * Gets the median duration of a call to the processor.
+		 * @return The duration, in microseconds
+		 */
+		public double getP50();
+
+		/**
+		 * Gets the 90th percentile of the duration of a call to the processor.
+		 * @return The duration, in microseconds
+		 */
+		public double getP90();
+
+		/**
+		 * Gets the 99th percentile of the duration of a call to the processor.
+		 * @return The duration, in microseconds
+		 */
+		public double getP99();
+
+		/**
+		 * Gets the longest duration of a call to the processor.
+		 * @return The duration, in microseconds
+		 */
+		public double getMaxTime();
+
+		/**
+		 * Gets the number of events waiting in the input queues of the
+		 * processor after its last call.
+		 * @return The number of events
+		 */
+		public int getQueue();
+
+		/**
+		 * Gets the largest number of events observed in the input queues of the
+		 * processor.
+		 * @return The number of events
+		 */
+		public int getMaxQueue();
+
+		/**
+		 * Gets the number of copies of the processor currently alive.
+		 * @return The number of copies
+		 */
+		public int getInstances();
+	}
+
+	/**
+	 * The metrics of one watched processor. The record is updated by the
+	 * probes under its lock, and can therefore be read by another thread
+	 * while the pipeline runs.
+	 */
+	public static class Record implements RecordMBean
+	{
+		/**
+		 * The name of the processor.
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The number of events received by the processor.
+		 */
+		protected long m_eventsIn;
+
+		/**
+		 * The number of events produced by the processor.
+		 */
+		protected long m_eventsOut;
+
+		/**
+		 * The number of calls to the processor.
+		 */
+		protected long m_calls;
+
+		/**
+		 * The cumulative time spent in the processor, in nanoseconds.
+		 */
+		protected long m_time;
+
+		/**
+		 * A summary of the duration of the calls, in nanoseconds.
+		 */
+		/*@ non_null @*/ protected final QuantileSketch m_durations;
+
+		/**
+		 * The number of events waiting in the input queues of the processor
+		 * after its last call.
+		 */
+		protected int m_queue;
+
+		/**
+		 * The largest number of events observed in the input queues.
+		 */
+		protected int m_maxQueue;
+
+		/**
+		 * The number of copies of the processor made by duplication since the
+		 * original probe was last reset.
+		 */
+		protected int m_instances;
+
+		/**
+		 * Creates a new empty record.
+		 * @param name The name of the processor
+		 */
+		public Record(/*@ non_null @*/ String name)
+		{
+			super();
+			m_name = name;
+			m_durations = new QuantileSketch();
+		}
+
+		/**
+		 * Adds the metrics of a call to the processor.
+		 * @param in The number of events received in the call
+		 * @param out The number of events produced in the call
+		 * @param duration The duration of the call, in nanoseconds
+		 * @param queue The number of events waiting in the input queues after
+		 * the call
+		 */
+		protected synchronized void update(int in, int out, long duration, int queue)
+		{
+			m_eventsIn += in;
+			m_eventsOut += out;
+			m_calls++;
+			m_time += duration;
+			m_durations.add(duration);
+			m_queue = queue;
+			m_maxQueue = Math.max(m_maxQueue, queue);
+		}
+
+		/**
+		 * Changes the number of copies of the processor.
+		 * @param delta The number of copies to add, or a negative number to
+		 * reset the count to 0
+		 */
+		protected synchronized void addInstances(int delta)
+		{
+			m_instances = delta < 0 ? 0 : m_instances + delta;
+		}
+
+		/**
+		 * Clears the metrics of the record, except the number of copies of
+		 * the processor, which is a current value and not an accumulated one.
+		 */
+		public synchronized void clear()
+		{
+			m_eventsIn = 0;
+			m_eventsOut = 0;
+			m_calls = 0;
+			m_time = 0;
+			m_durations.clear();
+			m_queue = 0;
+			m_maxQueue = 0;
+		}
+
+		/**
+		 * Gets a percentile of the duration of a call to the processor.
+		 * @param fraction The fraction, in the interval [0,1]
+		 * @return The duration, in microseconds, or 0 if the processor was
+		 * never called
+		 */
+		public synchronized double getPercentile(double fraction)
+		{
+			if (m_calls == 0)
+			{
+				return 0;
+			}
+			return m_durations.getQuantile(fraction) / 1000d;
+		}
+
+		@Override
+		public String getName()
+		{
+			return m_name;
+		}
+
+		@Override
+		public synchronized long getEventsIn()
+		{
+			return m_eventsIn;
+		}
+
+		@Override
+		public synchronized long getEventsOut()
+		{
+			return m_eventsOut;
+		}
+
+		@Override
+		public synchronized long getCalls()
+		{
+			return m_calls;
+		}
+
+		@Override
+		public synchronized long getTotalTime()
+		{
+			return m_time;
+		}
+
+		@Override
+		public double getP50()
+		{
+			return getPercentile(0.5);
+		}
+
+		@Override
+		public double getP90()
+		{
+			return getPercentile(0.9);
+		}
+
+		@Override
+		public double getP99()
+		{
+			return getPercentile(0.99);
+		}
+
+		@Override
+		public synchronized double getMaxTime()
+		{
+			if (m_calls == 0)
+			{
+				return 0;
+			}
+			return m_durations.getMax() / 1000d;
+		}
+
+		@Override
+		public synchronized int getQueue()
+		{
+			return m_queue;
+		}
+
+		@Override
+		public synchronized int getMaxQueue()
+		{
+			return m_maxQueue;
+		}
+
+		@Override
+		public synchronized int getInstances()
+		{
+			return m_instances;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_name;
+		}
+	}
+
+	/**
+	 * A processor standing in place of a watched processor. The probe has the
+	 * same arity as the processor it wraps; each input front is pushed to the
+	 * wrapped processor, whose output is collected in an internal queue and
+	 * then passed downstream, so that the time measured for a call excludes
+	 * the processors that follow.
+	 * <p>
+	 * A duplicate of a probe wraps a duplicate of the processor and updates
+	 * the same {@link Record}; the number of copies alive in the record is
+	 * incremented on each duplication, and reset when the original probe is
+	 * reset. This is how the number of live slices of a {@code Slice} is
+	 * obtained.
+	 */
+	public static class Probe extends SynchronousProcessor
+	{
+		/**
+		 * The watched processor.
+		 */
+		/*@ non_null @*/ protected final Processor m_processor;
+
+		/**
+		 * The record updated by the probe.
+		 */
+		/*@ non_null @*/ protected final Record m_record;
+
+		/**
+		 * A sink collecting the output of the watched processor.
+		 */
+		/*@ non_null @*/ protected final QueueSink m_sink;
+
+		/**
+		 * The input pushables of the watched processor.
+		 */
+		/*@ non_null @*/ protected final Pushable[] m_inputs;
+
+		/**
+		 * Whether this probe was returned by
+		 * {@link ProcessorMetrics#watch(String, Processor)}, as opposed to
+		 * being a duplicate.
+		 */
+		protected final boolean m_original;
+
+		/**
+		 * Creates a new probe.
+		 * @param p The watched processor
+		 * @param r The record updated by the probe
+		 * @param original Whether this probe is an original and not a duplicate
+		 */
+		protected Probe(/*@ non_null @*/ Processor p, /*@ non_null @*/ Record r, boolean original)
+		{
+			super(p.getInputArity(), p.getOutputArity());
+			m_processor = p;
+			m_record = r;
+			m_original = original;
+			m_inputs = new Pushable[p.getInputArity()];
+			for (int i = 0; i < m_inputs.length; i++)
+			{
+				m_inputs[i] = p.getPushableInput(i);
+			}
+			m_sink = new QueueSink(Math.max(1, p.getOutputArity()));
+			for (int i = 0; i < p.getOutputArity(); i++)
+			{
+				Connector.connect(p, i, m_sink, i);
+			}
+		}
+
+		/**
+		 * Gets the watched processor.
+		 * @return The processor
+		 */
+		/*@ non_null @*/ public Processor getProcessor()
+		{
+			return m_processor;
+		}
+
+		/**
+		 * Gets the record updated by this probe.
+		 * @return The record
+		 */
+		/*@ non_null @*/ public Record getRecord()
+		{
+			return m_record;
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			long start = System.nanoTime();
+			for (int i = 0; i < inputs.length; i++)
+			{
+				m_inputs[i].push(inputs[i]);
+			}
+			long duration = System.nanoTime() - start;
+			m_record.update(inputs.length, collect(outputs), duration, getQueueSize());
+			return true;
+		}
+
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			long start = System.nanoTime();
+			for (Pushable p : m_inputs)
+			{
+				p.notifyEndOfTrace();
+			}
+			long duration = System.nanoTime() - start;
+			int produced = collect(outputs);
+			m_record.update(0, produced, duration, getQueueSize());
+			return produced > 0;
+		}
+
+		/**
+		 * Moves the fronts of events collected from the watched processor to
+		 * the output queue of the probe.
+		 * @param outputs The output queue
+		 * @return The number of events moved
+		 */
+		protected int collect(Queue<Object[]> outputs)
+		{
+			int arity = getOutputArity();
+			if (arity == 0)
+			{
+				return 0;
+			}
+			int produced = 0;
+			Queue<Object> first = m_sink.getQueue(0);
+			while (!first.isEmpty())
+			{
+				Object[] front = new Object[arity];
+				for (int i = 0; i < arity; i++)
+				{
+					front[i] = m_sink.getQueue(i).remove();
+				}
+				outputs.add(front);
+				produced += arity;
+			}
+			return produced;
+		}
+
+		/**
+		 * Gets the number of events waiting in the input queues of the probe.
+		 * @return The number of events
+		 */
+		protected int getQueueSize()
+		{
+			int size = 0;
+			for (Queue<Object> q : m_inputQueues)
+			{
+				size += q.size();
+			}
+			return size;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_processor.reset();
+			m_sink.reset();
+			if (m_original)
+			{
+				m_record.addInstances(-1);
+			}
+		}
+
+		@Override
+		public Probe duplicate(boolean with_state)
+		{
+			m_record.addInstances(1);
+			return new Probe(m_processor.duplicate(with_state), m_record, false);
+		}
+	}
+}
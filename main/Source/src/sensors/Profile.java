@@ -0,0 +1,419 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Computes the numerical profile of each sensor in a single pass over a
+ * stream of events. For each key (typically a sensor ID), the processor keeps
+ * the number of values, their minimum, maximum, mean and variance (using
+ * Welford's online algorithm), and a {@link QuantileSketch} giving
+ * approximate quartiles. Each event only updates the state of its own key in
+ * constant time.
+ * <p>
+ * Contrary to a {@link ca.uqac.lif.cep.tmf.Slice Slice} whose slices compute
+ * {@link BoxAndWhiskers} on the set of all values seen so far, and from which
+ * only the last output is kept, the processor does not output anything while
+ * it receives events. At the end of the trace, it outputs a single map
+ * associating each key to its {@link Summary}. The profile can also be
+ * obtained at any moment by calling {@link #getProfile()}. Input values that
+ * are not numbers are converted with {@link NumericIntegrate#toDouble(Object)}
+ * and ignored if they cannot be converted.
+ *
+ * @author Sylvain Hallé
+ */
+public class Profile extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The function extracting the value from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_valueFunction;
+
+	/**
+	 * The parameter <i>k</i> of the sketches computing the quantiles.
+	 */
+	protected final int m_k;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The number of values for each key.
+	 */
+	/*@ non_null @*/ protected long[] m_count;
+
+	/**
+	 * The minimum value for each key.
+	 */
+	/*@ non_null @*/ protected double[] m_min;
+
+	/**
+	 * The maximum value for each key.
+	 */
+	/*@ non_null @*/ protected double[] m_max;
+
+	/**
+	 * The mean of the values for each key.
+	 */
+	/*@ non_null @*/ protected double[] m_mean;
+
+	/**
+	 * The sum of squared differences from the mean for each key.
+	 */
+	/*@ non_null @*/ protected double[] m_m2;
+
+	/**
+	 * The quantile sketch for each key.
+	 */
+	/*@ non_null @*/ protected QuantileSketch[] m_sketches;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor, using sketches with the default
+	 * accuracy.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 */
+	public Profile(Function key, Function value)
+	{
+		this(key, value, QuantileSketch.DEFAULT_K);
+	}
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 * @param k The parameter <i>k</i> of the sketches computing the quantiles
+	 */
+	public Profile(Function key, Function value, int k)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_valueFunction = value;
+		m_k = k;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		m_valueFunction.evaluate(m_in, m_out);
+		double x = NumericIntegrate.toDouble(m_out[0]);
+		if (Double.isNaN(x))
+		{
+			return true;
+		}
+		m_keyFunction.evaluate(m_in, m_out);
+		int slot = getSlot(m_out[0]);
+		long n = ++m_count[slot];
+		if (n == 1 || x < m_min[slot])
+		{
+			m_min[slot] = x;
+		}
+		if (n == 1 || x > m_max[slot])
+		{
+			m_max[slot] = x;
+		}
+		double delta = x - m_mean[slot];
+		m_mean[slot] += delta / n;
+		m_m2[slot] += delta * (x - m_mean[slot]);
+		m_sketches[slot].add(x);
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		outputs.add(new Object[] {getProfile()});
+		return true;
+	}
+
+	/**
+	 * Gets the profile of all keys seen so far.
+	 * @return A map associating each key to its summary
+	 */
+	/*@ non_null @*/ public Map<Object,Summary> getProfile()
+	{
+		Map<Object,Summary> profile = new HashMap<Object,Summary>();
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (m_keys.isUsed(slot))
+			{
+				profile.put(m_keys.getKey(slot), getSummary(slot));
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Gets the profile of a single key.
+	 * @param key The key
+	 * @return The summary, or {@code null} if the key has not been seen
+	 */
+	/*@ null @*/ public Summary getProfile(Object key)
+	{
+		int slot = m_keys.get(key);
+		if (slot < 0)
+		{
+			return null;
+		}
+		return getSummary(slot);
+	}
+
+	/**
+	 * Creates the summary of a slot.
+	 * @param slot The slot
+	 * @return The summary
+	 */
+	protected Summary getSummary(int slot)
+	{
+		long n = m_count[slot];
+		double variance = n > 1 ? m_m2[slot] / (n - 1) : 0;
+		return new Summary(n, m_min[slot], m_max[slot], m_mean[slot], variance, m_sketches[slot].getFiveNumberSummary());
+	}
+
+	/**
+	 * Gets the slot of a key, allocating its state if the key has not been
+	 * seen before.
+	 * @param key The key
+	 * @return The slot
+	 */
+	protected int getSlot(Object key)
+	{
+		int slot = m_keys.get(key);
+		if (slot >= 0)
+		{
+			return slot;
+		}
+		slot = m_keys.add(key);
+		if (slot >= m_count.length)
+		{
+			m_count = KeyIndex.ensure(m_count, slot);
+			m_min = KeyIndex.ensure(m_min, slot);
+			m_max = KeyIndex.ensure(m_max, slot);
+			m_mean = KeyIndex.ensure(m_mean, slot);
+			m_m2 = KeyIndex.ensure(m_m2, slot);
+			m_sketches = KeyIndex.ensure(m_sketches, slot);
+		}
+		m_count[slot] = 0;
+		m_min[slot] = 0;
+		m_max[slot] = 0;
+		m_mean[slot] = 0;
+		m_m2[slot] = 0;
+		m_sketches[slot] = new QuantileSketch(m_k);
+		return slot;
+	}
+
+	/**
+	 * Empties the state of all keys.
+	 */
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_count = new long[16];
+		m_min = new double[16];
+		m_max = new double[16];
+		m_mean = new double[16];
+		m_m2 = new double[16];
+		m_sketches = new QuantileSketch[16];
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public Profile duplicate(boolean with_state)
+	{
+		Profile p = new Profile(m_keyFunction.duplicate(), m_valueFunction.duplicate(), m_k);
+		if (with_state)
+		{
+			p.m_keys = m_keys.duplicate();
+			p.m_count = Arrays.copyOf(m_count, m_count.length);
+			p.m_min = Arrays.copyOf(m_min, m_min.length);
+			p.m_max = Arrays.copyOf(m_max, m_max.length);
+			p.m_mean = Arrays.copyOf(m_mean, m_mean.length);
+			p.m_m2 = Arrays.copyOf(m_m2, m_m2.length);
+			p.m_sketches = new QuantileSketch[m_sketches.length];
+			for (int i = 0; i < m_sketches.length; i++)
+			{
+				if (m_sketches[i] != null)
+				{
+					p.m_sketches[i] = m_sketches[i].duplicate();
+				}
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * The numerical profile of a single sensor.
+	 */
+	public static class Summary
+	{
+		/**
+		 * The number of values.
+		 */
+		protected final long m_count;
+
+		/**
+		 * The minimum value.
+		 */
+		protected final double m_min;
+
+		/**
+		 * The maximum value.
+		 */
+		protected final double m_max;
+
+		/**
+		 * The mean of the values.
+		 */
+		protected final double m_mean;
+
+		/**
+		 * The sample variance of the values.
+		 */
+		protected final double m_variance;
+
+		/**
+		 * The approximate five-number summary of the values.
+		 */
+		/*@ non_null @*/ protected final Number[] m_quartiles;
+
+		/**
+		 * Creates a new summary.
+		 * @param count The number of values
+		 * @param min The minimum value
+		 * @param max The maximum value
+		 * @param mean The mean of the values
+		 * @param variance The sample variance of the values
+		 * @param quartiles The five-number summary of the values
+		 */
+		public Summary(long count, double min, double max, double mean, double variance, Number[] quartiles)
+		{
+			super();
+			m_count = count;
+			m_min = min;
+			m_max = max;
+			m_mean = mean;
+			m_variance = variance;
+			m_quartiles = quartiles;
+		}
+
+		/**
+		 * Gets the number of values.
+		 * @return The number of values
+		 */
+		public long getCount()
+		{
+			return m_count;
+		}
+
+		/**
+		 * Gets the minimum value.
+		 * @return The minimum
+		 */
+		public double getMin()
+		{
+			return m_min;
+		}
+
+		/**
+		 * Gets the maximum value.
+		 * @return The maximum
+		 */
+		public double getMax()
+		{
+			return m_max;
+		}
+
+		/**
+		 * Gets the mean of the values.
+		 * @return The mean
+		 */
+		public double getMean()
+		{
+			return m_mean;
+		}
+
+		/**
+		 * Gets the sample variance of the values.
+		 * @return The variance
+		 */
+		public double getVariance()
+		{
+			return m_variance;
+		}
+
+		/**
+		 * Gets the standard deviation of the values.
+		 * @return The standard deviation
+		 */
+		public double getStandardDeviation()
+		{
+			return Math.sqrt(m_variance);
+		}
+
+		/**
+		 * Gets the approximate five-number summary of the values, in the same
+		 * format as the output of {@link BoxAndWhiskers}.
+		 * @return The minimum, first quartile, median, third quartile and
+		 * maximum
+		 */
+		/*@ non_null @*/ public Number[] getQuartiles()
+		{
+			return m_quartiles;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "n=" + m_count + ", mean=" + m_mean + ", sd=" + getStandardDeviation() + ", " + Arrays.toString(m_quartiles);
+		}
+	}
+}
@@ -0,0 +1,631 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+
+/**
+ * A summary of a stream of numbers that answers approximate quantile queries
+ * in bounded memory. The sketch follows the principle of the KLL sketch
+ * (Karnin, Lang and Liberty, 2016): values are stored in a hierarchy of
+ * buffers, where an item at level <i>h</i> stands for 2<sup><i>h</i></sup>
+ * values of the stream. When the buffers are full, the lowest buffer that
+ * exceeds its capacity is sorted, and every other item is promoted to the
+ * next level while the others are discarded.
+ * <p>
+ * The accuracy of the sketch is controlled by a parameter <i>k</i>: the
+ * sketch keeps at most about 3<i>k</i> values, regardless of the number of
+ * values it receives, and the rank of a value returned by
+ * {@link #getQuantile(double)} is typically within 2/<i>k</i> of the
+ * requested fraction (see {@link #forError(double)}). As long as fewer than
+ * <i>k</i> values have been received, quantiles are computed exactly, in the
+ * same way as {@link BoxAndWhiskers}. The minimum and maximum values are
+ * always exact.
+ * <p>
+ * Two sketches can be combined with {@link #merge(QuantileSketch)}; the
+ * result summarizes the union of both streams with the same error bound.
+ * This makes it possible to compute a sketch for each day file, each
+ * instance of a {@link ca.uqac.lif.cep.tmf.Slice Slice} or each thread, and
+ * to combine them afterwards. A sketch is not thread-safe; each thread should
+ * update its own sketch, and the sketches should be merged at the end.
+ * <p>
+ * Compaction alternates deterministically between keeping the items at even
+ * and at odd positions, so that the same stream always produces the same
+ * sketch.
+ *
+ * @author Sylvain Hallé
+ */
+public class QuantileSketch
+{
+	/**
+	 * The default value of parameter <i>k</i>.
+	 */
+	public static final int DEFAULT_K = 200;
+
+	/**
+	 * The minimum capacity of a level.
+	 */
+	protected static final int MIN_CAPACITY = 8;
+
+	/**
+	 * The ratio between the capacity of a level and that of the level above.
+	 */
+	protected static final double RATIO = 2d / 3d;
+
+	/**
+	 * The parameter controlling the accuracy of the sketch.
+	 */
+	protected final int m_k;
+
+	/**
+	 * The items stored at each level.
+	 */
+	/*@ non_null @*/ protected double[][] m_items;
+
+	/**
+	 * The number of items stored at each level.
+	 */
+	/*@ non_null @*/ protected int[] m_sizes;
+
+	/**
+	 * The number of levels in use.
+	 */
+	protected int m_levels;
+
+	/**
+	 * The number of values received by the sketch.
+	 */
+	protected long m_count;
+
+	/**
+	 * The minimum value received.
+	 */
+	protected double m_min;
+
+	/**
+	 * The maximum value received.
+	 */
+	protected double m_max;
+
+	/**
+	 * A flag alternating between compactions, used to decide whether the
+	 * items at even or at odd positions are kept.
+	 */
+	protected boolean m_odd;
+
+	/**
+	 * Creates a new empty sketch with the default value of <i>k</i>.
+	 */
+	public QuantileSketch()
+	{
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Creates a new empty sketch.
+	 * @param k The parameter controlling the accuracy of the sketch; must be
+	 * at least {@value #MIN_CAPACITY}
+	 */
+	public QuantileSketch(int k)
+	{
+		super();
+		if (k < MIN_CAPACITY)
+		{
+			throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY);
+		}
+		m_k = k;
+		clear();
+	}
+
+	/**
+	 * Creates a new empty sketch whose rank error is approximately bounded by
+	 * a given fraction.
+	 * @param epsilon The rank error, as a fraction between 0 and 1 (e.g. 0.01
+	 * for 1%)
+	 * @return The sketch
+	 */
+	/*@ non_null @*/ public static QuantileSketch forError(double epsilon)
+	{
+		if (epsilon <= 0 || epsilon >= 1)
+		{
+			throw new IllegalArgumentException("The error must be between 0 and 1");
+		}
+		return new QuantileSketch(Math.max(MIN_CAPACITY, (int) Math.ceil(2d / epsilon)));
+	}
+
+	/**
+	 * Gets the value of the parameter <i>k</i> of this sketch.
+	 * @return The value of <i>k</i>
+	 */
+	public int getK()
+	{
+		return m_k;
+	}
+
+	/**
+	 * Empties the sketch.
+	 */
+	public void clear()
+	{
+		m_items = new double[][] {new double[m_k]};
+		m_sizes = new int[1];
+		m_levels = 1;
+		m_count = 0;
+		m_min = Double.NaN;
+		m_max = Double.NaN;
+		m_odd = false;
+	}
+
+	/**
+	 * Adds a value to the sketch. Values that are not a number are ignored.
+	 * @param x The value
+	 */
+	public void add(double x)
+	{
+		if (Double.isNaN(x))
+		{
+			return;
+		}
+		if (m_count == 0 || x < m_min)
+		{
+			m_min = x;
+		}
+		if (m_count == 0 || x > m_max)
+		{
+			m_max = x;
+		}
+		m_count++;
+		append(0, x);
+		compress();
+	}
+
+	/**
+	 * Adds the contents of another sketch to this sketch. The other sketch is
+	 * not modified.
+	 * @param other The other sketch
+	 */
+	public void merge(/*@ non_null @*/ QuantileSketch other)
+	{
+		if (other.m_count == 0)
+		{
+			return;
+		}
+		if (m_count == 0 || other.m_min < m_min)
+		{
+			m_min = other.m_min;
+		}
+		if (m_count == 0 || other.m_max > m_max)
+		{
+			m_max = other.m_max;
+		}
+		m_count += other.m_count;
+		for (int h = 0; h < other.m_levels; h++)
+		{
+			for (int i = 0; i < other.m_sizes[h]; i++)
+			{
+				append(h, other.m_items[h][i]);
+			}
+		}
+		compress();
+	}
+
+	/**
+	 * Creates a new sketch summarizing the union of a collection of sketches.
+	 * @param sketches The sketches
+	 * @return The merged sketch; its value of <i>k</i> is that of the first
+	 * sketch of the collection, or the default if the collection is empty
+	 */
+	/*@ non_null @*/ public static QuantileSketch merge(/*@ non_null @*/ Collection<?> sketches)
+	{
+		QuantileSketch merged = null;
+		for (Object o : sketches)
+		{
+			QuantileSketch s = (QuantileSketch) o;
+			if (merged == null)
+			{
+				merged = new QuantileSketch(s.m_k);
+			}
+			merged.merge(s);
+		}
+		return merged == null ? new QuantileSketch() : merged;
+	}
+
+	/**
+	 * Gets the number of values received by the sketch.
+	 * @return The number of values
+	 */
+	public long getCount()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Gets the minimum value received by the sketch.
+	 * @return The minimum, or {@link Double#NaN} if the sketch is empty
+	 */
+	public double getMin()
+	{
+		return m_min;
+	}
+
+	/**
+	 * Gets the maximum value received by the sketch.
+	 * @return The maximum, or {@link Double#NaN} if the sketch is empty
+	 */
+	public double getMax()
+	{
+		return m_max;
+	}
+
+	/**
+	 * Gets the number of values currently retained by the sketch.
+	 * @return The number of values
+	 */
+	public int getRetained()
+	{
+		int n = 0;
+		for (int h = 0; h < m_levels; h++)
+		{
+			n += m_sizes[h];
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the approximate value at a given fraction of the sorted stream.
+	 * @param fraction The fraction, between 0 (minimum) and 1 (maximum)
+	 * @return The value, or {@link Double#NaN} if the sketch is empty
+	 */
+	public double getQuantile(double fraction)
+	{
+		if (m_count == 0)
+		{
+			return Double.NaN;
+		}
+		if (fraction <= 0)
+		{
+			return m_min;
+		}
+		if (fraction >= 1)
+		{
+			return m_max;
+		}
+		if (m_levels == 1)
+		{
+			// No value has been discarded yet: compute the exact quantile
+			double[] sorted = Arrays.copyOf(m_items[0], m_sizes[0]);
+			Arrays.sort(sorted);
+			return getPercentile(sorted, fraction);
+		}
+		int n = getRetained();
+		double[] values = new double[n];
+		long[] weights = new long[n];
+		double[] merged_values = new double[n];
+		long[] merged_weights = new long[n];
+		int len = 0;
+		for (int h = 0; h < m_levels; h++)
+		{
+			// Merge the sorted items of the level into the sorted prefix
+			double[] level = Arrays.copyOf(m_items[h], m_sizes[h]);
+			Arrays.sort(level);
+			long w = 1l << h;
+			int i = 0, j = 0, k = 0;
+			while (i < len || j < level.length)
+			{
+				if (j == level.length || (i < len && values[i] <= level[j]))
+				{
+					merged_values[k] = values[i];
+					merged_weights[k++] = weights[i++];
+				}
+				else
+				{
+					merged_values[k] = level[j++];
+					merged_weights[k++] = w;
+				}
+			}
+			len = k;
+			double[] tv = values;
+			values = merged_values;
+			merged_values = tv;
+			long[] tw = weights;
+			weights = merged_weights;
+			merged_weights = tw;
+		}
+		double target = fraction * m_count;
+		long cumulative = 0;
+		for (int i = 0; i < n; i++)
+		{
+			cumulative += weights[i];
+			if (cumulative >= target)
+			{
+				return values[i];
+			}
+		}
+		return m_max;
+	}
+
+	/**
+	 * Gets the five-number summary of the values received by the sketch.
+	 * @return An array containing, in order, the minimum, the first quartile,
+	 * the median, the third quartile and the maximum
+	 * @see BoxAndWhiskers
+	 */
+	/*@ non_null @*/ public Number[] getFiveNumberSummary()
+	{
+		return new Number[] {getQuantile(0), getQuantile(0.25), getQuantile(0.5), getQuantile(0.75), getQuantile(1)};
+	}
+
+	/**
+	 * Creates a copy of this sketch.
+	 * @return The copy
+	 */
+	/*@ non_null @*/ public QuantileSketch duplicate()
+	{
+		QuantileSketch s = new QuantileSketch(m_k);
+		s.m_items = new double[m_items.length][];
+		for (int h = 0; h < m_items.length; h++)
+		{
+			s.m_items[h] = Arrays.copyOf(m_items[h], m_items[h].length);
+		}
+		s.m_sizes = Arrays.copyOf(m_sizes, m_sizes.length);
+		s.m_levels = m_levels;
+		s.m_count = m_count;
+		s.m_min = m_min;
+		s.m_max = m_max;
+		s.m_odd = m_odd;
+		return s;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(getFiveNumberSummary()) + " (n=" + m_count + ")";
+	}
+
+	/**
+	 * Appends an item to a level, creating the level and growing its array if
+	 * necessary.
+	 * @param h The level
+	 * @param x The item
+	 */
+	protected void append(int h, double x)
+	{
+		if (h >= m_levels)
+		{
+			if (h >= m_items.length)
+			{
+				m_items = Arrays.copyOf(m_items, h + 1);
+				m_sizes = Arrays.copyOf(m_sizes, h + 1);
+			}
+			for (int i = m_levels; i <= h; i++)
+			{
+				if (m_items[i] == null)
+				{
+					m_items[i] = new double[MIN_CAPACITY];
+				}
+			}
+			m_levels = h + 1;
+		}
+		if (m_sizes[h] == m_items[h].length)
+		{
+			m_items[h] = Arrays.copyOf(m_items[h], m_items[h].length * 2);
+		}
+		m_items[h][m_sizes[h]++] = x;
+	}
+
+	/**
+	 * Compacts levels until the number of retained items fits the total
+	 * capacity of the sketch.
+	 */
+	protected void compress()
+	{
+		while (getRetained() > getTotalCapacity())
+		{
+			for (int h = 0; h < m_levels; h++)
+			{
+				if (m_sizes[h] >= getCapacity(h))
+				{
+					compact(h);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compacts a level: its items are sorted, and every other item is
+	 * promoted to the next level. If the level has an odd number of items,
+	 * the largest one stays at its level.
+	 * @param h The level
+	 */
+	protected void compact(int h)
+	{
+		double[] items = m_items[h];
+		int size = m_sizes[h];
+		Arrays.sort(items, 0, size);
+		int kept = size % 2;
+		int even = size - kept;
+		int start = m_odd ? 1 : 0;
+		m_odd = !m_odd;
+		for (int i = start; i < even; i += 2)
+		{
+			append(h + 1, items[i]);
+		}
+		items = m_items[h];
+		if (kept == 1)
+		{
+			items[0] = items[size - 1];
+		}
+		m_sizes[h] = kept;
+	}
+
+	/**
+	 * Gets the capacity of a level. The top level has capacity <i>k</i>, and
+	 * the capacity of each level below decreases geometrically.
+	 * @param h The level
+	 * @return The capacity
+	 */
+	protected int getCapacity(int h)
+	{
+		int depth = m_levels - 1 - h;
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(m_k * Math.pow(RATIO, depth)));
+	}
+
+	/**
+	 * Gets the sum of the capacities of all levels.
+	 * @return The total capacity
+	 */
+	protected int getTotalCapacity()
+	{
+		int total = 0;
+		for (int h = 0; h < m_levels; h++)
+		{
+			total += getCapacity(h);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the value corresponding to a fraction of a sorted array of
+	 * numbers, interpolating between the two surrounding values if necessary.
+	 * @param sorted The array, sorted in ascending order
+	 * @param fraction The fraction, between 0 and 1
+	 * @return The value
+	 */
+	protected static double getPercentile(double[] sorted, double fraction)
+	{
+		double rank = fraction * (sorted.length - 1);
+		int lower = (int) Math.floor(rank);
+		int upper = (int) Math.ceil(rank);
+		if (lower == upper)
+		{
+			return sorted[lower];
+		}
+		return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+	}
+
+	/**
+	 * Processor that adds each numerical input event to a sketch, and outputs
+	 * the sketch itself. This is the bounded-memory counterpart of
+	 * {@link ca.uqac.lif.cep.util.Sets.PutInto Sets.PutInto}, to be used in
+	 * combination with {@link BoxAndWhiskers.FromSketch}. Input events that
+	 * are not numbers are converted with
+	 * {@link NumericIntegrate#toDouble(Object)}, and ignored if they cannot be
+	 * converted.
+	 */
+	public static class PutInto extends UniformProcessor
+	{
+		/**
+		 * The sketch updated by the processor.
+		 */
+		/*@ non_null @*/ protected QuantileSketch m_sketch;
+
+		/**
+		 * Creates a new instance of the processor with the default value of
+		 * <i>k</i>.
+		 */
+		public PutInto()
+		{
+			this(DEFAULT_K);
+		}
+
+		/**
+		 * Creates a new instance of the processor.
+		 * @param k The parameter controlling the accuracy of the sketch
+		 */
+		public PutInto(int k)
+		{
+			super(1, 1);
+			m_sketch = new QuantileSketch(k);
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Object[] outputs)
+		{
+			m_sketch.add(NumericIntegrate.toDouble(inputs[0]));
+			outputs[0] = m_sketch;
+			return true;
+		}
+
+		/**
+		 * Gets the sketch updated by this processor.
+		 * @return The sketch
+		 */
+		/*@ non_null @*/ public QuantileSketch getSketch()
+		{
+			return m_sketch;
+		}
+
+		@Override
+		public void reset()
+		{
+			super.reset();
+			m_sketch.clear();
+		}
+
+		@Override
+		public PutInto duplicate(boolean with_state)
+		{
+			PutInto p = new PutInto(m_sketch.m_k);
+			if (with_state)
+			{
+				p.m_sketch = m_sketch.duplicate();
+			}
+			return p;
+		}
+	}
+
+	/**
+	 * Function that merges a collection of sketches into a new sketch. A
+	 * typical use is to combine the values of the map produced by a
+	 * {@link ca.uqac.lif.cep.tmf.Slice Slice} whose slices each output a
+	 * sketch.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static class Merge extends UnaryFunction<Collection,QuantileSketch>
+	{
+		/**
+		 * A single publicly visible instance of the function.
+		 */
+		public static final transient Merge instance = new Merge();
+
+		/**
+		 * Creates a new instance of the function.
+		 */
+		protected Merge()
+		{
+			super(Collection.class, QuantileSketch.class);
+		}
+
+		@Override
+		public QuantileSketch getValue(Collection c)
+		{
+			return merge(c);
+		}
+
+		@Override
+		public Merge duplicate(boolean with_state)
+		{
+			return instance;
+		}
+	}
+}
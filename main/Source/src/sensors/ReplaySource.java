@@ -0,0 +1,304 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static sensors.EventFormat.evaluateUnary;
+
+import java.util.Queue;
+import java.util.concurrent.locks.LockSupport;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.tmf.Source;
+
+/**
+ * Source replaying the events of another source in real time, or at a
+ * multiple of real time. The source reads the timestamp of each event, and
+ * waits before releasing it until the same duration has elapsed on the
+ * wall clock since the first event, divided by the speed of the replay. At
+ * a speed of 100, one hour of events is therefore replayed in 36 seconds;
+ * at {@link #MAX_SPEED}, events are released as fast as they are read. If
+ * the pipeline cannot keep up, events are released as soon as possible, and
+ * the largest delay with respect to the schedule is recorded
+ * ({@link #getMaxLag()}). Events whose timestamp is earlier than that of an
+ * event already released are not held back, and are not counted as late.
+ * <p>
+ * The source stamps the wall-clock time at which it releases each event,
+ * without modifying the event, so that the processors of the pipeline need
+ * not be changed: the time of the last event released is given by
+ * {@link #getLastIngress()}, and the time at which the event with a given
+ * timestamp is scheduled to be released is given by
+ * {@link #getIngress(long)}. A {@link LatencyRecorder} placed before a sink
+ * uses either of them to measure how long after its ingress an output is
+ * produced.
+ * <p>
+ * The source reads from any feeder, such as those returned by
+ * {@link EventFormat#getFeeder(java.io.InputStream)}. It can be pulled, or
+ * it can push all its events to the processors connected to it when
+ * {@link #start()} is called, in the same way as a {@link SpliceSource}.
+ *
+ * @author Sylvain Hallé
+ */
+public class ReplaySource extends Source
+{
+	/**
+	 * The speed at which events are released without waiting.
+	 */
+	public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+	/**
+	 * The shortest wait, in nanoseconds, for which the thread is parked;
+	 * shorter waits are done by spinning, as parking is not precise enough.
+	 */
+	protected static final long SPIN_THRESHOLD = 200000;
+
+	/**
+	 * The source whose events are replayed.
+	 */
+	/*@ non_null @*/ protected final Pullable m_input;
+
+	/**
+	 * The function extracting the timestamp of an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestamp;
+
+	/**
+	 * The speed of the replay, relative to real time.
+	 */
+	protected final double m_speed;
+
+	/**
+	 * The span of event time replayed, in milliseconds, or a negative value
+	 * to replay all the events.
+	 */
+	protected long m_span = -1;
+
+	/**
+	 * The timestamp of the first event.
+	 */
+	protected long m_firstTimestamp;
+
+	/**
+	 * The wall-clock time at which the first event was released, in
+	 * nanoseconds.
+	 */
+	protected volatile long m_firstIngress;
+
+	/**
+	 * The wall-clock time at which the last event was released, in
+	 * nanoseconds.
+	 */
+	protected volatile long m_lastIngress;
+
+	/**
+	 * The largest timestamp of the events released so far.
+	 */
+	protected long m_maxTimestamp;
+
+	/**
+	 * The largest delay of an event with respect to its schedule, in
+	 * nanoseconds.
+	 */
+	protected long m_maxLag;
+
+	/**
+	 * The number of events released.
+	 */
+	protected long m_count;
+
+	/**
+	 * Creates a new replay source.
+	 * @param feeder The source whose events are replayed
+	 * @param timestamp The function extracting the timestamp of an event, in
+	 * milliseconds
+	 * @param speed The speed of the replay, relative to real time, or
+	 * {@link #MAX_SPEED}
+	 */
+	public ReplaySource(/*@ non_null @*/ Processor feeder, /*@ non_null @*/ Function timestamp, double speed)
+	{
+		super(1);
+		if (speed <= 0)
+		{
+			throw new IllegalArgumentException("The speed must be positive");
+		}
+		m_input = feeder.getPullableOutput(0);
+		m_timestamp = timestamp;
+		m_speed = speed;
+		m_count = 0;
+	}
+
+	/**
+	 * Limits the replay to the events within a span of time after the first
+	 * event.
+	 * @param span The span, in milliseconds
+	 * @return This source
+	 */
+	/*@ non_null @*/ public ReplaySource setSpan(long span)
+	{
+		m_span = span;
+		return this;
+	}
+
+	/**
+	 * Gets the speed of the replay.
+	 * @return The speed, relative to real time
+	 */
+	public double getSpeed()
+	{
+		return m_speed;
+	}
+
+	/**
+	 * Gets the wall-clock time at which the last event was released.
+	 * @return The time, on the scale of {@link System#nanoTime()}, or 0 if no
+	 * event was released yet
+	 */
+	public long getLastIngress()
+	{
+		return m_lastIngress;
+	}
+
+	/**
+	 * Gets the wall-clock time at which an event with a given timestamp is
+	 * scheduled to be released. At {@link #MAX_SPEED}, there is no schedule,
+	 * and the method returns the time at which the last event was released.
+	 * @param timestamp The timestamp, in milliseconds
+	 * @return The time, on the scale of {@link System#nanoTime()}
+	 */
+	public long getIngress(long timestamp)
+	{
+		if (Double.isInfinite(m_speed))
+		{
+			return m_lastIngress;
+		}
+		return m_firstIngress + (long) ((timestamp - m_firstTimestamp) * 1000000d / m_speed);
+	}
+
+	/**
+	 * Gets the largest delay with which an event was released with respect to
+	 * its schedule. A large value indicates that the pipeline cannot keep up
+	 * with the speed of the replay.
+	 * @return The delay, in nanoseconds
+	 */
+	public long getMaxLag()
+	{
+		return m_maxLag;
+	}
+
+	/**
+	 * Gets the number of events released.
+	 * @return The number of events
+	 */
+	public long getCount()
+	{
+		return m_count;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		Object o = getNextEvent();
+		if (o == null)
+		{
+			return false;
+		}
+		outputs.add(new Object[] {o});
+		return true;
+	}
+
+	@Override
+	public void start()
+	{
+		super.start();
+		Pushable p = getPushableOutput(0);
+		Object o;
+		while ((o = getNextEvent()) != null)
+		{
+			p.push(o);
+		}
+		p.notifyEndOfTrace();
+	}
+
+	/**
+	 * Reads the next event of the input, and waits until it is time to
+	 * release it.
+	 * @return The event, or {@code null} if there are no more events to
+	 * replay
+	 */
+	/*@ null @*/ protected Object getNextEvent()
+	{
+		if (!m_input.hasNext())
+		{
+			return null;
+		}
+		Object o = m_input.pull();
+		long ts = ((Number) evaluateUnary(m_timestamp, o)).longValue();
+		if (m_count == 0)
+		{
+			m_firstTimestamp = ts;
+			m_maxTimestamp = ts;
+			m_firstIngress = System.nanoTime();
+		}
+		else if (m_span >= 0 && ts - m_firstTimestamp > m_span)
+		{
+			return null;
+		}
+		long now = System.nanoTime();
+		if (!Double.isInfinite(m_speed))
+		{
+			// An out of order event is due as soon as the last event released,
+			// and not at its own (past) schedule, which would count as lag
+			long due = getIngress(Math.max(ts, m_maxTimestamp));
+			now = waitUntil(due);
+			m_maxLag = Math.max(m_maxLag, now - due);
+		}
+		m_maxTimestamp = Math.max(m_maxTimestamp, ts);
+		m_lastIngress = now;
+		m_count++;
+		return o;
+	}
+
+	/**
+	 * Waits until a given time. The thread is parked for most of the wait,
+	 * and spins for the last moments.
+	 * @param due The time, on the scale of {@link System#nanoTime()}
+	 * @return The time at which the wait ended
+	 */
+	protected static long waitUntil(long due)
+	{
+		long now = System.nanoTime();
+		while (now < due)
+		{
+			long remaining = due - now;
+			if (remaining > SPIN_THRESHOLD)
+			{
+				LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+			}
+			now = System.nanoTime();
+		}
+		return now;
+	}
+
+	@Override
+	public ReplaySource duplicate(boolean with_state)
+	{
+		throw new UnsupportedOperationException("This source cannot be duplicated");
+	}
+}
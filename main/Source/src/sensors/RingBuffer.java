@@ -0,0 +1,369 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue passing objects from exactly one producer thread to
+ * exactly one consumer thread, without locks. The objects are stored in an
+ * array used circularly; the producer and the consumer each own a counter
+ * (the number of objects written and read so far), which the other thread
+ * only reads. Each thread also keeps its last reading of the other's
+ * counter, and only reads it again when this reading says that the queue
+ * is full (or empty), so that the two threads rarely touch the same memory.
+ * <p>
+ * Objects are handed over in batches on both sides:
+ * <ul>
+ * <li>the producer makes the objects it writes visible to the consumer
+ * every <i>b</i> objects, where <i>b</i> is the batch size given when the
+ * queue is created, or when it calls {@link #flush()};</li>
+ * <li>the consumer takes all the objects available at once, up to the size
+ * of the array it gives to {@link #take(Object[])}, and frees their space
+ * in a single step.</li>
+ * </ul>
+ * A batch size larger than 1 lowers the cost of each object, but delays the
+ * objects of an incomplete batch until the producer writes more objects or
+ * flushes the queue.
+ * <p>
+ * When the queue is full (or empty), the producer (or consumer) waits
+ * according to a {@link Wait} strategy: by spinning, which gives the lowest
+ * latency but keeps a processor busy, or by spinning briefly and then
+ * parking the thread for short periods. Either thread can {@link #close()}
+ * the queue, for instance when it fails, after which a thread waiting on
+ * the queue, or trying to use it, gets an exception instead of waiting
+ * forever.
+ *
+ * @param <T> The type of the objects in the queue
+ * @author Sylvain Hallé
+ */
+public class RingBuffer<T>
+{
+	/**
+	 * The ways in which a thread waits for the queue.
+	 */
+	public enum Wait
+	{
+		/**
+		 * Spin on the processor until the queue is ready.
+		 */
+		SPIN,
+
+		/**
+		 * Spin briefly, yield, and then park the thread for short periods.
+		 */
+		BLOCK
+	}
+
+	/**
+	 * The number of attempts during which a blocking thread spins.
+	 */
+	protected static final int SPIN_TRIES = 100;
+
+	/**
+	 * The number of attempts after which a blocking thread is parked.
+	 */
+	protected static final int YIELD_TRIES = 200;
+
+	/**
+	 * The duration for which a blocking thread is parked, in nanoseconds.
+	 */
+	protected static final long PARK_NANOS = 50000;
+
+	/**
+	 * The slots of the queue.
+	 */
+	/*@ non_null @*/ protected final Object[] m_slots;
+
+	/**
+	 * The mask giving the slot of a position.
+	 */
+	protected final int m_mask;
+
+	/**
+	 * The number of objects written by the producer before they are made
+	 * visible to the consumer.
+	 */
+	protected final int m_batchSize;
+
+	/**
+	 * The strategy of the threads waiting for the queue.
+	 */
+	/*@ non_null @*/ protected final Wait m_wait;
+
+	/**
+	 * The number of objects read by the consumer. Only the consumer writes
+	 * this counter.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_head;
+
+	/**
+	 * The number of objects made visible by the producer. Only the producer
+	 * writes this counter.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_tail;
+
+	/**
+	 * The number of objects written by the producer, including those not yet
+	 * visible. Only used by the producer.
+	 */
+	protected long m_written;
+
+	/**
+	 * The last value written to {@link #m_tail}. Only used by the producer.
+	 */
+	protected long m_published;
+
+	/**
+	 * The last value of {@link #m_head} read by the producer.
+	 */
+	protected long m_cachedHead;
+
+	/**
+	 * The last value of {@link #m_tail} read by the consumer.
+	 */
+	protected long m_cachedTail;
+
+	/**
+	 * Whether the queue is closed.
+	 */
+	protected volatile boolean m_closed;
+
+	/**
+	 * Creates a new queue handing over objects one by one.
+	 * @param capacity The capacity of the queue, rounded up to a power of 2
+	 * @param wait The strategy of the threads waiting for the queue
+	 */
+	public RingBuffer(int capacity, /*@ non_null @*/ Wait wait)
+	{
+		this(capacity, 1, wait);
+	}
+
+	/**
+	 * Creates a new queue.
+	 * @param capacity The capacity of the queue, rounded up to a power of 2
+	 * @param batch_size The number of objects written by the producer before
+	 * they are made visible to the consumer
+	 * @param wait The strategy of the threads waiting for the queue
+	 */
+	public RingBuffer(int capacity, int batch_size, /*@ non_null @*/ Wait wait)
+	{
+		super();
+		if (capacity < 1 || capacity > 1 << 30)
+		{
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		if (batch_size < 1 || batch_size > capacity)
+		{
+			throw new IllegalArgumentException("The batch size must be between 1 and the capacity");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		m_slots = new Object[size];
+		m_mask = size - 1;
+		m_batchSize = batch_size;
+		m_wait = wait;
+		m_head = new AtomicLong();
+		m_tail = new AtomicLong();
+	}
+
+	/**
+	 * Gets the capacity of the queue.
+	 * @return The capacity
+	 */
+	public int getCapacity()
+	{
+		return m_slots.length;
+	}
+
+	/**
+	 * Gets the number of objects visible to the consumer and not yet taken.
+	 * The value is approximate when the queue is in use.
+	 * @return The number of objects
+	 */
+	public int size()
+	{
+		return (int) (m_tail.get() - m_head.get());
+	}
+
+	/**
+	 * Adds an object to the queue if there is room for it. Called by the
+	 * producer only.
+	 * @param o The object
+	 * @return {@code true} if the object was added, {@code false} if the
+	 * queue is full
+	 */
+	public boolean offer(/*@ null @*/ T o)
+	{
+		if (m_written - m_cachedHead >= m_slots.length)
+		{
+			m_cachedHead = m_head.get();
+			if (m_written - m_cachedHead >= m_slots.length)
+			{
+				return false;
+			}
+		}
+		m_slots[(int) m_written & m_mask] = o;
+		m_written++;
+		if (m_written - m_published >= m_batchSize)
+		{
+			// Writes to the slots are visible before the new counter
+			m_published = m_written;
+			m_tail.lazySet(m_written);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds an object to the queue, waiting for room if the queue is full.
+	 * Called by the producer only.
+	 * @param o The object
+	 * @throws IllegalStateException Thrown if the queue is closed
+	 */
+	public void put(/*@ null @*/ T o)
+	{
+		checkClosed();
+		if (offer(o))
+		{
+			return;
+		}
+		// The consumer must see the objects not yet visible to make room
+		flush();
+		int tries = 0;
+		while (!offer(o))
+		{
+			checkClosed();
+			idle(tries++);
+		}
+	}
+
+	/**
+	 * Makes all the objects written by the producer visible to the consumer.
+	 * Called by the producer only.
+	 */
+	public void flush()
+	{
+		if (m_published != m_written)
+		{
+			m_published = m_written;
+			m_tail.lazySet(m_written);
+		}
+	}
+
+	/**
+	 * Takes the objects available in the queue, without waiting. Called by
+	 * the consumer only.
+	 * @param batch An array receiving the objects
+	 * @return The number of objects taken, at most the length of the array
+	 */
+	@SuppressWarnings("unchecked")
+	public int drain(/*@ non_null @*/ T[] batch)
+	{
+		long head = m_head.get();
+		if (m_cachedTail == head)
+		{
+			m_cachedTail = m_tail.get();
+			if (m_cachedTail == head)
+			{
+				return 0;
+			}
+		}
+		int n = (int) Math.min(batch.length, m_cachedTail - head);
+		for (int i = 0; i < n; i++)
+		{
+			int slot = (int) (head + i) & m_mask;
+			batch[i] = (T) m_slots[slot];
+			m_slots[slot] = null;
+		}
+		m_head.lazySet(head + n);
+		return n;
+	}
+
+	/**
+	 * Takes the objects available in the queue, waiting for at least one if
+	 * the queue is empty. Called by the consumer only.
+	 * @param batch An array receiving the objects
+	 * @return The number of objects taken, between 1 and the length of the
+	 * array
+	 * @throws IllegalStateException Thrown if the queue is closed
+	 */
+	public int take(/*@ non_null @*/ T[] batch)
+	{
+		int tries = 0;
+		int n;
+		while ((n = drain(batch)) == 0)
+		{
+			checkClosed();
+			idle(tries++);
+		}
+		return n;
+	}
+
+	/**
+	 * Closes the queue. A thread waiting for the queue stops waiting and gets
+	 * an exception.
+	 */
+	public void close()
+	{
+		m_closed = true;
+	}
+
+	/**
+	 * Determines if the queue is closed.
+	 * @return {@code true} if the queue is closed
+	 */
+	public boolean isClosed()
+	{
+		return m_closed;
+	}
+
+	/**
+	 * Throws an exception if the queue is closed.
+	 */
+	protected void checkClosed()
+	{
+		if (m_closed)
+		{
+			throw new IllegalStateException("The queue is closed");
+		}
+	}
+
+	/**
+	 * Waits before a new attempt to use the queue.
+	 * @param tries The number of attempts made so far
+	 */
+	protected void idle(int tries)
+	{
+		if (m_wait == Wait.SPIN || tries < SPIN_TRIES)
+		{
+			return;
+		}
+		if (tries < YIELD_TRIES)
+		{
+			Thread.yield();
+		}
+		else
+		{
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+}
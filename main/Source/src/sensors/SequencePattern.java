@@ -0,0 +1,650 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Finds the sequences of events that match a pattern made of successive
+ * steps. Each step is a predicate on events, and can be constrained to occur
+ * within a maximum number of events, or a maximum duration, after the event
+ * matching the previous step. The gap between two steps can also be required
+ * not to contain any event satisfying a given predicate (negation). A pattern
+ * is defined by chaining calls to {@link #then(Function)},
+ * {@link #withinEvents(int)}, {@link #withinTime(long)} and
+ * {@link #unless(Function)}; for instance, the following finds the events
+ * where presence is detected, followed by a light turned off within the next
+ * 50 events, without presence going off in the meantime:
+ * <pre>
+ * new SequencePattern(format)
+ *   .then(presence_on)
+ *   .unless(presence_off)
+ *   .then(light_off).withinEvents(50);
+ * </pre>
+ * Whenever the last step is matched, the processor outputs a {@link Match}
+ * containing the events matched by each step.
+ * <p>
+ * The pattern is compiled into a nondeterministic automaton whose states
+ * correspond to the number of steps matched so far. A partial match (a
+ * <em>run</em>) is only made of the events it matched and of its position in
+ * the stream. Upon each event, the predicates of the pattern are evaluated
+ * once, and the outcome is applied to all the runs of a state at the same
+ * time: runs whose constraint is exceeded are removed (since runs enter a
+ * state in order, these are always the oldest), runs are discarded when a
+ * negated predicate holds, and runs advance to the next state when the
+ * predicate of the next step holds. The state of the processor is therefore
+ * bounded by the number of events (or the duration) allowed by the
+ * constraints, and not by the length of the stream. Steps without a
+ * constraint keep their runs until the end of the trace.
+ * <p>
+ * By default, an event can extend every run that it matches, and a run
+ * remains available after it has been extended, so that all combinations of
+ * events are reported (as in nested loops over the events). Calling
+ * {@link #consume(boolean)} makes a run advance only once, which reports each
+ * event of the first step in at most one match.
+ * <p>
+ * Optionally, a key function partitions the stream: runs are then kept
+ * separately for each key, and only events with the same key are considered
+ * (and counted for {@link #withinEvents(int)}) when extending a run.
+ *
+ * @author Sylvain Hallé
+ */
+public class SequencePattern extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event, or {@code null} if the
+	 * stream is not partitioned.
+	 */
+	/*@ null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The steps of the pattern.
+	 */
+	/*@ non_null @*/ protected final List<Step> m_steps;
+
+	/**
+	 * The negated predicates that must not be satisfied between the last step
+	 * and the next one added to the pattern.
+	 */
+	/*@ non_null @*/ protected List<Function> m_pendingNegations;
+
+	/**
+	 * Whether a run advances only once.
+	 */
+	protected boolean m_consume;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The runs of each key, indexed by slot and by the number of steps
+	 * matched.
+	 */
+	/*@ non_null @*/ protected ArrayDeque<Run>[][] m_runs;
+
+	/**
+	 * The number of events received for each key.
+	 */
+	/*@ non_null @*/ protected long[] m_counts;
+
+	/**
+	 * The outcome of the predicate of each step on the current event.
+	 */
+	/*@ null @*/ protected boolean[] m_matches;
+
+	/**
+	 * Whether a negated predicate of each step holds on the current event.
+	 */
+	/*@ null @*/ protected boolean[] m_negated;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor with an empty pattern.
+	 * @param key The function extracting the key from an event, or
+	 * {@code null} to not partition the stream
+	 * @param timestamp The function extracting the timestamp from an event
+	 */
+	public SequencePattern(Function key, Function timestamp)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_timestampFunction = timestamp;
+		m_steps = new ArrayList<Step>();
+		m_pendingNegations = new ArrayList<Function>();
+		m_consume = false;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	/**
+	 * Creates a new instance of the processor with an empty pattern, for
+	 * events of a given format. The stream is not partitioned.
+	 * @param format The format of the events
+	 */
+	public SequencePattern(EventFormat format)
+	{
+		this(null, format.timestamp());
+	}
+
+	/**
+	 * Adds a step at the end of the pattern.
+	 * @param predicate The predicate that an event must satisfy to match the
+	 * step
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public SequencePattern then(Function predicate)
+	{
+		checkNotStarted();
+		m_steps.add(new Step(predicate, m_pendingNegations));
+		m_pendingNegations = new ArrayList<Function>();
+		return this;
+	}
+
+	/**
+	 * Requires the last step of the pattern to occur within a maximum number
+	 * of events after the previous step.
+	 * @param n The number of events
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public SequencePattern withinEvents(int n)
+	{
+		getLastStep().m_maxEvents = n;
+		return this;
+	}
+
+	/**
+	 * Requires the last step of the pattern to occur within a maximum duration
+	 * after the previous step.
+	 * @param duration The duration, in milliseconds
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public SequencePattern withinTime(long duration)
+	{
+		getLastStep().m_maxTime = duration;
+		return this;
+	}
+
+	/**
+	 * Requires that no event satisfying a predicate occurs between the last
+	 * step of the pattern and the next step to be added.
+	 * @param predicate The predicate
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public SequencePattern unless(Function predicate)
+	{
+		getLastStep();
+		m_pendingNegations.add(predicate);
+		return this;
+	}
+
+	/**
+	 * Sets whether a run advances only once. When set to {@code false} (the
+	 * default), all combinations of matching events are reported.
+	 * @param b Set to {@code true} to make runs advance only once
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public SequencePattern consume(boolean b)
+	{
+		m_consume = b;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		if (m_matches == null)
+		{
+			freeze();
+		}
+		m_in[0] = inputs[0];
+		m_timestampFunction.evaluate(m_in, m_out);
+		long ts = ((Number) m_out[0]).longValue();
+		Object key = null;
+		if (m_keyFunction != null)
+		{
+			m_keyFunction.evaluate(m_in, m_out);
+			key = m_out[0];
+		}
+		int slot = getSlot(key);
+		long index = m_counts[slot]++;
+		int n = m_steps.size();
+		for (int i = 0; i < n; i++)
+		{
+			Step s = m_steps.get(i);
+			m_matches[i] = evaluate(s.m_predicate);
+			m_negated[i] = false;
+			for (Function f : s.m_negations)
+			{
+				if (evaluate(f))
+				{
+					m_negated[i] = true;
+					break;
+				}
+			}
+		}
+		ArrayDeque<Run>[] runs = m_runs[slot];
+		// Go through states backwards, so that a run advances by a single step
+		for (int i = n - 1; i >= 1; i--)
+		{
+			ArrayDeque<Run> waiting = runs[i];
+			if (waiting.isEmpty())
+			{
+				continue;
+			}
+			Step s = m_steps.get(i);
+			while (!waiting.isEmpty() && s.isExceeded(waiting.peekFirst(), index, ts))
+			{
+				waiting.removeFirst();
+			}
+			if (m_negated[i])
+			{
+				waiting.clear();
+				continue;
+			}
+			if (!m_matches[i])
+			{
+				continue;
+			}
+			Iterator<Run> it = waiting.iterator();
+			while (it.hasNext())
+			{
+				Run r = it.next();
+				Object[] events = Arrays.copyOf(r.m_events, i + 1);
+				events[i] = inputs[0];
+				if (i == n - 1)
+				{
+					outputs.add(new Object[] {new Match(key, events)});
+				}
+				else
+				{
+					runs[i + 1].addLast(new Run(events, index, ts));
+				}
+				if (m_consume)
+				{
+					it.remove();
+				}
+			}
+		}
+		if (m_matches[0])
+		{
+			Object[] events = new Object[] {inputs[0]};
+			if (n == 1)
+			{
+				outputs.add(new Object[] {new Match(key, events)});
+			}
+			else
+			{
+				runs[1].addLast(new Run(events, index, ts));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of partial matches currently kept by the processor.
+	 * @return The number of runs
+	 */
+	public int getRunCount()
+	{
+		int count = 0;
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (m_keys.isUsed(slot) && m_runs[slot] != null)
+			{
+				for (int i = 1; i < m_runs[slot].length; i++)
+				{
+					count += m_runs[slot][i].size();
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Evaluates a predicate on the current event.
+	 * @param f The predicate
+	 * @return The value of the predicate
+	 */
+	protected boolean evaluate(Function f)
+	{
+		f.evaluate(m_in, m_out);
+		return Boolean.TRUE.equals(m_out[0]);
+	}
+
+	/**
+	 * Gets the slot of a key, creating the runs of the key if it has not been
+	 * seen before.
+	 * @param key The key
+	 * @return The slot
+	 */
+	@SuppressWarnings("unchecked")
+	protected int getSlot(Object key)
+	{
+		int slot = m_keys.get(key);
+		if (slot >= 0)
+		{
+			return slot;
+		}
+		slot = m_keys.add(key);
+		m_runs = KeyIndex.ensure(m_runs, slot);
+		m_counts = KeyIndex.ensure(m_counts, slot);
+		ArrayDeque<Run>[] runs = new ArrayDeque[m_steps.size()];
+		for (int i = 1; i < runs.length; i++)
+		{
+			runs[i] = new ArrayDeque<Run>();
+		}
+		m_runs[slot] = runs;
+		m_counts[slot] = 0;
+		return slot;
+	}
+
+	/**
+	 * Freezes the pattern when the first event is received.
+	 */
+	protected void freeze()
+	{
+		if (m_steps.isEmpty())
+		{
+			throw new ProcessorException("The pattern has no step");
+		}
+		m_matches = new boolean[m_steps.size()];
+		m_negated = new boolean[m_steps.size()];
+	}
+
+	/**
+	 * Gets the last step added to the pattern.
+	 * @return The step
+	 */
+	protected Step getLastStep()
+	{
+		checkNotStarted();
+		if (m_steps.isEmpty())
+		{
+			throw new IllegalStateException("The pattern has no step");
+		}
+		return m_steps.get(m_steps.size() - 1);
+	}
+
+	/**
+	 * Makes sure that the pattern is not modified after the first event.
+	 */
+	protected void checkNotStarted()
+	{
+		if (m_matches != null)
+		{
+			throw new IllegalStateException("The pattern cannot be modified once events have been received");
+		}
+	}
+
+	/**
+	 * Empties the state of the processor.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_runs = new ArrayDeque[16][];
+		m_counts = new long[16];
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public SequencePattern duplicate(boolean with_state)
+	{
+		SequencePattern p = new SequencePattern(m_keyFunction == null ? null : m_keyFunction.duplicate(), m_timestampFunction.duplicate());
+		for (Step s : m_steps)
+		{
+			p.m_steps.add(s.duplicate());
+		}
+		for (Function f : m_pendingNegations)
+		{
+			p.m_pendingNegations.add(f.duplicate());
+		}
+		p.m_consume = m_consume;
+		if (with_state)
+		{
+			if (m_matches != null)
+			{
+				p.freeze();
+			}
+			for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+			{
+				if (m_keys.isUsed(slot))
+				{
+					int new_slot = p.getSlot(m_keys.getKey(slot));
+					p.m_counts[new_slot] = m_counts[slot];
+					for (int i = 1; i < m_runs[slot].length; i++)
+					{
+						// Runs are never modified, and can be shared
+						p.m_runs[new_slot][i].addAll(m_runs[slot][i]);
+					}
+				}
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * A step of the pattern.
+	 */
+	protected static class Step
+	{
+		/**
+		 * The predicate that an event must satisfy to match the step.
+		 */
+		/*@ non_null @*/ protected final Function m_predicate;
+
+		/**
+		 * The predicates that must not be satisfied between the previous step
+		 * and this one.
+		 */
+		/*@ non_null @*/ protected final List<Function> m_negations;
+
+		/**
+		 * The maximum number of events after the previous step, or a negative
+		 * value for no limit.
+		 */
+		protected int m_maxEvents;
+
+		/**
+		 * The maximum duration after the previous step, or a negative value for
+		 * no limit.
+		 */
+		protected long m_maxTime;
+
+		/**
+		 * Creates a new step without constraints.
+		 * @param predicate The predicate that an event must satisfy to match
+		 * the step
+		 * @param negations The predicates that must not be satisfied between
+		 * the previous step and this one
+		 */
+		public Step(Function predicate, List<Function> negations)
+		{
+			super();
+			m_predicate = predicate;
+			m_negations = negations;
+			m_maxEvents = -1;
+			m_maxTime = -1;
+		}
+
+		/**
+		 * Determines if a run waiting for this step can no longer match it.
+		 * @param r The run
+		 * @param index The index of the current event
+		 * @param ts The timestamp of the current event
+		 * @return {@code true} if the constraints of the step are exceeded
+		 */
+		public boolean isExceeded(Run r, long index, long ts)
+		{
+			return (m_maxEvents >= 0 && index - r.m_index > m_maxEvents) || (m_maxTime >= 0 && ts - r.m_timestamp > m_maxTime);
+		}
+
+		/**
+		 * Creates a copy of this step.
+		 * @return The copy
+		 */
+		public Step duplicate()
+		{
+			List<Function> negations = new ArrayList<Function>(m_negations.size());
+			for (Function f : m_negations)
+			{
+				negations.add(f.duplicate());
+			}
+			Step s = new Step(m_predicate.duplicate(), negations);
+			s.m_maxEvents = m_maxEvents;
+			s.m_maxTime = m_maxTime;
+			return s;
+		}
+	}
+
+	/**
+	 * A partial match of the pattern.
+	 */
+	protected static class Run
+	{
+		/**
+		 * The events matched so far.
+		 */
+		/*@ non_null @*/ protected final Object[] m_events;
+
+		/**
+		 * The index of the last event matched.
+		 */
+		protected final long m_index;
+
+		/**
+		 * The timestamp of the last event matched.
+		 */
+		protected final long m_timestamp;
+
+		/**
+		 * Creates a new run.
+		 * @param events The events matched so far
+		 * @param index The index of the last event matched
+		 * @param timestamp The timestamp of the last event matched
+		 */
+		public Run(Object[] events, long index, long timestamp)
+		{
+			super();
+			m_events = events;
+			m_index = index;
+			m_timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * A complete match of the pattern.
+	 */
+	public static class Match
+	{
+		/**
+		 * The key of the events, or {@code null} if the stream is not
+		 * partitioned.
+		 */
+		/*@ null @*/ protected final Object m_key;
+
+		/**
+		 * The events matched by each step.
+		 */
+		/*@ non_null @*/ protected final Object[] m_events;
+
+		/**
+		 * Creates a new match.
+		 * @param key The key of the events
+		 * @param events The events matched by each step
+		 */
+		public Match(Object key, Object[] events)
+		{
+			super();
+			m_key = key;
+			m_events = events;
+		}
+
+		/**
+		 * Gets the key of the events.
+		 * @return The key, or {@code null} if the stream is not partitioned
+		 */
+		/*@ null @*/ public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Gets the number of events in the match.
+		 * @return The number of events
+		 */
+		public int size()
+		{
+			return m_events.length;
+		}
+
+		/**
+		 * Gets the event matched by a step.
+		 * @param i The index of the step
+		 * @return The event
+		 */
+		public Object getEvent(int i)
+		{
+			return m_events[i];
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder out = new StringBuilder();
+			for (Object o : m_events)
+			{
+				out.append(o).append("\n");
+			}
+			return out.toString();
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Queue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * The copies of a processor associated to each key by a slicing processor
+ * such as {@link DeltaSlice} or {@link CountSlices}. Each key is given a
+ * slot in a {@link KeyIndex}; the copy of the processor of a slot receives
+ * the events pushed to that slot, and its output is collected in a queue.
+ * The slicing processor keeps its own state about each slice in arrays
+ * indexed by the same slots.
+ *
+ * @author Sylvain Hallé
+ */
+public class SliceInstances
+{
+	/**
+	 * The processor copied for each slice.
+	 */
+	/*@ non_null @*/ protected final Processor m_slice;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The processor instance of each slice.
+	 */
+	/*@ non_null @*/ protected Processor[] m_processors;
+
+	/**
+	 * The pushable receiving the events of each slice.
+	 */
+	/*@ non_null @*/ protected Pushable[] m_pushables;
+
+	/**
+	 * The sink collecting the output of each slice.
+	 */
+	/*@ non_null @*/ protected QueueSink[] m_sinks;
+
+	/**
+	 * Creates a new empty set of slices.
+	 * @param slice The processor copied for each slice; it must be 1:1
+	 */
+	public SliceInstances(/*@ non_null @*/ Processor slice)
+	{
+		super();
+		m_slice = slice;
+		clear();
+	}
+
+	/**
+	 * Gets the slot of a key.
+	 * @param key The key
+	 * @return The slot, or -1 if the key has no slice
+	 */
+	public int get(Object key)
+	{
+		return m_keys.get(key);
+	}
+
+	/**
+	 * Creates the slice of a key that has none.
+	 * @param key The key
+	 * @return The slot of the new slice
+	 */
+	public int add(Object key)
+	{
+		int slot = m_keys.add(key);
+		m_processors = KeyIndex.ensure(m_processors, slot);
+		m_pushables = KeyIndex.ensure(m_pushables, slot);
+		m_sinks = KeyIndex.ensure(m_sinks, slot);
+		setProcessor(slot, m_slice.duplicate());
+		return slot;
+	}
+
+	/**
+	 * Gets the key of a slot.
+	 * @param slot The slot
+	 * @return The key
+	 */
+	/*@ null @*/ public Object getKey(int slot)
+	{
+		return m_keys.getKey(slot);
+	}
+
+	/**
+	 * Determines if a slot holds a slice.
+	 * @param slot The slot
+	 * @return {@code true} if the slot is used
+	 */
+	public boolean isUsed(int slot)
+	{
+		return m_keys.isUsed(slot);
+	}
+
+	/**
+	 * Gets the number of slots allocated so far. All the slots in use are
+	 * lower than this value.
+	 * @return The number of slots
+	 */
+	public int getSlotCount()
+	{
+		return m_keys.getSlotCount();
+	}
+
+	/**
+	 * Pushes an event to a slice.
+	 * @param slot The slot of the slice
+	 * @param event The event
+	 */
+	public void push(int slot, Object event)
+	{
+		m_pushables[slot].push(event);
+	}
+
+	/**
+	 * Notifies a slice of the end of its trace.
+	 * @param slot The slot of the slice
+	 */
+	public void notifyEndOfTrace(int slot)
+	{
+		m_pushables[slot].notifyEndOfTrace();
+	}
+
+	/**
+	 * Gets the queue where the events output by a slice are collected. The
+	 * caller removes the events it has handled.
+	 * @param slot The slot of the slice
+	 * @return The queue
+	 */
+	/*@ non_null @*/ public Queue<Object> getQueue(int slot)
+	{
+		return m_sinks[slot].getQueue();
+	}
+
+	/**
+	 * Associates a processor instance to a slot.
+	 * @param slot The slot
+	 * @param p The processor
+	 */
+	protected void setProcessor(int slot, Processor p)
+	{
+		QueueSink sink = new QueueSink();
+		Connector.connect(p, sink);
+		m_processors[slot] = p;
+		m_pushables[slot] = p.getPushableInput();
+		m_sinks[slot] = sink;
+	}
+
+	/**
+	 * Removes all the slices.
+	 */
+	public void clear()
+	{
+		m_keys = new KeyIndex();
+		m_processors = new Processor[16];
+		m_pushables = new Pushable[16];
+		m_sinks = new QueueSink[16];
+	}
+
+	/**
+	 * Creates a copy of this set of slices.
+	 * @param with_state Set to {@code true} to copy the slices and their
+	 * state, which keep the same slots; otherwise the copy is empty
+	 * @return The copy
+	 */
+	/*@ non_null @*/ public SliceInstances duplicate(boolean with_state)
+	{
+		SliceInstances s = new SliceInstances(m_slice.duplicate());
+		if (with_state)
+		{
+			s.m_keys = m_keys.duplicate();
+			s.m_processors = new Processor[m_processors.length];
+			s.m_pushables = new Pushable[m_pushables.length];
+			s.m_sinks = new QueueSink[m_sinks.length];
+			for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+			{
+				if (m_keys.isUsed(slot))
+				{
+					s.setProcessor(slot, m_processors[slot].duplicate(true));
+				}
+			}
+		}
+		return s;
+	}
+}
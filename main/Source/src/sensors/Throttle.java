@@ -0,0 +1,482 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Thins out a stream of sensor readings independently for each key, based on
+ * event time and on the variation of values. For each key (typically a sensor
+ * ID), the processor lets an event through if one of these conditions holds:
+ * <ul>
+ * <li>it is the first event for this key;</li>
+ * <li>at least a minimum interval has elapsed since the last event let
+ * through for this key;</li>
+ * <li>its numerical value differs by at least a threshold from the value of
+ * the last event let through for this key.</li>
+ * </ul>
+ * All other events are suppressed. Setting the interval to
+ * {@link Long#MAX_VALUE} produces a pure "dead band" filter on values, and
+ * setting the threshold to {@link Double#POSITIVE_INFINITY} produces a pure
+ * throttle in time. Values that are not numbers (see
+ * {@link NumericIntegrate#toDouble(Object)}) never pass the threshold
+ * condition.
+ * <p>
+ * This generalizes {@link QuietenDown}, which handles a single stream and
+ * compares events with a generic function. Here, the state of each key is
+ * made of a few primitive values stored in arrays indexed by the slots of a
+ * {@link KeyIndex}. Keys that have not received any event for a given idle
+ * time are evicted, so that the state stays proportional to the number of
+ * active keys.
+ * <p>
+ * Optionally, the processor can output a {@link Suppression} event
+ * summarizing each run of suppressed events for a key. This event is output
+ * when the run ends, that is, just before the next event let through for that
+ * key, when the key is evicted, or at the end of the trace.
+ *
+ * @author Sylvain Hallé
+ */
+public class Throttle extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The function extracting the value from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_valueFunction;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The minimum interval between two events let through for the same key.
+	 */
+	protected final long m_interval;
+
+	/**
+	 * The minimum variation of value that lets an event through.
+	 */
+	protected final double m_threshold;
+
+	/**
+	 * The time after which a key that has not received any event is evicted,
+	 * or a non-positive value to never evict keys.
+	 */
+	protected long m_idleTime;
+
+	/**
+	 * Whether to output {@link Suppression} events.
+	 */
+	protected boolean m_summarize;
+
+	/**
+	 * The timestamp at which the next search for idle keys will be done.
+	 */
+	protected long m_nextSweep;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The timestamp of the last event let through for each key.
+	 */
+	/*@ non_null @*/ protected long[] m_lastAccepted;
+
+	/**
+	 * The value of the last event let through for each key.
+	 */
+	/*@ non_null @*/ protected double[] m_lastValue;
+
+	/**
+	 * The timestamp of the last event received for each key.
+	 */
+	/*@ non_null @*/ protected long[] m_lastSeen;
+
+	/**
+	 * The number of events suppressed for each key in the current run.
+	 */
+	/*@ non_null @*/ protected long[] m_suppressed;
+
+	/**
+	 * The timestamp of the first event of the current run of suppressed
+	 * events for each key.
+	 */
+	/*@ non_null @*/ protected long[] m_suppressedStart;
+
+	/**
+	 * The total number of events suppressed since the start of the trace.
+	 */
+	protected long m_totalSuppressed;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param interval The minimum interval, in milliseconds, between two
+	 * events let through for the same key
+	 * @param threshold The minimum variation of value that lets an event
+	 * through
+	 */
+	public Throttle(Function key, Function value, Function timestamp, long interval, double threshold)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_valueFunction = value;
+		m_timestampFunction = timestamp;
+		m_interval = interval;
+		m_threshold = threshold;
+		m_idleTime = 0;
+		m_summarize = false;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	/**
+	 * Creates a new instance of the processor for events of a given format.
+	 * Keys are sensor IDs, as given by {@link EventFormat#sensorId()}.
+	 * @param format The format of the events
+	 * @param interval The minimum interval, in milliseconds, between two
+	 * events let through for the same sensor
+	 * @param threshold The minimum variation of value that lets an event
+	 * through
+	 */
+	public Throttle(EventFormat format, long interval, double threshold)
+	{
+		this(format.sensorId(), format.stateString(), format.timestamp(), interval, threshold);
+	}
+
+	/**
+	 * Sets the time after which a key that has not received any event is
+	 * evicted.
+	 * @param idle_time The time, in milliseconds, or a non-positive value to
+	 * never evict keys
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public Throttle evictAfter(long idle_time)
+	{
+		m_idleTime = idle_time;
+		return this;
+	}
+
+	/**
+	 * Sets whether the processor outputs {@link Suppression} events.
+	 * @param b Set to {@code true} to output these events
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public Throttle summarize(boolean b)
+	{
+		m_summarize = b;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		Object event = inputs[0];
+		m_in[0] = event;
+		m_timestampFunction.evaluate(m_in, m_out);
+		long ts = ((Number) m_out[0]).longValue();
+		if (m_idleTime > 0 && ts >= m_nextSweep)
+		{
+			evictIdle(ts, outputs);
+			m_nextSweep = ts + m_idleTime;
+		}
+		m_valueFunction.evaluate(m_in, m_out);
+		double value = NumericIntegrate.toDouble(m_out[0]);
+		m_keyFunction.evaluate(m_in, m_out);
+		Object key = m_out[0];
+		int slot = m_keys.get(key);
+		if (slot < 0)
+		{
+			slot = getSlot(key);
+			accept(slot, ts, value);
+			outputs.add(new Object[] {event});
+			return true;
+		}
+		if (ts - m_lastAccepted[slot] >= m_interval || Math.abs(value - m_lastValue[slot]) >= m_threshold)
+		{
+			endRun(slot, outputs);
+			accept(slot, ts, value);
+			outputs.add(new Object[] {event});
+			return true;
+		}
+		m_lastSeen[slot] = ts;
+		if (m_suppressed[slot] == 0)
+		{
+			m_suppressedStart[slot] = ts;
+		}
+		m_suppressed[slot]++;
+		m_totalSuppressed++;
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		if (!m_summarize)
+		{
+			return false;
+		}
+		boolean output = false;
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (m_keys.isUsed(slot) && m_suppressed[slot] > 0)
+			{
+				endRun(slot, outputs);
+				output = true;
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Gets the number of events suppressed since the start of the trace.
+	 * @return The number of events
+	 */
+	public long getSuppressedCount()
+	{
+		return m_totalSuppressed;
+	}
+
+	/**
+	 * Gets the number of keys currently tracked by the processor.
+	 * @return The number of keys
+	 */
+	public int getKeyCount()
+	{
+		return m_keys.size();
+	}
+
+	/**
+	 * Records that an event is let through for a key.
+	 * @param slot The slot of the key
+	 * @param ts The timestamp of the event
+	 * @param value The value of the event
+	 */
+	protected void accept(int slot, long ts, double value)
+	{
+		m_lastAccepted[slot] = ts;
+		m_lastValue[slot] = value;
+		m_lastSeen[slot] = ts;
+	}
+
+	/**
+	 * Ends the current run of suppressed events for a key, outputting a
+	 * {@link Suppression} event if this is enabled and the run is not empty.
+	 * @param slot The slot of the key
+	 * @param outputs The queue where output events are added
+	 */
+	protected void endRun(int slot, Queue<Object[]> outputs)
+	{
+		if (m_suppressed[slot] == 0)
+		{
+			return;
+		}
+		if (m_summarize)
+		{
+			outputs.add(new Object[] {new Suppression(m_keys.getKey(slot), m_suppressed[slot], m_suppressedStart[slot], m_lastSeen[slot])});
+		}
+		m_suppressed[slot] = 0;
+	}
+
+	/**
+	 * Evicts all the keys that have not received an event for the idle time.
+	 * @param ts The current timestamp
+	 * @param outputs The queue where output events are added
+	 */
+	protected void evictIdle(long ts, Queue<Object[]> outputs)
+	{
+		for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+		{
+			if (m_keys.isUsed(slot) && ts - m_lastSeen[slot] >= m_idleTime)
+			{
+				endRun(slot, outputs);
+				m_keys.remove(m_keys.getKey(slot));
+			}
+		}
+	}
+
+	/**
+	 * Allocates the state of a new key.
+	 * @param key The key
+	 * @return The slot of the key
+	 */
+	protected int getSlot(Object key)
+	{
+		int slot = m_keys.add(key);
+		if (slot >= m_lastAccepted.length)
+		{
+			m_lastAccepted = KeyIndex.ensure(m_lastAccepted, slot);
+			m_lastValue = KeyIndex.ensure(m_lastValue, slot);
+			m_lastSeen = KeyIndex.ensure(m_lastSeen, slot);
+			m_suppressed = KeyIndex.ensure(m_suppressed, slot);
+			m_suppressedStart = KeyIndex.ensure(m_suppressedStart, slot);
+		}
+		m_suppressed[slot] = 0;
+		return slot;
+	}
+
+	/**
+	 * Empties the state of all keys.
+	 */
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_lastAccepted = new long[16];
+		m_lastValue = new double[16];
+		m_lastSeen = new long[16];
+		m_suppressed = new long[16];
+		m_suppressedStart = new long[16];
+		m_totalSuppressed = 0;
+		m_nextSweep = Long.MIN_VALUE;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public Throttle duplicate(boolean with_state)
+	{
+		Throttle t = new Throttle(m_keyFunction.duplicate(), m_valueFunction.duplicate(), m_timestampFunction.duplicate(), m_interval, m_threshold);
+		t.m_idleTime = m_idleTime;
+		t.m_summarize = m_summarize;
+		if (with_state)
+		{
+			t.m_keys = m_keys.duplicate();
+			t.m_lastAccepted = Arrays.copyOf(m_lastAccepted, m_lastAccepted.length);
+			t.m_lastValue = Arrays.copyOf(m_lastValue, m_lastValue.length);
+			t.m_lastSeen = Arrays.copyOf(m_lastSeen, m_lastSeen.length);
+			t.m_suppressed = Arrays.copyOf(m_suppressed, m_suppressed.length);
+			t.m_suppressedStart = Arrays.copyOf(m_suppressedStart, m_suppressedStart.length);
+			t.m_totalSuppressed = m_totalSuppressed;
+			t.m_nextSweep = m_nextSweep;
+		}
+		return t;
+	}
+
+	/**
+	 * Summary of a run of consecutive events suppressed for a key.
+	 */
+	public static class Suppression
+	{
+		/**
+		 * The key.
+		 */
+		protected final Object m_key;
+
+		/**
+		 * The number of events suppressed.
+		 */
+		protected final long m_count;
+
+		/**
+		 * The timestamp of the first event suppressed.
+		 */
+		protected final long m_start;
+
+		/**
+		 * The timestamp of the last event suppressed.
+		 */
+		protected final long m_end;
+
+		/**
+		 * Creates a new suppression summary.
+		 * @param key The key
+		 * @param count The number of events suppressed
+		 * @param start The timestamp of the first event suppressed
+		 * @param end The timestamp of the last event suppressed
+		 */
+		public Suppression(Object key, long count, long start, long end)
+		{
+			super();
+			m_key = key;
+			m_count = count;
+			m_start = start;
+			m_end = end;
+		}
+
+		/**
+		 * Gets the key.
+		 * @return The key
+		 */
+		public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Gets the number of events suppressed.
+		 * @return The number of events
+		 */
+		public long getCount()
+		{
+			return m_count;
+		}
+
+		/**
+		 * Gets the timestamp of the first event suppressed.
+		 * @return The timestamp
+		 */
+		public long getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the timestamp of the last event suppressed.
+		 * @return The timestamp
+		 */
+		public long getEnd()
+		{
+			return m_end;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_key + ": " + m_count + " suppressed in [" + m_start + "," + m_end + "]";
+		}
+	}
+}
@@ -0,0 +1,424 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TimeZone;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Slices a stream into consecutive periods of time of fixed width (hours,
+ * days, weeks), and sends the events of each period to a separate copy of a
+ * processor. Contrary to a {@link ca.uqac.lif.cep.tmf.Slice Slice} whose key
+ * is a period (such as <tt>SliceBy(GetYearWeek(...), ...)</tt>), which keeps
+ * the processor of every period ever seen, this processor assumes that events
+ * arrive in (approximately) increasing order of timestamps. When the largest
+ * timestamp seen so far passes the end of a period by more than an allowed
+ * lateness, the period is <em>closed</em>: the processor outputs a
+ * {@link DeltaSlice.Change} event associating the start of the period to the
+ * last output of its processor, and discards this processor. Before that,
+ * the end of the trace is notified to the processor, so that processors
+ * that only output a value at the end of their trace (such as aggregates)
+ * can be used. Memory is therefore proportional to the number of periods
+ * open at the same time, and not to the length of the trace.
+ * <p>
+ * Events belonging to a period that is already closed are counted and
+ * ignored. Periods that are still open are closed at the end of the trace.
+ * Periods in which no event occurs produce no output.
+ * <p>
+ * Periods are aligned on the local time of the given time zone, relative to
+ * an origin; for instance, periods of width {@link #WEEK} with origin
+ * {@link #MONDAY} start on Mondays at midnight. The periods that contain a
+ * daylight saving time change are shorter or longer than their width (see
+ * {@link LocalPeriods}).
+ *
+ * @author Sylvain Hallé
+ */
+public class TimeSlice extends SynchronousProcessor
+{
+	/**
+	 * The duration of one hour, in milliseconds.
+	 */
+	public static final long HOUR = 60l * 60l * 1000l;
+
+	/**
+	 * The duration of one day, in milliseconds.
+	 */
+	public static final long DAY = 24l * HOUR;
+
+	/**
+	 * The duration of one week, in milliseconds.
+	 */
+	public static final long WEEK = 7l * DAY;
+
+	/**
+	 * An origin aligning weeks on Mondays (January 1st, 1970 was a Thursday).
+	 */
+	public static final long MONDAY = 4l * DAY;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The width of each period, in milliseconds.
+	 */
+	protected final long m_width;
+
+	/**
+	 * The processor copied for each period.
+	 */
+	/*@ non_null @*/ protected final Processor m_slice;
+
+	/**
+	 * The time zone on which periods are aligned.
+	 */
+	/*@ non_null @*/ protected final TimeZone m_timeZone;
+
+	/**
+	 * The local time at which the first period starts.
+	 */
+	protected final long m_origin;
+
+	/**
+	 * The delay, after the end of a period, before the period is closed.
+	 */
+	protected long m_lateness;
+
+	/**
+	 * The periods currently open, in increasing order of start.
+	 */
+	/*@ non_null @*/ protected final List<Period> m_open;
+
+	/**
+	 * The largest timestamp seen so far.
+	 */
+	protected long m_watermark;
+
+	/**
+	 * The end of the last period closed.
+	 */
+	protected long m_closedUntil;
+
+	/**
+	 * The number of events ignored because their period was already closed.
+	 */
+	protected long m_lateEvents;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor, with periods aligned on the
+	 * default time zone.
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param width The width of each period, in milliseconds
+	 * @param slice The processor copied for each period; it must be 1:1
+	 */
+	public TimeSlice(Function timestamp, long width, Processor slice)
+	{
+		this(timestamp, width, width == WEEK ? MONDAY : 0, TimeZone.getDefault(), slice);
+	}
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param width The width of each period, in milliseconds
+	 * @param origin The local time at which the first period starts
+	 * @param tz The time zone on which periods are aligned
+	 * @param slice The processor copied for each period; it must be 1:1
+	 */
+	public TimeSlice(Function timestamp, long width, long origin, TimeZone tz, Processor slice)
+	{
+		super(1, 1);
+		m_timestampFunction = timestamp;
+		m_width = width;
+		m_origin = origin;
+		m_timeZone = tz;
+		m_slice = slice;
+		m_lateness = 0;
+		m_open = new ArrayList<Period>();
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	/**
+	 * Sets the delay, after the end of a period, before the period is closed.
+	 * This allows events that arrive slightly out of order to be counted in
+	 * their period.
+	 * @param lateness The delay, in milliseconds
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public TimeSlice allowLateness(long lateness)
+	{
+		m_lateness = lateness;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		m_timestampFunction.evaluate(m_in, m_out);
+		long ts = ((Number) m_out[0]).longValue();
+		if (ts < m_closedUntil)
+		{
+			m_lateEvents++;
+			return true;
+		}
+		getPeriod(getPeriodStart(ts)).push(inputs[0]);
+		if (ts > m_watermark)
+		{
+			m_watermark = ts;
+			while (!m_open.isEmpty() && m_open.get(0).m_end + m_lateness <= m_watermark)
+			{
+				close(m_open.remove(0), outputs);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		while (!m_open.isEmpty())
+		{
+			close(m_open.remove(0), outputs);
+		}
+		return !outputs.isEmpty();
+	}
+
+	/**
+	 * Gets the number of events ignored because their period was already
+	 * closed.
+	 * @return The number of events
+	 */
+	public long getLateEvents()
+	{
+		return m_lateEvents;
+	}
+
+	/**
+	 * Gets the number of periods currently open.
+	 * @return The number of periods
+	 */
+	public int getOpenPeriods()
+	{
+		return m_open.size();
+	}
+
+	/**
+	 * Gets the start of the period containing a given moment.
+	 * @param ts The moment
+	 * @return The start of the period
+	 */
+	protected long getPeriodStart(long ts)
+	{
+		return LocalPeriods.getStart(ts, m_width, m_origin, m_timeZone);
+	}
+
+	/**
+	 * Gets the open period starting at a given moment, creating it if
+	 * necessary.
+	 * @param start The start of the period
+	 * @return The period
+	 */
+	protected Period getPeriod(long start)
+	{
+		int i = m_open.size() - 1;
+		while (i >= 0 && m_open.get(i).m_start > start)
+		{
+			i--;
+		}
+		if (i >= 0 && m_open.get(i).m_start == start)
+		{
+			return m_open.get(i);
+		}
+		Period p = new Period(start, LocalPeriods.getNextStart(start, m_width, m_origin, m_timeZone), m_slice.duplicate());
+		m_open.add(i + 1, p);
+		return p;
+	}
+
+	/**
+	 * Closes a period: notifies its processor of the end of its trace, and
+	 * outputs the last value of the processor if it has one.
+	 * @param p The period
+	 * @param outputs The queue where output events are added
+	 */
+	protected void close(Period p, Queue<Object[]> outputs)
+	{
+		if (p.m_end > m_closedUntil)
+		{
+			m_closedUntil = p.m_end;
+		}
+		p.end();
+		if (p.m_defined)
+		{
+			outputs.add(new Object[] {new DeltaSlice.Change(p.m_start, p.m_value)});
+		}
+	}
+
+	/**
+	 * Empties the state of the processor.
+	 */
+	protected void clear()
+	{
+		m_open.clear();
+		m_watermark = Long.MIN_VALUE;
+		m_closedUntil = Long.MIN_VALUE;
+		m_lateEvents = 0;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public TimeSlice duplicate(boolean with_state)
+	{
+		TimeSlice t = new TimeSlice(m_timestampFunction.duplicate(), m_width, m_origin, m_timeZone, m_slice.duplicate());
+		t.m_lateness = m_lateness;
+		if (with_state)
+		{
+			for (Period p : m_open)
+			{
+				Period new_p = new Period(p.m_start, p.m_end, p.m_processor.duplicate(true));
+				new_p.m_value = p.m_value;
+				new_p.m_defined = p.m_defined;
+				t.m_open.add(new_p);
+			}
+			t.m_watermark = m_watermark;
+			t.m_closedUntil = m_closedUntil;
+			t.m_lateEvents = m_lateEvents;
+		}
+		return t;
+	}
+
+	/**
+	 * A period that is currently open, with its processor instance.
+	 */
+	protected static class Period
+	{
+		/**
+		 * The start of the period.
+		 */
+		protected final long m_start;
+
+		/**
+		 * The end of the period.
+		 */
+		protected final long m_end;
+
+		/**
+		 * The processor instance of this period.
+		 */
+		/*@ non_null @*/ protected final Processor m_processor;
+
+		/**
+		 * The pushable receiving the events of this period.
+		 */
+		/*@ non_null @*/ protected final Pushable m_pushable;
+
+		/**
+		 * The sink collecting the output of the processor.
+		 */
+		/*@ non_null @*/ protected final QueueSink m_sink;
+
+		/**
+		 * The last output of the processor.
+		 */
+		/*@ null @*/ protected Object m_value;
+
+		/**
+		 * Whether the processor has produced an output.
+		 */
+		protected boolean m_defined;
+
+		/**
+		 * Creates a new period.
+		 * @param start The start of the period
+		 * @param end The end of the period
+		 * @param p The processor instance of this period
+		 */
+		public Period(long start, long end, Processor p)
+		{
+			super();
+			m_start = start;
+			m_end = end;
+			m_processor = p;
+			m_sink = new QueueSink();
+			Connector.connect(p, m_sink);
+			m_pushable = p.getPushableInput();
+			m_defined = false;
+		}
+
+		/**
+		 * Pushes an event to the processor of this period, and records its last
+		 * output.
+		 * @param event The event
+		 */
+		public void push(Object event)
+		{
+			m_pushable.push(event);
+			collect();
+		}
+
+		/**
+		 * Notifies the processor of this period of the end of its trace, and
+		 * records the events it outputs in reaction.
+		 */
+		public void end()
+		{
+			m_pushable.notifyEndOfTrace();
+			collect();
+		}
+
+		/**
+		 * Records the last event output by the processor of this period.
+		 */
+		protected void collect()
+		{
+			Queue<Object> queue = m_sink.getQueue();
+			while (!queue.isEmpty())
+			{
+				m_value = queue.remove();
+				m_defined = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,420 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel scheduling deadlines for a set of integer
+ * identifiers (typically the slots of a {@link KeyIndex}). Time is measured
+ * in abstract <em>ticks</em>, and only moves forward through calls to
+ * {@link #advance(long)}, which makes the wheel suitable for event time.
+ * <p>
+ * The wheel is made of {@value #LEVELS} levels of {@value #SIZE} buckets;
+ * a bucket of level <i>l</i> spans {@value #SIZE}<sup><i>l</i></sup> ticks.
+ * Scheduling, rescheduling and cancelling a deadline take constant time.
+ * Advancing the wheel by one tick examines a single bucket, and entries of
+ * upper levels are moved down ("cascaded") when the lower level wraps
+ * around. Ticks at which no bucket needs to be examined are skipped, so that
+ * the cost of advancing the wheel does not depend on the number of ticks
+ * elapsed.
+ * <p>
+ * Entries are stored in intrusive doubly-linked lists held in arrays indexed
+ * by identifier, so that no object is created when deadlines are
+ * (re)scheduled. The identifiers whose deadline has passed are collected by
+ * {@link #advance(long)} and can be read with {@link #getExpired(int)}.
+ *
+ * @author Sylvain Hallé
+ */
+public class TimingWheel
+{
+	/**
+	 * The number of bits of a bucket index.
+	 */
+	protected static final int BITS = 6;
+
+	/**
+	 * The number of buckets in each level.
+	 */
+	public static final int SIZE = 1 << BITS;
+
+	/**
+	 * The number of levels.
+	 */
+	public static final int LEVELS = 6;
+
+	/**
+	 * A mask extracting a bucket index.
+	 */
+	protected static final int MASK = SIZE - 1;
+
+	/**
+	 * The last tick processed by the wheel.
+	 */
+	protected long m_tick;
+
+	/**
+	 * The first entry of each bucket, or -1 if the bucket is empty.
+	 */
+	/*@ non_null @*/ protected final int[] m_heads;
+
+	/**
+	 * The deadline of each entry.
+	 */
+	/*@ non_null @*/ protected long[] m_deadlines;
+
+	/**
+	 * The next entry in the bucket of each entry, or -1.
+	 */
+	/*@ non_null @*/ protected int[] m_next;
+
+	/**
+	 * The previous entry in the bucket of each entry, or -1.
+	 */
+	/*@ non_null @*/ protected int[] m_previous;
+
+	/**
+	 * The bucket of each entry, or -1 if the entry is not scheduled.
+	 */
+	/*@ non_null @*/ protected int[] m_buckets;
+
+	/**
+	 * The number of entries currently scheduled.
+	 */
+	protected int m_count;
+
+	/**
+	 * The identifiers whose deadline passed during the last call to
+	 * {@link #advance(long)}.
+	 */
+	/*@ non_null @*/ protected int[] m_expired;
+
+	/**
+	 * The number of identifiers in {@link #m_expired}.
+	 */
+	protected int m_expiredCount;
+
+	/**
+	 * Creates a new empty timing wheel.
+	 * @param start The tick at which the wheel starts
+	 */
+	public TimingWheel(long start)
+	{
+		super();
+		m_heads = new int[LEVELS * SIZE];
+		m_deadlines = new long[16];
+		m_next = new int[16];
+		m_previous = new int[16];
+		m_buckets = new int[16];
+		m_expired = new int[16];
+		clear(start);
+	}
+
+	/**
+	 * Removes all the entries from the wheel.
+	 * @param start The tick at which the wheel starts
+	 */
+	public void clear(long start)
+	{
+		Arrays.fill(m_heads, -1);
+		Arrays.fill(m_buckets, -1);
+		m_tick = start;
+		m_count = 0;
+		m_expiredCount = 0;
+	}
+
+	/**
+	 * Gets the last tick processed by the wheel.
+	 * @return The tick
+	 */
+	public long getTick()
+	{
+		return m_tick;
+	}
+
+	/**
+	 * Gets the number of entries currently scheduled.
+	 * @return The number of entries
+	 */
+	public int size()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Schedules the deadline of an entry, replacing its previous deadline if
+	 * any. A deadline that is not after the current tick expires on the next
+	 * call to {@link #advance(long)}.
+	 * @param id The identifier of the entry
+	 * @param deadline The deadline, in ticks
+	 */
+	public void schedule(int id, long deadline)
+	{
+		if (id >= m_buckets.length)
+		{
+			int old_length = m_buckets.length;
+			m_deadlines = KeyIndex.ensure(m_deadlines, id);
+			m_next = KeyIndex.ensure(m_next, id);
+			m_previous = KeyIndex.ensure(m_previous, id);
+			m_buckets = KeyIndex.ensure(m_buckets, id);
+			Arrays.fill(m_buckets, old_length, m_buckets.length, -1);
+		}
+		cancel(id);
+		m_deadlines[id] = deadline;
+		insert(id);
+		m_count++;
+	}
+
+	/**
+	 * Removes the deadline of an entry, if it has one.
+	 * @param id The identifier of the entry
+	 */
+	public void cancel(int id)
+	{
+		if (id >= m_buckets.length || m_buckets[id] < 0)
+		{
+			return;
+		}
+		unlink(id);
+		m_count--;
+	}
+
+	/**
+	 * Determines if an entry currently has a deadline.
+	 * @param id The identifier of the entry
+	 * @return {@code true} if the entry is scheduled
+	 */
+	public boolean isScheduled(int id)
+	{
+		return id < m_buckets.length && m_buckets[id] >= 0;
+	}
+
+	/**
+	 * Advances the wheel up to a given tick, and collects the entries whose
+	 * deadline is at or before this tick. These entries are no longer
+	 * scheduled afterwards.
+	 * @param tick The tick; nothing happens if it is not after the current
+	 * tick
+	 * @return The number of entries that expired
+	 * @see #getExpired(int)
+	 */
+	public int advance(long tick)
+	{
+		m_expiredCount = 0;
+		while (m_tick < tick)
+		{
+			long t = m_count == 0 ? Long.MAX_VALUE : getNextTick();
+			if (t > tick)
+			{
+				// Nothing happens until the target tick
+				m_tick = tick;
+				break;
+			}
+			m_tick = t;
+			// Cascade the upper levels that wrap around at this tick
+			int top = 0;
+			while (top < LEVELS - 1 && ((t >> (BITS * (top + 1))) << (BITS * (top + 1))) == t)
+			{
+				top++;
+			}
+			for (int level = top; level >= 1; level--)
+			{
+				int bucket = level * SIZE + (int) ((t >> (BITS * level)) & MASK);
+				int id = m_heads[bucket];
+				m_heads[bucket] = -1;
+				while (id >= 0)
+				{
+					int next = m_next[id];
+					m_buckets[id] = -1;
+					if (m_deadlines[id] <= t)
+					{
+						// Due at this very tick: the bucket of level 0 is examined below,
+						// but the entry would be moved to that of the next tick
+						m_count--;
+						addExpired(id);
+					}
+					else
+					{
+						insert(id);
+					}
+					id = next;
+				}
+			}
+			int bucket = (int) (t & MASK);
+			int id = m_heads[bucket];
+			while (id >= 0)
+			{
+				int next = m_next[id];
+				if (m_deadlines[id] <= t)
+				{
+					unlink(id);
+					m_count--;
+					addExpired(id);
+				}
+				id = next;
+			}
+		}
+		return m_expiredCount;
+	}
+
+	/**
+	 * Gets the next tick at which a non-empty bucket must be examined,
+	 * either because its entries are due or because they must be cascaded
+	 * to a lower level.
+	 * @return The tick
+	 */
+	protected long getNextTick()
+	{
+		long next = Long.MAX_VALUE;
+		for (int i = 1; i <= SIZE; i++)
+		{
+			long t = m_tick + i;
+			if (m_heads[(int) (t & MASK)] >= 0)
+			{
+				next = t;
+				break;
+			}
+		}
+		for (int level = 1; level < LEVELS; level++)
+		{
+			int shift = BITS * level;
+			long boundary = ((m_tick >> shift) + 1) << shift;
+			if (boundary >= next)
+			{
+				break;
+			}
+			for (int i = 0; i < SIZE; i++)
+			{
+				long t = boundary + ((long) i << shift);
+				if (t >= next)
+				{
+					break;
+				}
+				if (m_heads[level * SIZE + (int) ((t >> shift) & MASK)] >= 0)
+				{
+					next = t;
+					break;
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Gets an entry that expired during the last call to
+	 * {@link #advance(long)}.
+	 * @param i The index of the entry, between 0 and the value returned by
+	 * {@link #advance(long)}
+	 * @return The identifier of the entry
+	 */
+	public int getExpired(int i)
+	{
+		return m_expired[i];
+	}
+
+	/**
+	 * Creates a copy of this wheel.
+	 * @return The copy
+	 */
+	/*@ non_null @*/ public TimingWheel duplicate()
+	{
+		TimingWheel w = new TimingWheel(m_tick);
+		System.arraycopy(m_heads, 0, w.m_heads, 0, m_heads.length);
+		w.m_deadlines = Arrays.copyOf(m_deadlines, m_deadlines.length);
+		w.m_next = Arrays.copyOf(m_next, m_next.length);
+		w.m_previous = Arrays.copyOf(m_previous, m_previous.length);
+		w.m_buckets = Arrays.copyOf(m_buckets, m_buckets.length);
+		w.m_count = m_count;
+		return w;
+	}
+
+	/**
+	 * Inserts an entry in the bucket corresponding to its deadline.
+	 * @param id The identifier of the entry
+	 */
+	protected void insert(int id)
+	{
+		long deadline = m_deadlines[id];
+		long delta = deadline - m_tick;
+		int bucket;
+		if (delta <= 0)
+		{
+			// Already due: process it at the next tick
+			bucket = (int) ((m_tick + 1) & MASK);
+		}
+		else
+		{
+			int level = 0;
+			while (level < LEVELS - 1 && delta >= (1l << (BITS * (level + 1))))
+			{
+				level++;
+			}
+			if (level == LEVELS - 1 && delta >= (1l << (BITS * LEVELS)))
+			{
+				// Beyond the range of the wheel: park it in the farthest bucket
+				deadline = m_tick + (1l << (BITS * LEVELS)) - 1;
+			}
+			bucket = level * SIZE + (int) ((deadline >> (BITS * level)) & MASK);
+		}
+		int head = m_heads[bucket];
+		m_next[id] = head;
+		m_previous[id] = -1;
+		if (head >= 0)
+		{
+			m_previous[head] = id;
+		}
+		m_heads[bucket] = id;
+		m_buckets[id] = bucket;
+	}
+
+	/**
+	 * Removes an entry from its bucket.
+	 * @param id The identifier of the entry
+	 */
+	protected void unlink(int id)
+	{
+		int next = m_next[id];
+		int previous = m_previous[id];
+		if (previous >= 0)
+		{
+			m_next[previous] = next;
+		}
+		else
+		{
+			m_heads[m_buckets[id]] = next;
+		}
+		if (next >= 0)
+		{
+			m_previous[next] = previous;
+		}
+		m_buckets[id] = -1;
+	}
+
+	/**
+	 * Adds an identifier to the list of expired entries.
+	 * @param id The identifier
+	 */
+	protected void addExpired(int id)
+	{
+		if (m_expiredCount == m_expired.length)
+		{
+			m_expired = Arrays.copyOf(m_expired, m_expired.length * 2);
+		}
+		m_expired[m_expiredCount++] = id;
+	}
+}
@@ -20,16 +20,29 @@ package sensors;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
 
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.SynchronousProcessor;
 
 /**
  * Unpacks a map into its values, each being output as a
- * separate event.
+ * separate event. Values are output in the order of their keys, as defined
+ * by {@link GenericComparator}.
+ * <p>
+ * By default, the keys of each input map are copied and sorted. When the
+ * processor is instantiated with <tt>cache_keys</tt> set to {@code true}, it
+ * rather keeps the sorted list of keys from one map to the next: only the keys
+ * that were added since the previous map are sorted and merged into this
+ * list, and keys that disappeared are removed from it. This is efficient for
+ * a stream of maps whose key set rarely changes, such as the output of a
+ * {@link ca.uqac.lif.cep.tmf.Slice Slice}. In this mode, an input map that is
+ * a {@link SortedMap} is simply unpacked in its own order.
  * 
  * @author Sylvain Hallé
  */
@@ -40,12 +53,46 @@ public class UnpackMap extends SynchronousProcessor
 	 */
 	protected static final GenericComparator s_comparator = new GenericComparator();
 	
+	/**
+	 * Whether the sorted list of keys is kept from one input map to the next.
+	 */
+	protected final boolean m_cacheKeys;
+	
+	/**
+	 * The sorted list of the keys of the last input map, when keys are cached.
+	 */
+	protected final List<Object> m_sortedKeys;
+	
+	/**
+	 * The set of the keys of the last input map, when keys are cached.
+	 */
+	protected final Set<Object> m_keySet;
+	
+	/**
+	 * The keys added to the last input map, reused from one event to the next.
+	 */
+	protected final List<Object> m_addedKeys;
+	
 	/**
 	 * Creates a new instance of the processor.
 	 */
 	public UnpackMap()
+	{
+		this(false);
+	}
+	
+	/**
+	 * Creates a new instance of the processor.
+	 * @param cache_keys Set to {@code true} to keep the sorted list of keys
+	 * from one input map to the next
+	 */
+	public UnpackMap(boolean cache_keys)
 	{
 		super(1, 1);
+		m_cacheKeys = cache_keys;
+		m_sortedKeys = new ArrayList<Object>();
+		m_keySet = new HashSet<Object>();
+		m_addedKeys = new ArrayList<Object>();
 	}
 	
 	@Override
@@ -57,6 +104,23 @@ public class UnpackMap extends SynchronousProcessor
 			throw new ProcessorException("Expected a map, got " + o.getClass().getSimpleName());
 		}
 		Map<?,?> map = (Map<?,?>) o;
+		if (m_cacheKeys)
+		{
+			if (map instanceof SortedMap)
+			{
+				for (Object value : map.values())
+				{
+					outputs.add(new Object[] { value });
+				}
+				return true;
+			}
+			updateKeys(map);
+			for (Object key : m_sortedKeys)
+			{
+				outputs.add(new Object[] { map.get(key) });
+			}
+			return true;
+		}
 		List<Object> keys = new ArrayList<>();
 		keys.addAll(map.keySet());
 		Collections.sort(keys, s_comparator);
@@ -68,10 +132,81 @@ public class UnpackMap extends SynchronousProcessor
 		return true;
 	}
 
+	/**
+	 * Updates the sorted list of cached keys so that it contains exactly the
+	 * keys of a map.
+	 * @param map The map
+	 */
+	protected void updateKeys(Map<?,?> map)
+	{
+		m_addedKeys.clear();
+		for (Object key : map.keySet())
+		{
+			if (!m_keySet.contains(key))
+			{
+				m_addedKeys.add(key);
+			}
+		}
+		if (map.size() - m_addedKeys.size() < m_sortedKeys.size())
+		{
+			// Some keys have disappeared
+			for (int i = m_sortedKeys.size() - 1; i >= 0; i--)
+			{
+				Object key = m_sortedKeys.get(i);
+				if (!map.containsKey(key))
+				{
+					m_sortedKeys.remove(i);
+					m_keySet.remove(key);
+				}
+			}
+		}
+		if (m_addedKeys.isEmpty())
+		{
+			return;
+		}
+		Collections.sort(m_addedKeys, s_comparator);
+		m_keySet.addAll(m_addedKeys);
+		if (m_sortedKeys.isEmpty())
+		{
+			m_sortedKeys.addAll(m_addedKeys);
+			return;
+		}
+		// Merge the new keys into the existing sorted list
+		List<Object> merged = new ArrayList<Object>(m_sortedKeys.size() + m_addedKeys.size());
+		int i = 0, j = 0;
+		while (i < m_sortedKeys.size() || j < m_addedKeys.size())
+		{
+			if (j == m_addedKeys.size() || (i < m_sortedKeys.size() && s_comparator.compare(m_sortedKeys.get(i), m_addedKeys.get(j)) <= 0))
+			{
+				merged.add(m_sortedKeys.get(i++));
+			}
+			else
+			{
+				merged.add(m_addedKeys.get(j++));
+			}
+		}
+		m_sortedKeys.clear();
+		m_sortedKeys.addAll(merged);
+	}
+	
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_sortedKeys.clear();
+		m_keySet.clear();
+	}
+
 	@Override
 	public UnpackMap duplicate(boolean with_state)
 	{
-		return new UnpackMap();
+		UnpackMap u = new UnpackMap(m_cacheKeys);
+		if (with_state)
+		{
+			u.m_sortedKeys.addAll(m_sortedKeys);
+			u.m_keySet.addAll(m_keySet);
+		}
+		return u;
 	}
 	
 	/**
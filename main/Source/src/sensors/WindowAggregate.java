@@ -0,0 +1,996 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import java.util.Arrays;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Aggregates the values of a stream over windows of event time, separately
+ * for each key (typically a sensor or a location). Three kinds of windows are
+ * available as descendants of this class:
+ * <ul>
+ * <li>{@link Tumbling}: consecutive windows of fixed width that do not
+ * overlap;</li>
+ * <li>{@link Sliding}: windows of fixed width starting at regular intervals,
+ * which may overlap;</li>
+ * <li>{@link Session}: windows that extend as long as the events of a key are
+ * separated by less than a given gap.</li>
+ * </ul>
+ * Whenever a window ends (that is, when an event with a timestamp after the
+ * end of the window is received, or at the end of the trace), the processor
+ * outputs a {@link Result} event for each key that has at least one event in
+ * the window. Input events are assumed to be sorted by timestamp; events
+ * belonging to a window that has already been output are counted and
+ * ignored.
+ * <p>
+ * The value computed over each window is defined by an {@link Aggregate},
+ * which maintains a partial state that can be updated with a value and merged
+ * with another partial state. The aggregates {@link Count}, {@link Sum},
+ * {@link Min}, {@link Max} and {@link Average} are provided, and other
+ * aggregates can be defined by implementing this interface.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class WindowAggregate extends SynchronousProcessor
+{
+	/**
+	 * The function extracting the key from an event, or {@code null} if all
+	 * events have the same key.
+	 */
+	/*@ null @*/ protected final Function m_keyFunction;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The function extracting the value from an event, or {@code null} if the
+	 * value is the event itself.
+	 */
+	/*@ null @*/ protected final Function m_valueFunction;
+
+	/**
+	 * The aggregate computed over each window.
+	 */
+	/*@ non_null @*/ protected final Aggregate<Object> m_aggregate;
+
+	/**
+	 * The index associating each key to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_keys;
+
+	/**
+	 * The number of events ignored because their window has already been
+	 * output.
+	 */
+	protected long m_lateEvents;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param key The function extracting the key from an event, or
+	 * {@code null} if all events have the same key
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param value The function extracting the value from an event, or
+	 * {@code null} if the value is the event itself
+	 * @param aggregate The aggregate computed over each window
+	 */
+	@SuppressWarnings("unchecked")
+	public WindowAggregate(Function key, Function timestamp, Function value, Aggregate<?> aggregate)
+	{
+		super(1, 1);
+		m_keyFunction = key;
+		m_timestampFunction = timestamp;
+		m_valueFunction = value;
+		m_aggregate = (Aggregate<Object>) aggregate;
+		m_in = new Object[1];
+		m_out = new Object[1];
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_in[0] = inputs[0];
+		m_timestampFunction.evaluate(m_in, m_out);
+		long ts = ((Number) m_out[0]).longValue();
+		Object value = inputs[0];
+		if (m_valueFunction != null)
+		{
+			m_valueFunction.evaluate(m_in, m_out);
+			value = m_out[0];
+		}
+		Object key = null;
+		if (m_keyFunction != null)
+		{
+			m_keyFunction.evaluate(m_in, m_out);
+			key = m_out[0];
+		}
+		int slot = m_keys.get(key);
+		if (slot < 0)
+		{
+			slot = m_keys.add(key);
+			ensureSlot(slot);
+		}
+		process(slot, ts, value, outputs);
+		return true;
+	}
+
+	/**
+	 * Gets the number of events ignored because their window has already
+	 * been output.
+	 * @return The number of events
+	 */
+	public long getLateEvents()
+	{
+		return m_lateEvents;
+	}
+
+	/**
+	 * Makes sure that the state arrays can hold a given slot.
+	 * @param slot The slot
+	 */
+	protected abstract void ensureSlot(int slot);
+
+	/**
+	 * Processes an event.
+	 * @param slot The slot of the key of the event
+	 * @param ts The timestamp of the event
+	 * @param value The value of the event
+	 * @param outputs The queue where output events are added
+	 */
+	protected abstract void process(int slot, long ts, Object value, Queue<Object[]> outputs);
+
+	/**
+	 * Empties the state of the processor.
+	 */
+	protected void clear()
+	{
+		m_keys = new KeyIndex();
+		m_lateEvents = 0;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public abstract WindowAggregate duplicate(boolean with_state);
+
+	/**
+	 * Duplicates a function that may be null.
+	 * @param f The function
+	 * @return The copy, or {@code null} if the function is null
+	 */
+	protected static Function duplicateFunction(Function f)
+	{
+		return f == null ? null : f.duplicate();
+	}
+
+	/**
+	 * Copies a partial state of the aggregate, by merging it into an empty
+	 * state.
+	 * @param state The state
+	 * @return The copy, or {@code null} if the state is null
+	 */
+	protected Object copyState(Object state)
+	{
+		if (state == null)
+		{
+			return null;
+		}
+		return m_aggregate.merge(m_aggregate.newState(), state);
+	}
+
+	/**
+	 * Windows of fixed width that start at regular intervals. Each window is
+	 * split into <em>panes</em> whose width is the greatest common divisor of
+	 * the width of windows and of the interval between their starts; the
+	 * partial aggregate of each pane is computed once, and shared by all the
+	 * windows that contain it. Only the panes of the windows that have not
+	 * been output yet are kept in memory.
+	 */
+	public static class Sliding extends WindowAggregate
+	{
+		/**
+		 * The width of each window, in milliseconds.
+		 */
+		protected final long m_width;
+
+		/**
+		 * The interval between the starts of two windows, in milliseconds.
+		 */
+		protected final long m_slide;
+
+		/**
+		 * The width of each pane, in milliseconds.
+		 */
+		protected final long m_pane;
+
+		/**
+		 * The number of panes in a window.
+		 */
+		protected final int m_panesPerWindow;
+
+		/**
+		 * The index of the pane stored at each position of the ring.
+		 */
+		/*@ non_null @*/ protected long[] m_paneIds;
+
+		/**
+		 * The partial aggregates of each pane, indexed by position in the ring
+		 * and by slot.
+		 */
+		/*@ non_null @*/ protected Object[][] m_partials;
+
+		/**
+		 * The number of panes in the ring that contain at least one event.
+		 */
+		protected int m_usedPanes;
+
+		/**
+		 * The end of the next window to output, or {@link Long#MIN_VALUE} if no
+		 * event has been received.
+		 */
+		protected long m_nextEnd;
+
+		/**
+		 * Creates a new instance of the processor.
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} if all events have the same key
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param value The function extracting the value from an event, or
+		 * {@code null} if the value is the event itself
+		 * @param width The width of each window, in milliseconds
+		 * @param slide The interval between the starts of two windows, in
+		 * milliseconds; must not be greater than the width
+		 * @param aggregate The aggregate computed over each window
+		 */
+		public Sliding(Function key, Function timestamp, Function value, long width, long slide, Aggregate<?> aggregate)
+		{
+			super(key, timestamp, value, aggregate);
+			if (slide <= 0 || slide > width)
+			{
+				throw new IllegalArgumentException("The slide must be positive and at most the width");
+			}
+			m_width = width;
+			m_slide = slide;
+			m_pane = gcd(width, slide);
+			m_panesPerWindow = (int) (width / m_pane);
+			clear();
+		}
+
+		@Override
+		protected void clear()
+		{
+			super.clear();
+			m_paneIds = new long[m_panesPerWindow];
+			Arrays.fill(m_paneIds, Long.MIN_VALUE);
+			m_partials = new Object[m_panesPerWindow][16];
+			m_usedPanes = 0;
+			m_nextEnd = Long.MIN_VALUE;
+		}
+
+		@Override
+		protected void ensureSlot(int slot)
+		{
+			for (int i = 0; i < m_partials.length; i++)
+			{
+				m_partials[i] = KeyIndex.ensure(m_partials[i], slot);
+			}
+		}
+
+		@Override
+		protected void process(int slot, long ts, Object value, Queue<Object[]> outputs)
+		{
+			// The end of the first window containing this event
+			long end = (Math.floorDiv(ts, m_slide) + 1) * m_slide;
+			if (m_nextEnd == Long.MIN_VALUE)
+			{
+				m_nextEnd = end;
+			}
+			while (ts >= m_nextEnd)
+			{
+				if (m_usedPanes == 0)
+				{
+					// The windows up to this event are empty: skip them, so that a
+					// gap between events does not cost one step per slide
+					m_nextEnd = end;
+					break;
+				}
+				closeWindow(outputs);
+			}
+			long pane = Math.floorDiv(ts, m_pane);
+			if (pane < Math.floorDiv(m_nextEnd - m_width, m_pane))
+			{
+				m_lateEvents++;
+				return;
+			}
+			int pos = (int) Math.floorMod(pane, (long) m_panesPerWindow);
+			if (m_paneIds[pos] != pane)
+			{
+				m_paneIds[pos] = pane;
+				m_usedPanes++;
+			}
+			Object[] partials = m_partials[pos];
+			Object state = partials[slot];
+			if (state == null)
+			{
+				state = m_aggregate.newState();
+			}
+			partials[slot] = m_aggregate.add(state, value);
+		}
+
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			int size = outputs.size();
+			while (m_usedPanes > 0)
+			{
+				closeWindow(outputs);
+			}
+			return outputs.size() > size;
+		}
+
+		/**
+		 * Outputs the results of the next window, and discards the panes that
+		 * are not part of any window to be output.
+		 * @param outputs The queue where output events are added
+		 */
+		protected void closeWindow(Queue<Object[]> outputs)
+		{
+			long start = m_nextEnd - m_width;
+			long first_pane = Math.floorDiv(start, m_pane);
+			for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+			{
+				if (!m_keys.isUsed(slot))
+				{
+					continue;
+				}
+				Object merged = null;
+				for (int i = 0; i < m_panesPerWindow; i++)
+				{
+					int pos = (int) Math.floorMod(first_pane + i, (long) m_panesPerWindow);
+					if (m_paneIds[pos] != first_pane + i || m_partials[pos][slot] == null)
+					{
+						continue;
+					}
+					if (merged == null)
+					{
+						merged = m_aggregate.newState();
+					}
+					merged = m_aggregate.merge(merged, m_partials[pos][slot]);
+				}
+				if (merged != null)
+				{
+					outputs.add(new Object[] {new Result(m_keys.getKey(slot), start, m_nextEnd, m_aggregate.getResult(merged))});
+				}
+			}
+			m_nextEnd += m_slide;
+			// Discard the panes that precede the start of the next window
+			long new_first = Math.floorDiv(m_nextEnd - m_width, m_pane);
+			for (long p = first_pane; p < new_first; p++)
+			{
+				int pos = (int) Math.floorMod(p, (long) m_panesPerWindow);
+				if (m_paneIds[pos] == p)
+				{
+					m_paneIds[pos] = Long.MIN_VALUE;
+					Arrays.fill(m_partials[pos], null);
+					m_usedPanes--;
+				}
+			}
+		}
+
+		@Override
+		public Sliding duplicate(boolean with_state)
+		{
+			Sliding s = new Sliding(duplicateFunction(m_keyFunction), m_timestampFunction.duplicate(), duplicateFunction(m_valueFunction), m_width, m_slide, m_aggregate);
+			if (with_state)
+			{
+				copyStateTo(s);
+			}
+			return s;
+		}
+
+		/**
+		 * Copies the state of this processor into another instance with the
+		 * same parameters.
+		 * @param s The other instance
+		 */
+		protected void copyStateTo(Sliding s)
+		{
+			s.m_keys = m_keys.duplicate();
+			s.m_lateEvents = m_lateEvents;
+			s.m_paneIds = Arrays.copyOf(m_paneIds, m_paneIds.length);
+			for (int i = 0; i < m_partials.length; i++)
+			{
+				s.m_partials[i] = new Object[m_partials[i].length];
+				for (int slot = 0; slot < m_partials[i].length; slot++)
+				{
+					s.m_partials[i][slot] = copyState(m_partials[i][slot]);
+				}
+			}
+			s.m_usedPanes = m_usedPanes;
+			s.m_nextEnd = m_nextEnd;
+		}
+
+		/**
+		 * Computes the greatest common divisor of two numbers.
+		 * @param a The first number
+		 * @param b The second number
+		 * @return The greatest common divisor
+		 */
+		protected static long gcd(long a, long b)
+		{
+			while (b != 0)
+			{
+				long t = a % b;
+				a = b;
+				b = t;
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * Consecutive windows of fixed width that do not overlap.
+	 */
+	public static class Tumbling extends Sliding
+	{
+		/**
+		 * Creates a new instance of the processor.
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} if all events have the same key
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param value The function extracting the value from an event, or
+		 * {@code null} if the value is the event itself
+		 * @param width The width of each window, in milliseconds
+		 * @param aggregate The aggregate computed over each window
+		 */
+		public Tumbling(Function key, Function timestamp, Function value, long width, Aggregate<?> aggregate)
+		{
+			super(key, timestamp, value, width, width, aggregate);
+		}
+
+		@Override
+		public Tumbling duplicate(boolean with_state)
+		{
+			Tumbling t = new Tumbling(duplicateFunction(m_keyFunction), m_timestampFunction.duplicate(), duplicateFunction(m_valueFunction), m_width, m_aggregate);
+			if (with_state)
+			{
+				copyStateTo(t);
+			}
+			return t;
+		}
+	}
+
+	/**
+	 * Windows that extend as long as the events of a key are separated by less
+	 * than a given gap. A session is output as soon as the event time goes
+	 * beyond its last event by at least the gap, even if the key never reports
+	 * again; the deadlines of all sessions are kept in a {@link TimingWheel}.
+	 */
+	public static class Session extends WindowAggregate
+	{
+		/**
+		 * The maximum gap between two events of the same session, in
+		 * milliseconds.
+		 */
+		protected final long m_gap;
+
+		/**
+		 * The timing wheel holding the deadline of the session of each key.
+		 */
+		/*@ non_null @*/ protected TimingWheel m_wheel;
+
+		/**
+		 * The timestamp of the first event of the current session of each key.
+		 */
+		/*@ non_null @*/ protected long[] m_starts;
+
+		/**
+		 * The timestamp of the last event of the current session of each key.
+		 */
+		/*@ non_null @*/ protected long[] m_lasts;
+
+		/**
+		 * The partial aggregate of the current session of each key, or
+		 * {@code null} if the key has no session in progress.
+		 */
+		/*@ non_null @*/ protected Object[] m_states;
+
+		/**
+		 * The largest timestamp seen so far.
+		 */
+		protected long m_watermark;
+
+		/**
+		 * Creates a new instance of the processor.
+		 * @param key The function extracting the key from an event, or
+		 * {@code null} if all events have the same key
+		 * @param timestamp The function extracting the timestamp from an event
+		 * @param value The function extracting the value from an event, or
+		 * {@code null} if the value is the event itself
+		 * @param gap The maximum gap between two events of the same session, in
+		 * milliseconds
+		 * @param aggregate The aggregate computed over each window
+		 */
+		public Session(Function key, Function timestamp, Function value, long gap, Aggregate<?> aggregate)
+		{
+			super(key, timestamp, value, aggregate);
+			m_gap = gap;
+			clear();
+		}
+
+		@Override
+		protected void clear()
+		{
+			super.clear();
+			m_wheel = new TimingWheel(0);
+			m_starts = new long[16];
+			m_lasts = new long[16];
+			m_states = new Object[16];
+			m_watermark = Long.MIN_VALUE;
+		}
+
+		@Override
+		protected void ensureSlot(int slot)
+		{
+			m_starts = KeyIndex.ensure(m_starts, slot);
+			m_lasts = KeyIndex.ensure(m_lasts, slot);
+			m_states = KeyIndex.ensure(m_states, slot);
+		}
+
+		@Override
+		protected void process(int slot, long ts, Object value, Queue<Object[]> outputs)
+		{
+			if (m_watermark == Long.MIN_VALUE)
+			{
+				m_wheel.clear(ts - 1);
+			}
+			if (ts > m_watermark)
+			{
+				m_watermark = ts;
+				// Close the sessions whose last event is at least one gap ago
+				int expired = m_wheel.advance(ts);
+				for (int i = 0; i < expired; i++)
+				{
+					closeSession(m_wheel.getExpired(i), outputs);
+				}
+			}
+			Object state = m_states[slot];
+			if (state == null)
+			{
+				state = m_aggregate.newState();
+				m_starts[slot] = ts;
+				m_lasts[slot] = ts;
+			}
+			else if (ts < m_lasts[slot])
+			{
+				if (ts < m_starts[slot])
+				{
+					m_starts[slot] = ts;
+				}
+			}
+			else
+			{
+				m_lasts[slot] = ts;
+			}
+			m_states[slot] = m_aggregate.add(state, value);
+			m_wheel.schedule(slot, m_lasts[slot] + m_gap);
+		}
+
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			boolean output = false;
+			for (int slot = 0; slot < m_keys.getSlotCount(); slot++)
+			{
+				if (m_keys.isUsed(slot) && m_states[slot] != null)
+				{
+					m_wheel.cancel(slot);
+					closeSession(slot, outputs);
+					output = true;
+				}
+			}
+			return output;
+		}
+
+		/**
+		 * Outputs the result of the current session of a key and discards it.
+		 * @param slot The slot of the key
+		 * @param outputs The queue where output events are added
+		 */
+		protected void closeSession(int slot, Queue<Object[]> outputs)
+		{
+			outputs.add(new Object[] {new Result(m_keys.getKey(slot), m_starts[slot], m_lasts[slot], m_aggregate.getResult(m_states[slot]))});
+			m_states[slot] = null;
+		}
+
+		@Override
+		public Session duplicate(boolean with_state)
+		{
+			Session s = new Session(duplicateFunction(m_keyFunction), m_timestampFunction.duplicate(), duplicateFunction(m_valueFunction), m_gap, m_aggregate);
+			if (with_state)
+			{
+				s.m_keys = m_keys.duplicate();
+				s.m_lateEvents = m_lateEvents;
+				s.m_wheel = m_wheel.duplicate();
+				s.m_starts = Arrays.copyOf(m_starts, m_starts.length);
+				s.m_lasts = Arrays.copyOf(m_lasts, m_lasts.length);
+				s.m_states = new Object[m_states.length];
+				for (int slot = 0; slot < m_states.length; slot++)
+				{
+					s.m_states[slot] = copyState(m_states[slot]);
+				}
+				s.m_watermark = m_watermark;
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * The value of an aggregate over a window for a given key.
+	 */
+	public static class Result
+	{
+		/**
+		 * The key.
+		 */
+		protected final Object m_key;
+
+		/**
+		 * The start of the window.
+		 */
+		protected final long m_start;
+
+		/**
+		 * The end of the window.
+		 */
+		protected final long m_end;
+
+		/**
+		 * The value of the aggregate.
+		 */
+		protected final Object m_value;
+
+		/**
+		 * Creates a new result.
+		 * @param key The key
+		 * @param start The start of the window
+		 * @param end The end of the window
+		 * @param value The value of the aggregate
+		 */
+		public Result(Object key, long start, long end, Object value)
+		{
+			super();
+			m_key = key;
+			m_start = start;
+			m_end = end;
+			m_value = value;
+		}
+
+		/**
+		 * Gets the key.
+		 * @return The key
+		 */
+		public Object getKey()
+		{
+			return m_key;
+		}
+
+		/**
+		 * Gets the start of the window.
+		 * @return The timestamp
+		 */
+		public long getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the end of the window. For fixed windows, this is the first
+		 * moment after the window; for sessions, this is the timestamp of the
+		 * last event.
+		 * @return The timestamp
+		 */
+		public long getEnd()
+		{
+			return m_end;
+		}
+
+		/**
+		 * Gets the value of the aggregate.
+		 * @return The value
+		 */
+		public Object getValue()
+		{
+			return m_value;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_key + " [" + m_start + "," + m_end + "]: " + m_value;
+		}
+	}
+
+	/**
+	 * A computation over the values of a window. The computation is expressed
+	 * on partial states, which makes it possible to compute it incrementally
+	 * and to combine the states of panes.
+	 * @param <S> The type of the partial states
+	 */
+	public interface Aggregate<S>
+	{
+		/**
+		 * Creates an empty partial state.
+		 * @return The state
+		 */
+		/*@ non_null @*/ public S newState();
+
+		/**
+		 * Updates a partial state with a new value.
+		 * @param state The state; it may be modified
+		 * @param value The value
+		 * @return The updated state
+		 */
+		/*@ non_null @*/ public S add(S state, Object value);
+
+		/**
+		 * Merges a partial state into another.
+		 * @param into The state receiving the other; it may be modified
+		 * @param from The state to merge; it must not be modified
+		 * @return The merged state
+		 */
+		/*@ non_null @*/ public S merge(S into, S from);
+
+		/**
+		 * Computes the value of the aggregate from a partial state.
+		 * @param state The state
+		 * @return The value
+		 */
+		public Object getResult(S state);
+	}
+
+	/**
+	 * Base class for the aggregates whose partial state is an array of
+	 * doubles. Values are converted with
+	 * {@link NumericIntegrate#toDouble(Object)}, and values that are not
+	 * numbers are ignored.
+	 */
+	protected abstract static class NumericAggregate implements Aggregate<double[]>
+	{
+		@Override
+		public double[] add(double[] state, Object value)
+		{
+			double x = NumericIntegrate.toDouble(value);
+			if (!Double.isNaN(x))
+			{
+				update(state, x);
+			}
+			return state;
+		}
+
+		/**
+		 * Updates a partial state with a numerical value.
+		 * @param state The state
+		 * @param x The value
+		 */
+		protected abstract void update(double[] state, double x);
+	}
+
+	/**
+	 * Counts the events in a window, whatever their value.
+	 */
+	public static class Count implements Aggregate<long[]>
+	{
+		/**
+		 * A single publicly visible instance of the aggregate.
+		 */
+		public static final Count instance = new Count();
+
+		@Override
+		public long[] newState()
+		{
+			return new long[1];
+		}
+
+		@Override
+		public long[] add(long[] state, Object value)
+		{
+			state[0]++;
+			return state;
+		}
+
+		@Override
+		public long[] merge(long[] into, long[] from)
+		{
+			into[0] += from[0];
+			return into;
+		}
+
+		@Override
+		public Object getResult(long[] state)
+		{
+			return state[0];
+		}
+	}
+
+	/**
+	 * Computes the sum of the values in a window.
+	 */
+	public static class Sum extends NumericAggregate
+	{
+		/**
+		 * A single publicly visible instance of the aggregate.
+		 */
+		public static final Sum instance = new Sum();
+
+		@Override
+		public double[] newState()
+		{
+			return new double[1];
+		}
+
+		@Override
+		protected void update(double[] state, double x)
+		{
+			state[0] += x;
+		}
+
+		@Override
+		public double[] merge(double[] into, double[] from)
+		{
+			into[0] += from[0];
+			return into;
+		}
+
+		@Override
+		public Object getResult(double[] state)
+		{
+			return state[0];
+		}
+	}
+
+	/**
+	 * Computes the minimum of the values in a window.
+	 */
+	public static class Min extends NumericAggregate
+	{
+		/**
+		 * A single publicly visible instance of the aggregate.
+		 */
+		public static final Min instance = new Min();
+
+		@Override
+		public double[] newState()
+		{
+			return new double[] {Double.POSITIVE_INFINITY};
+		}
+
+		@Override
+		protected void update(double[] state, double x)
+		{
+			state[0] = Math.min(state[0], x);
+		}
+
+		@Override
+		public double[] merge(double[] into, double[] from)
+		{
+			into[0] = Math.min(into[0], from[0]);
+			return into;
+		}
+
+		@Override
+		public Object getResult(double[] state)
+		{
+			return state[0] == Double.POSITIVE_INFINITY ? Double.NaN : state[0];
+		}
+	}
+
+	/**
+	 * Computes the maximum of the values in a window.
+	 */
+	public static class Max extends NumericAggregate
+	{
+		/**
+		 * A single publicly visible instance of the aggregate.
+		 */
+		public static final Max instance = new Max();
+
+		@Override
+		public double[] newState()
+		{
+			return new double[] {Double.NEGATIVE_INFINITY};
+		}
+
+		@Override
+		protected void update(double[] state, double x)
+		{
+			state[0] = Math.max(state[0], x);
+		}
+
+		@Override
+		public double[] merge(double[] into, double[] from)
+		{
+			into[0] = Math.max(into[0], from[0]);
+			return into;
+		}
+
+		@Override
+		public Object getResult(double[] state)
+		{
+			return state[0] == Double.NEGATIVE_INFINITY ? Double.NaN : state[0];
+		}
+	}
+
+	/**
+	 * Computes the average of the values in a window.
+	 */
+	public static class Average extends NumericAggregate
+	{
+		/**
+		 * A single publicly visible instance of the aggregate.
+		 */
+		public static final Average instance = new Average();
+
+		@Override
+		public double[] newState()
+		{
+			return new double[2];
+		}
+
+		@Override
+		protected void update(double[] state, double x)
+		{
+			state[0] += x;
+			state[1]++;
+		}
+
+		@Override
+		public double[] merge(double[] into, double[] from)
+		{
+			into[0] += from[0];
+			into[1] += from[1];
+			return into;
+		}
+
+		@Override
+		public Object getResult(double[] state)
+		{
+			return state[1] == 0 ? Double.NaN : state[0] / state[1];
+		}
+	}
+}
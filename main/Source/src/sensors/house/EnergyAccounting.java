@@ -0,0 +1,572 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.house;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.TimeZone;
+
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+import sensors.EventFormat;
+import sensors.KeyIndex;
+import sensors.LocalPeriods;
+import sensors.NumericIntegrate;
+
+/**
+ * Keeps track of the electrical state of many devices at once, and computes
+ * the energy each of them consumes over fixed periods of time (typically
+ * hours or days). The processor receives raw sensor events; events whose
+ * sensor is {@value PowerState#INSTANT_CURRENT},
+ * {@value PowerState#INSTANT_VOLTAGE} or {@value PowerState#INSTANT_POWER}
+ * update the state of the device they come from, while all other events are
+ * ignored.
+ * <p>
+ * Like a {@link PowerState}, the state of a device is made of its latest
+ * current, voltage and power readings; here these values are stored in
+ * arrays of <tt>double</tt>s indexed by the slot of each device in a
+ * {@link KeyIndex}, so that no object is created to process an event. The
+ * power of a device is assumed to hold until its next reading; if no power
+ * reading has been received, the product of current and voltage is used
+ * instead. When the event time of a device crosses the end of a period, the
+ * processor outputs a {@link Consumption} event giving the energy (in kWh)
+ * consumed by that device during the period. Only the period in progress is
+ * kept for each device, so that memory is proportional to the number of
+ * devices and not to the length of the trace. The periods still in progress
+ * are output at the end of the trace.
+ * <p>
+ * Periods are aligned on the local time of the given time zone; for
+ * instance, with a width of {@link #DAY}, each period starts at midnight,
+ * and the days of a daylight saving time change last 23 or 25 hours.
+ *
+ * @author Sylvain Hallé
+ */
+public class EnergyAccounting extends SynchronousProcessor
+{
+	/**
+	 * The duration of one hour, in milliseconds.
+	 */
+	public static final long HOUR = 60l * 60l * 1000l;
+
+	/**
+	 * The duration of one day, in milliseconds.
+	 */
+	public static final long DAY = 24l * HOUR;
+
+	/**
+	 * The factor converting a product of watts by milliseconds into kWh.
+	 */
+	protected static final double MS_TO_KWH = NumericIntegrate.MS_TO_HOURS / 1000d;
+
+	/**
+	 * Code designating a current reading.
+	 */
+	protected static final int Q_CURRENT = 0;
+
+	/**
+	 * Code designating a voltage reading.
+	 */
+	protected static final int Q_VOLTAGE = 1;
+
+	/**
+	 * Code designating a power reading.
+	 */
+	protected static final int Q_POWER = 2;
+
+	/**
+	 * The function extracting the device from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_deviceFunction;
+
+	/**
+	 * The function extracting the name of the sensor from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_sensorFunction;
+
+	/**
+	 * The function extracting the state (i.e. value) from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_stateFunction;
+
+	/**
+	 * The function extracting the timestamp from an event.
+	 */
+	/*@ non_null @*/ protected final Function m_timestampFunction;
+
+	/**
+	 * The width of each period, in milliseconds.
+	 */
+	protected final long m_width;
+
+	/**
+	 * The time zone on which periods are aligned.
+	 */
+	/*@ non_null @*/ protected final TimeZone m_timeZone;
+
+	/**
+	 * The index associating each device to a slot.
+	 */
+	/*@ non_null @*/ protected KeyIndex m_devices;
+
+	/**
+	 * The latest current reading of each device, or -1 if unknown.
+	 */
+	/*@ non_null @*/ protected double[] m_current;
+
+	/**
+	 * The latest voltage reading of each device, or -1 if unknown.
+	 */
+	/*@ non_null @*/ protected double[] m_voltage;
+
+	/**
+	 * The latest power reading of each device, or -1 if unknown.
+	 */
+	/*@ non_null @*/ protected double[] m_power;
+
+	/**
+	 * The timestamp up to which the energy of each device has been
+	 * integrated.
+	 */
+	/*@ non_null @*/ protected long[] m_lastTimestamp;
+
+	/**
+	 * The start of the period in progress for each device.
+	 */
+	/*@ non_null @*/ protected long[] m_periodStart;
+
+	/**
+	 * The energy (in kWh) consumed by each device in the period in progress.
+	 */
+	/*@ non_null @*/ protected double[] m_energy;
+
+	/**
+	 * The total energy (in kWh) consumed by each device in the periods that
+	 * are complete.
+	 */
+	/*@ non_null @*/ protected double[] m_total;
+
+	/**
+	 * An array reused to pass arguments to functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_in;
+
+	/**
+	 * An array reused to receive values from functions.
+	 */
+	/*@ non_null @*/ protected final Object[] m_out;
+
+	/**
+	 * Creates a new instance of the processor for events of a given format.
+	 * Devices are distinguished by their placement, see
+	 * {@link EventFormat#sensorPlacement()}.
+	 * @param format The format of the events
+	 * @param width The width of each period, in milliseconds
+	 */
+	public EnergyAccounting(EventFormat format, long width)
+	{
+		this(format.sensorPlacement(), format.sensorString(), format.stateString(), format.timestamp(), width, TimeZone.getDefault());
+	}
+
+	/**
+	 * Creates a new instance of the processor.
+	 * @param device The function extracting the device from an event
+	 * @param sensor The function extracting the name of the sensor from an
+	 * event
+	 * @param state The function extracting the state from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param width The width of each period, in milliseconds
+	 * @param tz The time zone on which periods are aligned
+	 */
+	public EnergyAccounting(Function device, Function sensor, Function state, Function timestamp, long width, TimeZone tz)
+	{
+		super(1, 1);
+		m_deviceFunction = device;
+		m_sensorFunction = sensor;
+		m_stateFunction = state;
+		m_timestampFunction = timestamp;
+		m_width = width;
+		m_timeZone = tz;
+		m_in = new Object[1];
+		m_out = new Object[1];
+		clear();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		Object event = inputs[0];
+		int quantity = getQuantity(evaluate(m_sensorFunction, event));
+		if (quantity < 0)
+		{
+			return true;
+		}
+		double value = NumericIntegrate.toDouble(evaluate(m_stateFunction, event));
+		if (Double.isNaN(value))
+		{
+			return true;
+		}
+		long ts = ((Number) evaluate(m_timestampFunction, event)).longValue();
+		int slot = getSlot(evaluate(m_deviceFunction, event));
+		advance(slot, ts, outputs);
+		switch (quantity)
+		{
+		case Q_CURRENT:
+			m_current[slot] = value;
+			break;
+		case Q_VOLTAGE:
+			m_voltage[slot] = value;
+			break;
+		default:
+			m_power[slot] = value;
+			break;
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean onEndOfTrace(Queue<Object[]> outputs)
+	{
+		boolean output = false;
+		for (int slot = 0; slot < m_devices.getSlotCount(); slot++)
+		{
+			if (m_devices.isUsed(slot) && m_lastTimestamp[slot] != Long.MIN_VALUE)
+			{
+				outputs.add(new Object[] {new Consumption(m_devices.getKey(slot), m_periodStart[slot], m_lastTimestamp[slot], m_energy[slot])});
+				output = true;
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Gets the total energy consumed by a device since the start of the
+	 * trace, including the period in progress.
+	 * @param device The device
+	 * @return The energy in kWh, or 0 if the device is unknown
+	 */
+	public double getTotalEnergy(Object device)
+	{
+		int slot = m_devices.get(device);
+		if (slot < 0)
+		{
+			return 0;
+		}
+		return m_total[slot] + m_energy[slot];
+	}
+
+	/**
+	 * Gets the latest state of a device.
+	 * @param device The device
+	 * @return A new {@link PowerState} object containing the latest readings
+	 * of the device, or {@code null} if the device is unknown
+	 */
+	/*@ null @*/ public PowerState getState(Object device)
+	{
+		int slot = m_devices.get(device);
+		if (slot < 0)
+		{
+			return null;
+		}
+		PowerState ps = new PowerState();
+		ps.setCurrent(m_current[slot]);
+		ps.setVoltage(m_voltage[slot]);
+		ps.setPower(m_power[slot]);
+		return ps;
+	}
+
+	/**
+	 * Integrates the energy of a device up to a given moment, outputting a
+	 * {@link Consumption} event for every period that ends before that
+	 * moment.
+	 * @param slot The slot of the device
+	 * @param ts The moment
+	 * @param outputs The queue where output events are added
+	 */
+	protected void advance(int slot, long ts, Queue<Object[]> outputs)
+	{
+		long t = m_lastTimestamp[slot];
+		if (t == Long.MIN_VALUE)
+		{
+			m_lastTimestamp[slot] = ts;
+			m_periodStart[slot] = getPeriodStart(ts);
+			return;
+		}
+		if (ts <= t)
+		{
+			// Out of order or simultaneous readings: no time has elapsed
+			return;
+		}
+		double power = getPower(slot);
+		long end = getNextPeriodStart(m_periodStart[slot]);
+		while (ts >= end)
+		{
+			m_energy[slot] += power * (end - t) * MS_TO_KWH;
+			outputs.add(new Object[] {new Consumption(m_devices.getKey(slot), m_periodStart[slot], end, m_energy[slot])});
+			m_total[slot] += m_energy[slot];
+			m_energy[slot] = 0;
+			if (power == 0)
+			{
+				// Skip the periods where nothing is consumed
+				m_periodStart[slot] = getPeriodStart(ts);
+				t = ts;
+			}
+			else
+			{
+				m_periodStart[slot] = end;
+				t = end;
+			}
+			end = getNextPeriodStart(m_periodStart[slot]);
+		}
+		m_energy[slot] += power * (ts - t) * MS_TO_KWH;
+		m_lastTimestamp[slot] = ts;
+	}
+
+	/**
+	 * Gets the power of a device from its latest readings.
+	 * @param slot The slot of the device
+	 * @return The power, in watts
+	 */
+	protected double getPower(int slot)
+	{
+		if (m_power[slot] >= 0)
+		{
+			return m_power[slot];
+		}
+		if (m_current[slot] >= 0 && m_voltage[slot] >= 0)
+		{
+			return m_current[slot] * m_voltage[slot];
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the start of the period containing a given moment.
+	 * @param ts The moment
+	 * @return The start of the period
+	 */
+	protected long getPeriodStart(long ts)
+	{
+		return LocalPeriods.getStart(ts, m_width, 0, m_timeZone);
+	}
+
+	/**
+	 * Gets the start of the period that follows another one.
+	 * @param start The start of a period
+	 * @return The start of the next period
+	 */
+	protected long getNextPeriodStart(long start)
+	{
+		return LocalPeriods.getNextStart(start, m_width, 0, m_timeZone);
+	}
+
+	/**
+	 * Gets the slot of a device, allocating its state if the device has not
+	 * been seen before.
+	 * @param device The device
+	 * @return The slot
+	 */
+	protected int getSlot(Object device)
+	{
+		int slot = m_devices.get(device);
+		if (slot >= 0)
+		{
+			return slot;
+		}
+		slot = m_devices.add(device);
+		if (slot >= m_current.length)
+		{
+			m_current = KeyIndex.ensure(m_current, slot);
+			m_voltage = KeyIndex.ensure(m_voltage, slot);
+			m_power = KeyIndex.ensure(m_power, slot);
+			m_lastTimestamp = KeyIndex.ensure(m_lastTimestamp, slot);
+			m_periodStart = KeyIndex.ensure(m_periodStart, slot);
+			m_energy = KeyIndex.ensure(m_energy, slot);
+			m_total = KeyIndex.ensure(m_total, slot);
+		}
+		m_current[slot] = -1;
+		m_voltage[slot] = -1;
+		m_power[slot] = -1;
+		m_lastTimestamp[slot] = Long.MIN_VALUE;
+		m_periodStart[slot] = 0;
+		m_energy[slot] = 0;
+		m_total[slot] = 0;
+		return slot;
+	}
+
+	/**
+	 * Gets the code of the quantity measured by a sensor.
+	 * @param sensor The name of the sensor
+	 * @return The code, or -1 if the sensor does not measure a quantity
+	 * handled by this processor
+	 */
+	protected static int getQuantity(Object sensor)
+	{
+		if (PowerState.INSTANT_POWER.equals(sensor))
+		{
+			return Q_POWER;
+		}
+		if (PowerState.INSTANT_CURRENT.equals(sensor))
+		{
+			return Q_CURRENT;
+		}
+		if (PowerState.INSTANT_VOLTAGE.equals(sensor))
+		{
+			return Q_VOLTAGE;
+		}
+		return -1;
+	}
+
+	/**
+	 * Evaluates a unary function on an event, reusing the same argument
+	 * arrays.
+	 * @param f The function
+	 * @param event The event
+	 * @return The output value of the function
+	 */
+	protected Object evaluate(Function f, Object event)
+	{
+		m_in[0] = event;
+		f.evaluate(m_in, m_out);
+		return m_out[0];
+	}
+
+	/**
+	 * Empties the state of all devices.
+	 */
+	protected void clear()
+	{
+		m_devices = new KeyIndex();
+		m_current = new double[16];
+		m_voltage = new double[16];
+		m_power = new double[16];
+		m_lastTimestamp = new long[16];
+		m_periodStart = new long[16];
+		m_energy = new double[16];
+		m_total = new double[16];
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		clear();
+	}
+
+	@Override
+	public EnergyAccounting duplicate(boolean with_state)
+	{
+		EnergyAccounting ea = new EnergyAccounting(m_deviceFunction, m_sensorFunction, m_stateFunction, m_timestampFunction, m_width, m_timeZone);
+		if (with_state)
+		{
+			ea.m_devices = m_devices.duplicate();
+			ea.m_current = Arrays.copyOf(m_current, m_current.length);
+			ea.m_voltage = Arrays.copyOf(m_voltage, m_voltage.length);
+			ea.m_power = Arrays.copyOf(m_power, m_power.length);
+			ea.m_lastTimestamp = Arrays.copyOf(m_lastTimestamp, m_lastTimestamp.length);
+			ea.m_periodStart = Arrays.copyOf(m_periodStart, m_periodStart.length);
+			ea.m_energy = Arrays.copyOf(m_energy, m_energy.length);
+			ea.m_total = Arrays.copyOf(m_total, m_total.length);
+		}
+		return ea;
+	}
+
+	/**
+	 * The energy consumed by a device during a period of time.
+	 */
+	public static class Consumption
+	{
+		/**
+		 * The device.
+		 */
+		protected final Object m_device;
+
+		/**
+		 * The start of the period.
+		 */
+		protected final long m_start;
+
+		/**
+		 * The end of the period.
+		 */
+		protected final long m_end;
+
+		/**
+		 * The energy consumed, in kWh.
+		 */
+		protected final double m_energy;
+
+		/**
+		 * Creates a new consumption record.
+		 * @param device The device
+		 * @param start The start of the period
+		 * @param end The end of the period
+		 * @param energy The energy consumed, in kWh
+		 */
+		public Consumption(Object device, long start, long end, double energy)
+		{
+			super();
+			m_device = device;
+			m_start = start;
+			m_end = end;
+			m_energy = energy;
+		}
+
+		/**
+		 * Gets the device.
+		 * @return The device
+		 */
+		public Object getDevice()
+		{
+			return m_device;
+		}
+
+		/**
+		 * Gets the start of the period.
+		 * @return The start, as a Unix timestamp in milliseconds
+		 */
+		public long getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the end of the period. For a period that was still in progress at
+		 * the end of the trace, this is the timestamp of the last reading.
+		 * @return The end, as a Unix timestamp in milliseconds
+		 */
+		public long getEnd()
+		{
+			return m_end;
+		}
+
+		/**
+		 * Gets the energy consumed.
+		 * @return The energy, in kWh
+		 */
+		public double getEnergy()
+		{
+			return m_energy;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_device + " [" + m_start + "," + m_end + "]: " + m_energy + " kWh";
+		}
+	}
+}
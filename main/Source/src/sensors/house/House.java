@@ -302,10 +302,14 @@ public class House extends PrettyTreeMap<sensors.house.House.Location> implement
 	@Override
 	public House duplicate(boolean with_state)
 	{
+		House h = new House();
 		if (with_state)
 		{
-			throw new UnsupportedOperationException("Cannot duplicate a house with state");
+			for (Map.Entry<String,Location> e : entrySet())
+			{
+				h.put(e.getKey(), e.getValue().duplicate(true));
+			}
 		}
-		return new House();
+		return h;
 	}
 }
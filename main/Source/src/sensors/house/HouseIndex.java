@@ -0,0 +1,594 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.house;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.EventFormat;
+import sensors.house.House.EventToHouseDelta;
+import sensors.house.House.HouseDelta;
+import sensors.house.House.Location;
+
+/**
+ * Persistent index answering "point-in-time" queries on the state of a
+ * {@link House}. Computing the state of the house at a given moment normally
+ * requires replaying every event from the first day of a log through
+ * {@link EventToHouseDelta} and an integrator. The index avoids this by
+ * scanning the log once and saving, at periodic intervals of event time, a
+ * <em>checkpoint</em> of the house's state along with the position (day file
+ * and byte offset) of the next event to be read. A query for a moment
+ * <i>t</i> then loads the nearest checkpoint before <i>t</i> and only replays
+ * the events between that checkpoint and <i>t</i>.
+ * <p>
+ * The index works on the same folder layout as {@link sensors.MultiDaySource},
+ * i.e. a sequence of files <tt>1.ext</tt>, <tt>2.ext</tt>, etc., each
+ * containing one event per text line, sorted by timestamp. A checkpoint is
+ * always created at the start of each file, so that replaying never crosses
+ * a file boundary. The index and the checkpoints are written as files in the
+ * same folder as the logs; once built, the index can be reloaded with
+ * {@link #load()} in later sessions without rescanning the logs.
+ * <p>
+ * Descendants of this class only need to specify how a single text line is
+ * turned into an event, see {@link #parseEvent(String)}.
+ *
+ * @author Sylvain Hallé
+ */
+public abstract class HouseIndex
+{
+	/**
+	 * The name of the file containing the list of checkpoints.
+	 */
+	/*@ non_null @*/ public static final String INDEX_FILENAME = "house.idx";
+
+	/**
+	 * The prefix of the name of each file containing a serialized checkpoint.
+	 */
+	/*@ non_null @*/ protected static final String CHECKPOINT_PREFIX = "house-";
+
+	/**
+	 * The extension of each file containing a serialized checkpoint.
+	 */
+	/*@ non_null @*/ protected static final String CHECKPOINT_EXTENSION = ".chk";
+
+	/**
+	 * The file system open on the folder where the log files reside.
+	 */
+	/*@ non_null @*/ protected final FileSystem m_fs;
+
+	/**
+	 * The format of the events in the log files.
+	 */
+	/*@ non_null @*/ protected final EventFormat m_format;
+
+	/**
+	 * The minimum interval of event time (in milliseconds) between two
+	 * successive checkpoints.
+	 */
+	protected final long m_interval;
+
+	/**
+	 * The timestamp of the first event that is <em>not</em> included in each
+	 * checkpoint.
+	 */
+	/*@ non_null @*/ protected long[] m_timestamps;
+
+	/**
+	 * The number of the day file containing the first event not included in
+	 * each checkpoint.
+	 */
+	/*@ non_null @*/ protected int[] m_days;
+
+	/**
+	 * The byte offset, in its day file, of the first event not included in
+	 * each checkpoint.
+	 */
+	/*@ non_null @*/ protected long[] m_offsets;
+
+	/**
+	 * The number of checkpoints in the index.
+	 */
+	protected int m_size;
+
+	/**
+	 * Creates a new empty index.
+	 * @param fs A {@link FileSystem} instance open on the folder where the log
+	 * files reside
+	 * @param format The format of the events in the log files
+	 * @param interval The minimum interval of event time (in milliseconds)
+	 * between two successive checkpoints
+	 */
+	public HouseIndex(FileSystem fs, EventFormat format, long interval)
+	{
+		super();
+		m_fs = fs;
+		m_format = format;
+		m_interval = interval;
+		m_timestamps = new long[16];
+		m_days = new int[16];
+		m_offsets = new long[16];
+		m_size = 0;
+	}
+
+	/**
+	 * Turns a text line from a log file into an event of the index's format.
+	 * @param line The line
+	 * @return The event, or {@code null} if the line does not contain an
+	 * event
+	 */
+	/*@ null @*/ protected abstract Object parseEvent(/*@ non_null @*/ String line);
+
+	/**
+	 * Gets the number of checkpoints in the index.
+	 * @return The number of checkpoints
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Scans a range of day files, creates the checkpoints and writes the
+	 * index to the file system. Any index previously built in the same folder
+	 * is overwritten.
+	 * @param first_day The number of the first day of the range to read
+	 * @param last_day The number of the last day of the range to read. A
+	 * negative value indicates to read files until no file of a given number
+	 * is found.
+	 * @return This index
+	 * @throws FileSystemException If reading the logs or writing the index
+	 * fails
+	 */
+	public HouseIndex build(int first_day, int last_day) throws FileSystemException
+	{
+		m_size = 0;
+		House house = new House();
+		EventToHouseDelta to_delta = new EventToHouseDelta(m_format);
+		long last_checkpoint = 0;
+		for (int day = first_day; day <= last_day || last_day < 0; day++)
+		{
+			InputStream is;
+			try
+			{
+				is = m_fs.readFrom(day + m_format.getExtension());
+			}
+			catch (FileSystemException e)
+			{
+				if (last_day < 0)
+				{
+					break;
+				}
+				throw e;
+			}
+			try
+			{
+				LineReader reader = new LineReader(is);
+				boolean first = true;
+				long offset = reader.getPosition();
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					Object event = parseEvent(line);
+					if (event != null)
+					{
+						HouseDelta delta = to_delta.getValue(event);
+						long ts = delta.m_timestamp;
+						if (first || ts - last_checkpoint >= m_interval)
+						{
+							addCheckpoint(house, ts, day, offset);
+							last_checkpoint = ts;
+							first = false;
+						}
+						delta.getValue(house);
+					}
+					offset = reader.getPosition();
+				}
+			}
+			catch (IOException e)
+			{
+				throw new FileSystemException(e);
+			}
+			finally
+			{
+				close(is);
+			}
+		}
+		save();
+		return this;
+	}
+
+	/**
+	 * Loads a previously built index from the file system.
+	 * @return {@code true} if an index was found and loaded, {@code false}
+	 * otherwise
+	 */
+	public boolean load()
+	{
+		InputStream is;
+		try
+		{
+			is = m_fs.readFrom(INDEX_FILENAME);
+		}
+		catch (FileSystemException e)
+		{
+			return false;
+		}
+		try (DataInputStream dis = new DataInputStream(is))
+		{
+			int size = dis.readInt();
+			ensureCapacity(size);
+			for (int i = 0; i < size; i++)
+			{
+				m_timestamps[i] = dis.readLong();
+				m_days[i] = dis.readInt();
+				m_offsets[i] = dis.readLong();
+			}
+			m_size = size;
+			return true;
+		}
+		catch (IOException e)
+		{
+			m_size = 0;
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the state of the house at a given moment. The state includes all
+	 * the events whose timestamp is lower than or equal to the moment.
+	 * @param t The moment, expressed as a Unix timestamp in milliseconds
+	 * @return The state of the house. If the moment precedes the first event
+	 * of the log, an empty house is returned.
+	 * @throws FileSystemException If reading the checkpoint or the log fails
+	 */
+	/*@ non_null @*/ public House getState(long t) throws FileSystemException
+	{
+		int pos = findCheckpoint(t);
+		if (pos < 0)
+		{
+			return new House();
+		}
+		House house = readCheckpoint(pos);
+		EventToHouseDelta to_delta = new EventToHouseDelta(m_format);
+		InputStream is = m_fs.readFrom(m_days[pos] + m_format.getExtension());
+		try
+		{
+			skipFully(is, m_offsets[pos]);
+			LineReader reader = new LineReader(is);
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				Object event = parseEvent(line);
+				if (event == null)
+				{
+					continue;
+				}
+				HouseDelta delta = to_delta.getValue(event);
+				if (delta.m_timestamp > t)
+				{
+					break;
+				}
+				delta.getValue(house);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException(e);
+		}
+		finally
+		{
+			close(is);
+		}
+		return house;
+	}
+
+	/**
+	 * Gets the state of a single location of the house at a given moment.
+	 * @param t The moment, expressed as a Unix timestamp in milliseconds
+	 * @param location The name of the location
+	 * @return The state of the location, or {@code null} if no sensor of
+	 * this location has produced an event before the given moment
+	 * @throws FileSystemException If reading the checkpoint or the log fails
+	 */
+	/*@ null @*/ public Location getState(long t, String location) throws FileSystemException
+	{
+		return getState(t).get(location);
+	}
+
+	/**
+	 * Finds the last checkpoint that can be used to answer a query.
+	 * @param t The moment of the query
+	 * @return The position of the checkpoint in the index, or -1 if the moment
+	 * precedes all checkpoints
+	 */
+	protected int findCheckpoint(long t)
+	{
+		int pos = Arrays.binarySearch(m_timestamps, 0, m_size, t);
+		if (pos < 0)
+		{
+			// Not an exact match: take the checkpoint before insertion point
+			return -pos - 2;
+		}
+		// Checkpoints may share a timestamp; take the last one
+		while (pos + 1 < m_size && m_timestamps[pos + 1] == t)
+		{
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Adds a checkpoint to the index and writes the state of the house to the
+	 * file system.
+	 * @param house The house
+	 * @param ts The timestamp of the next event to be read
+	 * @param day The day file of the next event to be read
+	 * @param offset The byte offset of the next event to be read
+	 * @throws FileSystemException If the checkpoint cannot be written
+	 */
+	protected void addCheckpoint(House house, long ts, int day, long offset) throws FileSystemException
+	{
+		ensureCapacity(m_size + 1);
+		try (ObjectOutputStream oos = new ObjectOutputStream(m_fs.writeTo(getCheckpointFilename(m_size))))
+		{
+			oos.writeObject(house);
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException(e);
+		}
+		m_timestamps[m_size] = ts;
+		m_days[m_size] = day;
+		m_offsets[m_size] = offset;
+		m_size++;
+	}
+
+	/**
+	 * Reads the state of the house saved in a checkpoint.
+	 * @param pos The position of the checkpoint in the index
+	 * @return The house
+	 * @throws FileSystemException If the checkpoint cannot be read
+	 */
+	protected House readCheckpoint(int pos) throws FileSystemException
+	{
+		try (ObjectInputStream ois = new ObjectInputStream(m_fs.readFrom(getCheckpointFilename(pos))))
+		{
+			return (House) ois.readObject();
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			throw new FileSystemException(e);
+		}
+	}
+
+	/**
+	 * Writes the list of checkpoints to the file system.
+	 * @throws FileSystemException If the index cannot be written
+	 */
+	protected void save() throws FileSystemException
+	{
+		try (DataOutputStream dos = new DataOutputStream(m_fs.writeTo(INDEX_FILENAME)))
+		{
+			dos.writeInt(m_size);
+			for (int i = 0; i < m_size; i++)
+			{
+				dos.writeLong(m_timestamps[i]);
+				dos.writeInt(m_days[i]);
+				dos.writeLong(m_offsets[i]);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileSystemException(e);
+		}
+	}
+
+	/**
+	 * Gets the name of the file containing a checkpoint.
+	 * @param pos The position of the checkpoint in the index
+	 * @return The filename
+	 */
+	protected static String getCheckpointFilename(int pos)
+	{
+		return CHECKPOINT_PREFIX + pos + CHECKPOINT_EXTENSION;
+	}
+
+	/**
+	 * Makes sure the arrays of the index can hold a given number of
+	 * checkpoints.
+	 * @param capacity The number of checkpoints
+	 */
+	protected void ensureCapacity(int capacity)
+	{
+		if (capacity <= m_timestamps.length)
+		{
+			return;
+		}
+		int new_capacity = Math.max(capacity, m_timestamps.length * 2);
+		m_timestamps = Arrays.copyOf(m_timestamps, new_capacity);
+		m_days = Arrays.copyOf(m_days, new_capacity);
+		m_offsets = Arrays.copyOf(m_offsets, new_capacity);
+	}
+
+	/**
+	 * Skips a number of bytes in an input stream.
+	 * @param is The input stream
+	 * @param n The number of bytes to skip
+	 * @throws IOException If the stream ends before the bytes are skipped
+	 */
+	protected static void skipFully(InputStream is, long n) throws IOException
+	{
+		while (n > 0)
+		{
+			long skipped = is.skip(n);
+			if (skipped <= 0)
+			{
+				if (is.read() < 0)
+				{
+					throw new IOException("Unexpected end of stream");
+				}
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	/**
+	 * Closes an input stream, ignoring any exception.
+	 * @param is The input stream
+	 */
+	protected static void close(InputStream is)
+	{
+		try
+		{
+			is.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do
+		}
+	}
+
+	/**
+	 * Reads UTF-8 text lines from an input stream, while keeping track of the
+	 * number of bytes consumed so far. A {@link java.util.Scanner} or a
+	 * {@link java.io.BufferedReader} cannot be used for this purpose, as they
+	 * read ahead and decode characters.
+	 */
+	protected static class LineReader
+	{
+		/**
+		 * The input stream to read from.
+		 */
+		/*@ non_null @*/ protected final InputStream m_is;
+
+		/**
+		 * The buffer of bytes read from the stream.
+		 */
+		/*@ non_null @*/ protected final byte[] m_buffer;
+
+		/**
+		 * A buffer accumulating the bytes of the current line.
+		 */
+		/*@ non_null @*/ protected final ByteArrayOutputStream m_line;
+
+		/**
+		 * The position of the next byte to read in the buffer.
+		 */
+		protected int m_bufferPos;
+
+		/**
+		 * The number of valid bytes in the buffer.
+		 */
+		protected int m_bufferLength;
+
+		/**
+		 * The number of bytes consumed from the stream by the lines read so
+		 * far.
+		 */
+		protected long m_position;
+
+		/**
+		 * Creates a new line reader.
+		 * @param is The input stream to read from
+		 */
+		public LineReader(InputStream is)
+		{
+			super();
+			m_is = is;
+			m_buffer = new byte[8192];
+			m_line = new ByteArrayOutputStream();
+			m_bufferPos = 0;
+			m_bufferLength = 0;
+			m_position = 0;
+		}
+
+		/**
+		 * Gets the number of bytes consumed by the lines read so far.
+		 * @return The number of bytes
+		 */
+		public long getPosition()
+		{
+			return m_position;
+		}
+
+		/**
+		 * Reads the next line of text, without its line terminator.
+		 * @return The line, or {@code null} if the end of the stream has been
+		 * reached
+		 * @throws IOException If reading the stream fails
+		 */
+		/*@ null @*/ public String readLine() throws IOException
+		{
+			m_line.reset();
+			boolean read_any = false;
+			while (true)
+			{
+				if (m_bufferPos >= m_bufferLength)
+				{
+					m_bufferLength = m_is.read(m_buffer);
+					m_bufferPos = 0;
+					if (m_bufferLength <= 0)
+					{
+						m_bufferLength = 0;
+						return read_any ? toLine() : null;
+					}
+				}
+				read_any = true;
+				int start = m_bufferPos;
+				while (m_bufferPos < m_bufferLength && m_buffer[m_bufferPos] != '\n')
+				{
+					m_bufferPos++;
+				}
+				m_line.write(m_buffer, start, m_bufferPos - start);
+				m_position += m_bufferPos - start;
+				if (m_bufferPos < m_bufferLength)
+				{
+					// Consume the line feed
+					m_bufferPos++;
+					m_position++;
+					return toLine();
+				}
+			}
+		}
+
+		/**
+		 * Converts the accumulated bytes into a line, removing a trailing
+		 * carriage return if any.
+		 * @return The line
+		 */
+		protected String toLine()
+		{
+			String s = new String(m_line.toByteArray(), StandardCharsets.UTF_8);
+			if (s.endsWith("\r"))
+			{
+				return s.substring(0, s.length() - 1);
+			}
+			return s;
+		}
+	}
+}
@@ -25,10 +25,26 @@ import sensors.EventFormat;
 
 /**
  * A composite object maintaining the latest values of current, voltage
- * and power for a sensor.
+ * and power for a sensor. To track many devices at once, and to compute
+ * the energy they consume over time, see {@link EnergyAccounting}.
  */
 public class PowerState implements Duplicable
 {
+	/**
+	 * The name of the sensor producing current readings.
+	 */
+	/*@ non_null @*/ public static final String INSTANT_CURRENT = "instant_current";
+
+	/**
+	 * The name of the sensor producing voltage readings.
+	 */
+	/*@ non_null @*/ public static final String INSTANT_VOLTAGE = "instant_voltage";
+
+	/**
+	 * The name of the sensor producing power readings.
+	 */
+	/*@ non_null @*/ public static final String INSTANT_POWER = "instant_power";
+
 	/**
 	 * The current value of the sensor.
 	 */
@@ -231,15 +247,15 @@ public class PowerState implements Duplicable
 				m_format.stateString().evaluate(new Object[] {x}, out);
 				value = Double.parseDouble((String) out[0]);
 			}
-			if (quantity.equals("instant_current"))
+			if (quantity.equals(INSTANT_CURRENT))
 			{
 				return new SetCurrent(value);
 			}
-			if (quantity.equals("instant_voltage"))
+			if (quantity.equals(INSTANT_VOLTAGE))
 			{
 				return new SetVoltage(value);
 			}
-			if (quantity.equals("instant_power"))
+			if (quantity.equals(INSTANT_POWER))
 			{
 				return new SetPower(value);
 			}
@@ -0,0 +1,61 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.house.examples;
+
+import java.io.IOException;
+
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.LogRepository;
+import sensors.house.HouseIndex;
+import sensors.house.House.Location;
+import sensors.nears.NearsHouseIndex;
+import sensors.nears.NearsJsonFormat;
+
+/**
+ * Queries the state of the sensors in a room at a given moment, using a
+ * {@link HouseIndex} instead of replaying the whole log. The index is built
+ * on the first run, and simply reloaded in subsequent runs.
+ * 
+ * @author Sylvain Hallé
+ */
+public class PointInTimeQuery
+{
+	public static void main(String[] args) throws FileSystemException, IOException
+	{
+		/* Define the room and the moment to look at. */
+		String location = "kitchen";
+		long t = new NearsJsonFormat().parseDate("2023-02-26T14:32:10.000Z").getTime();
+		
+		FileSystem fs = new LogRepository("data/0105").open();
+		HouseIndex index = new NearsHouseIndex(fs);
+		if (!index.load())
+		{
+			long start = System.currentTimeMillis();
+			index.build(1, -1);
+			System.out.println("Built index with " + index.size() + " checkpoints in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		long start = System.currentTimeMillis();
+		Location loc = index.getState(t, location);
+		System.out.println("Answered in " + (System.currentTimeMillis() - start) + " ms");
+		System.out.println(loc);
+		
+		/* Clean up. */
+		fs.close();
+	}
+}
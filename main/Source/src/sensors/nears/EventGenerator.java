@@ -0,0 +1,987 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.nears;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Source;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import ca.uqac.lif.json.JsonMap;
+import sensors.TimedEvent;
+
+/**
+ * Produces synthetic sensor events in the format of the NEARS platform, in
+ * order to test pipelines at a larger scale than the real logs allow, and
+ * without their private data. Events are created with
+ * {@link NearsJsonFormat#newEvent(String, String, String, String, String, Object)
+ * NearsJsonFormat.newEvent()}; the rooms are those of the Orange4Home
+ * apartment, and the sensors are the devices found in the NEARS logs
+ * (motion, luminance and temperature sensors, door contacts, smart plugs and
+ * light switches). Like in the real logs, each event also has a
+ * <tt>home</tt> field.
+ * <p>
+ * Each home has a number of rooms, each equipped with a number of sensors;
+ * each sensor emits events at its own rate, drawn around the configured
+ * average. The activity of a home follows a daily cycle: the rate of all
+ * its sensors is multiplied by a factor that is lowest at 4:00 and highest
+ * at 16:00 (UTC), and the amplitude of this cycle is configurable. Binary
+ * sensors alternate between their two states, and numeric sensors perform a
+ * bounded random walk. Optionally, events can be delivered out of order
+ * (each event is delayed by a random duration up to a maximum, while keeping
+ * its original timestamp), and some of them can be delivered twice.
+ * <p>
+ * Everything is derived from a single seed: the same generator always
+ * produces the same events for a home, regardless of the number of threads
+ * used and of the order in which homes are produced. Homes are independent
+ * of each other, and can therefore be produced in parallel; this is what
+ * {@link #writeTo(FileSystem, int)} and {@link #getSource(int)} do. The
+ * events can be obtained:
+ * <ul>
+ * <li>home by home, as an iterator ({@link #getStream(int)})</li>
+ * <li>as a {@link Source} merging all the homes in the order of delivery,
+ * either generated on the fly ({@link #getSource()}) or generated in
+ * advance by multiple threads ({@link #getSource(int)})</li>
+ * <li>as files, with one folder per home containing one file per day, in the
+ * layout read by {@link sensors.HomeExecutor HomeExecutor} and
+ * {@link sensors.MultiDaySource MultiDaySource}</li>
+ * </ul>
+ *
+ * @author Sylvain Hallé
+ */
+public class EventGenerator
+{
+	/**
+	 * The number of milliseconds in a day.
+	 */
+	protected static final long DAY = 86400000l;
+
+	/**
+	 * The rooms of the Orange4Home apartment.
+	 */
+	/*@ non_null @*/ public static final String[] ROOMS = {"entrance", "kitchen", "livingroom", "toilet", "staircase", "walkway", "bathroom", "office", "bedroom"};
+
+	/**
+	 * The kinds of sensors that can equip a room.
+	 */
+	/*@ non_null @*/ protected static final SensorKind[] KINDS = {
+			new SensorKind(null, "motion", "fgms001", 3, NearsJsonFormat.V_ON, NearsJsonFormat.V_OFF),
+			new SensorKind("door", NearsJsonFormat.V_CONTACT, "hsm02", 1, NearsJsonFormat.V_OPEN, NearsJsonFormat.V_CLOSED),
+			new SensorKind(null, "luminance", "fgms001", 1, 0, 500, 25),
+			new SensorKind(null, NearsJsonFormat.V_TEMPERATURE, "fgms001", 0.5, 17, 26, 0.2),
+			new SensorKind("plug", "instant_power", "dmof1", 2, 0, 2000, 50),
+			new SensorKind("light", "switch", "zw096", 1, NearsJsonFormat.V_ON, NearsJsonFormat.V_OFF)
+	};
+
+	/**
+	 * The seed from which all the events are derived.
+	 */
+	protected final long m_seed;
+
+	/**
+	 * The number of homes.
+	 */
+	protected int m_homes = 10;
+
+	/**
+	 * The number of rooms in each home.
+	 */
+	protected int m_rooms = ROOMS.length;
+
+	/**
+	 * The number of sensors in each room.
+	 */
+	protected int m_sensorsPerRoom = 4;
+
+	/**
+	 * The average number of events per sensor and per hour.
+	 */
+	protected double m_rate = 60;
+
+	/**
+	 * The timestamp of the start of the period covered by the events.
+	 */
+	protected long m_start = 1672531200000l;
+
+	/**
+	 * The duration of the period covered by the events, in milliseconds.
+	 */
+	protected long m_duration = DAY;
+
+	/**
+	 * The amplitude of the daily cycle of activity, between 0 (constant
+	 * activity) and 1 (no activity at the lowest point of the cycle).
+	 */
+	protected double m_diurnal = 0.8;
+
+	/**
+	 * The maximum delay of an event, in milliseconds.
+	 */
+	protected long m_jitter = 0;
+
+	/**
+	 * The probability that an event is delivered twice.
+	 */
+	protected double m_duplicates = 0;
+
+	/**
+	 * Creates a new generator.
+	 * @param seed The seed from which all the events are derived
+	 */
+	public EventGenerator(long seed)
+	{
+		super();
+		m_seed = seed;
+	}
+
+	/**
+	 * Sets the number of homes.
+	 * @param homes The number of homes
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setHomes(int homes)
+	{
+		m_homes = homes;
+		return this;
+	}
+
+	/**
+	 * Sets the number of rooms in each home.
+	 * @param rooms The number of rooms, between 1 and the number of
+	 * {@link #ROOMS}
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setRooms(int rooms)
+	{
+		if (rooms < 1 || rooms > ROOMS.length)
+		{
+			throw new IllegalArgumentException("The number of rooms must be between 1 and " + ROOMS.length);
+		}
+		m_rooms = rooms;
+		return this;
+	}
+
+	/**
+	 * Sets the number of sensors in each room.
+	 * @param sensors The number of sensors, between 1 and the number of kinds
+	 * of sensors
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setSensorsPerRoom(int sensors)
+	{
+		if (sensors < 1 || sensors > KINDS.length)
+		{
+			throw new IllegalArgumentException("The number of sensors must be between 1 and " + KINDS.length);
+		}
+		m_sensorsPerRoom = sensors;
+		return this;
+	}
+
+	/**
+	 * Sets the average number of events produced by a sensor per hour. This
+	 * is the rate at the peak of the daily cycle.
+	 * @param rate The number of events per hour
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setRate(double rate)
+	{
+		m_rate = rate;
+		return this;
+	}
+
+	/**
+	 * Sets the period covered by the events.
+	 * @param start The timestamp of the start of the period
+	 * @param duration The duration of the period, in milliseconds
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setPeriod(long start, long duration)
+	{
+		m_start = start;
+		m_duration = duration;
+		return this;
+	}
+
+	/**
+	 * Sets the amplitude of the daily cycle of activity.
+	 * @param amplitude The amplitude, between 0 (constant activity) and 1 (no
+	 * activity at the lowest point of the cycle)
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setDiurnal(double amplitude)
+	{
+		m_diurnal = Math.max(0, Math.min(1, amplitude));
+		return this;
+	}
+
+	/**
+	 * Sets the maximum delay with which an event is delivered. A delay of 0
+	 * delivers all events in the order of their timestamps.
+	 * @param jitter The delay, in milliseconds
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setJitter(long jitter)
+	{
+		m_jitter = jitter;
+		return this;
+	}
+
+	/**
+	 * Sets the probability that an event is delivered twice.
+	 * @param probability The probability
+	 * @return This generator
+	 */
+	/*@ non_null @*/ public EventGenerator setDuplicates(double probability)
+	{
+		m_duplicates = probability;
+		return this;
+	}
+
+	/**
+	 * Gets the number of homes.
+	 * @return The number of homes
+	 */
+	public int getHomes()
+	{
+		return m_homes;
+	}
+
+	/**
+	 * Gets the name of a home, as written in the <tt>home</tt> field of its
+	 * events.
+	 * @param home The index of the home
+	 * @return The name
+	 */
+	/*@ non_null @*/ public static String getHomeName(int home)
+	{
+		return "synthetic-hub-" + getHomeFolder(home);
+	}
+
+	/**
+	 * Gets the name of the folder of a home written by
+	 * {@link #writeTo(FileSystem, int)}.
+	 * @param home The index of the home
+	 * @return The name
+	 */
+	/*@ non_null @*/ public static String getHomeFolder(int home)
+	{
+		return String.format("%04d", home + 1);
+	}
+
+	/**
+	 * Gets the events of a home.
+	 * @param home The index of the home, starting at 0
+	 * @return An iterator over the events of the home, in the order in which
+	 * they are delivered; each event is associated to the time of its
+	 * delivery
+	 */
+	/*@ non_null @*/ public HomeStream getStream(int home)
+	{
+		return new HomeStream(home);
+	}
+
+	/**
+	 * Gets a source producing the events of all homes, generated on the fly
+	 * in the current thread. Events are merged in the order in which they
+	 * are delivered.
+	 * @return The source
+	 */
+	/*@ non_null @*/ public MergeSource getSource()
+	{
+		List<Iterator<TimedEvent>> streams = new ArrayList<Iterator<TimedEvent>>(m_homes);
+		for (int i = 0; i < m_homes; i++)
+		{
+			streams.add(getStream(i));
+		}
+		return new MergeSource(streams);
+	}
+
+	/**
+	 * Gets a source producing the events of all homes, generated in advance
+	 * by a pool of threads and kept in memory. This moves the cost of
+	 * generating the events outside of the pipeline reading from the source,
+	 * at the price of keeping all events in memory.
+	 * @param threads The number of threads
+	 * @return The source
+	 */
+	/*@ non_null @*/ public MergeSource getSource(int threads)
+	{
+		final List<List<TimedEvent>> homes = new ArrayList<List<TimedEvent>>(m_homes);
+		for (int i = 0; i < m_homes; i++)
+		{
+			homes.add(null);
+		}
+		runHomes(threads, new HomeTask() {
+			@Override
+			public long run(int home)
+			{
+				List<TimedEvent> events = new ArrayList<TimedEvent>();
+				HomeStream s = getStream(home);
+				while (s.hasNext())
+				{
+					events.add(s.next());
+				}
+				synchronized (homes)
+				{
+					homes.set(home, events);
+				}
+				return events.size();
+			}
+		});
+		List<Iterator<TimedEvent>> streams = new ArrayList<Iterator<TimedEvent>>(m_homes);
+		for (List<TimedEvent> events : homes)
+		{
+			streams.add(events.iterator());
+		}
+		return new MergeSource(streams);
+	}
+
+	/**
+	 * Writes the events of all homes to a file system, using a pool of
+	 * threads. Each home has its own folder (see {@link #getHomeFolder(int)}),
+	 * which contains one file per day of the period, named <tt>1.json</tt>,
+	 * <tt>2.json</tt> and so on, with one event per line. Events are written
+	 * in the order in which they are delivered, and are split into days
+	 * according to their time of delivery.
+	 * @param fs The file system, open on the folder where the home folders
+	 * are created
+	 * @param threads The number of threads
+	 * @return The number of events written
+	 * @throws FileSystemException Thrown if a folder or a file cannot be
+	 * written
+	 */
+	public long writeTo(/*@ non_null @*/ final FileSystem fs, int threads) throws FileSystemException
+	{
+		// Folders are created beforehand, as the file system may not support
+		// concurrent changes to its structure
+		for (int i = 0; i < m_homes; i++)
+		{
+			if (!fs.isDirectory(getHomeFolder(i)))
+			{
+				fs.mkdir(getHomeFolder(i));
+			}
+		}
+		try
+		{
+			return runHomes(threads, new HomeTask() {
+				@Override
+				public long run(int home) throws IOException, FileSystemException
+				{
+					return writeHome(fs, home);
+				}
+			});
+		}
+		catch (ProcessorException e)
+		{
+			if (e.getCause() instanceof FileSystemException)
+			{
+				throw (FileSystemException) e.getCause();
+			}
+			throw new FileSystemException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes the events of a home to the files of its folder.
+	 * @param fs The file system
+	 * @param home The index of the home
+	 * @return The number of events written
+	 * @throws IOException Thrown if a file cannot be written
+	 * @throws FileSystemException Thrown if a file cannot be opened
+	 */
+	protected long writeHome(FileSystem fs, int home) throws IOException, FileSystemException
+	{
+		String folder = getHomeFolder(home);
+		HomeStream s = getStream(home);
+		long count = 0;
+		long day = -1;
+		Writer w = null;
+		try
+		{
+			while (s.hasNext())
+			{
+				TimedEvent e = s.next();
+				long e_day = Math.max(0, (e.getTimestamp() - m_start) / DAY);
+				if (w == null || e_day != day)
+				{
+					if (w != null)
+					{
+						w.close();
+					}
+					day = e_day;
+					w = new BufferedWriter(new OutputStreamWriter(fs.writeTo(folder + "/" + (day + 1) + ".json"), StandardCharsets.UTF_8), 1 << 16);
+				}
+				w.write(e.getEvent().toString());
+				w.write("\n");
+				count++;
+			}
+		}
+		finally
+		{
+			if (w != null)
+			{
+				w.close();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Runs a task for each home in a pool of threads, and waits for all of
+	 * them to finish.
+	 * @param threads The number of threads
+	 * @param task The task
+	 * @return The sum of the values returned by the task for each home
+	 * @throws ProcessorException Wraps the first exception thrown by a task
+	 */
+	protected long runHomes(int threads, final HomeTask task)
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try
+		{
+			List<Future<Long>> futures = new ArrayList<Future<Long>>(m_homes);
+			for (int i = 0; i < m_homes; i++)
+			{
+				final int home = i;
+				futures.add(pool.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception
+					{
+						return task.run(home);
+					}
+				}));
+			}
+			long total = 0;
+			for (Future<Long> f : futures)
+			{
+				total += f.get();
+			}
+			return total;
+		}
+		catch (ExecutionException e)
+		{
+			throw new ProcessorException(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessorException(e);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * A computation performed for a single home.
+	 */
+	protected interface HomeTask
+	{
+		/**
+		 * Runs the computation.
+		 * @param home The index of the home
+		 * @return A number of events
+		 * @throws Exception Any exception thrown by the computation
+		 */
+		public long run(int home) throws Exception;
+	}
+
+	/**
+	 * A kind of sensor, defined by its name, model and the values of its
+	 * state.
+	 */
+	protected static class SensorKind
+	{
+		/**
+		 * The subject of the sensor, or {@code null} if it is the name of the
+		 * room.
+		 */
+		/*@ null @*/ protected final String m_subject;
+
+		/**
+		 * The value of the <tt>sensor</tt> field.
+		 */
+		/*@ non_null @*/ protected final String m_sensor;
+
+		/**
+		 * The value of the <tt>model</tt> field.
+		 */
+		/*@ non_null @*/ protected final String m_model;
+
+		/**
+		 * The rate of events of this kind of sensor, relative to the average.
+		 */
+		protected final double m_weight;
+
+		/**
+		 * The two states of a binary sensor, or {@code null} for a numeric
+		 * sensor.
+		 */
+		/*@ null @*/ protected final String[] m_states;
+
+		/**
+		 * The lowest value of a numeric sensor.
+		 */
+		protected final double m_min;
+
+		/**
+		 * The highest value of a numeric sensor.
+		 */
+		protected final double m_max;
+
+		/**
+		 * The largest change of value of a numeric sensor between two events.
+		 */
+		protected final double m_step;
+
+		/**
+		 * Creates a kind of binary sensor.
+		 * @param subject The subject, or {@code null} for the name of the room
+		 * @param sensor The value of the <tt>sensor</tt> field
+		 * @param model The value of the <tt>model</tt> field
+		 * @param weight The relative rate of events
+		 * @param on The first state
+		 * @param off The second state
+		 */
+		public SensorKind(String subject, String sensor, String model, double weight, String on, String off)
+		{
+			super();
+			m_subject = subject;
+			m_sensor = sensor;
+			m_model = model;
+			m_weight = weight;
+			m_states = new String[] {on, off};
+			m_min = 0;
+			m_max = 0;
+			m_step = 0;
+		}
+
+		/**
+		 * Creates a kind of numeric sensor.
+		 * @param subject The subject, or {@code null} for the name of the room
+		 * @param sensor The value of the <tt>sensor</tt> field
+		 * @param model The value of the <tt>model</tt> field
+		 * @param weight The relative rate of events
+		 * @param min The lowest value
+		 * @param max The highest value
+		 * @param step The largest change of value between two events
+		 */
+		public SensorKind(String subject, String sensor, String model, double weight, double min, double max, double step)
+		{
+			super();
+			m_subject = subject;
+			m_sensor = sensor;
+			m_model = model;
+			m_weight = weight;
+			m_states = null;
+			m_min = min;
+			m_max = max;
+			m_step = step;
+		}
+	}
+
+	/**
+	 * The events of a single home, produced on demand. The layout of the home
+	 * (its rooms, sensors and their rates) is drawn first from the random
+	 * generator of the home, followed by the events themselves.
+	 * <p>
+	 * The events of the home are the superposition of a Poisson process for
+	 * each sensor. They are produced by drawing candidate times at the
+	 * highest total rate of the home, and keeping each candidate with a
+	 * probability given by the daily cycle at that time; the sensor of an
+	 * event is picked in proportion to its rate. When a jitter is set,
+	 * events wait in a queue sorted by time of delivery until no event
+	 * produced afterwards can be delivered before them.
+	 */
+	public class HomeStream implements Iterator<TimedEvent>
+	{
+		/**
+		 * The random generator of the home.
+		 */
+		/*@ non_null @*/ protected final SplittableRandom m_random;
+
+		/**
+		 * The name of the home.
+		 */
+		/*@ non_null @*/ protected final String m_home;
+
+		/**
+		 * The kind of each sensor.
+		 */
+		/*@ non_null @*/ protected final SensorKind[] m_kinds;
+
+		/**
+		 * The location of each sensor.
+		 */
+		/*@ non_null @*/ protected final String[] m_locations;
+
+		/**
+		 * The subject of each sensor.
+		 */
+		/*@ non_null @*/ protected final String[] m_subjects;
+
+		/**
+		 * The cumulative rate of the sensors, in events per millisecond; the
+		 * last element is the total rate of the home.
+		 */
+		/*@ non_null @*/ protected final double[] m_cumulativeRates;
+
+		/**
+		 * The current value of each numeric sensor, or the index of the
+		 * current state of each binary sensor.
+		 */
+		/*@ non_null @*/ protected final double[] m_values;
+
+		/**
+		 * The events waiting to be delivered, sorted by time of delivery.
+		 */
+		/*@ non_null @*/ protected final Queue<TimedEvent> m_pending;
+
+		/**
+		 * The formatter of the second part of timestamps.
+		 */
+		/*@ non_null @*/ protected final DateFormat m_format;
+
+		/**
+		 * The second of the last formatted timestamp.
+		 */
+		protected long m_lastSecond = Long.MIN_VALUE;
+
+		/**
+		 * The formatted second of the last timestamp.
+		 */
+		/*@ null @*/ protected String m_lastPrefix;
+
+		/**
+		 * The time of the last candidate event.
+		 */
+		protected double m_time;
+
+		/**
+		 * Whether the end of the period has been reached.
+		 */
+		protected boolean m_done;
+
+		/**
+		 * Creates the stream of a home.
+		 * @param home The index of the home
+		 */
+		protected HomeStream(int home)
+		{
+			super();
+			m_random = new SplittableRandom(m_seed + home * 0x9E3779B97F4A7C15l);
+			m_home = getHomeName(home);
+			int num_sensors = m_rooms * m_sensorsPerRoom;
+			m_kinds = new SensorKind[num_sensors];
+			m_locations = new String[num_sensors];
+			m_subjects = new String[num_sensors];
+			m_cumulativeRates = new double[num_sensors];
+			m_values = new double[num_sensors];
+			String[] rooms = shuffle(ROOMS.clone());
+			double total = 0;
+			int s = 0;
+			for (int r = 0; r < m_rooms; r++)
+			{
+				SensorKind[] kinds = shuffle(KINDS.clone());
+				for (int k = 0; k < m_sensorsPerRoom; k++, s++)
+				{
+					SensorKind kind = kinds[k];
+					m_kinds[s] = kind;
+					m_locations[s] = rooms[r];
+					m_subjects[s] = kind.m_subject == null ? rooms[r] : kind.m_subject;
+					// Each sensor gets a rate between half and one and a half times
+					// the average of its kind
+					total += kind.m_weight * m_rate * (0.5 + m_random.nextDouble()) / 3600000d;
+					m_cumulativeRates[s] = total;
+					m_values[s] = kind.m_states == null ? kind.m_min + m_random.nextDouble() * (kind.m_max - kind.m_min) : 1;
+				}
+			}
+			m_pending = new PriorityQueue<TimedEvent>();
+			m_format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.");
+			m_format.setTimeZone(NearsJsonFormat.s_utc);
+			m_time = m_start;
+			m_done = total == 0;
+		}
+
+		/**
+		 * Gets the name of the home.
+		 * @return The name
+		 */
+		/*@ non_null @*/ public String getHome()
+		{
+			return m_home;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while (!m_done && (m_pending.isEmpty() || m_pending.peek().getTimestamp() > m_time))
+			{
+				generate();
+			}
+			return !m_pending.isEmpty();
+		}
+
+		/**
+		 * Gets the next event of the home.
+		 * @return The event, associated with the time at which it is
+		 * delivered
+		 */
+		@Override
+		public TimedEvent next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			return m_pending.remove();
+		}
+
+		/**
+		 * Produces the next event, or reaches the end of the period.
+		 */
+		protected void generate()
+		{
+			double total = m_cumulativeRates[m_cumulativeRates.length - 1];
+			while (true)
+			{
+				m_time += -Math.log(1 - m_random.nextDouble()) / total;
+				if (m_time >= m_start + m_duration)
+				{
+					m_done = true;
+					m_time = Double.MAX_VALUE;
+					return;
+				}
+				if (m_random.nextDouble() < getActivity((long) m_time))
+				{
+					break;
+				}
+			}
+			long timestamp = (long) m_time;
+			int s = pickSensor(m_random.nextDouble() * total);
+			SensorKind kind = m_kinds[s];
+			Object state;
+			if (kind.m_states == null)
+			{
+				double v = m_values[s] + (m_random.nextDouble() * 2 - 1) * kind.m_step;
+				v = Math.max(kind.m_min, Math.min(kind.m_max, v));
+				m_values[s] = v;
+				state = v;
+			}
+			else
+			{
+				m_values[s] = 1 - m_values[s];
+				state = kind.m_states[(int) m_values[s]];
+			}
+			JsonMap event = (JsonMap) NearsJsonFormat.newEvent(m_locations[s], m_subjects[s], kind.m_model, formatTimestamp(timestamp), kind.m_sensor, state);
+			event.put("home", m_home);
+			deliver(timestamp, event);
+			if (m_duplicates > 0 && m_random.nextDouble() < m_duplicates)
+			{
+				deliver(timestamp, event);
+			}
+		}
+
+		/**
+		 * Adds an event to the queue of events to deliver, with a random delay
+		 * if a jitter is set.
+		 * @param timestamp The timestamp of the event
+		 * @param event The event
+		 */
+		protected void deliver(long timestamp, Object event)
+		{
+			long delay = m_jitter > 0 ? (long) (m_random.nextDouble() * m_jitter) : 0;
+			m_pending.add(new TimedEvent(timestamp + delay, event));
+		}
+
+		/**
+		 * Finds the sensor whose interval in the cumulative rates contains a
+		 * value.
+		 * @param x The value
+		 * @return The index of the sensor
+		 */
+		protected int pickSensor(double x)
+		{
+			int lo = 0;
+			int hi = m_cumulativeRates.length - 1;
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (m_cumulativeRates[mid] <= x)
+				{
+					lo = mid + 1;
+				}
+				else
+				{
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * Formats a timestamp in the format of the platform. Since consecutive
+		 * events are usually within the same second, the part of the string up
+		 * to the seconds is reused from one event to the next.
+		 * @param timestamp The timestamp
+		 * @return The formatted timestamp
+		 */
+		/*@ non_null @*/ protected String formatTimestamp(long timestamp)
+		{
+			long second = Math.floorDiv(timestamp, 1000);
+			if (second != m_lastSecond)
+			{
+				m_lastSecond = second;
+				m_lastPrefix = m_format.format(new Date(second * 1000));
+			}
+			int ms = (int) Math.floorMod(timestamp, 1000);
+			StringBuilder out = new StringBuilder(m_lastPrefix.length() + 4);
+			out.append(m_lastPrefix);
+			if (ms < 100)
+			{
+				out.append(ms < 10 ? "00" : "0");
+			}
+			return out.append(ms).append('Z').toString();
+		}
+
+		/**
+		 * Shuffles an array in place with the random generator of the home.
+		 * @param a The array
+		 * @return The array
+		 */
+		protected <T> T[] shuffle(T[] a)
+		{
+			for (int i = a.length - 1; i > 0; i--)
+			{
+				int j = m_random.nextInt(i + 1);
+				T t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * Gets the level of activity of homes at a given time, according to the
+	 * daily cycle.
+	 * @param timestamp The time
+	 * @return The level of activity, between 0 and 1
+	 */
+	protected double getActivity(long timestamp)
+	{
+		double hour = Math.floorMod(timestamp, DAY) / 3600000d;
+		double cycle = 0.5 - 0.5 * Math.cos(2 * Math.PI * (hour - 4) / 24);
+		return 1 - m_diurnal + m_diurnal * cycle;
+	}
+
+	/**
+	 * A source merging the events of multiple homes in the order in which
+	 * they are delivered. Among events delivered at the same time, those of
+	 * the home with the lowest index come first.
+	 */
+	public static class MergeSource extends Source
+	{
+		/**
+		 * The streams of events of each home.
+		 */
+		/*@ non_null @*/ protected final List<Iterator<TimedEvent>> m_streams;
+
+		/**
+		 * The next event of each home that has not been output yet, along with
+		 * the index of the home.
+		 */
+		/*@ non_null @*/ protected final PriorityQueue<Object[]> m_heads;
+
+		/**
+		 * Creates a new source.
+		 * @param streams The streams of events of each home
+		 */
+		public MergeSource(/*@ non_null @*/ List<Iterator<TimedEvent>> streams)
+		{
+			super(1);
+			m_streams = streams;
+			m_heads = new PriorityQueue<Object[]>(Math.max(1, streams.size()), new Comparator<Object[]>() {
+				@Override
+				public int compare(Object[] o1, Object[] o2)
+				{
+					int c = ((TimedEvent) o1[1]).compareTo((TimedEvent) o2[1]);
+					return c != 0 ? c : Integer.compare((Integer) o1[0], (Integer) o2[0]);
+				}
+			});
+			for (int i = 0; i < streams.size(); i++)
+			{
+				advance(i);
+			}
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			Object[] head = m_heads.poll();
+			if (head == null)
+			{
+				return false;
+			}
+			outputs.add(new Object[] {((TimedEvent) head[1]).getEvent()});
+			advance((Integer) head[0]);
+			return true;
+		}
+
+		/**
+		 * Puts the next event of a home among the heads, if any.
+		 * @param home The index of the home
+		 */
+		protected void advance(int home)
+		{
+			Iterator<TimedEvent> it = m_streams.get(home);
+			if (it.hasNext())
+			{
+				m_heads.add(new Object[] {home, it.next()});
+			}
+		}
+
+		@Override
+		public MergeSource duplicate(boolean with_state)
+		{
+			throw new UnsupportedOperationException("This source cannot be duplicated");
+		}
+	}
+}
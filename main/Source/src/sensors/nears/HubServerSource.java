@@ -0,0 +1,888 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.nears;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.Source;
+import ca.uqac.lif.json.JsonElement;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonParser;
+import ca.uqac.lif.json.JsonParser.JsonParseException;
+
+/**
+ * Source receiving live events from hubs over TCP. The source listens on a
+ * port, and accepts any number of connections, all served by a single
+ * network thread using a {@link Selector}. Each hub sends its name on the
+ * first line of its connection, followed by one event per line in the JSON
+ * format of the NEARS platform (the layout of the files read by
+ * {@link JsonLineFeeder}). Each event is given a <tt>home</tt> field with the
+ * name of the hub it comes from, and the events of all hubs are output in
+ * the order in which they are received.
+ * <p>
+ * The bytes received on a connection are read into a buffer of the
+ * connection, in which lines are found by scanning for line feeds; the
+ * bytes of each line are decoded directly from the buffer, and the buffer
+ * is compacted once all its complete lines are processed. Lines that are
+ * not valid JSON are counted and ignored. A line longer than the buffer
+ * makes the buffer grow, up to a maximum size beyond which the connection
+ * is closed.
+ * <p>
+ * Decoded events wait in a bounded queue until the pipeline reads them. When
+ * this queue is full, the network thread stops reading from the connection
+ * that produced the event, and from any other connection that tries to add
+ * an event, until the queue is down to half its capacity. The data sent by
+ * these hubs then accumulates in the buffers of the operating system, and
+ * TCP flow control eventually slows the hubs down; the memory used by the
+ * source therefore stays bounded no matter how far behind the pipeline
+ * falls.
+ * <p>
+ * The server is started by {@link #open()} and stopped by {@link #close()}.
+ * The source can be pulled, in which case a call to <tt>hasNext()</tt>
+ * blocks until an event is received, or it can push its events to the
+ * processors connected to it when {@link #start()} is called, until the
+ * server is closed. A {@link HubClient} can stand in for real hubs to test
+ * a pipeline locally.
+ *
+ * @author Sylvain Hallé
+ */
+public class HubServerSource extends Source
+{
+	/**
+	 * The default capacity of the queue of events.
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * The initial size of the buffer of a connection.
+	 */
+	protected static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * The maximum size of the buffer of a connection, and therefore of a
+	 * line.
+	 */
+	protected static final int MAX_BUFFER_SIZE = 1 << 22;
+
+	/**
+	 * The name of the field added to events to identify their hub.
+	 */
+	public static final String HOME = "home";
+
+	/**
+	 * The address on which the server listens.
+	 */
+	/*@ non_null @*/ protected final SocketAddress m_address;
+
+	/**
+	 * The events decoded and not yet output.
+	 */
+	/*@ non_null @*/ protected final BlockingQueue<Object> m_queue;
+
+	/**
+	 * The number of events in the queue below which paused connections are
+	 * read again.
+	 */
+	protected final int m_resumeThreshold;
+
+	/**
+	 * The parser decoding the events. It is only used by the network thread.
+	 */
+	/*@ non_null @*/ protected final JsonParser m_parser;
+
+	/**
+	 * The connections whose reading is paused because the queue is full.
+	 */
+	/*@ non_null @*/ protected final List<Connection> m_paused;
+
+	/**
+	 * The selector of the network thread, or {@code null} if the server is
+	 * not open.
+	 */
+	/*@ null @*/ protected Selector m_selector;
+
+	/**
+	 * The channel accepting connections.
+	 */
+	/*@ null @*/ protected ServerSocketChannel m_server;
+
+	/**
+	 * The network thread.
+	 */
+	/*@ null @*/ protected Thread m_thread;
+
+	/**
+	 * Whether the server has been asked to stop.
+	 */
+	protected volatile boolean m_closing;
+
+	/**
+	 * Whether the network thread has stopped.
+	 */
+	protected volatile boolean m_stopped;
+
+	/**
+	 * Whether the network thread waits for the queue to empty. This is set by
+	 * the network thread and cleared by the thread reading the events.
+	 */
+	protected volatile boolean m_waiting;
+
+	/**
+	 * The number of connections accepted.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_connections;
+
+	/**
+	 * The number of events received.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_received;
+
+	/**
+	 * The number of lines that could not be decoded.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_malformed;
+
+	/**
+	 * The number of times a connection was paused.
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_pauses;
+
+	/**
+	 * Creates a new source listening on all interfaces with the default
+	 * queue capacity.
+	 * @param port The port, or 0 to use any free port
+	 */
+	public HubServerSource(int port)
+	{
+		this(new InetSocketAddress(port), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new source.
+	 * @param address The address on which the server listens
+	 * @param capacity The capacity of the queue of events
+	 */
+	public HubServerSource(/*@ non_null @*/ SocketAddress address, int capacity)
+	{
+		super(1);
+		m_address = address;
+		m_queue = new ArrayBlockingQueue<Object>(capacity);
+		m_resumeThreshold = capacity / 2;
+		m_parser = new JsonParser();
+		m_paused = new ArrayList<Connection>();
+		m_connections = new AtomicLong();
+		m_received = new AtomicLong();
+		m_malformed = new AtomicLong();
+		m_pauses = new AtomicLong();
+	}
+
+	/**
+	 * Starts listening for connections, in a new network thread.
+	 * @return This source
+	 * @throws IOException Thrown if the server cannot listen on its address
+	 */
+	/*@ non_null @*/ public HubServerSource open() throws IOException
+	{
+		m_selector = Selector.open();
+		m_server = ServerSocketChannel.open();
+		m_server.configureBlocking(false);
+		m_server.bind(m_address);
+		m_server.register(m_selector, SelectionKey.OP_ACCEPT);
+		m_closing = false;
+		m_stopped = false;
+		m_thread = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				serve();
+			}
+		}, "HubServerSource " + getPort());
+		m_thread.setDaemon(true);
+		m_thread.start();
+		return this;
+	}
+
+	/**
+	 * Stops the server and closes all its connections. Events already in the
+	 * queue are still output by the source, after which it reports the end of
+	 * its stream.
+	 */
+	public void close()
+	{
+		m_closing = true;
+		if (m_selector != null)
+		{
+			m_selector.wakeup();
+		}
+		if (m_thread != null)
+		{
+			try
+			{
+				m_thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Gets the port on which the server listens.
+	 * @return The port, or -1 if the server is not open
+	 */
+	public int getPort()
+	{
+		if (m_server == null || m_server.socket() == null)
+		{
+			return -1;
+		}
+		return m_server.socket().getLocalPort();
+	}
+
+	/**
+	 * Gets the number of connections accepted.
+	 * @return The number of connections
+	 */
+	public long getConnectionCount()
+	{
+		return m_connections.get();
+	}
+
+	/**
+	 * Gets the number of events received.
+	 * @return The number of events
+	 */
+	public long getReceivedCount()
+	{
+		return m_received.get();
+	}
+
+	/**
+	 * Gets the number of lines that could not be decoded.
+	 * @return The number of lines
+	 */
+	public long getMalformedCount()
+	{
+		return m_malformed.get();
+	}
+
+	/**
+	 * Gets the number of times reading from a connection was paused because
+	 * the pipeline could not keep up.
+	 * @return The number of pauses
+	 */
+	public long getPauseCount()
+	{
+		return m_pauses.get();
+	}
+
+	/**
+	 * Gets the number of events waiting to be output.
+	 * @return The number of events
+	 */
+	public int getQueueSize()
+	{
+		return m_queue.size();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		Object o = getNextEvent();
+		if (o == null)
+		{
+			return false;
+		}
+		outputs.add(new Object[] {o});
+		return true;
+	}
+
+	@Override
+	public void start()
+	{
+		super.start();
+		Pushable p = getPushableOutput(0);
+		Object o;
+		while ((o = getNextEvent()) != null)
+		{
+			p.push(o);
+		}
+		p.notifyEndOfTrace();
+	}
+
+	/**
+	 * Waits for the next event received by the server.
+	 * @return The event, or {@code null} if the server is closed and all
+	 * its events have been output
+	 */
+	/*@ null @*/ protected Object getNextEvent()
+	{
+		try
+		{
+			while (true)
+			{
+				Object o = m_queue.poll(100, TimeUnit.MILLISECONDS);
+				if (o != null)
+				{
+					if (m_waiting && m_queue.size() <= m_resumeThreshold)
+					{
+						m_waiting = false;
+						m_selector.wakeup();
+					}
+					return o;
+				}
+				if (m_stopped && m_queue.isEmpty())
+				{
+					return null;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * The loop of the network thread.
+	 */
+	protected void serve()
+	{
+		try
+		{
+			while (!m_closing)
+			{
+				m_selector.select();
+				Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+				while (it.hasNext())
+				{
+					SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid())
+					{
+						continue;
+					}
+					if (key.isAcceptable())
+					{
+						accept();
+					}
+					else if (key.isReadable())
+					{
+						read((Connection) key.attachment());
+					}
+				}
+				if (!m_paused.isEmpty())
+				{
+					if (m_queue.size() <= m_resumeThreshold)
+					{
+						resume();
+					}
+					if (!m_paused.isEmpty())
+					{
+						// Ask the reading thread to wake us up once the queue has room
+						m_waiting = true;
+						if (m_queue.size() <= m_resumeThreshold)
+						{
+							m_selector.wakeup();
+						}
+					}
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new ProcessorException(e);
+		}
+		finally
+		{
+			for (SelectionKey key : m_selector.keys())
+			{
+				closeQuietly(key);
+			}
+			try
+			{
+				m_selector.close();
+			}
+			catch (IOException e)
+			{
+				// Nothing to do
+			}
+			m_stopped = true;
+		}
+	}
+
+	/**
+	 * Accepts a pending connection.
+	 * @throws IOException Thrown if the connection cannot be accepted
+	 */
+	protected void accept() throws IOException
+	{
+		SocketChannel channel = m_server.accept();
+		if (channel == null)
+		{
+			return;
+		}
+		channel.configureBlocking(false);
+		Connection c = new Connection(channel);
+		c.m_key = channel.register(m_selector, SelectionKey.OP_READ, c);
+		m_connections.incrementAndGet();
+	}
+
+	/**
+	 * Reads the bytes available on a connection, and decodes its complete
+	 * lines.
+	 * @param c The connection
+	 */
+	protected void read(Connection c)
+	{
+		int n;
+		try
+		{
+			if (!c.m_buffer.hasRemaining())
+			{
+				if (!c.grow())
+				{
+					// Line too long: drop the connection
+					m_malformed.incrementAndGet();
+					closeQuietly(c.m_key);
+					return;
+				}
+			}
+			n = c.m_channel.read(c.m_buffer);
+		}
+		catch (IOException e)
+		{
+			closeQuietly(c.m_key);
+			return;
+		}
+		if (n < 0)
+		{
+			// The hub closed the connection; a last line may lack its line feed
+			int pos = c.m_buffer.position();
+			if (pos > 0 && c.m_buffer.get(pos - 1) != '\n' && (c.m_buffer.hasRemaining() || c.grow()))
+			{
+				c.m_buffer.put((byte) '\n');
+			}
+			c.m_closed = true;
+		}
+		if (decode(c) && c.m_closed)
+		{
+			closeQuietly(c.m_key);
+		}
+	}
+
+	/**
+	 * Decodes the complete lines in the buffer of a connection, and adds the
+	 * events to the queue. If the queue is full, reading from the connection
+	 * is paused, and the remaining lines stay in its buffer.
+	 * @param c The connection
+	 * @return {@code true} if all complete lines were decoded,
+	 * {@code false} if the connection was paused
+	 */
+	protected boolean decode(Connection c)
+	{
+		ByteBuffer buf = c.m_buffer;
+		byte[] bytes = buf.array();
+		int end = buf.position();
+		int start = c.m_lineStart;
+		for (int i = c.m_scanned; i < end; i++)
+		{
+			if (bytes[i] != '\n')
+			{
+				continue;
+			}
+			int len = i - start;
+			if (len > 0 && bytes[i - 1] == '\r')
+			{
+				len--;
+			}
+			if (len > 0)
+			{
+				String line = new String(bytes, start, len, StandardCharsets.UTF_8);
+				if (c.m_home == null)
+				{
+					c.m_home = line.trim();
+				}
+				else
+				{
+					Object event = parse(line, c.m_home);
+					if (event != null && !m_queue.offer(event))
+					{
+						// The queue is full: keep the line for later
+						c.m_lineStart = start;
+						c.m_scanned = start;
+						c.m_pending = event;
+						pause(c);
+						return false;
+					}
+				}
+			}
+			start = i + 1;
+		}
+		// Move the incomplete line to the start of the buffer
+		buf.flip();
+		buf.position(start);
+		buf.compact();
+		c.m_lineStart = 0;
+		c.m_scanned = buf.position();
+		return true;
+	}
+
+	/**
+	 * Parses a line into an event, and tags it with the name of its hub.
+	 * @param line The line
+	 * @param home The name of the hub
+	 * @return The event, or {@code null} if the line is not a valid event
+	 */
+	/*@ null @*/ protected Object parse(String line, String home)
+	{
+		try
+		{
+			JsonElement e = m_parser.parse(line);
+			if (!(e instanceof JsonMap))
+			{
+				m_malformed.incrementAndGet();
+				return null;
+			}
+			((JsonMap) e).put(HOME, home);
+			m_received.incrementAndGet();
+			return e;
+		}
+		catch (JsonParseException e)
+		{
+			m_malformed.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stops reading from a connection until the queue has room again.
+	 * @param c The connection
+	 */
+	protected void pause(Connection c)
+	{
+		c.m_key.interestOps(0);
+		m_paused.add(c);
+		m_pauses.incrementAndGet();
+	}
+
+	/**
+	 * Reads again from the paused connections, starting with the lines left
+	 * in their buffer.
+	 */
+	protected void resume()
+	{
+		List<Connection> paused = new ArrayList<Connection>(m_paused);
+		m_paused.clear();
+		for (int i = 0; i < paused.size(); i++)
+		{
+			Connection c = paused.get(i);
+			if (!m_queue.offer(c.m_pending))
+			{
+				// Still no room: the connection and those after it stay paused
+				m_paused.addAll(paused.subList(i, paused.size()));
+				return;
+			}
+			c.m_pending = null;
+			// Skip the line of the pending event, already in the queue
+			c.m_scanned = skipLine(c);
+			c.m_lineStart = c.m_scanned;
+			if (decode(c))
+			{
+				if (c.m_closed)
+				{
+					closeQuietly(c.m_key);
+				}
+				else if (c.m_key.isValid())
+				{
+					c.m_key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+			else
+			{
+				// Paused again: put back the connections not processed yet
+				m_paused.addAll(paused.subList(i + 1, paused.size()));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Finds the position after the end of the first line in the buffer of a
+	 * connection, starting from the beginning of its current line.
+	 * @param c The connection
+	 * @return The position
+	 */
+	protected static int skipLine(Connection c)
+	{
+		byte[] bytes = c.m_buffer.array();
+		int i = c.m_lineStart;
+		while (bytes[i] != '\n')
+		{
+			i++;
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Closes the channel of a key, ignoring errors.
+	 * @param key The key
+	 */
+	protected static void closeQuietly(/*@ null @*/ SelectionKey key)
+	{
+		if (key == null)
+		{
+			return;
+		}
+		key.cancel();
+		try
+		{
+			key.channel().close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do
+		}
+	}
+
+	@Override
+	public HubServerSource duplicate(boolean with_state)
+	{
+		throw new UnsupportedOperationException("This source cannot be duplicated");
+	}
+
+	/**
+	 * The state of a connection with a hub.
+	 */
+	protected static class Connection
+	{
+		/**
+		 * The channel of the connection.
+		 */
+		/*@ non_null @*/ protected final SocketChannel m_channel;
+
+		/**
+		 * The key of the channel in the selector.
+		 */
+		/*@ null @*/ protected SelectionKey m_key;
+
+		/**
+		 * The bytes read and not yet decoded.
+		 */
+		/*@ non_null @*/ protected ByteBuffer m_buffer;
+
+		/**
+		 * The position in the buffer of the start of the current line.
+		 */
+		protected int m_lineStart;
+
+		/**
+		 * The position in the buffer up to which line feeds have been looked
+		 * for.
+		 */
+		protected int m_scanned;
+
+		/**
+		 * The name of the hub, or {@code null} if it has not been received
+		 * yet.
+		 */
+		/*@ null @*/ protected String m_home;
+
+		/**
+		 * An event decoded while the queue was full, and waiting to be added
+		 * to it.
+		 */
+		/*@ null @*/ protected Object m_pending;
+
+		/**
+		 * Whether the hub has closed the connection.
+		 */
+		protected boolean m_closed;
+
+		/**
+		 * Creates a new connection.
+		 * @param channel The channel of the connection
+		 */
+		public Connection(/*@ non_null @*/ SocketChannel channel)
+		{
+			super();
+			m_channel = channel;
+			m_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+
+		/**
+		 * Doubles the size of the buffer.
+		 * @return {@code true} if the buffer could grow, {@code false} if it
+		 * has reached its maximum size
+		 */
+		protected boolean grow()
+		{
+			if (m_buffer.capacity() >= MAX_BUFFER_SIZE)
+			{
+				return false;
+			}
+			ByteBuffer b = ByteBuffer.allocate(m_buffer.capacity() * 2);
+			m_buffer.flip();
+			b.put(m_buffer);
+			m_buffer = b;
+			return true;
+		}
+	}
+
+	/**
+	 * A client sending events to a {@link HubServerSource} in the same way as
+	 * a hub, to test a pipeline locally. The client sends the name of its hub,
+	 * followed by one event per line.
+	 */
+	public static class HubClient implements AutoCloseable
+	{
+		/**
+		 * The socket of the client.
+		 */
+		/*@ non_null @*/ protected final Socket m_socket;
+
+		/**
+		 * The stream to which lines are written.
+		 */
+		/*@ non_null @*/ protected final OutputStream m_out;
+
+		/**
+		 * Connects to a server.
+		 * @param host The host of the server
+		 * @param port The port of the server
+		 * @param home The name of the hub
+		 * @throws IOException Thrown if the client cannot connect
+		 */
+		public HubClient(/*@ non_null @*/ String host, int port, /*@ non_null @*/ String home) throws IOException
+		{
+			super();
+			m_socket = new Socket(host, port);
+			m_out = new BufferedOutputStream(m_socket.getOutputStream(), BUFFER_SIZE);
+			sendLine(home);
+		}
+
+		/**
+		 * Sends an event.
+		 * @param event The event; its string representation must fit on a
+		 * single line
+		 * @throws IOException Thrown if the event cannot be sent
+		 */
+		public void send(/*@ non_null @*/ Object event) throws IOException
+		{
+			sendLine(event.toString());
+		}
+
+		/**
+		 * Sends all the lines of a stream, such as a log in the format read by
+		 * {@link JsonLineFeeder}.
+		 * @param is The stream
+		 * @return The number of lines sent
+		 * @throws IOException Thrown if the stream cannot be read or the lines
+		 * cannot be sent
+		 */
+		public long sendAll(/*@ non_null @*/ InputStream is) throws IOException
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+			long count = 0;
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				sendLine(line);
+				count++;
+			}
+			m_out.flush();
+			return count;
+		}
+
+		/**
+		 * Sends a line of text.
+		 * @param line The line
+		 * @throws IOException Thrown if the line cannot be sent
+		 */
+		protected void sendLine(/*@ non_null @*/ String line) throws IOException
+		{
+			m_out.write(line.getBytes(StandardCharsets.UTF_8));
+			m_out.write('\n');
+		}
+
+		/**
+		 * Sends any buffered lines.
+		 * @throws IOException Thrown if the lines cannot be sent
+		 */
+		public void flush() throws IOException
+		{
+			m_out.flush();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			m_out.flush();
+			m_socket.close();
+		}
+
+		/**
+		 * Sends a log file to a server.
+		 * <p>
+		 * Usage: <tt>HubClient host port home file</tt>
+		 * @param args The arguments
+		 * @throws IOException Thrown if the file cannot be sent
+		 */
+		public static void main(String[] args) throws IOException
+		{
+			if (args.length < 4)
+			{
+				System.err.println("Usage: HubClient host port home file");
+				System.exit(1);
+			}
+			try (HubClient c = new HubClient(args[0], Integer.parseInt(args[1]), args[2]);
+					InputStream is = new FileInputStream(args[3]))
+			{
+				long n = c.sendAll(is);
+				System.out.println(n + " lines sent");
+			}
+		}
+	}
+}
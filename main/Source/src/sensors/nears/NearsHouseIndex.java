@@ -0,0 +1,49 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.nears;
+
+import ca.uqac.lif.fs.FileSystem;
+import sensors.house.HouseIndex;
+
+/**
+ * A {@link HouseIndex} for the day files read by a
+ * {@link NearsMultiDaySource}, where each line contains one JSON event.
+ */
+public class NearsHouseIndex extends HouseIndex
+{
+	/**
+	 * The default interval of event time between two checkpoints (10 minutes).
+	 */
+	public static final long DEFAULT_INTERVAL = 10 * 60 * 1000;
+	
+	public NearsHouseIndex(FileSystem fs, long interval)
+	{
+		super(fs, new NearsJsonFormat(), interval);
+	}
+	
+	public NearsHouseIndex(FileSystem fs)
+	{
+		this(fs, DEFAULT_INTERVAL);
+	}
+
+	@Override
+	protected Object parseEvent(String line)
+	{
+		return NearsJsonFormat.newEvent(line);
+	}
+}
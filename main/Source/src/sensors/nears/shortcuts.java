@@ -62,7 +62,20 @@ public class shortcuts extends sensors.casas.shortcuts
 	{
 		return sensors.shortcuts.createSource(s_format, args);
 	}
-	
+
+	/**
+	 * Creates a processor that receives live events from hubs connecting to
+	 * a port.
+	 * @param port The port
+	 * @return The processor, already listening for connections
+	 * @throws IOException If the port cannot be listened on
+	 * @see HubServerSource
+	 */
+	public static HubServerSource Listen(int port) throws IOException
+	{
+		return new HubServerSource(port).open();
+	}
+
 	public static Function Timestamp()
 	{
 		return s_format.timestamp();
@@ -334,6 +334,194 @@ public class shortcuts extends beepbeep.groovy
 		return new RemoveStutterHead();
 	}
 
+	/**
+	 * Creates a processor that removes the head of stuttering sequences
+	 * independently for each key.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 * @return The processor
+	 * @see KeyedRemoveStutter.Head
+	 */
+	public static Processor RemoveStutterHead(Object key, Object value)
+	{
+		return new KeyedRemoveStutter.Head(liftFunction(key), liftFunction(value));
+	}
+
+	/**
+	 * Creates a processor that removes the tail of stuttering sequences
+	 * independently for each key.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 * @return The processor
+	 * @see KeyedRemoveStutter.Tail
+	 */
+	public static Processor RemoveStutterTail(Object key, Object value)
+	{
+		return new KeyedRemoveStutter.Tail(liftFunction(key), liftFunction(value));
+	}
+
+	/**
+	 * Creates a processor that slices a stream and outputs only the changes
+	 * in the value of each slice.
+	 * @param key The function extracting the key from an event
+	 * @param slice The processor copied for each slice
+	 * @return The processor
+	 * @see DeltaSlice
+	 */
+	public static Processor SliceDelta(Object key, Object slice)
+	{
+		return new DeltaSlice(liftFunction(key), liftProcessor(slice));
+	}
+
+	/**
+	 * Creates a processor that slices a stream and outputs the map of the
+	 * last value of each slice only at the end of the trace.
+	 * @param key The function extracting the key from an event
+	 * @param slice The processor copied for each slice
+	 * @return The processor
+	 * @see DeltaSlice
+	 */
+	public static Processor SliceLast(Object key, Object slice)
+	{
+		return new DeltaSlice(liftFunction(key), liftProcessor(slice), true);
+	}
+
+	/**
+	 * Creates a processor that slices a stream sorted by timestamp into
+	 * consecutive periods of fixed width, and outputs the final value of each
+	 * period when it ends.
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param width The width of each period, in milliseconds
+	 * @param slice The processor copied for each period
+	 * @return The processor
+	 * @see TimeSlice
+	 */
+	public static Processor SliceByTime(Object timestamp, long width, Object slice)
+	{
+		return new TimeSlice(liftFunction(timestamp), width, liftProcessor(slice));
+	}
+
+	/**
+	 * Creates a processor that outputs the start and the end of the periods
+	 * during which a sensor stays silent for longer than a threshold.
+	 * @param key The function extracting the key from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param threshold The maximum duration of silence, in milliseconds
+	 * @return The processor
+	 * @see GapDetector
+	 */
+	public static Processor DetectGaps(Object key, Object timestamp, long threshold)
+	{
+		return new GapDetector(liftFunction(key), liftFunction(timestamp), threshold);
+	}
+
+	/**
+	 * Creates a processor that aggregates values per key over consecutive
+	 * windows of fixed width.
+	 * @param key The function extracting the key from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param value The function extracting the value from an event
+	 * @param width The width of each window, in milliseconds
+	 * @param aggregate The aggregate computed over each window
+	 * @return The processor
+	 * @see WindowAggregate.Tumbling
+	 */
+	public static Processor TumblingWindow(Object key, Object timestamp, Object value, long width, WindowAggregate.Aggregate<?> aggregate)
+	{
+		return new WindowAggregate.Tumbling(liftFunction(key), liftFunction(timestamp), liftFunction(value), width, aggregate);
+	}
+
+	/**
+	 * Creates a processor that aggregates values per key over windows of
+	 * fixed width starting at regular intervals.
+	 * @param key The function extracting the key from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param value The function extracting the value from an event
+	 * @param width The width of each window, in milliseconds
+	 * @param slide The interval between the starts of two windows, in
+	 * milliseconds
+	 * @param aggregate The aggregate computed over each window
+	 * @return The processor
+	 * @see WindowAggregate.Sliding
+	 */
+	public static Processor SlidingWindow(Object key, Object timestamp, Object value, long width, long slide, WindowAggregate.Aggregate<?> aggregate)
+	{
+		return new WindowAggregate.Sliding(liftFunction(key), liftFunction(timestamp), liftFunction(value), width, slide, aggregate);
+	}
+
+	/**
+	 * Creates a processor that aggregates values per key over sessions, which
+	 * extend as long as events are separated by less than a gap.
+	 * @param key The function extracting the key from an event
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param value The function extracting the value from an event
+	 * @param gap The maximum gap between two events of a session, in
+	 * milliseconds
+	 * @param aggregate The aggregate computed over each session
+	 * @return The processor
+	 * @see WindowAggregate.Session
+	 */
+	public static Processor SessionWindow(Object key, Object timestamp, Object value, long gap, WindowAggregate.Aggregate<?> aggregate)
+	{
+		return new WindowAggregate.Session(liftFunction(key), liftFunction(timestamp), liftFunction(value), gap, aggregate);
+	}
+
+	/**
+	 * Creates a processor that pairs the events satisfying two conditions
+	 * whose timestamps are close to each other, for the same key.
+	 * @param left The condition selecting the first event of each pair
+	 * @param right The condition selecting the second event of each pair
+	 * @param timestamp The function extracting the timestamp from an event
+	 * @param key The function extracting the key from an event
+	 * @param delta The maximum distance between the timestamps of two paired
+	 * events, in milliseconds
+	 * @return The processor
+	 * @see IntervalJoin
+	 */
+	public static Processor JoinWithin(Object left, Object right, Object timestamp, Object key, long delta)
+	{
+		return new IntervalJoin(liftFunction(left), liftFunction(right), liftFunction(timestamp), liftFunction(key), delta);
+	}
+
+	/**
+	 * Creates a processor that counts the slices whose last output satisfies
+	 * a predicate.
+	 * @param key The function extracting the key from an event
+	 * @param slice The processor copied for each slice
+	 * @param predicate The predicate evaluated on the last output of each
+	 * slice
+	 * @return The processor
+	 * @see sensors.CountSlices
+	 */
+	public static Processor CountSlices(Object key, Object slice, Object predicate)
+	{
+		return new sensors.CountSlices(liftFunction(key), liftProcessor(slice), liftFunction(predicate));
+	}
+
+	/**
+	 * Creates a processor that adds each input number to a
+	 * {@link QuantileSketch} and outputs the sketch.
+	 * @return The processor
+	 * @see QuantileSketch.PutInto
+	 */
+	public static Processor PutIntoSketch()
+	{
+		return new QuantileSketch.PutInto();
+	}
+
+	/**
+	 * Creates a processor that computes the numerical profile of each key in
+	 * a single pass, and outputs it at the end of the trace.
+	 * @param key The function extracting the key from an event
+	 * @param value The function extracting the value from an event
+	 * @return The processor
+	 * @see sensors.Profile
+	 */
+	public static Processor Profile(Object key, Object value)
+	{
+		return new sensors.Profile(liftFunction(key), liftFunction(value));
+	}
+
 	/* --- Functions --- */
 
 	/**
@@ -346,6 +534,17 @@ public class shortcuts extends beepbeep.groovy
 		return new sensors.BoxAndWhiskers();
 	}
 
+	/**
+	 * Creates a new instance of the function computing a five-number summary
+	 * from a {@link QuantileSketch}.
+	 * @return The function
+	 * @see sensors.BoxAndWhiskers.FromSketch
+	 */
+	public static Function SketchBoxAndWhiskers()
+	{
+		return sensors.BoxAndWhiskers.FromSketch.instance;
+	}
+
 	/**
 	 * Creates a function that flattens a collection of collections into a single
 	 * collection.
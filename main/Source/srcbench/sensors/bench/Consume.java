@@ -0,0 +1,63 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.bench;
+
+import java.util.Queue;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * A sink passing every event it receives to a JMH {@link Blackhole}, so that
+ * the computation of the events pushed through a pipeline cannot be
+ * optimized away by the compiler.
+ *
+ * @author Sylvain Hallé
+ */
+public class Consume extends SynchronousProcessor
+{
+	/**
+	 * The black hole receiving the events.
+	 */
+	/*@ non_null @*/ protected final Blackhole m_blackhole;
+
+	/**
+	 * Creates a new sink.
+	 * @param bh The black hole receiving the events
+	 */
+	public Consume(Blackhole bh)
+	{
+		super(1, 0);
+		m_blackhole = bh;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+	{
+		m_blackhole.consume(inputs[0]);
+		return true;
+	}
+
+	@Override
+	public Processor duplicate(boolean with_state)
+	{
+		return new Consume(m_blackhole);
+	}
+}
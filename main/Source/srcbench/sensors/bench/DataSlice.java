@@ -0,0 +1,203 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.bench;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.functions.Function;
+import sensors.nears.JsonLineFeeder;
+import sensors.nears.NearsJsonFormat;
+
+import static sensors.EventFormat.evaluateUnary;
+
+/**
+ * A fixed number of events taken from the start of the log of a NEARS hub,
+ * kept in memory so that benchmarks measure the processing of the events and
+ * not the reading of files. The slice reads the daily files <tt>1.json</tt>,
+ * <tt>2.json</tt>, etc. of a hub folder (such as <tt>data/0104</tt> or
+ * <tt>data/nears/0102</tt>) until it has the requested number of events,
+ * and can render them in each of the layouts read by the feeders of the
+ * toolbox.
+ * <p>
+ * The folder is resolved against the current directory; benchmarks are
+ * therefore expected to be run from the project's root folder, which is
+ * what the <tt>bench</tt> target of the build script does.
+ *
+ * @author Sylvain Hallé
+ */
+public class DataSlice
+{
+	/**
+	 * The number of events in each slice used by the benchmarks. This value is
+	 * also used to report the scores of the benchmarks per event.
+	 */
+	public static final int SIZE = 10000;
+
+	/**
+	 * The folder containing the logs of all the hubs.
+	 */
+	public static final String DATA_FOLDER = "data";
+
+	/**
+	 * The events of the slice, one JSON snippet per line, as read from the
+	 * daily files.
+	 */
+	/*@ non_null @*/ protected final List<String> m_lines;
+
+	/**
+	 * The format of the events in the slice.
+	 */
+	/*@ non_null @*/ protected static final NearsJsonFormat s_format = new NearsJsonFormat();
+
+	/**
+	 * Reads a slice of the log of a hub.
+	 * @param hub The folder of the hub, relative to {@link #DATA_FOLDER}
+	 * @param size The number of events in the slice
+	 * @throws IOException Thrown if the folder does not contain enough events
+	 */
+	public DataSlice(String hub, int size) throws IOException
+	{
+		super();
+		m_lines = new ArrayList<String>(size);
+		for (int day = 1; m_lines.size() < size; day++)
+		{
+			String filename = DATA_FOLDER + "/" + hub + "/" + day + ".json";
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8)))
+			{
+				String line;
+				while (m_lines.size() < size && (line = br.readLine()) != null)
+				{
+					if (!line.trim().isEmpty())
+					{
+						m_lines.add(line);
+					}
+				}
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new IOException("Folder " + DATA_FOLDER + "/" + hub + " has fewer than " + size + " events");
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of events in the slice.
+	 * @return The number of events
+	 */
+	public int size()
+	{
+		return m_lines.size();
+	}
+
+	/**
+	 * Gets the slice with one JSON snippet per line, as read by
+	 * {@link JsonLineFeeder}.
+	 * @return The bytes of the slice
+	 */
+	/*@ non_null @*/ public byte[] asJsonLines()
+	{
+		StringBuilder out = new StringBuilder();
+		for (String line : m_lines)
+		{
+			out.append(line).append("\n");
+		}
+		return out.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets the slice as a JSON array laid out on multiple lines, as read by
+	 * {@link sensors.nears.JsonFeeder}: the opening and closing braces of each
+	 * event are on lines of their own.
+	 * @return The bytes of the slice
+	 */
+	/*@ non_null @*/ public byte[] asJsonArray()
+	{
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < m_lines.size(); i++)
+		{
+			String line = m_lines.get(i).trim();
+			out.append(i == 0 ? "[{" : "{").append("\n");
+			out.append(line.substring(1, line.length() - 1)).append("\n");
+			out.append(i == m_lines.size() - 1 ? "}]" : "},").append("\n");
+		}
+		return out.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gets the slice in the CSV layout of the Orange4Home dataset: a header
+	 * line, followed by one line per event giving its date, the name of the
+	 * sensor and its state. The name is made of the location, subject and
+	 * sensor of the event separated by underscores, which are therefore
+	 * removed from each of these parts.
+	 * @return The lines of the slice, header included
+	 */
+	/*@ non_null @*/ public String[] asOrangeLines()
+	{
+		String[] lines = new String[m_lines.size() + 1];
+		lines[0] = "Time,ItemName,Value";
+		List<Object> events = getEvents();
+		SimpleDateFormat date_format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		for (int i = 0; i < events.size(); i++)
+		{
+			Object e = events.get(i);
+			String date = date_format.format(new Date((Long) evaluateUnary(s_format.timestamp(), e)));
+			String name = getString(s_format.locationString(), e) + "_" + getString(s_format.subjectString(), e) + "_" + getString(s_format.sensorString(), e);
+			lines[i + 1] = date + "," + name + "," + getString(s_format.stateString(), e);
+		}
+		return lines;
+	}
+
+	/**
+	 * Gets the events of the slice, parsed into JSON elements.
+	 * @return The list of events
+	 */
+	/*@ non_null @*/ public List<Object> getEvents()
+	{
+		List<Object> events = new ArrayList<Object>(m_lines.size());
+		JsonLineFeeder f = new JsonLineFeeder(new ByteArrayInputStream(asJsonLines()));
+		Pullable p = f.getPullableOutput();
+		while (p.hasNext())
+		{
+			events.add(p.next());
+		}
+		return events;
+	}
+
+	/**
+	 * Evaluates a function of the event format on an event, and removes any
+	 * underscore and comma from the resulting string.
+	 * @param f The function
+	 * @param e The event
+	 * @return The value of the function
+	 */
+	protected static String getString(Function f, Object e)
+	{
+		return String.valueOf(evaluateUnary(f, e)).replace("_", "").replace(",", "");
+	}
+}
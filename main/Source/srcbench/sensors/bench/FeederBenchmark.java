@@ -0,0 +1,133 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.Source;
+import sensors.nears.JsonFeeder;
+import sensors.nears.JsonLineFeeder;
+import sensors.orange4home.Orange4HomeFormat.OrangeTupleFeeder;
+
+/**
+ * Measures the throughput of the feeders turning the text of a log into
+ * events. Each benchmark reads a whole {@link DataSlice} from memory; scores
+ * are reported per event.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeederBenchmark
+{
+	/**
+	 * The folder of the hub whose events are read.
+	 */
+	@Param({"0104", "nears/0102"})
+	public String hub;
+
+	/**
+	 * The slice with one JSON snippet per line.
+	 */
+	protected byte[] m_jsonLines;
+
+	/**
+	 * The slice as a JSON array spanning multiple lines.
+	 */
+	protected byte[] m_jsonArray;
+
+	/**
+	 * The slice in the CSV layout of Orange4Home.
+	 */
+	protected String[] m_orangeLines;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		DataSlice slice = new DataSlice(hub, DataSlice.SIZE);
+		m_jsonLines = slice.asJsonLines();
+		m_jsonArray = slice.asJsonArray();
+		m_orangeLines = slice.asOrangeLines();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void jsonLineFeeder(Blackhole bh)
+	{
+		pullAll(new JsonLineFeeder(new ByteArrayInputStream(m_jsonLines)), bh);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void jsonFeeder(Blackhole bh)
+	{
+		pullAll(new JsonFeeder(new ByteArrayInputStream(m_jsonArray)), bh);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void orangeTupleFeeder(Blackhole bh)
+	{
+		// The constructor of the feeder is protected; an anonymous subclass
+		// gives access to it
+		OrangeTupleFeeder f = new OrangeTupleFeeder() {};
+		Connector.connect(f, new Consume(bh));
+		Pushable p = f.getPushableInput();
+		for (String line : m_orangeLines)
+		{
+			p.push(line);
+		}
+	}
+
+	/**
+	 * Pulls all the events of a source and sends them to a black hole.
+	 * @param s The source
+	 * @param bh The black hole
+	 */
+	protected static void pullAll(Source s, Blackhole bh)
+	{
+		Pullable p = s.getPullableOutput();
+		while (p.hasNext())
+		{
+			bh.consume(p.next());
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.bench;
+
+import static sensors.EventFormat.evaluateUnary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uqac.lif.cep.functions.Function;
+import sensors.BoxAndWhiskers;
+import sensors.EventFormat;
+import sensors.Timestamps;
+import sensors.house.House;
+import sensors.house.House.EventToHouseDelta;
+import sensors.house.House.HouseDelta;
+import sensors.nears.NearsJsonFormat;
+
+/**
+ * Measures the throughput of the functions evaluated on every event: the
+ * extraction and conversion of timestamps, the update of a {@link House}, and
+ * the five-number summary of the values of a slice. The events of a
+ * {@link DataSlice} are parsed once before the benchmark; scores are reported
+ * per event.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark
+{
+	/**
+	 * The format of the events.
+	 */
+	protected static final EventFormat s_format = new NearsJsonFormat();
+
+	/**
+	 * The function getting the year and week of a timestamp. Its constructor
+	 * is protected; an anonymous subclass gives access to it.
+	 */
+	protected static final Timestamps.GetYearWeek s_getYearWeek = new Timestamps.GetYearWeek() {};
+
+	/**
+	 * The folder of the hub whose events are processed.
+	 */
+	@Param({"0104", "nears/0102"})
+	public String hub;
+
+	/**
+	 * The events of the slice.
+	 */
+	protected Object[] m_events;
+
+	/**
+	 * The timestamp of each event of the slice.
+	 */
+	protected Long[] m_timestamps;
+
+	/**
+	 * The update of a house corresponding to each event of the slice.
+	 */
+	protected HouseDelta[] m_deltas;
+
+	/**
+	 * The timestamps of the slice, as a collection.
+	 */
+	protected List<Long> m_values;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		m_events = new DataSlice(hub, DataSlice.SIZE).getEvents().toArray();
+		m_timestamps = new Long[m_events.length];
+		m_deltas = new HouseDelta[m_events.length];
+		m_values = new ArrayList<Long>(m_events.length);
+		Function ts = s_format.timestamp();
+		EventToHouseDelta to_delta = new EventToHouseDelta(s_format);
+		for (int i = 0; i < m_events.length; i++)
+		{
+			m_timestamps[i] = (Long) evaluateUnary(ts, m_events[i]);
+			m_deltas[i] = to_delta.getValue(m_events[i]);
+			m_values.add(m_timestamps[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void timestamp(Blackhole bh)
+	{
+		Function ts = s_format.timestamp();
+		Object[] in = new Object[1];
+		Object[] out = new Object[1];
+		for (Object e : m_events)
+		{
+			in[0] = e;
+			ts.evaluate(in, out);
+			bh.consume(out[0]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void getYear(Blackhole bh)
+	{
+		for (Long ts : m_timestamps)
+		{
+			bh.consume(Timestamps.getYear.getValue(ts));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void getYearWeek(Blackhole bh)
+	{
+		for (Long ts : m_timestamps)
+		{
+			bh.consume(s_getYearWeek.getValue(ts));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public House houseDelta()
+	{
+		House h = new House();
+		for (HouseDelta d : m_deltas)
+		{
+			h = d.getValue(h);
+		}
+		return h;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public Number[] boxAndWhiskers()
+	{
+		return BoxAndWhiskers.instance.getValue(m_values);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.bench;
+
+import static sensors.EventFormat.evaluateUnary;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.util.Booleans.And;
+import ca.uqac.lif.cep.util.Equals;
+import sensors.CoOccurs;
+import sensors.EventFormat;
+import sensors.OrderTimestamps;
+import sensors.RemoveStutterHead;
+import sensors.RemoveStutterTail;
+import sensors.Reorder;
+import sensors.nears.NearsJsonFormat;
+
+/**
+ * Measures the throughput of the processors that reorder, filter and
+ * correlate events. The events of a {@link DataSlice} are parsed once before
+ * the benchmark, and each benchmark pushes all of them through a new
+ * instance of the processor; scores are reported per event.
+ *
+ * @author Sylvain Hallé
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorBenchmark
+{
+	/**
+	 * The width of the windows used by the processors, in milliseconds.
+	 */
+	protected static final long WIDTH = 60000;
+
+	/**
+	 * The format of the events.
+	 */
+	protected static final EventFormat s_format = new NearsJsonFormat();
+
+	/**
+	 * The folder of the hub whose events are processed.
+	 */
+	@Param({"0104", "nears/0102"})
+	public String hub;
+
+	/**
+	 * The events of the slice.
+	 */
+	protected Object[] m_events;
+
+	/**
+	 * The state of each event of the slice.
+	 */
+	protected Object[] m_states;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		List<Object> events = new DataSlice(hub, DataSlice.SIZE).getEvents();
+		m_events = events.toArray();
+		m_states = new Object[m_events.length];
+		for (int i = 0; i < m_events.length; i++)
+		{
+			m_states[i] = evaluateUnary(s_format.stateString(), m_events[i]);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void reorder(Blackhole bh)
+	{
+		pushAll(new Reorder(s_format.timestamp(), WIDTH), m_events, bh);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void orderTimestamps(Blackhole bh)
+	{
+		pushAll(new OrderTimestamps(s_format.timestamp()), m_events, bh);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void coOccurs(Blackhole bh)
+	{
+		// A motion being detected must be accompanied by a contact opening and
+		// a temperature reading within the window
+		CoOccurs co = new CoOccurs(WIDTH, s_format.timestamp(),
+				new ApplyFunction(new FunctionTree(And.instance,
+						isSensor("motion"),
+						new FunctionTree(Equals.instance, s_format.stateString(), new Constant(s_format.getOnConstant())))),
+				new ApplyFunction(new FunctionTree(And.instance,
+						isSensor("contact"),
+						new FunctionTree(Equals.instance, s_format.stateString(), new Constant(s_format.getOpenConstant())))),
+				new ApplyFunction(isSensor("temperature")));
+		pushAll(co, m_events, bh);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void removeStutterHead(Blackhole bh)
+	{
+		pushAll(new RemoveStutterHead(), m_states, bh);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DataSlice.SIZE)
+	public void removeStutterTail(Blackhole bh)
+	{
+		pushAll(new RemoveStutterTail(), m_states, bh);
+	}
+
+	/**
+	 * Creates the condition that an event comes from a given sensor.
+	 * @param sensor The name of the sensor
+	 * @return The condition
+	 */
+	protected static FunctionTree isSensor(String sensor)
+	{
+		return new FunctionTree(Equals.instance, s_format.sensorString(), new Constant(sensor));
+	}
+
+	/**
+	 * Pushes events into a processor whose output is sent to a black hole,
+	 * and signals the end of the trace.
+	 * @param p The processor
+	 * @param events The events to push
+	 * @param bh The black hole
+	 */
+	protected static void pushAll(Processor p, Object[] events, Blackhole bh)
+	{
+		Connector.connect(p, new Consume(bh));
+		Pushable in = p.getPushableInput();
+		for (Object e : events)
+		{
+			in.push(e);
+		}
+		in.notifyEndOfTrace();
+	}
+}
@@ -0,0 +1,170 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.ActivityIndex.Episode;
+import sensors.ActivityIndex.GetActivity;
+
+/**
+ * Unit tests for {@link ActivityIndex}.
+ */
+public class ActivityIndexTest
+{
+	@Test
+	public void testGetActivity()
+	{
+		ActivityIndex index = getIndex();
+		assertEquals(4, index.getEpisodes(0).size());
+		assertNull(index.getActivity(0, -1));
+		assertEquals("sleep", index.getActivity(0, 5).getLabel());
+		// An episode covers the time up to the start of the next one
+		assertEquals("sleep", index.getActivity(0, 15).getLabel());
+		assertEquals("cook", index.getActivity(0, 20).getLabel());
+		assertEquals("eat", index.getActivity(0, 99).getLabel());
+		// The last episode ends with its last event
+		assertEquals("sleep", index.getActivity(0, 120).getLabel());
+		assertNull(index.getActivity(0, 121));
+		GetActivity f = new GetActivity(index);
+		assertEquals("cook", f.getValue(25));
+		assertNull(f.getValue(200));
+	}
+
+	@Test
+	public void testGetEpisodeOf()
+	{
+		ActivityIndex index = getIndex();
+		Episode e = index.getEpisodeOf(0, 3);
+		assertEquals("cook", e.getLabel());
+		assertEquals(20, e.getStart());
+		assertEquals(30, e.getEnd());
+		assertEquals(2, e.getFirstIndex());
+		assertEquals(3, e.getLastIndex());
+		assertEquals(2, e.getEventCount());
+		assertTrue(e.contains(2));
+		assertFalse(e.contains(4));
+		assertEquals("eat", index.getEpisodeOf(0, 4).getLabel());
+		assertEquals("sleep", index.getEpisodeOf(0, 6).getLabel());
+		assertNull(index.getEpisodeOf(0, 7));
+	}
+
+	@Test
+	public void testGetEpisodesByLabel()
+	{
+		ActivityIndex index = getIndex();
+		List<Episode> list = index.getEpisodes(0, "sleep");
+		assertEquals(2, list.size());
+		assertEquals(0, list.get(0).getFirstIndex());
+		assertEquals(1, list.get(0).getLastIndex());
+		assertEquals(5, list.get(1).getFirstIndex());
+		assertEquals(6, list.get(1).getLastIndex());
+		assertTrue(index.getEpisodes(0, "work").isEmpty());
+	}
+
+	@Test
+	public void testGetEpisodesInterval()
+	{
+		ActivityIndex index = getIndex();
+		List<Episode> list = index.getEpisodes(0, 25, 100);
+		assertEquals(3, list.size());
+		assertEquals("cook", list.get(0).getLabel());
+		assertEquals("eat", list.get(1).getLabel());
+		assertEquals("sleep", list.get(2).getLabel());
+		// cook stops covering time where eat starts
+		list = index.getEpisodes(0, 40, 40);
+		assertEquals(1, list.size());
+		assertEquals("eat", list.get(0).getLabel());
+		assertTrue(index.getEpisodes(0, 121, 200).isEmpty());
+	}
+
+	@Test
+	public void testGetEpisodesSameStart()
+	{
+		// Episodes b and c both start at 50
+		ActivityIndex index = new ActivityIndex(1);
+		index.add(0, "a", 0, 0);
+		index.add(0, "b", 50, 1);
+		index.add(0, "c", 50, 2);
+		index.add(0, "d", 60, 3);
+		List<Episode> list = index.getEpisodes(0, 50, 55);
+		assertEquals(2, list.size());
+		assertEquals("b", list.get(0).getLabel());
+		assertEquals("c", list.get(1).getLabel());
+		list = index.getEpisodes(0, 10, 50);
+		assertEquals(3, list.size());
+		assertEquals("a", list.get(0).getLabel());
+		assertEquals("c", index.getActivity(0, 50).getLabel());
+	}
+
+	@Test
+	public void testMultipleResidents()
+	{
+		// Events are made of a timestamp, an index and the label of each resident
+		ActivityIndex.Build b = new ActivityIndex.Build(new NthElement(0), new NthElement(1), new NthElement(2), new NthElement(3));
+		Connector.connect(b, new BlackHole());
+		Pushable p = b.getPushableInput();
+		p.push(new Object[] {0, 0, "sleep", "cook"});
+		p.push(new Object[] {10, 1, "sleep", "eat"});
+		p.push(new Object[] {20, 2, "cook", "eat"});
+		ActivityIndex index = b.getIndex();
+		assertEquals(2, index.getResidentCount());
+		assertEquals(2, index.getEpisodes(0).size());
+		assertEquals(2, index.getEpisodes(1).size());
+		assertEquals("sleep", index.getActivity(0, 15).getLabel());
+		assertEquals("eat", index.getActivity(1, 15).getLabel());
+		assertEquals("cook", new GetActivity(index, 1).getValue(5));
+		assertEquals(0, index.getEpisodeOf(0, 1).getFirstIndex());
+		assertEquals(1, index.getEpisodeOf(1, 1).getFirstIndex());
+	}
+
+	@Test(expected = ProcessorException.class)
+	public void testOutOfOrder()
+	{
+		ActivityIndex index = new ActivityIndex(1);
+		index.add(0, "a", 10, 0);
+		index.add(0, "b", 5, 1);
+	}
+
+	/**
+	 * Gets an index with the following episodes for a single resident: sleep
+	 * [0,10], cook [20,30], eat [40,40] and sleep [100,120].
+	 * @return The index
+	 */
+	protected static ActivityIndex getIndex()
+	{
+		ActivityIndex index = new ActivityIndex(1);
+		index.add(0, "sleep", 0, 0);
+		index.add(0, "sleep", 10, 1);
+		index.add(0, "cook", 20, 2);
+		index.add(0, "cook", 30, 3);
+		index.add(0, "eat", 40, 4);
+		index.add(0, "sleep", 100, 5);
+		index.add(0, "sleep", 120, 6);
+		return index;
+	}
+}
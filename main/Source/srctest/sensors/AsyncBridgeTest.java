@@ -0,0 +1,178 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Unit tests for {@link AsyncBridge} and {@link RingBuffer}.
+ */
+public class AsyncBridgeTest
+{
+	@Test
+	public void testPush()
+	{
+		AsyncBridge bridge = new AsyncBridge(16, 4, RingBuffer.Wait.BLOCK);
+		Recorder rec = new Recorder(-1);
+		QueueSink sink = new QueueSink();
+		Connector.connect(bridge, rec);
+		Connector.connect(rec, sink);
+		Pushable p = bridge.getPushableInput(0);
+		for (int i = 0; i < 1000; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		// All the events are processed when the end of the trace returns
+		Queue<Object> q = sink.getQueue();
+		assertEquals(1000, q.size());
+		for (int i = 0; i < 1000; i++)
+		{
+			assertEquals(i, q.remove());
+		}
+		assertNotNull(rec.m_thread);
+		assertFalse(Thread.currentThread() == rec.m_thread);
+	}
+
+	@Test
+	public void testPull()
+	{
+		Object[] events = new Object[1000];
+		for (int i = 0; i < events.length; i++)
+		{
+			events[i] = i;
+		}
+		QueueSource src = new QueueSource().setEvents(events).loop(false);
+		Recorder rec = new Recorder(-1);
+		AsyncBridge bridge = new AsyncBridge(16, 1, RingBuffer.Wait.SPIN);
+		Connector.connect(src, rec);
+		Connector.connect(rec, bridge);
+		Pullable p = bridge.getPullableOutput(0);
+		for (int i = 0; i < 1000; i++)
+		{
+			assertTrue(p.hasNext());
+			assertEquals(i, p.pull());
+		}
+		assertFalse(p.hasNext());
+		assertFalse(Thread.currentThread() == rec.m_thread);
+	}
+
+	@Test
+	public void testError()
+	{
+		AsyncBridge bridge = new AsyncBridge(8, 1, RingBuffer.Wait.BLOCK);
+		Connector.connect(bridge, new Recorder(5));
+		Pushable p = bridge.getPushableInput(0);
+		try
+		{
+			for (int i = 0; i < 1000; i++)
+			{
+				p.push(i);
+			}
+			p.notifyEndOfTrace();
+			fail("The exception should have been thrown");
+		}
+		catch (ProcessorException e)
+		{
+			// Expected
+		}
+	}
+
+	@Test
+	public void testRingBuffer() throws InterruptedException
+	{
+		final RingBuffer<Integer> ring = new RingBuffer<Integer>(10, 3, RingBuffer.Wait.BLOCK);
+		assertEquals(16, ring.getCapacity());
+		final int[] errors = new int[1];
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				Integer[] batch = new Integer[5];
+				int expected = 0;
+				while (expected < 100000)
+				{
+					int n = ring.take(batch);
+					for (int i = 0; i < n; i++)
+					{
+						if (batch[i] != expected++)
+						{
+							errors[0]++;
+						}
+					}
+				}
+			}
+		});
+		consumer.start();
+		for (int i = 0; i < 100000; i++)
+		{
+			ring.put(i);
+		}
+		ring.flush();
+		consumer.join();
+		assertEquals(0, errors[0]);
+		assertEquals(0, ring.size());
+	}
+
+	/**
+	 * Processor letting events through and recording the thread that
+	 * processes them, and failing on a given event.
+	 */
+	protected static class Recorder extends SynchronousProcessor
+	{
+		protected final int m_failOn;
+
+		protected volatile Thread m_thread;
+
+		public Recorder(int fail_on)
+		{
+			super(1, 1);
+			m_failOn = fail_on;
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			m_thread = Thread.currentThread();
+			if (((Integer) inputs[0]) == m_failOn)
+			{
+				throw new ProcessorException("Failed on " + m_failOn);
+			}
+			outputs.add(inputs);
+			return true;
+		}
+
+		@Override
+		public Recorder duplicate(boolean with_state)
+		{
+			return new Recorder(m_failOn);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.KeepLast;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Unit tests for {@link CountSlices}.
+ */
+public class CountSlicesTest
+{
+	@Test
+	public void testRunningCount()
+	{
+		// Counts the keys whose last value is true
+		CountSlices c = new CountSlices(new NthElement(0), new ApplyFunction(new NthElement(1)),
+				new FunctionTree(Equals.instance, StreamVariable.X, new Constant(Boolean.TRUE)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(c, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = c.getPushableInput();
+		Object[][] events = new Object[][] {
+			{"a", true}, {"b", false}, {"b", true}, {"a", false},
+			{"a", false}, {"c", true}, {"b", false}, {"a", true}};
+		int[] expected = new int[] {1, 1, 2, 1, 1, 2, 1, 2};
+		for (int i = 0; i < events.length; i++)
+		{
+			p.push(events[i]);
+			assertEquals("Event " + i, 1, q.size());
+			assertEquals("Event " + i, expected[i], q.remove());
+		}
+		assertEquals(2, c.getCount());
+		assertEquals(new HashSet<Object>(Arrays.asList("a", "c")), c.getMatchingKeys());
+	}
+
+	@Test
+	public void testNoOutput()
+	{
+		// KeepLast only outputs at the end of its trace: the slices never
+		// satisfy the predicate
+		CountSlices c = new CountSlices(new NthElement(0), new KeepLast(),
+				new FunctionTree(Equals.instance, StreamVariable.X, new Constant(Boolean.TRUE)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(c, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = c.getPushableInput();
+		p.push(new Object[] {"a", true});
+		p.push(new Object[] {"b", true});
+		assertEquals(2, q.size());
+		assertEquals(0, q.remove());
+		assertEquals(0, q.remove());
+		assertTrue(c.getMatchingKeys().isEmpty());
+	}
+
+	@Test
+	public void testEndOfTrace()
+	{
+		// The last outputs of KeepLast are counted at the end of the trace
+		CountSlices c = new CountSlices(new NthElement(0), new KeepLast(),
+				new FunctionTree(Equals.instance, new FunctionTree(new NthElement(1), StreamVariable.X), new Constant(Boolean.TRUE)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(c, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = c.getPushableInput();
+		p.push(new Object[] {"a", true});
+		p.push(new Object[] {"b", false});
+		p.push(new Object[] {"c", true});
+		q.clear();
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		assertEquals(2, q.remove());
+		assertEquals(new HashSet<Object>(Arrays.asList("a", "c")), c.getMatchingKeys());
+	}
+
+	@Test
+	public void testDuplicateState()
+	{
+		CountSlices c = new CountSlices(new NthElement(0), new ApplyFunction(new NthElement(1)),
+				new FunctionTree(Equals.instance, StreamVariable.X, new Constant(Boolean.TRUE)));
+		Pushable p = c.getPushableInput();
+		Connector.connect(c, new QueueSink());
+		p.push(new Object[] {"a", true});
+		p.push(new Object[] {"b", true});
+		CountSlices d = c.duplicate(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(d, sink);
+		d.getPushableInput().push(new Object[] {"a", false});
+		assertEquals(1, sink.getQueue().remove());
+		// The original is not affected
+		assertEquals(2, c.getCount());
+		c.reset();
+		assertEquals(0, c.getCount());
+		assertTrue(c.getMatchingKeys().isEmpty());
+	}
+}
@@ -0,0 +1,124 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.KeepLast;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.DeltaSlice.Change;
+
+/**
+ * Unit tests for {@link DeltaSlice}.
+ */
+public class DeltaSliceTest
+{
+	@Test
+	public void testDelta()
+	{
+		DeltaSlice d = new DeltaSlice(new NthElement(0), new ApplyFunction(new NthElement(1)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(d, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = d.getPushableInput();
+		p.push(new Object[] {"a", 1});
+		p.push(new Object[] {"b", 2});
+		p.push(new Object[] {"a", 1});
+		p.push(new Object[] {"a", 3});
+		p.notifyEndOfTrace();
+		// The second value 1 of a is not a change
+		assertEquals(3, q.size());
+		assertChange(q.remove(), "a", 1);
+		assertChange(q.remove(), "b", 2);
+		assertChange(q.remove(), "a", 3);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testEndOnly()
+	{
+		DeltaSlice d = new DeltaSlice(new NthElement(0), new ApplyFunction(new NthElement(1)), true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(d, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = d.getPushableInput();
+		p.push(new Object[] {"a", 1});
+		p.push(new Object[] {"b", 2});
+		p.push(new Object[] {"a", 3});
+		assertTrue(q.isEmpty());
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		Map<Object,Object> map = (Map<Object,Object>) q.remove();
+		assertEquals(2, map.size());
+		assertEquals(3, map.get("a"));
+		assertEquals(2, map.get("b"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSliceOutputAtEnd()
+	{
+		// KeepLast only outputs something at the end of its trace
+		Object[] a_last = new Object[] {"a", 3};
+		Object[] b_last = new Object[] {"b", 2};
+		DeltaSlice d = new DeltaSlice(new NthElement(0), new KeepLast(), true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(d, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = d.getPushableInput();
+		p.push(new Object[] {"a", 1});
+		p.push(b_last);
+		p.push(a_last);
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		Map<Object,Object> map = (Map<Object,Object>) q.remove();
+		assertEquals(2, map.size());
+		assertSame(a_last, map.get("a"));
+		assertSame(b_last, map.get("b"));
+		// The same in delta mode: the changes come at the end
+		d = new DeltaSlice(new NthElement(0), new KeepLast());
+		sink = new QueueSink();
+		Connector.connect(d, sink);
+		q = sink.getQueue();
+		p = d.getPushableInput();
+		p.push(new Object[] {"a", 1});
+		p.push(a_last);
+		assertTrue(q.isEmpty());
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		Change c = (Change) q.remove();
+		assertEquals("a", c.getKey());
+		assertSame(a_last, c.getValue());
+	}
+
+	protected static void assertChange(Object o, Object key, Object value)
+	{
+		Change c = (Change) o;
+		assertEquals(key, c.getKey());
+		assertEquals(value, c.getValue());
+	}
+}
@@ -0,0 +1,115 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.GapDetector.GapEnd;
+import sensors.GapDetector.GapStart;
+
+/**
+ * Unit tests for {@link GapDetector}.
+ */
+public class GapDetectorTest
+{
+	@Test
+	public void testGap()
+	{
+		GapDetector g = new GapDetector(new NthElement(0), new NthElement(1), null, 100, 10);
+		QueueSink sink = new QueueSink();
+		Connector.connect(g, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = g.getPushableInput();
+		p.push(new Object[] {"a", 0});
+		p.push(new Object[] {"b", 50});
+		p.push(new Object[] {"b", 100});
+		assertTrue(q.isEmpty());
+		// a is silent for more than 100 ms once time reaches 110
+		p.push(new Object[] {"b", 110});
+		assertEquals(1, q.size());
+		GapStart s = (GapStart) q.remove();
+		assertEquals("a", s.getKey());
+		assertEquals(0, s.getLastSeen());
+		assertEquals(100, s.getDetected());
+		assertEquals(1, g.getSilentCount());
+		p.push(new Object[] {"a", 300});
+		// b is also in a gap by then
+		assertEquals(2, q.size());
+		s = (GapStart) q.remove();
+		assertEquals("b", s.getKey());
+		GapEnd e = (GapEnd) q.remove();
+		assertEquals("a", e.getKey());
+		assertEquals(300, e.getDuration());
+		assertEquals(1, g.getSilentCount());
+	}
+
+	@Test
+	public void testExactBoundaries()
+	{
+		// Deadlines on the boundaries of the levels of the timing wheel
+		long[] deadlines = new long[] {64, 128, 4096, 262144};
+		for (long d : deadlines)
+		{
+			GapDetector g = new GapDetector(new NthElement(0), new NthElement(1), null, d, 1);
+			QueueSink sink = new QueueSink();
+			Connector.connect(g, sink);
+			Queue<Object> q = sink.getQueue();
+			Pushable p = g.getPushableInput();
+			p.push(new Object[] {"a", 0});
+			// Silent for exactly the threshold: not a gap
+			p.push(new Object[] {"b", d});
+			assertTrue(q.isEmpty());
+			// One millisecond more: a gap
+			p.push(new Object[] {"b", d + 1});
+			assertEquals("Deadline " + d, 1, q.size());
+			GapStart s = (GapStart) q.remove();
+			assertEquals("a", s.getKey());
+			assertEquals(d, s.getDetected());
+		}
+	}
+
+	@Test
+	public void testThresholdFunction()
+	{
+		// The threshold of each key is given by the third element of its events
+		GapDetector g = new GapDetector(new NthElement(0), new NthElement(1), new NthElement(2), 1000, 1);
+		QueueSink sink = new QueueSink();
+		Connector.connect(g, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = g.getPushableInput();
+		p.push(new Object[] {"a", 0, 10});
+		p.push(new Object[] {"b", 0, 50});
+		p.push(new Object[] {"c", 20, "none"});
+		assertEquals(1, q.size());
+		assertEquals("a", ((GapStart) q.remove()).getKey());
+		p.push(new Object[] {"c", 60, "none"});
+		assertEquals(1, q.size());
+		assertEquals("b", ((GapStart) q.remove()).getKey());
+		// c uses the default threshold
+		p.push(new Object[] {"c", 1060, "none"});
+		assertTrue(q.isEmpty());
+	}
+}
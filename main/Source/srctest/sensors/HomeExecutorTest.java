@@ -0,0 +1,175 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+
+/**
+ * Unit tests for {@link HomeExecutor}.
+ */
+public class HomeExecutorTest
+{
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	@Test
+	public void testGetHubs() throws IOException, FileSystemException
+	{
+		createTree();
+		HomeExecutor executor = new HomeExecutor(new LogRepository(m_folder.getRoot().getPath()), HomeExecutor.DEFAULT_HUB_PATTERN, ForkJoinPool.commonPool());
+		// Digit folders are found at any depth, but not inside other hubs
+		assertEquals(Arrays.asList("0104", "0200", "nears/0102", "other/deep/0007"), executor.getHubs());
+	}
+
+	@Test
+	public void testCollect() throws IOException, FileSystemException
+	{
+		createTree();
+		try (HomeExecutor executor = new HomeExecutor(new LogRepository(m_folder.getRoot().getPath()), HomeExecutor.DEFAULT_HUB_PATTERN, new ForkJoinPool(2), true))
+		{
+			Map<String,List<Object>> outputs = executor.collect(new LineReader());
+			assertEquals(3, outputs.size());
+			assertEquals(Arrays.asList("a", "b", "c"), outputs.get("0104"));
+			assertEquals(Arrays.asList("d"), outputs.get("nears/0102"));
+			assertEquals(Arrays.asList("e", "f"), outputs.get("other/deep/0007"));
+		}
+	}
+
+	@Test
+	public void testFailure() throws IOException, FileSystemException
+	{
+		createTree();
+		try (HomeExecutor executor = new HomeExecutor(new LogRepository(m_folder.getRoot().getPath()), HomeExecutor.DEFAULT_HUB_PATTERN, new ForkJoinPool(2), true))
+		{
+			HomeExecutor.MergedReport report = new HomeExecutor.MergedReport();
+			// Hub 0200 has no log: its failure does not stop the other hubs
+			assertEquals(3, executor.run(new LineReader(), report));
+			Map<String,Throwable> failures = executor.getFailures();
+			assertEquals(1, failures.size());
+			assertTrue(failures.get("0200") instanceof FileSystemException);
+			Map<String,Object> last = report.getLastValues();
+			assertEquals(3, last.size());
+			assertEquals("c", last.get("0104"));
+			assertEquals("d", last.get("nears/0102"));
+			assertEquals("f", last.get("other/deep/0007"));
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			report.print(new PrintStream(baos, true));
+			String[] lines = baos.toString().trim().split("\\r?\\n");
+			assertEquals(3, lines.length);
+			assertEquals("0104\t3\tc", lines[0]);
+			assertEquals("nears/0102\t1\td", lines[1]);
+			assertEquals("other/deep/0007\t2\tf", lines[2]);
+			// Failures are those of the last run only
+			new File(m_folder.getRoot(), "0200/log.txt").createNewFile();
+			assertEquals(4, executor.run(new LineReader(), new HomeExecutor.MergedReport()));
+			assertTrue(executor.getFailures().isEmpty());
+		}
+	}
+
+	@Test
+	public void testClose() throws IOException
+	{
+		ForkJoinPool pool = new ForkJoinPool(1);
+		HomeExecutor executor = new HomeExecutor(new LogRepository(m_folder.getRoot().getPath()), HomeExecutor.DEFAULT_HUB_PATTERN, pool);
+		executor.close();
+		// A pool given to the executor is not shut down
+		assertFalse(pool.isShutdown());
+		pool.shutdown();
+		executor = new HomeExecutor(new LogRepository(m_folder.getRoot().getPath()));
+		executor.close();
+		assertTrue(executor.m_pool.isShutdown());
+	}
+
+	/**
+	 * Creates the following tree in the temporary folder: hubs 0104 (with a
+	 * sub-folder 0105 that is not a hub), nears/0102 and other/deep/0007,
+	 * each with a log; a hub 0200 without a log; a folder misc without hubs
+	 * and a file 0300 at the root.
+	 * @throws IOException Thrown if the tree cannot be created
+	 */
+	protected void createTree() throws IOException
+	{
+		writeLog(m_folder.newFolder("0104"), "a", "b", "c");
+		m_folder.newFolder("0104", "0105");
+		m_folder.newFolder("nears");
+		writeLog(m_folder.newFolder("nears", "0102"), "d");
+		m_folder.newFolder("other");
+		m_folder.newFolder("other", "deep");
+		writeLog(m_folder.newFolder("other", "deep", "0007"), "e", "f");
+		m_folder.newFolder("0200");
+		m_folder.newFolder("misc");
+		m_folder.newFile("0300");
+	}
+
+	protected static void writeLog(File folder, String ... lines) throws IOException
+	{
+		FileWriter w = new FileWriter(new File(folder, "log.txt"));
+		for (String line : lines)
+		{
+			w.write(line + "\n");
+		}
+		w.close();
+	}
+
+	/**
+	 * Pipeline outputting the lines of the log of a hub.
+	 */
+	protected static class LineReader implements HomeExecutor.PipelineFactory
+	{
+		@Override
+		public Processor getPipeline(String hub, FileSystem fs) throws FileSystemException
+		{
+			List<Object> lines = new ArrayList<Object>();
+			try (BufferedReader r = new BufferedReader(new InputStreamReader(fs.readFrom("log.txt"))))
+			{
+				String line;
+				while ((line = r.readLine()) != null)
+				{
+					lines.add(line);
+				}
+			}
+			catch (IOException e)
+			{
+				throw new FileSystemException(e);
+			}
+			return new QueueSource().setEvents(lines.toArray()).loop(false);
+		}
+	}
+}
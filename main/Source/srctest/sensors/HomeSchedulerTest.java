@@ -0,0 +1,311 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+
+/**
+ * Unit tests for {@link HomeScheduler}.
+ */
+public class HomeSchedulerTest
+{
+	@Test(timeout = 10000)
+	public void testWeightedFairness() throws InterruptedException
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch latch = block(executor);
+		HomeScheduler s = new HomeScheduler(executor, 2).setMaxTurn(Long.MAX_VALUE);
+		List<Object> log = Collections.synchronizedList(new ArrayList<Object>());
+		HomeScheduler.Home a = s.register("a", new Recorder("a", log).getPushableInput(0), 3, Integer.MAX_VALUE);
+		HomeScheduler.Home b = s.register("b", new Recorder("b", log).getPushableInput(0), 1, Integer.MAX_VALUE);
+		for (int i = 0; i < 24; i++)
+		{
+			assertTrue(a.offer(i));
+			assertTrue(b.offer(i));
+		}
+		latch.countDown();
+		waitIdle(s);
+		executor.shutdown();
+		// Turns of 6 events for a and 2 events for b, in alternation
+		assertEquals(48, log.size());
+		for (int i = 0; i < 32; i++)
+		{
+			assertEquals("Event " + i, i % 8 < 6 ? "a" : "b", log.get(i));
+		}
+		assertEquals(24, a.getProcessedCount());
+		assertEquals(24, b.getProcessedCount());
+		assertEquals(4, a.getTurnCount());
+		assertEquals(12, b.getTurnCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testCapacity() throws InterruptedException
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch latch = block(executor);
+		HomeScheduler s = new HomeScheduler(executor);
+		List<Object> log = Collections.synchronizedList(new ArrayList<Object>());
+		HomeScheduler.Home a = s.register("a", new Recorder("a", log).getPushableInput(0), 1, 3);
+		for (int i = 0; i < 5; i++)
+		{
+			assertEquals(i < 3, a.offer(i));
+		}
+		assertEquals(3, a.getQueueSize());
+		assertEquals(2, a.getRejectedCount());
+		latch.countDown();
+		waitIdle(s);
+		executor.shutdown();
+		assertEquals(3, log.size());
+		assertEquals(0, a.getQueueSize());
+	}
+
+	@Test(timeout = 10000)
+	public void testEndAfterDrain() throws InterruptedException
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch latch = block(executor);
+		HomeScheduler s = new HomeScheduler(executor, 1);
+		List<Object> log = Collections.synchronizedList(new ArrayList<Object>());
+		HomeScheduler.Home a = s.register("a", new Recorder("a", log).getPushableInput(0), 1, Integer.MAX_VALUE);
+		for (int i = 0; i < 5; i++)
+		{
+			a.offer(i);
+		}
+		a.close();
+		assertFalse(a.offer(5));
+		assertFalse(a.isDone());
+		latch.countDown();
+		while (!a.isDone())
+		{
+			Thread.sleep(5);
+		}
+		waitIdle(s);
+		executor.shutdown();
+		// The end of the trace comes after all the events
+		assertEquals(6, log.size());
+		assertEquals("end", log.get(5));
+		assertEquals(5, a.getProcessedCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testErrorIsolation() throws InterruptedException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		HomeScheduler s = new HomeScheduler(executor, 4);
+		List<Object> log_a = Collections.synchronizedList(new ArrayList<Object>());
+		List<Object> log_b = Collections.synchronizedList(new ArrayList<Object>());
+		HomeScheduler.Home a = s.register("a", new Recorder("a", log_a).getPushableInput(0), 1, Integer.MAX_VALUE);
+		HomeScheduler.Home b = s.register("b", new Recorder("b", log_b).getPushableInput(0), 1, Integer.MAX_VALUE);
+		a.offer(0);
+		a.offer(Recorder.FAIL);
+		waitIdle(s);
+		assertNotNull(a.getError());
+		long turns = a.getTurnCount();
+		// The failed home no longer accepts events nor gets turns
+		assertFalse(a.offer(1));
+		assertEquals(1, a.getRejectedCount());
+		for (int i = 0; i < 100; i++)
+		{
+			assertTrue(b.offer(i));
+		}
+		b.close();
+		waitIdle(s);
+		executor.shutdown();
+		assertEquals(turns, a.getTurnCount());
+		assertEquals(1, log_a.size());
+		assertNull(b.getError());
+		assertTrue(b.isDone());
+		assertEquals(101, log_b.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testErrorNotRuntime() throws InterruptedException
+	{
+		// An error that is not an exception does not leave the home stuck
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		HomeScheduler s = new HomeScheduler(executor);
+		List<Object> log = Collections.synchronizedList(new ArrayList<Object>());
+		HomeScheduler.Home a = s.register("a", new Recorder("a", log).getPushableInput(0), 1, Integer.MAX_VALUE);
+		a.offer(Recorder.ERROR);
+		waitIdle(s);
+		executor.shutdown();
+		assertTrue(a.getError() instanceof AssertionError);
+		assertTrue(s.isIdle());
+	}
+
+	@Test(timeout = 10000)
+	public void testCloseWhileOffering() throws InterruptedException
+	{
+		// No event reaches the pipeline after the end of its trace
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		HomeScheduler s = new HomeScheduler(executor, 4);
+		for (int i = 0; i < 50; i++)
+		{
+			final List<Object> log = Collections.synchronizedList(new ArrayList<Object>());
+			final HomeScheduler.Home a = s.register(i, new Recorder("a", log).getPushableInput(0), 1, Integer.MAX_VALUE);
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					while (a.offer(0))
+					{
+						// Offer until the home is closed
+					}
+				}
+			});
+			t.start();
+			Thread.sleep(1);
+			a.close();
+			t.join();
+			while (!a.isDone())
+			{
+				Thread.sleep(1);
+			}
+			waitIdle(s);
+			assertEquals("end", log.get(log.size() - 1));
+			assertEquals(log.size() - 1, a.getProcessedCount());
+		}
+		executor.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void testRejectedTurn()
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		HomeScheduler s = new HomeScheduler(executor);
+		HomeScheduler.Home a = s.register("a", new Recorder("a", new ArrayList<Object>()).getPushableInput(0), 1, Integer.MAX_VALUE);
+		for (int i = 0; i < 2; i++)
+		{
+			try
+			{
+				a.offer(i);
+				fail("The turn should be rejected");
+			}
+			catch (RejectedExecutionException e)
+			{
+				// The home is not left waiting for a turn that never comes
+				assertTrue(s.isIdle());
+			}
+		}
+		assertEquals(2, a.getQueueSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidQuantum()
+	{
+		new HomeScheduler(Executors.newSingleThreadExecutor(), 0);
+	}
+
+	/**
+	 * Occupies the single thread of an executor until a latch is released,
+	 * so that events can be queued before any turn runs.
+	 * @param executor The executor
+	 * @return The latch
+	 */
+	protected static CountDownLatch block(ExecutorService executor)
+	{
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run()
+			{
+				try
+				{
+					latch.await();
+				}
+				catch (InterruptedException e)
+				{
+					// Stop waiting
+				}
+			}
+		});
+		return latch;
+	}
+
+	protected static void waitIdle(HomeScheduler s) throws InterruptedException
+	{
+		while (!s.isIdle())
+		{
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Processor logging the events it receives and the end of its trace.
+	 */
+	protected static class Recorder extends SynchronousProcessor
+	{
+		public static final String FAIL = "fail";
+
+		public static final String ERROR = "error";
+
+		protected final String m_name;
+
+		protected final List<Object> m_log;
+
+		public Recorder(String name, List<Object> log)
+		{
+			super(1, 0);
+			m_name = name;
+			m_log = log;
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			if (FAIL.equals(inputs[0]))
+			{
+				throw new ProcessorException("Failure in " + m_name);
+			}
+			if (ERROR.equals(inputs[0]))
+			{
+				throw new AssertionError("Error in " + m_name);
+			}
+			m_log.add(m_name);
+			return true;
+		}
+
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			m_log.add("end");
+			return false;
+		}
+
+		@Override
+		public Recorder duplicate(boolean with_state)
+		{
+			return new Recorder(m_name, m_log);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Unit tests for {@link IntervalJoin}.
+ */
+public class IntervalJoinTest
+{
+	protected static FunctionTree is(String s)
+	{
+		return new FunctionTree(Equals.instance, new NthElement(2), new Constant(s));
+	}
+
+	@Test
+	public void testJoin()
+	{
+		IntervalJoin j = new IntervalJoin(is("t"), is("p"), new NthElement(0), new NthElement(1), 5);
+		QueueSink sink = new QueueSink();
+		Connector.connect(j, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = j.getPushableInput();
+		Object[] t1 = new Object[] {0, "kitchen", "t"};
+		Object[] p1 = new Object[] {3, "kitchen", "p"};
+		Object[] p2 = new Object[] {4, "bedroom", "p"};
+		Object[] t2 = new Object[] {7, "kitchen", "t"};
+		Object[] t3 = new Object[] {20, "kitchen", "t"};
+		p.push(t1);
+		p.push(p1);
+		assertEquals(1, q.size());
+		IntervalJoin.Pair pair = (IntervalJoin.Pair) q.remove();
+		assertSame(t1, pair.getLeft());
+		assertSame(p1, pair.getRight());
+		assertEquals("kitchen", pair.getKey());
+		p.push(p2);
+		assertTrue(q.isEmpty());
+		p.push(t2);
+		assertEquals(1, q.size());
+		pair = (IntervalJoin.Pair) q.remove();
+		assertSame(t2, pair.getLeft());
+		assertSame(p1, pair.getRight());
+		p.push(t3);
+		assertTrue(q.isEmpty());
+		// Only t3 is still recent enough to be paired
+		assertEquals(1, j.getBufferedCount());
+	}
+}
@@ -0,0 +1,83 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Unit tests for {@link KeyedRemoveStutter}.
+ */
+public class KeyedRemoveStutterTest
+{
+	protected static final Object[] A1 = new Object[] {"a", 1};
+	protected static final Object[] A1_BIS = new Object[] {"a", 1};
+	protected static final Object[] A2 = new Object[] {"a", 2};
+	protected static final Object[] B1 = new Object[] {"b", 1};
+	protected static final Object[] B1_BIS = new Object[] {"b", 1};
+
+	@Test
+	public void testTail()
+	{
+		KeyedRemoveStutter.Tail t = new KeyedRemoveStutter.Tail(new NthElement(0), new NthElement(1));
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(A1);
+		p.push(B1);
+		p.push(A1_BIS);
+		p.push(B1_BIS);
+		p.push(A2);
+		assertEquals(3, q.size());
+		assertSame(A1, q.remove());
+		assertSame(B1, q.remove());
+		assertSame(A2, q.remove());
+		assertEquals(2, t.getKeyCount());
+	}
+
+	@Test
+	public void testHead()
+	{
+		KeyedRemoveStutter.Head h = new KeyedRemoveStutter.Head(new NthElement(0), new NthElement(1));
+		QueueSink sink = new QueueSink();
+		Connector.connect(h, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = h.getPushableInput();
+		p.push(A1);
+		p.push(B1);
+		p.push(A1_BIS);
+		p.push(B1_BIS);
+		assertEquals(0, q.size());
+		p.push(A2);
+		assertEquals(1, q.size());
+		assertSame(A1_BIS, q.remove());
+		p.notifyEndOfTrace();
+		assertEquals(2, q.size());
+		assertTrue(q.contains(A2));
+		assertTrue(q.contains(B1_BIS));
+	}
+}
@@ -0,0 +1,81 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest
+{
+	@Test
+	public void testSmallValues()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++)
+		{
+			h.record(i);
+		}
+		// Values below the number of buckets are exact
+		assertEquals(100, h.getCount());
+		assertEquals(50, h.getPercentile(0.5));
+		assertEquals(99, h.getPercentile(0.99));
+		assertEquals(1, h.getMin());
+		assertEquals(100, h.getMax());
+		assertEquals(50.5, h.getMean(), 0.0001);
+	}
+
+	@Test
+	public void testRelativeError()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		for (long v = 1000; v <= 1000000000l; v *= 10)
+		{
+			h.clear();
+			h.record(v - 1);
+			h.record(v);
+			h.record(v + 1);
+			long p = h.getPercentile(0.5);
+			assertTrue(p >= v - 1);
+			assertTrue(Math.abs(p - v) <= v / 128);
+		}
+	}
+
+	@Test
+	public void testMerge()
+	{
+		LatencyHistogram h1 = new LatencyHistogram();
+		LatencyHistogram h2 = new LatencyHistogram();
+		for (int i = 0; i < 90; i++)
+		{
+			h1.record(1000);
+		}
+		for (int i = 0; i < 10; i++)
+		{
+			h2.record(5000000);
+		}
+		h1.merge(h2);
+		assertEquals(100, h1.getCount());
+		assertTrue(Math.abs(h1.getPercentile(0.9) - 1000) <= 8);
+		assertTrue(Math.abs(h1.getPercentile(0.95) - 5000000) <= 5000000 / 128);
+		assertEquals(5000000, h1.getMax());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Unit tests for {@link NumericIntegrate}.
+ */
+public class NumericIntegrateTest
+{
+	@Test
+	public void testSum()
+	{
+		NumericIntegrate.Sum sum = new NumericIntegrate.Sum();
+		QueueSink sink = new QueueSink();
+		Connector.connect(sum, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = sum.getPushableInput();
+		p.push(1);
+		p.push("2.5");
+		p.push("foo");
+		p.push(3);
+		assertEquals(1d, q.remove());
+		assertEquals(3.5d, q.remove());
+		assertEquals(3.5d, q.remove());
+		assertEquals(6.5d, q.remove());
+	}
+
+	@Test
+	public void testKeyedSum()
+	{
+		NumericIntegrate.Sum sum = new NumericIntegrate.Sum(new NthElement(1), new NthElement(0));
+		QueueSink sink = new QueueSink();
+		Connector.connect(sum, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = sum.getPushableInput();
+		p.push(new Object[] {"a", 1});
+		p.push(new Object[] {"b", 10});
+		p.push(new Object[] {"a", 2});
+		assertEquals(1d, q.remove());
+		assertEquals(10d, q.remove());
+		assertEquals(3d, q.remove());
+		assertEquals(3d, sum.getValueFor("a"), 0);
+		assertEquals(10d, sum.getValueFor("b"), 0);
+		assertTrue(Double.isNaN(sum.getValueFor("c")));
+	}
+
+	@Test
+	public void testTrapezoid()
+	{
+		NumericIntegrate.Trapezoid t = new NumericIntegrate.Trapezoid(new NthElement(1), new NthElement(0), 1);
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(new Object[] {0l, 0});
+		p.push(new Object[] {10l, 2});
+		p.push(new Object[] {20l, 2});
+		assertEquals(0d, q.remove());
+		assertEquals(10d, q.remove());
+		assertEquals(30d, q.remove());
+	}
+
+	@Test
+	public void testTimeWeightedAverage()
+	{
+		NumericIntegrate.TimeWeightedAverage t = new NumericIntegrate.TimeWeightedAverage(new NthElement(1), new NthElement(0));
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(new Object[] {0l, 4});
+		p.push(new Object[] {30l, 0});
+		p.push(new Object[] {40l, 8});
+		assertEquals(4d, q.remove());
+		assertEquals(4d, q.remove());
+		assertEquals(3d, q.remove());
+	}
+
+	@Test
+	public void testDuplicateWithState()
+	{
+		NumericIntegrate.Sum sum = new NumericIntegrate.Sum(new NthElement(1), new NthElement(0));
+		Connector.connect(sum, new QueueSink());
+		Pushable p = sum.getPushableInput();
+		p.push(new Object[] {"a", 1});
+		p.push(new Object[] {"b", 10});
+		NumericIntegrate.Sum copy = sum.duplicate(true);
+		p.push(new Object[] {"a", 5});
+		assertEquals(6d, sum.getValueFor("a"), 0);
+		assertEquals(1d, copy.getValueFor("a"), 0);
+		assertEquals(10d, copy.getValueFor("b"), 0);
+		assertTrue(Double.isNaN(sum.duplicate(false).getValueFor("a")));
+	}
+}
@@ -0,0 +1,103 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Unit tests for {@link ProcessorMetrics}.
+ */
+public class ProcessorMetricsTest
+{
+	@Test
+	public void testCounts()
+	{
+		ProcessorMetrics metrics = new ProcessorMetrics();
+		Processor stutter = metrics.watch("stutter", new RemoveStutterHead());
+		QueueSink sink = new QueueSink();
+		Processor watched_sink = metrics.watch("sink", sink);
+		Connector.connect(stutter, watched_sink);
+		Pushable p = stutter.getPushableInput();
+		p.push("a");
+		p.push("a");
+		p.push("b");
+		p.push("b");
+		p.push("a");
+		Queue<Object> q = sink.getQueue();
+		assertEquals(2, q.size());
+		assertEquals("a", q.remove());
+		assertEquals("b", q.remove());
+		assertEquals(2, metrics.getRecord("stutter").getEventsOut());
+		// The last event is released at the end of the trace
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		assertEquals("a", q.remove());
+		ProcessorMetrics.Record r = metrics.getRecord("stutter");
+		assertEquals(5, r.getEventsIn());
+		assertEquals(3, r.getEventsOut());
+		assertEquals(6, r.getCalls());
+		assertTrue(r.getTotalTime() > 0);
+		assertTrue(r.getP99() >= r.getP50());
+		r = metrics.getRecord("sink");
+		assertEquals(3, r.getEventsIn());
+		assertEquals(0, r.getEventsOut());
+		metrics.clear();
+		assertEquals(0, metrics.getRecord("stutter").getEventsIn());
+	}
+
+	@Test
+	public void testInstances()
+	{
+		ProcessorMetrics metrics = new ProcessorMetrics();
+		Processor slice = metrics.watch("slice", new RemoveStutterHead());
+		Processor p1 = slice.duplicate();
+		slice.duplicate();
+		assertEquals(2, metrics.getRecord("slice").getInstances());
+		// Copies update the record of the original
+		p1.getPushableInput().push("a");
+		assertEquals(1, metrics.getRecord("slice").getEventsIn());
+		slice.reset();
+		assertEquals(0, metrics.getRecord("slice").getInstances());
+	}
+
+	@Test
+	public void testDot()
+	{
+		ProcessorMetrics metrics = new ProcessorMetrics();
+		Processor stutter = metrics.watch("stutter", new RemoveStutterHead());
+		Connector.connect(stutter, metrics.watch("sink", new QueueSink()));
+		stutter.getPushableInput().push("a");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		metrics.printDot(new PrintStream(baos));
+		String dot = baos.toString();
+		assertTrue(dot.startsWith("digraph"));
+		assertTrue(dot.contains("0 -> 1;"));
+		assertTrue(dot.contains("stutter"));
+	}
+}
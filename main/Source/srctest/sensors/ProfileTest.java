@@ -0,0 +1,119 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.Profile.Summary;
+
+/**
+ * Unit tests for {@link Profile}.
+ */
+public class ProfileTest
+{
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSummary()
+	{
+		Profile p = new Profile(new NthElement(0), new NthElement(1));
+		QueueSink sink = new QueueSink();
+		Connector.connect(p, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable ps = p.getPushableInput();
+		int[] values = new int[] {4, 2, 9, 4, 5, 4, 7, 5};
+		List<Object> list = new ArrayList<Object>();
+		for (int v : values)
+		{
+			ps.push(new Object[] {"a", v});
+			list.add(v);
+		}
+		// Strings are converted; values that are not numbers are ignored
+		ps.push(new Object[] {"b", "3.5 °C"});
+		ps.push(new Object[] {"b", "n/a"});
+		ps.push(new Object[] {"b", 1.5});
+		assertTrue(q.isEmpty());
+		ps.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		Map<Object,Summary> profile = (Map<Object,Summary>) q.remove();
+		assertEquals(2, profile.size());
+		Summary s = profile.get("a");
+		assertEquals(8, s.getCount());
+		assertEquals(2, s.getMin(), 0);
+		assertEquals(9, s.getMax(), 0);
+		assertEquals(5, s.getMean(), 1e-9);
+		// Sum of squared deviations is 32
+		assertEquals(32d / 7, s.getVariance(), 1e-9);
+		assertEquals(Math.sqrt(32d / 7), s.getStandardDeviation(), 1e-9);
+		// Quartiles are exact for a few values
+		Number[] expected = BoxAndWhiskers.instance.getValue(list);
+		Number[] quartiles = s.getQuartiles();
+		for (int i = 0; i < 5; i++)
+		{
+			assertEquals(expected[i].doubleValue(), quartiles[i].doubleValue(), 0);
+		}
+		s = profile.get("b");
+		assertEquals(2, s.getCount());
+		assertEquals(1.5, s.getMin(), 0);
+		assertEquals(3.5, s.getMax(), 0);
+		assertEquals(2.5, s.getMean(), 1e-9);
+		assertEquals(2, s.getVariance(), 1e-9);
+	}
+
+	@Test
+	public void testSingleValue()
+	{
+		Profile p = new Profile(new NthElement(0), new NthElement(1));
+		p.getPushableInput().push(new Object[] {"a", -3});
+		Summary s = p.getProfile("a");
+		assertEquals(1, s.getCount());
+		assertEquals(-3, s.getMin(), 0);
+		assertEquals(-3, s.getMax(), 0);
+		assertEquals(0, s.getVariance(), 0);
+		assertNull(p.getProfile("b"));
+	}
+
+	@Test
+	public void testDuplicate()
+	{
+		Profile p = new Profile(new NthElement(0), new NthElement(1));
+		Pushable ps = p.getPushableInput();
+		ps.push(new Object[] {"a", 1});
+		ps.push(new Object[] {"a", 3});
+		Profile d = p.duplicate(true);
+		d.getPushableInput().push(new Object[] {"a", 8});
+		assertEquals(2, p.getProfile("a").getCount());
+		assertEquals(2, p.getProfile("a").getMean(), 1e-9);
+		assertEquals(3, d.getProfile("a").getCount());
+		assertEquals(4, d.getProfile("a").getMean(), 1e-9);
+		assertEquals(8, d.getProfile("a").getMax(), 0);
+		assertTrue(p.duplicate(false).getProfile().isEmpty());
+		p.reset();
+		assertTrue(p.getProfile().isEmpty());
+	}
+}
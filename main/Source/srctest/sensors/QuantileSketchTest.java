@@ -0,0 +1,87 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link QuantileSketch}.
+ */
+public class QuantileSketchTest
+{
+	@Test
+	public void testExactWhenSmall()
+	{
+		QuantileSketch s = new QuantileSketch();
+		List<Object> values = new ArrayList<Object>();
+		for (int i = 0; i < 11; i++)
+		{
+			s.add(i * 3);
+			values.add(i * 3);
+		}
+		Number[] expected = BoxAndWhiskers.instance.getValue(values);
+		Number[] actual = BoxAndWhiskers.FromSketch.instance.getValue(s);
+		for (int i = 0; i < 5; i++)
+		{
+			assertEquals(expected[i].doubleValue(), actual[i].doubleValue(), 0);
+		}
+	}
+
+	@Test
+	public void testBoundedMemory()
+	{
+		QuantileSketch s = new QuantileSketch(100);
+		int n = 1000000;
+		for (int i = 0; i < n; i++)
+		{
+			s.add((i * 7919l) % n);
+		}
+		assertEquals(n, s.getCount());
+		assertTrue(s.getRetained() <= 400);
+		assertEquals(0, s.getMin(), 0);
+		assertEquals(n - 1, s.getMax(), 0);
+		assertEquals(n / 2, s.getQuantile(0.5), n * 0.03);
+		assertEquals(n / 4, s.getQuantile(0.25), n * 0.03);
+	}
+
+	@Test
+	public void testMerge()
+	{
+		Random r = new Random(0);
+		QuantileSketch a = QuantileSketch.forError(0.02);
+		QuantileSketch b = QuantileSketch.forError(0.02);
+		for (int i = 0; i < 50000; i++)
+		{
+			a.add(r.nextDouble());
+			b.add(1 + r.nextDouble());
+		}
+		QuantileSketch m = a.duplicate();
+		m.merge(b);
+		assertEquals(100000, m.getCount());
+		assertEquals(50000, a.getCount());
+		assertEquals(1, m.getQuantile(0.5), 0.05);
+		assertEquals(0.5, m.getQuantile(0.25), 0.05);
+		assertEquals(1.5, m.getQuantile(0.75), 0.05);
+	}
+}
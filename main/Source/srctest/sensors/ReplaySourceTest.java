@@ -0,0 +1,106 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Unit tests for {@link ReplaySource} and {@link LatencyRecorder}.
+ */
+public class ReplaySourceTest
+{
+	@Test
+	public void testPacing()
+	{
+		// 400 ms of events replayed at 10x take 40 ms
+		QueueSource events = new QueueSource().setEvents(1000l, 1100l, 1200l, 1300l, 1400l).loop(false);
+		ReplaySource src = new ReplaySource(events, StreamVariable.X, 10);
+		LatencyRecorder rec = new LatencyRecorder(src);
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, rec);
+		Connector.connect(rec, sink);
+		long start = System.nanoTime();
+		src.start();
+		long duration = System.nanoTime() - start;
+		assertTrue(duration >= 40000000);
+		Queue<Object> q = sink.getQueue();
+		assertEquals(5, q.size());
+		assertEquals(1000l, q.remove());
+		assertEquals(5, src.getCount());
+		assertEquals(5, rec.getHistogram().getCount());
+		// The last event is scheduled 40 ms after the first
+		assertEquals(40000000, src.getIngress(1400) - src.getIngress(1000));
+	}
+
+	@Test
+	public void testSpan()
+	{
+		QueueSource events = new QueueSource().setEvents(1000l, 1100l, 1200l, 1300l, 1400l).loop(false);
+		ReplaySource src = new ReplaySource(events, StreamVariable.X, ReplaySource.MAX_SPEED).setSpan(250);
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, sink);
+		src.start();
+		assertEquals(3, sink.getQueue().size());
+		assertEquals(0, src.getMaxLag());
+	}
+
+	@Test
+	public void testOutOfOrderLag()
+	{
+		// The last event is 100 ms of replay behind the schedule of the second
+		QueueSource events = new QueueSource().setEvents(1000l, 2000l, 1000l).loop(false);
+		ReplaySource src = new ReplaySource(events, StreamVariable.X, 10);
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, sink);
+		src.start();
+		assertEquals(3, sink.getQueue().size());
+		assertTrue(src.getMaxLag() < 50000000);
+	}
+
+	@Test
+	public void testEventTimeLatency()
+	{
+		// The recorder sees timestamps that lag behind the source, as a monitor
+		// waiting for the end of a window would
+		QueueSource events = new QueueSource().setEvents(0l, 100l, 200l, 300l).loop(false);
+		ReplaySource src = new ReplaySource(events, StreamVariable.X, 10);
+		LatencyRecorder rec = new LatencyRecorder(src, new UnaryFunction<Long,Long>(Long.class, Long.class) {
+			@Override
+			public Long getValue(Long x)
+			{
+				return x - 100;
+			}
+		});
+		Connector.connect(src, rec);
+		src.start();
+		LatencyHistogram h = rec.getHistogram();
+		assertEquals(4, h.getCount());
+		// Each output is 100 ms of event time, or 10 ms of replay, late
+		assertTrue(h.getMin() >= 10000000);
+	}
+}
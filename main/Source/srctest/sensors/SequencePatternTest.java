@@ -0,0 +1,99 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Unit tests for {@link SequencePattern}.
+ */
+public class SequencePatternTest
+{
+	protected static FunctionTree is(String s)
+	{
+		return new FunctionTree(Equals.instance, new NthElement(1), new Constant(s));
+	}
+
+	@Test
+	public void testWithinEvents()
+	{
+		SequencePattern p = new SequencePattern(null, new NthElement(0))
+				.then(is("a"))
+				.then(is("b")).withinEvents(3);
+		QueueSink sink = new QueueSink();
+		Connector.connect(p, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable in = p.getPushableInput();
+		Object[] a1 = new Object[] {0, "a"};
+		Object[] a2 = new Object[] {1, "a"};
+		Object[] b1 = new Object[] {2, "b"};
+		in.push(a1);
+		in.push(a2);
+		in.push(b1);
+		assertEquals(2, q.size());
+		SequencePattern.Match m = (SequencePattern.Match) q.remove();
+		assertSame(a1, m.getEvent(0));
+		assertSame(b1, m.getEvent(1));
+		m = (SequencePattern.Match) q.remove();
+		assertSame(a2, m.getEvent(0));
+		in.push(new Object[] {3, "c"});
+		in.push(new Object[] {4, "b"});
+		// a1 is now too far; a2 is not
+		assertEquals(1, q.size());
+		assertEquals(1, p.getRunCount());
+		in.push(new Object[] {5, "c"});
+		assertEquals(0, p.getRunCount());
+	}
+
+	@Test
+	public void testNegationAndTime()
+	{
+		SequencePattern p = new SequencePattern(null, new NthElement(0))
+				.then(is("a"))
+				.unless(is("x"))
+				.then(is("b")).withinTime(10)
+				.consume(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(p, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable in = p.getPushableInput();
+		in.push(new Object[] {0, "a"});
+		in.push(new Object[] {1, "x"});
+		in.push(new Object[] {2, "b"});
+		assertTrue(q.isEmpty());
+		in.push(new Object[] {3, "a"});
+		in.push(new Object[] {20, "b"});
+		assertTrue(q.isEmpty());
+		in.push(new Object[] {21, "a"});
+		in.push(new Object[] {25, "b"});
+		in.push(new Object[] {26, "b"});
+		assertEquals(1, q.size());
+	}
+}
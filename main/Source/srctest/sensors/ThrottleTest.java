@@ -0,0 +1,152 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.Throttle.Suppression;
+
+/**
+ * Unit tests for {@link Throttle}. Events are arrays made of a key, a value
+ * and a timestamp.
+ */
+public class ThrottleTest
+{
+	@Test
+	public void testInterval()
+	{
+		Throttle t = getThrottle(10, Double.POSITIVE_INFINITY);
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		Object[][] events = new Object[][] {
+			{"a", 1, 0}, {"a", 1, 9}, {"b", 1, 5}, {"a", 1, 10},
+			{"a", 1, 19}, {"b", 1, 14}, {"a", 1, 20}, {"b", 1, 15}};
+		// Events exactly one interval after the last one let through pass
+		boolean[] expected = new boolean[] {true, false, true, true, false, false, true, true};
+		for (int i = 0; i < events.length; i++)
+		{
+			p.push(events[i]);
+			assertEquals("Event " + i, expected[i] ? 1 : 0, q.size());
+			if (expected[i])
+			{
+				assertSame(events[i], q.remove());
+			}
+		}
+		assertEquals(3, t.getSuppressedCount());
+		assertEquals(2, t.getKeyCount());
+	}
+
+	@Test
+	public void testDeadBand()
+	{
+		Throttle t = getThrottle(Long.MAX_VALUE, 0.5);
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		Object[] values = new Object[] {20.0, 20.4, 19.6, 20.5, 20.9, "n/a", 20.0, "19.5 °C"};
+		// Variations are measured from the last value let through
+		boolean[] expected = new boolean[] {true, false, false, true, false, false, true, true};
+		for (int i = 0; i < values.length; i++)
+		{
+			Object[] e = new Object[] {"a", values[i], i * 1000};
+			p.push(e);
+			assertEquals("Event " + i, expected[i] ? 1 : 0, q.size());
+			if (expected[i])
+			{
+				assertSame(e, q.remove());
+			}
+		}
+		assertEquals(4, t.getSuppressedCount());
+	}
+
+	@Test
+	public void testSummarize()
+	{
+		Throttle t = getThrottle(10, Double.POSITIVE_INFINITY).summarize(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(new Object[] {"a", 1, 0});
+		p.push(new Object[] {"a", 1, 2});
+		p.push(new Object[] {"a", 1, 4});
+		assertEquals(1, q.size());
+		q.remove();
+		// The run of suppressed events ends before the next event let through
+		p.push(new Object[] {"a", 1, 10});
+		assertEquals(2, q.size());
+		assertSuppression(q.remove(), "a", 2, 2, 4);
+		q.remove();
+		p.push(new Object[] {"a", 1, 12});
+		assertTrue(q.isEmpty());
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		assertSuppression(q.remove(), "a", 1, 12, 12);
+	}
+
+	@Test
+	public void testEviction()
+	{
+		Throttle t = getThrottle(1000, Double.POSITIVE_INFINITY).evictAfter(100).summarize(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(new Object[] {"a", 1, 0});
+		p.push(new Object[] {"a", 1, 20});
+		p.push(new Object[] {"b", 1, 50});
+		assertEquals(2, q.size());
+		q.clear();
+		// a has been idle for 100 ms: it is evicted and its run is closed
+		p.push(new Object[] {"b", 1, 120});
+		assertEquals(1, t.getKeyCount());
+		assertEquals(1, q.size());
+		assertSuppression(q.remove(), "a", 1, 20, 20);
+		// An evicted key starts over
+		Object[] e = new Object[] {"a", 1, 130};
+		p.push(e);
+		assertEquals(1, q.size());
+		assertSame(e, q.remove());
+		assertEquals(2, t.getKeyCount());
+	}
+
+	protected static Throttle getThrottle(long interval, double threshold)
+	{
+		return new Throttle(new NthElement(0), new NthElement(1), new NthElement(2), interval, threshold);
+	}
+
+	protected static void assertSuppression(Object o, Object key, long count, long start, long end)
+	{
+		Suppression s = (Suppression) o;
+		assertEquals(key, s.getKey());
+		assertEquals(count, s.getCount());
+		assertEquals(start, s.getStart());
+		assertEquals(end, s.getEnd());
+	}
+}
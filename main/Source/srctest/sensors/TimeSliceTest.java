@@ -0,0 +1,161 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.KeepLast;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.DeltaSlice.Change;
+
+/**
+ * Unit tests for {@link TimeSlice}.
+ */
+public class TimeSliceTest
+{
+	protected static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	protected static TimeSlice getSlice(Processor slice)
+	{
+		return new TimeSlice(new NthElement(0), 10, 0, UTC, slice);
+	}
+
+	@Test
+	public void testRollover()
+	{
+		TimeSlice t = getSlice(new ApplyFunction(new NthElement(1)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(new Object[] {1l, "a"});
+		p.push(new Object[] {5l, "b"});
+		assertTrue(q.isEmpty());
+		assertEquals(1, t.getOpenPeriods());
+		// Period [0,10) closes as soon as time reaches 10
+		p.push(new Object[] {10l, "c"});
+		assertEquals(1, q.size());
+		assertChange(q.remove(), 0l, "b");
+		// Nothing happens in [20,30)
+		p.push(new Object[] {35l, "d"});
+		assertEquals(1, q.size());
+		assertChange(q.remove(), 10l, "c");
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		assertChange(q.remove(), 30l, "d");
+	}
+
+	@Test
+	public void testLateness()
+	{
+		TimeSlice t = getSlice(new ApplyFunction(new NthElement(1))).allowLateness(5);
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		p.push(new Object[] {1l, "a"});
+		p.push(new Object[] {12l, "b"});
+		// Within the lateness: still counted in [0,10)
+		p.push(new Object[] {8l, "c"});
+		assertTrue(q.isEmpty());
+		assertEquals(2, t.getOpenPeriods());
+		p.push(new Object[] {15l, "d"});
+		assertEquals(1, q.size());
+		assertChange(q.remove(), 0l, "c");
+		// Beyond the lateness: ignored and counted
+		p.push(new Object[] {3l, "e"});
+		p.push(new Object[] {9l, "f"});
+		assertEquals(2, t.getLateEvents());
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		assertChange(q.remove(), 10l, "d");
+	}
+
+	@Test
+	public void testEndOfTraceFlush()
+	{
+		// KeepLast only outputs its event at the end of its trace, which each
+		// period receives when it is closed
+		TimeSlice t = getSlice(new KeepLast());
+		QueueSink sink = new QueueSink();
+		Connector.connect(t, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = t.getPushableInput();
+		Object[] e1 = new Object[] {5l, "a"};
+		Object[] e2 = new Object[] {12l, "b"};
+		p.push(new Object[] {1l, "x"});
+		p.push(e1);
+		p.push(e2);
+		assertEquals(1, q.size());
+		Change c = (Change) q.remove();
+		assertEquals(0l, c.getKey());
+		assertSame(e1, c.getValue());
+		p.notifyEndOfTrace();
+		assertEquals(1, q.size());
+		c = (Change) q.remove();
+		assertEquals(10l, c.getKey());
+		assertSame(e2, c.getValue());
+	}
+
+	@Test
+	public void testDaylightSavingTime()
+	{
+		// In Montreal, DST starts on March 10, 2024 and ends on November 3, 2024
+		TimeZone tz = TimeZone.getTimeZone("America/Montreal");
+		long[][] days = new long[][] {
+			{1710046800000l, 1710129600000l},
+			{1730606400000l, 1730696400000l}};
+		for (long[] midnights : days)
+		{
+			TimeSlice t = new TimeSlice(new NthElement(0), TimeSlice.DAY, 0, tz, new ApplyFunction(new NthElement(1)));
+			QueueSink sink = new QueueSink();
+			Connector.connect(t, sink);
+			Queue<Object> q = sink.getQueue();
+			Pushable p = t.getPushableInput();
+			// Before and after the change, and just before the next midnight
+			p.push(new Object[] {midnights[0] + 90 * 60000l, "a"});
+			p.push(new Object[] {midnights[0] + 3 * TimeSlice.HOUR, "b"});
+			p.push(new Object[] {midnights[1] - 1, "c"});
+			assertTrue(q.isEmpty());
+			assertEquals(1, t.getOpenPeriods());
+			p.push(new Object[] {midnights[1], "d"});
+			assertEquals(1, q.size());
+			assertChange(q.remove(), midnights[0], "c");
+			p.notifyEndOfTrace();
+			assertEquals(1, q.size());
+			assertChange(q.remove(), midnights[1], "d");
+		}
+	}
+
+	protected static void assertChange(Object o, Object key, Object value)
+	{
+		Change c = (Change) o;
+		assertEquals(key, c.getKey());
+		assertEquals(value, c.getValue());
+	}
+}
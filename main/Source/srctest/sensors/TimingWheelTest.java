@@ -0,0 +1,139 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TimingWheel}.
+ */
+public class TimingWheelTest
+{
+	@Test
+	public void testSimple()
+	{
+		TimingWheel w = new TimingWheel(0);
+		w.schedule(0, 10);
+		w.schedule(1, 5000);
+		w.schedule(2, 20);
+		w.cancel(2);
+		assertEquals(0, w.advance(9));
+		assertEquals(1, w.advance(4999));
+		assertEquals(0, w.getExpired(0));
+		w.schedule(0, 6000);
+		assertEquals(2, w.advance(1000000));
+		assertEquals(0, w.size());
+	}
+
+	@Test
+	public void testLevelBoundaries()
+	{
+		// Deadlines falling exactly where an upper level cascades
+		long[] boundaries = new long[] {64, 128, 4096, 8192, 262144, 16777216};
+		for (long b : boundaries)
+		{
+			TimingWheel w = new TimingWheel(0);
+			w.schedule(0, b);
+			w.schedule(1, b + 1);
+			assertEquals(0, w.advance(b - 1));
+			assertEquals(1, w.advance(b));
+			assertEquals(0, w.getExpired(0));
+			assertEquals(1, w.advance(b + 1));
+			assertEquals(1, w.getExpired(0));
+			assertEquals(0, w.size());
+		}
+	}
+
+	@Test
+	public void testLevelBoundariesFromOffset()
+	{
+		// Same, with the wheel not starting at 0 and advanced tick by tick
+		TimingWheel w = new TimingWheel(10);
+		w.schedule(0, 64);
+		w.schedule(1, 4096);
+		for (long t = 11; t <= 4096; t++)
+		{
+			int n = w.advance(t);
+			if (t == 64 || t == 4096)
+			{
+				assertEquals(1, n);
+				assertEquals(t == 64 ? 0 : 1, w.getExpired(0));
+			}
+			else
+			{
+				assertEquals(0, n);
+			}
+		}
+	}
+
+	@Test
+	public void testRandom()
+	{
+		Random r = new Random(0);
+		int n = 50;
+		for (int trial = 0; trial < 20; trial++)
+		{
+			TimingWheel w = new TimingWheel(0);
+			long[] deadlines = new long[n];
+			Arrays.fill(deadlines, Long.MIN_VALUE);
+			long now = 0;
+			for (int step = 0; step < 1000; step++)
+			{
+				int id = r.nextInt(n);
+				switch (r.nextInt(3))
+				{
+				case 0:
+					deadlines[id] = now + (long) Math.pow(10, r.nextDouble() * 9);
+					w.schedule(id, deadlines[id]);
+					break;
+				case 1:
+					deadlines[id] = Long.MIN_VALUE;
+					w.cancel(id);
+					break;
+				default:
+					long t = now + (long) Math.pow(10, r.nextDouble() * 7);
+					int count = w.advance(t);
+					Set<Integer> actual = new HashSet<Integer>();
+					for (int i = 0; i < count; i++)
+					{
+						actual.add(w.getExpired(i));
+					}
+					Set<Integer> expected = new HashSet<Integer>();
+					for (int i = 0; i < n; i++)
+					{
+						if (deadlines[i] != Long.MIN_VALUE && deadlines[i] <= t)
+						{
+							expected.add(i);
+							deadlines[i] = Long.MIN_VALUE;
+						}
+					}
+					assertEquals(expected, actual);
+					now = t;
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Unit tests for {@link UnpackMap}.
+ */
+public class UnpackMapTest
+{
+	@Test
+	public void testCachedKeys()
+	{
+		UnpackMap u = new UnpackMap(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(u, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = u.getPushableInput();
+		p.push(getMap("c", "a", "b"));
+		assertEquals(Arrays.asList("a", "b", "c"), drain(q));
+		// Same keys
+		p.push(getMap("b", "c", "a"));
+		assertEquals(Arrays.asList("a", "b", "c"), drain(q));
+		// Added keys are merged
+		p.push(getMap("a", "b", "c", "aa", "d"));
+		assertEquals(Arrays.asList("a", "aa", "b", "c", "d"), drain(q));
+		// Removed keys
+		p.push(getMap("aa", "d"));
+		assertEquals(Arrays.asList("aa", "d"), drain(q));
+		// As many keys removed as added: the size does not change
+		p.push(getMap("b", "e"));
+		assertEquals(Arrays.asList("b", "e"), drain(q));
+		p.push(getMap());
+		assertTrue(q.isEmpty());
+		p.push(getMap("e", "a"));
+		assertEquals(Arrays.asList("a", "e"), drain(q));
+	}
+
+	@Test
+	public void testCachedKeysRandom()
+	{
+		// The cached and uncached modes output the same events
+		UnpackMap cached = new UnpackMap(true);
+		UnpackMap uncached = new UnpackMap();
+		QueueSink sink_c = new QueueSink();
+		QueueSink sink_u = new QueueSink();
+		Connector.connect(cached, sink_c);
+		Connector.connect(uncached, sink_u);
+		Random r = new Random(7);
+		Map<Object,Object> map = new HashMap<Object,Object>();
+		for (int i = 0; i < 500; i++)
+		{
+			int changes = r.nextInt(4);
+			for (int j = 0; j < changes; j++)
+			{
+				int key = r.nextInt(20);
+				if (map.containsKey(key))
+				{
+					map.remove(key);
+				}
+				else
+				{
+					map.put(key, "v" + key);
+				}
+			}
+			Map<Object,Object> m = new HashMap<Object,Object>(map);
+			cached.getPushableInput().push(m);
+			uncached.getPushableInput().push(m);
+			assertEquals("Map " + i, drain(sink_u.getQueue()), drain(sink_c.getQueue()));
+		}
+	}
+
+	@Test
+	public void testSortedMap()
+	{
+		UnpackMap u = new UnpackMap(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(u, sink);
+		TreeMap<Object,Object> map = new TreeMap<Object,Object>();
+		map.put(3, "x");
+		map.put(1, "y");
+		map.put(2, "z");
+		u.getPushableInput().push(map);
+		assertEquals(Arrays.asList("y", "z", "x"), drain(sink.getQueue()));
+	}
+
+	@Test
+	public void testDuplicate()
+	{
+		UnpackMap u = new UnpackMap(true);
+		Connector.connect(u, new QueueSink());
+		u.getPushableInput().push(getMap("b", "a"));
+		UnpackMap d = u.duplicate(true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(d, sink);
+		d.getPushableInput().push(getMap("c", "a"));
+		assertEquals(Arrays.asList("a", "c"), drain(sink.getQueue()));
+		u.reset();
+		assertTrue(u.m_sortedKeys.isEmpty());
+	}
+
+	@Test(expected = ProcessorException.class)
+	public void testNotMap()
+	{
+		new UnpackMap(true).getPushableInput().push("foo");
+	}
+
+	/**
+	 * Creates a map where each key is associated to itself.
+	 * @param keys The keys
+	 * @return The map
+	 */
+	protected static Map<Object,Object> getMap(Object ... keys)
+	{
+		Map<Object,Object> map = new HashMap<Object,Object>();
+		for (Object k : keys)
+		{
+			map.put(k, k);
+		}
+		return map;
+	}
+
+	protected static List<Object> drain(Queue<Object> q)
+	{
+		List<Object> list = new ArrayList<Object>(q);
+		q.clear();
+		return list;
+	}
+}
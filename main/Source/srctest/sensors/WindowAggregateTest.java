@@ -0,0 +1,161 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+
+/**
+ * Unit tests for {@link WindowAggregate}.
+ */
+public class WindowAggregateTest
+{
+	@Test
+	public void testTumbling()
+	{
+		WindowAggregate w = new WindowAggregate.Tumbling(new NthElement(0), new NthElement(1), new NthElement(2), 10, WindowAggregate.Sum.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {"a", 1, 1});
+		p.push(new Object[] {"b", 2, 5});
+		p.push(new Object[] {"a", 9, 2});
+		assertTrue(q.isEmpty());
+		p.push(new Object[] {"a", 35, 4});
+		assertEquals(2, q.size());
+		WindowAggregate.Result r = (WindowAggregate.Result) q.remove();
+		assertEquals("a", r.getKey());
+		assertEquals(0, r.getStart());
+		assertEquals(10, r.getEnd());
+		assertEquals(3d, r.getValue());
+		r = (WindowAggregate.Result) q.remove();
+		assertEquals("b", r.getKey());
+		assertEquals(5d, r.getValue());
+		p.push(new Object[] {"b", 20, 1});
+		assertEquals(1, w.getLateEvents());
+		p.notifyEndOfTrace();
+		r = (WindowAggregate.Result) q.remove();
+		assertEquals(30, r.getStart());
+		assertEquals(4d, r.getValue());
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testSliding()
+	{
+		WindowAggregate w = new WindowAggregate.Sliding(null, new NthElement(0), null, 10, 5, WindowAggregate.Count.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {1});
+		p.push(new Object[] {6});
+		p.push(new Object[] {7});
+		p.push(new Object[] {12});
+		p.notifyEndOfTrace();
+		// Windows [-5,5), [0,10), [5,15), [10,20)
+		long[] expected = new long[] {1, 3, 3, 1};
+		assertEquals(expected.length, q.size());
+		for (int i = 0; i < expected.length; i++)
+		{
+			WindowAggregate.Result r = (WindowAggregate.Result) q.remove();
+			assertEquals(-5 + 5 * i, r.getStart());
+			assertEquals(expected[i], r.getValue());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSlidingGap()
+	{
+		// The empty windows during a long gap are skipped
+		WindowAggregate w = new WindowAggregate.Sliding(null, new NthElement(0), null, 10, 1, WindowAggregate.Count.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {5l});
+		p.push(new Object[] {1000000000000l});
+		// Windows [-4,6) to [5,15) contain the first event
+		assertEquals(10, q.size());
+		for (int i = 0; i < 10; i++)
+		{
+			WindowAggregate.Result r = (WindowAggregate.Result) q.remove();
+			assertEquals(-4 + i, r.getStart());
+			assertEquals(1l, r.getValue());
+		}
+		p.notifyEndOfTrace();
+		assertEquals(10, q.size());
+		assertEquals(1000000000000l - 9, ((WindowAggregate.Result) q.remove()).getStart());
+	}
+
+	@Test
+	public void testSession()
+	{
+		WindowAggregate w = new WindowAggregate.Session(new NthElement(0), new NthElement(1), new NthElement(2), 10, WindowAggregate.Max.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {"a", 0, 1});
+		p.push(new Object[] {"a", 8, 3});
+		p.push(new Object[] {"b", 15, 2});
+		assertTrue(q.isEmpty());
+		p.push(new Object[] {"b", 18, 7});
+		assertEquals(1, q.size());
+		WindowAggregate.Result r = (WindowAggregate.Result) q.remove();
+		assertEquals("a", r.getKey());
+		assertEquals(0, r.getStart());
+		assertEquals(8, r.getEnd());
+		assertEquals(3d, r.getValue());
+		p.notifyEndOfTrace();
+		r = (WindowAggregate.Result) q.remove();
+		assertEquals("b", r.getKey());
+		assertEquals(15, r.getStart());
+		assertEquals(7d, r.getValue());
+	}
+
+	@Test
+	public void testSessionBoundary()
+	{
+		// An event exactly one gap after the last one starts a new session,
+		// also when this falls on a level boundary of the timing wheel
+		WindowAggregate w = new WindowAggregate.Session(new NthElement(0), new NthElement(1), new NthElement(2), 100, WindowAggregate.Count.instance);
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {"a", 0, 1});
+		p.push(new Object[] {"a", 28, 1});
+		assertTrue(q.isEmpty());
+		p.push(new Object[] {"a", 128, 1});
+		assertEquals(1, q.size());
+		WindowAggregate.Result r = (WindowAggregate.Result) q.remove();
+		assertEquals(0, r.getStart());
+		assertEquals(28, r.getEnd());
+		assertEquals(2l, r.getValue());
+	}
+}
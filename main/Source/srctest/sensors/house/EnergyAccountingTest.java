@@ -0,0 +1,118 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.house;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.NthElement;
+import sensors.house.EnergyAccounting.Consumption;
+
+/**
+ * Unit tests for {@link EnergyAccounting}.
+ */
+public class EnergyAccountingTest
+{
+	@Test
+	public void testSingleDevice()
+	{
+		EnergyAccounting ea = newAccounting();
+		QueueSink sink = new QueueSink();
+		Connector.connect(ea, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = ea.getPushableInput();
+		p.push(event("stove", 0, PowerState.INSTANT_POWER, "1000"));
+		p.push(event("stove", EnergyAccounting.HOUR / 2, "temperature", "21"));
+		assertEquals(0, q.size());
+		p.push(event("stove", 2 * EnergyAccounting.HOUR, PowerState.INSTANT_POWER, "0"));
+		assertEquals(2, q.size());
+		Consumption c = (Consumption) q.remove();
+		assertEquals("stove", c.getDevice());
+		assertEquals(0, c.getStart());
+		assertEquals(1, c.getEnergy(), 0.0001);
+		c = (Consumption) q.remove();
+		assertEquals(EnergyAccounting.HOUR, c.getStart());
+		assertEquals(1, c.getEnergy(), 0.0001);
+		assertEquals(2, ea.getTotalEnergy("stove"), 0.0001);
+	}
+
+	@Test
+	public void testCurrentVoltage()
+	{
+		EnergyAccounting ea = newAccounting();
+		QueueSink sink = new QueueSink();
+		Connector.connect(ea, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = ea.getPushableInput();
+		p.push(event("heater", 0, PowerState.INSTANT_CURRENT, "2"));
+		p.push(event("heater", 0, PowerState.INSTANT_VOLTAGE, "250"));
+		p.push(event("fridge", 0, PowerState.INSTANT_POWER, "100"));
+		p.push(event("heater", EnergyAccounting.HOUR / 2, PowerState.INSTANT_CURRENT, "2"));
+		assertEquals(0.25, ea.getTotalEnergy("heater"), 0.0001);
+		assertEquals(0, ea.getTotalEnergy("fridge"), 0.0001);
+		p.notifyEndOfTrace();
+		assertEquals(2, q.size());
+	}
+
+	@Test
+	public void testDaylightSavingTime()
+	{
+		// In Montreal, DST starts on March 8, 2026 and ends on November 1, 2026
+		TimeZone tz = TimeZone.getTimeZone("America/Montreal");
+		long[][] days = new long[][] {
+			{1772859600000l, 1772946000000l, 1773028800000l, 1773115200000l},
+			{1793419200000l, 1793505600000l, 1793595600000l, 1793682000000l}};
+		for (long[] midnights : days)
+		{
+			EnergyAccounting ea = new EnergyAccounting(new NthElement(0), new NthElement(2), new NthElement(3), new NthElement(1), EnergyAccounting.DAY, tz);
+			QueueSink sink = new QueueSink();
+			Connector.connect(ea, sink);
+			Queue<Object> q = sink.getQueue();
+			Pushable p = ea.getPushableInput();
+			p.push(event("stove", midnights[0] + EnergyAccounting.HOUR, PowerState.INSTANT_POWER, "1000"));
+			p.push(event("stove", midnights[3] + EnergyAccounting.HOUR, PowerState.INSTANT_POWER, "1000"));
+			assertEquals(3, q.size());
+			for (int i = 0; i < 3; i++)
+			{
+				// Each period goes from one local midnight to the next
+				Consumption c = (Consumption) q.remove();
+				assertEquals(midnights[i], c.getStart());
+				assertEquals(midnights[i + 1], c.getEnd());
+				double hours = (midnights[i + 1] - midnights[i]) / (double) EnergyAccounting.HOUR;
+				assertEquals(i == 0 ? hours - 1 : hours, c.getEnergy(), 0.0001);
+			}
+		}
+	}
+
+	protected static EnergyAccounting newAccounting()
+	{
+		return new EnergyAccounting(new NthElement(0), new NthElement(2), new NthElement(3), new NthElement(1), EnergyAccounting.HOUR, TimeZone.getTimeZone("UTC"));
+	}
+
+	protected static Object[] event(String device, long ts, String sensor, String state)
+	{
+		return new Object[] {device, ts, sensor, state};
+	}
+}
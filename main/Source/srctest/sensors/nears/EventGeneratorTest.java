@@ -0,0 +1,105 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.nears;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Pullable;
+import sensors.TimedEvent;
+
+/**
+ * Unit tests for {@link EventGenerator}.
+ */
+public class EventGeneratorTest
+{
+	protected static EventGenerator getGenerator()
+	{
+		return new EventGenerator(42).setHomes(3).setRooms(2).setSensorsPerRoom(3).setRate(600).setPeriod(0, 3600000);
+	}
+
+	protected static List<String> getEvents(EventGenerator g, int home)
+	{
+		List<String> events = new ArrayList<String>();
+		EventGenerator.HomeStream s = g.getStream(home);
+		while (s.hasNext())
+		{
+			events.add(s.next().getEvent().toString());
+		}
+		return events;
+	}
+
+	@Test
+	public void testDeterministic()
+	{
+		List<String> e1 = getEvents(getGenerator(), 1);
+		List<String> e2 = getEvents(getGenerator(), 1);
+		assertFalse(e1.isEmpty());
+		assertEquals(e1, e2);
+		assertFalse(e1.equals(getEvents(getGenerator(), 2)));
+	}
+
+	@Test
+	public void testSourceThreads()
+	{
+		Pullable p1 = getGenerator().getSource().getPullableOutput();
+		Pullable p2 = getGenerator().getSource(4).getPullableOutput();
+		int count = 0;
+		while (p1.hasNext())
+		{
+			assertTrue(p2.hasNext());
+			assertEquals(p1.next().toString(), p2.next().toString());
+			count++;
+		}
+		assertFalse(p2.hasNext());
+		int total = 0;
+		for (int i = 0; i < 3; i++)
+		{
+			total += getEvents(getGenerator(), i).size();
+		}
+		assertEquals(total, count);
+	}
+
+	@Test
+	public void testJitter()
+	{
+		EventGenerator g = getGenerator().setJitter(5000).setDuplicates(0.1);
+		EventGenerator.HomeStream s = g.getStream(0);
+		long last = Long.MIN_VALUE;
+		int size = 0;
+		Set<Object> distinct = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+		while (s.hasNext())
+		{
+			TimedEvent e = s.next();
+			// Events are delivered in order of delivery time
+			assertTrue(e.getTimestamp() >= last);
+			last = e.getTimestamp();
+			distinct.add(e.getEvent());
+			size++;
+		}
+		// A duplicate is the same event delivered a second time
+		assertTrue(distinct.size() < size);
+	}
+}
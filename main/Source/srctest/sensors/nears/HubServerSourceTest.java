@@ -0,0 +1,100 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.nears;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.json.JsonMap;
+import sensors.nears.HubServerSource.HubClient;
+
+/**
+ * Unit tests for {@link HubServerSource}.
+ */
+public class HubServerSourceTest
+{
+	@Test(timeout = 10000)
+	public void testHomes() throws IOException
+	{
+		HubServerSource source = new HubServerSource(new InetSocketAddress("localhost", 0), 16).open();
+		HubClient c1 = new HubClient("localhost", source.getPort(), "hub-1");
+		HubClient c2 = new HubClient("localhost", source.getPort(), "hub-2");
+		c1.send("{\"n\":0}");
+		c1.sendAll(new ByteArrayInputStream("not json\r\n{\"n\":1}".getBytes(StandardCharsets.UTF_8)));
+		c1.close();
+		c2.send("{\"n\":2}");
+		c2.close();
+		Pullable p = source.getPullableOutput(0);
+		int from_1 = 0, from_2 = 0;
+		for (int i = 0; i < 3; i++)
+		{
+			JsonMap e = (JsonMap) p.pull();
+			int n = ((Number) e.get("n")).intValue();
+			String home = (String) e.get(HubServerSource.HOME);
+			assertEquals(n < 2 ? "hub-1" : "hub-2", home);
+			if (n < 2)
+			{
+				assertEquals(from_1++, n);
+			}
+			else
+			{
+				from_2++;
+			}
+		}
+		assertEquals(2, from_1);
+		assertEquals(1, from_2);
+		source.close();
+		assertFalse(p.hasNext());
+		assertEquals(2, source.getConnectionCount());
+		assertEquals(3, source.getReceivedCount());
+		assertEquals(1, source.getMalformedCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testBackpressure() throws IOException, InterruptedException
+	{
+		HubServerSource source = new HubServerSource(new InetSocketAddress("localhost", 0), 4).open();
+		HubClient c = new HubClient("localhost", source.getPort(), "hub-1");
+		for (int i = 0; i < 100; i++)
+		{
+			c.send("{\"n\":" + i + "}");
+		}
+		c.close();
+		while (source.getPauseCount() == 0)
+		{
+			Thread.sleep(10);
+		}
+		assertTrue(source.getQueueSize() <= 4);
+		Pullable p = source.getPullableOutput(0);
+		for (int i = 0; i < 100; i++)
+		{
+			JsonMap e = (JsonMap) p.pull();
+			assertEquals(i, ((Number) e.get("n")).intValue());
+		}
+		assertEquals(100, source.getReceivedCount());
+		source.close();
+		assertFalse(p.hasNext());
+	}
+}
@@ -0,0 +1,155 @@
+/*
+    Processing of sensor events with BeepBeep
+    Copyright (C) 2023-2026 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sensors.nears;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.uqac.lif.fs.FileSystem;
+import ca.uqac.lif.fs.FileSystemException;
+import sensors.LogRepository;
+import sensors.house.House;
+import sensors.house.House.Location;
+
+/**
+ * Unit tests for {@link NearsHouseIndex} and the
+ * {@link sensors.house.HouseIndex HouseIndex} it extends.
+ */
+public class NearsHouseIndexTest
+{
+	/**
+	 * The timestamp of the first event of the logs.
+	 */
+	protected static final long T0 = 1700000000000l;
+
+	/**
+	 * One minute, in milliseconds.
+	 */
+	protected static final long MIN = 60000;
+
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	@Test
+	public void testBuild() throws IOException, FileSystemException
+	{
+		FileSystem fs = createLogs();
+		NearsHouseIndex index = new NearsHouseIndex(fs, 10 * MIN);
+		index.build(1, -1);
+		// Checkpoints at 0 and 12 (first events at least 10 minutes apart), at
+		// 30, and at 60 (first event of day 2)
+		assertEquals(4, index.size());
+		fs.close();
+	}
+
+	@Test
+	public void testBetweenCheckpoints() throws IOException, FileSystemException
+	{
+		FileSystem fs = createLogs();
+		NearsHouseIndex index = new NearsHouseIndex(fs, 10 * MIN);
+		index.build(1, -1);
+		assertTrue(index.getState(T0 - 1).isEmpty());
+		// After the checkpoint at 12, before the event at 15
+		House h = index.getState(T0 + 14 * MIN);
+		assertEquals("ON", getValue(h, "kitchen", "motion"));
+		assertEquals("12", getValue(h, "kitchen", "luminance"));
+		assertEquals("ON", getValue(h, "bedroom", "motion"));
+		// The event at 15 is replayed from the checkpoint at 12
+		h = index.getState(T0 + 20 * MIN);
+		assertEquals("OFF", getValue(h, "kitchen", "motion"));
+		assertEquals(T0 + 15 * MIN, h.get("kitchen").get("sink").get("hub").get("motion").get("time"));
+		// An event at the moment of the query is included
+		assertEquals("ON", getValue(index.getState(T0 + 30 * MIN), "kitchen", "motion"));
+		assertEquals("OFF", getValue(index.getState(T0 + 30 * MIN - 1), "kitchen", "motion"));
+		// In the second file
+		h = index.getState(T0 + 65 * MIN);
+		assertEquals("OFF", getValue(h, "bedroom", "motion"));
+		assertEquals("12", getValue(h, "kitchen", "luminance"));
+		assertEquals("3", getValue(index.getState(T0 + 100 * MIN), "kitchen", "luminance"));
+		assertNull(index.getState(T0 + 5 * MIN, "bedroom"));
+		fs.close();
+	}
+
+	@Test
+	public void testLoad() throws IOException, FileSystemException
+	{
+		FileSystem fs = createLogs();
+		new NearsHouseIndex(fs, 10 * MIN).build(1, -1);
+		NearsHouseIndex index = new NearsHouseIndex(fs, 10 * MIN);
+		assertTrue(index.load());
+		assertEquals(4, index.size());
+		Location l = index.getState(T0 + 20 * MIN, "kitchen");
+		assertEquals("OFF", l.get("sink").get("hub").get("motion").get("value"));
+		assertFalse(new NearsHouseIndex(new LogRepository(m_folder.newFolder("empty").getPath()).open()).load());
+		fs.close();
+	}
+
+	/**
+	 * Writes two day files of events in the temporary folder. The times of the
+	 * events, in minutes from {@link #T0}, are 0, 5, 12, 15 and 30 for the
+	 * first day, and 60 and 68 for the second.
+	 * @return A file system open on the folder
+	 * @throws IOException If the files cannot be written
+	 * @throws FileSystemException If the folder cannot be opened
+	 */
+	protected FileSystem createLogs() throws IOException, FileSystemException
+	{
+		writeLines(m_folder.newFile("1.json"),
+				event("kitchen", 0, "motion", "ON"),
+				event("kitchen", 5, "luminance", "12"),
+				event("bedroom", 12, "motion", "ON"),
+				event("kitchen", 15, "motion", "OFF"),
+				event("kitchen", 30, "motion", "ON"));
+		writeLines(m_folder.newFile("2.json"),
+				event("bedroom", 60, "motion", "OFF"),
+				event("kitchen", 68, "luminance", "3"));
+		return new LogRepository(m_folder.getRoot().getPath()).open();
+	}
+
+	protected static String event(String location, long minutes, String sensor, String state)
+	{
+		return NearsJsonFormat.newEvent(location, "sink", "hub", T0 + minutes * MIN, sensor, state).toString();
+	}
+
+	protected static void writeLines(File f, String ... lines) throws IOException
+	{
+		try (Writer w = new OutputStreamWriter(Files.newOutputStream(f.toPath()), StandardCharsets.UTF_8))
+		{
+			for (String line : lines)
+			{
+				w.write(line);
+				w.write("\n");
+			}
+		}
+	}
+
+	protected static Object getValue(House h, String location, String sensor)
+	{
+		return h.get(location).get("sink").get("hub").get(sensor).get("value");
+	}
+}